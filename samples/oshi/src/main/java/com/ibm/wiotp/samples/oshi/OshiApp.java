@@ -14,6 +14,7 @@ import com.ibm.wiotp.sdk.app.callbacks.EventCallback;
 import com.ibm.wiotp.sdk.app.config.ApplicationConfig;
 import com.ibm.wiotp.sdk.app.messages.Event;
 import com.ibm.wiotp.sdk.codecs.JsonCodec;
+import com.ibm.wiotp.sdk.codecs.PojoCodec;
 
 public class OshiApp implements Runnable {
 
@@ -34,10 +35,12 @@ public class OshiApp implements Runnable {
 			client.connect();
 			client.registerEventCallback(new MyEventCallback());
 			client.registerCodec(new JsonCodec());
+			// Decodes the same json events straight to OshiData for MyEventCallback
+			client.registerCodec(new PojoCodec<OshiData>(OshiData.class));
 
-			// Create subscriptions for json-sigar events only because we only have a json
-			// codec registered
-			client.subscribeToDeviceEvents("+", "+", "+", "json-sigar");
+			// Create subscriptions for json events only because we only have json codecs
+			// registered
+			client.subscribeToDeviceEvents("+", "+", "+", "json");
 
 			while (!quit) {
 				Thread.sleep(1000);
@@ -10,25 +10,44 @@
  */
 package com.ibm.wiotp.sdk;
 
+import java.io.IOException;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 import org.eclipse.paho.client.mqttv3.DisconnectedBufferOptions;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
 import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
 import org.eclipse.paho.client.mqttv3.MqttCallback;
 import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
 import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.eclipse.paho.client.mqttv3.MqttSecurityException;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.paho.client.mqttv3.persist.MqttDefaultFilePersistence;
 import org.eclipse.paho.client.mqttv3.util.Debug;
 
+import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.gson.Gson;
+import com.ibm.wiotp.sdk.codecs.CodecRegistry;
+import com.ibm.wiotp.sdk.codecs.MessageCodec;
+import com.ibm.wiotp.sdk.codecs.PayloadBuffer;
+import com.ibm.wiotp.sdk.codecs.StatefulCodec;
+import com.ibm.wiotp.sdk.persistence.MappedFilePersistence;
 
 /**
  * A client that handles connections with the IBM Watson IoT Platform. <br>
@@ -73,10 +92,20 @@ public abstract class AbstractClient {
 	protected MqttAsyncClient mqttAsyncClient = null;
 	protected MqttConnectOptions mqttClientOptions;
 	protected MqttCallback mqttCallback;
+	protected FlowController flowController = null;
+	protected final CodecRegistry codecRegistry = new CodecRegistry();
+	protected final ConnectMetrics connectMetrics = new ConnectMetrics();
+	protected volatile HealthMonitor healthMonitor = null;
+
+	private volatile ConnectBackoff connectBackoff = new ConnectBackoff();
+	// The connectAsync() in progress, and its next scheduled attempt
+	private final Object connectLock = new Object();
+	private CompletableFuture<Void> pendingConnect = null;
+	private ScheduledFuture<?> pendingAttempt = null;
 
 	// Supported only for DM ManagedClient
 	protected MqttClient mqttClient = null;
-	protected MemoryPersistence persistence = null;
+	protected MqttClientPersistence persistence = null;
 
 	/**
 	 * Note that this class does not have a default constructor <br>
@@ -126,14 +155,17 @@ public abstract class AbstractClient {
 
 			try {
 				MqttConnectOptions options = config.getMqttConnectOptions();
+				connectMetrics.attempted();
 				mqttAsyncClient.connect(options).waitForCompletion(DEFAULT_ACTION_TIMEOUT);
 			} catch (MqttSecurityException e) {
+				connectMetrics.failed();
 				LOG.warn("Connecting to Watson IoT Platform failed - one or more connection parameters are wrong !!!",
 						e);
 				if (connectAttempts > DEFAULT_MAX_CONNECT_ATTEMPTS) {
 					throw e;
 				}
 			} catch (MqttException e) {
+				connectMetrics.failed();
 				if (connectAttempts > DEFAULT_MAX_CONNECT_ATTEMPTS) {
 					LOG.warn("Connecting to Watson IoT Platform failed", e);
 					// We must give up as the host doesn't exist.
@@ -147,7 +179,11 @@ public abstract class AbstractClient {
 				mqttAsyncClient.disconnectForcibly(0, 0, false);
 			}
 
-			if (mqttAsyncClient.isConnected()) {
+			if (mqttAsyncClient.isConnected() && disconnectRequested) {
+				LOG.info("Client was disconnected while connecting, dropping the new connection");
+				dropConnection();
+			} else if (mqttAsyncClient.isConnected()) {
+				connectMetrics.connected();
 				LOG.info("Successfully connected to IBM Watson IoT Platform");
 				tryAgain = false;
 			} else {
@@ -156,6 +192,341 @@ public abstract class AbstractClient {
 		}
 	}
 
+	/**
+	 * Connect to IBM Watson IoT Platform without blocking the calling thread.
+	 * Attempts are made from a scheduler shared by all clients, waiting between
+	 * failed attempts as set by {@link #setConnectBackoff(ConnectBackoff)}, so one
+	 * process can connect thousands of clients with a handful of threads. <br>
+	 * 
+	 * Attempts stop if the credentials are rejected, when the maximum number of
+	 * attempts has been made, or when the client is disconnected. Calling this
+	 * while a connect is in progress returns the same future.
+	 * 
+	 * @return A future that completes when the client is connected, or
+	 *         completes exceptionally with the last failure, or a
+	 *         CancellationException if the client was disconnected first
+	 */
+	public CompletableFuture<Void> connectAsync() {
+		synchronized (connectLock) {
+			if (pendingConnect != null && !pendingConnect.isDone()) {
+				return pendingConnect;
+			}
+			CompletableFuture<Void> future = new CompletableFuture<Void>();
+			if (mqttAsyncClient != null && mqttAsyncClient.isConnected()) {
+				future.complete(null);
+				return future;
+			}
+			disconnectRequested = false;
+			pendingConnect = future;
+			attemptConnect(future, 1, false);
+			return future;
+		}
+	}
+
+	/**
+	 * Restore a lost connection. Attempts are made from the same scheduler as
+	 * {@link #connectAsync()}, waiting as set by
+	 * {@link #setConnectBackoff(ConnectBackoff)} before every attempt, including
+	 * the first, so clients that lost their connections together do not all
+	 * reconnect together. Attempts continue until one succeeds or the client is
+	 * disconnected.
+	 */
+	void reconnect() {
+		synchronized (connectLock) {
+			if (disconnectRequested || mqttAsyncClient == null
+					|| (pendingConnect != null && !pendingConnect.isDone())) {
+				return;
+			}
+			CompletableFuture<Void> future = new CompletableFuture<Void>();
+			pendingConnect = future;
+			long delay = connectBackoff.nextDelay(1);
+			connectMetrics.retrying(delay);
+			LOG.debug("Reconnecting in " + delay + "ms");
+			scheduleAttempt(future, 1, true, delay);
+		}
+	}
+
+	private void attemptConnect(final CompletableFuture<Void> future, final int attempt, final boolean reconnect) {
+		if (future.isDone()) {
+			return;
+		}
+		LOG.debug("Connecting client " + config.getClientId() + " to " + mqttAsyncClient.getServerURI()
+				+ " (attempt #" + attempt + ")");
+		try {
+			MqttConnectOptions options = config.getMqttConnectOptions();
+			connectMetrics.attempted();
+			mqttAsyncClient.connect(options, null, new IMqttActionListener() {
+				@Override
+				public void onSuccess(IMqttToken token) {
+					if (future.isDone() || disconnectRequested) {
+						LOG.info("Client was disconnected while connecting, dropping the new connection");
+						// Not from the MQTT client's callback thread, which is calling us
+						ConnectScheduler.INSTANCE.execute(new Runnable() {
+							@Override
+							public void run() {
+								dropConnection();
+							}
+						});
+						return;
+					}
+					if (reconnect) {
+						LOG.info("Reconnected to IBM Watson IoT Platform");
+						recordReconnect();
+						codecRegistry.reconnected();
+					} else {
+						connectMetrics.connected();
+						LOG.info("Successfully connected to IBM Watson IoT Platform");
+					}
+					connectedAsync(future);
+				}
+
+				@Override
+				public void onFailure(IMqttToken token, Throwable e) {
+					connectFailed(future, attempt, reconnect, e);
+				}
+			});
+		} catch (MqttException e) {
+			connectFailed(future, attempt, reconnect, e);
+		} catch (KeyManagementException | NoSuchAlgorithmException e) {
+			connectMetrics.failed();
+			future.completeExceptionally(e);
+		}
+	}
+
+	/*
+	 * Close a connection made after the client was disconnected
+	 */
+	private void dropConnection() {
+		MqttAsyncClient mqtt = mqttAsyncClient;
+		if (mqtt == null) {
+			return;
+		}
+		try {
+			mqtt.disconnectForcibly(0, 0, false);
+		} catch (MqttException e) {
+			LOG.debug("Unable to drop connection: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Finish setting up a connection made by {@link #connectAsync()}, for example
+	 * by subscribing to the topics that {@link #connect()} subscribes to, then
+	 * complete the future. Called on the MQTT client's callback thread, so it
+	 * must not wait for MQTT actions to complete.
+	 * 
+	 * @param future The future returned by connectAsync()
+	 */
+	protected void connectedAsync(CompletableFuture<Void> future) {
+		future.complete(null);
+	}
+
+	private void connectFailed(final CompletableFuture<Void> future, final int attempt, final boolean reconnect,
+			Throwable e) {
+		connectMetrics.failed();
+		// A reconnect keeps trying, as the credentials may yet be restored
+		if (e instanceof MqttSecurityException && !reconnect) {
+			LOG.warn("Connecting to Watson IoT Platform failed - one or more connection parameters are wrong !!!", e);
+			future.completeExceptionally(e);
+			return;
+		}
+		ConnectBackoff backoff = connectBackoff;
+		if (!backoff.shouldRetry(attempt) && !reconnect) {
+			LOG.warn("Connecting to Watson IoT Platform failed after " + attempt + " attempts", e);
+			future.completeExceptionally(e);
+			return;
+		}
+		long delay = backoff.nextDelay(attempt + (reconnect ? 1 : 0));
+		connectMetrics.retrying(delay);
+		LOG.debug("Connect attempt #" + attempt + " failed (" + e.getMessage() + "), retrying in " + delay + "ms");
+		synchronized (connectLock) {
+			scheduleAttempt(future, attempt + 1, reconnect, delay);
+		}
+	}
+
+	/*
+	 * Called holding connectLock
+	 */
+	private void scheduleAttempt(final CompletableFuture<Void> future, final int attempt, final boolean reconnect,
+			long delay) {
+		if (future.isDone()) {
+			return;
+		}
+		pendingAttempt = ConnectScheduler.INSTANCE.schedule(new Runnable() {
+			@Override
+			public void run() {
+				/*
+				 * workaround eclipse mqtt paho connect loop problem (resets connection state in
+				 * paho client)
+				 */
+				try {
+					mqttAsyncClient.disconnectForcibly(0, 0, false);
+				} catch (MqttException e) {
+					LOG.debug("Unable to reset connection state: " + e.getMessage());
+				}
+				attemptConnect(future, attempt, reconnect);
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop a connectAsync() that is waiting to retry
+	 */
+	private void cancelPendingConnect() {
+		synchronized (connectLock) {
+			if (pendingAttempt != null) {
+				pendingAttempt.cancel(false);
+				pendingAttempt = null;
+			}
+			if (pendingConnect != null) {
+				pendingConnect.completeExceptionally(new CancellationException("Client was disconnected"));
+				pendingConnect = null;
+			}
+		}
+	}
+
+	/**
+	 * @param backoff How long connectAsync() waits between connect attempts
+	 */
+	public void setConnectBackoff(ConnectBackoff backoff) {
+		if (backoff == null) {
+			throw new NullPointerException("Backoff can not be null");
+		}
+		this.connectBackoff = backoff;
+	}
+
+	public ConnectBackoff getConnectBackoff() {
+		return connectBackoff;
+	}
+
+	/**
+	 * @return Counts of the client's connect attempts and reconnects
+	 */
+	public ConnectMetrics getConnectMetrics() {
+		return connectMetrics;
+	}
+
+	/**
+	 * Record that the MQTT client lost its connection, and start reconnecting
+	 * unless the client was disconnected. Called by subclasses from their
+	 * connectionLost callback.
+	 */
+	protected void recordConnectionLost() {
+		connectMetrics.connectionLost();
+		reconnect();
+	}
+
+	/**
+	 * Record that the client restored a lost connection
+	 */
+	protected void recordReconnect() {
+		connectMetrics.reconnected();
+	}
+
+	/**
+	 * Start checking the connection with round trip probes, using the default
+	 * interval, timeout and number of missed probes
+	 * 
+	 * @return The running monitor
+	 * @see #startHealthMonitor(long, long, int)
+	 */
+	public HealthMonitor startHealthMonitor() {
+		return startHealthMonitor(HealthMonitor.DEFAULT_INTERVAL, HealthMonitor.DEFAULT_TIMEOUT,
+				HealthMonitor.DEFAULT_MAX_MISSED);
+	}
+
+	/**
+	 * Start checking the connection with round trip probes on the client's default
+	 * probe topic, replacing any monitor already running. A connection that misses
+	 * maxMissed probes in a row is dropped and reconnected.
+	 * 
+	 * @param interval  Milliseconds between probes
+	 * @param timeout   Milliseconds to wait for a probe to come back
+	 * @param maxMissed Consecutive missed probes before reconnecting
+	 * @return The running monitor
+	 * @throws IllegalStateException If the client has no default probe topic
+	 * @see #startHealthMonitor(String, long, long, int)
+	 */
+	public HealthMonitor startHealthMonitor(long interval, long timeout, int maxMissed) {
+		String probeTopic = getProbeTopic();
+		if (probeTopic == null) {
+			throw new IllegalStateException("This client has no default probe topic, one must be given");
+		}
+		return startHealthMonitor(probeTopic, interval, timeout, maxMissed);
+	}
+
+	/**
+	 * Start checking the connection with round trip probes, replacing any monitor
+	 * already running. A connection that misses maxMissed probes in a row is
+	 * dropped and reconnected. <br>
+	 * 
+	 * Probes are ordinary messages: anyone else subscribed to the probe topic,
+	 * including through a wildcard, receives them too.
+	 * 
+	 * @param probeTopic A topic the client can both publish to and receive from
+	 * @param interval   Milliseconds between probes
+	 * @param timeout    Milliseconds to wait for a probe to come back
+	 * @param maxMissed  Consecutive missed probes before reconnecting
+	 * @return The running monitor
+	 */
+	public synchronized HealthMonitor startHealthMonitor(String probeTopic, long interval, long timeout,
+			int maxMissed) {
+		if (probeTopic == null) {
+			throw new IllegalArgumentException("A probe topic is required");
+		}
+		HealthMonitor monitor = new HealthMonitor(this, probeTopic, interval, timeout, maxMissed);
+		stopHealthMonitor();
+		monitor.start();
+		healthMonitor = monitor;
+		return monitor;
+	}
+
+	public synchronized void stopHealthMonitor() {
+		if (healthMonitor != null) {
+			healthMonitor.stop();
+			healthMonitor = null;
+		}
+	}
+
+	/**
+	 * @return The running health monitor, or null if there is none
+	 */
+	public HealthMonitor getHealthMonitor() {
+		return healthMonitor;
+	}
+
+	/**
+	 * @return The topic for health probes when none is given, which the client can
+	 *         both publish to and receive from, or null if there is none
+	 */
+	protected String getProbeTopic() {
+		return null;
+	}
+
+	/**
+	 * Pass a message to the health monitor. Called by subclasses from their
+	 * messageArrived callback.
+	 * 
+	 * @param topic   The topic of the message
+	 * @param message The message
+	 * @return Whether the message was a health probe, which should not be
+	 *         processed further
+	 */
+	protected boolean probeArrived(String topic, MqttMessage message) {
+		HealthMonitor monitor = healthMonitor;
+		return monitor != null && monitor.probeArrived(topic, message);
+	}
+
+	/**
+	 * Restore the health monitor's probe subscription. Called by subclasses from
+	 * their connectComplete callback.
+	 */
+	protected void restoreHealthProbe() {
+		HealthMonitor monitor = healthMonitor;
+		if (monitor != null) {
+			monitor.connected();
+		}
+	}
+
 	/**
 	 * configureMqtt() is called when the User does not provide an Organization
 	 * value and intends to connect to Watson IoT Platform using the QUICKSTART
@@ -173,18 +544,48 @@ public abstract class AbstractClient {
 		mqttCallback = callback;
 
 		try {
-			persistence = new MemoryPersistence();
-			mqttAsyncClient = new MqttAsyncClient(config.getMqttServerURI(), config.getClientId(), persistence);
+			if (config.getMqttVersion() == AbstractConfig.MQTT_VERSION_5) {
+				// Keeps its own persistence store
+				mqttAsyncClient = new Mqtt5AsyncClient(config);
+			} else {
+				persistence = createPersistence();
+				mqttAsyncClient = new MqttAsyncClient(config.getMqttServerURI(), config.getClientId(), persistence);
+			}
 			mqttAsyncClient.setCallback(mqttCallback);
 			DisconnectedBufferOptions disconnectedOpts = new DisconnectedBufferOptions();
 			disconnectedOpts.setBufferEnabled(true);
 			disconnectedOpts.setBufferSize(DEFAULT_DISCONNECTED_BUFFER_SIZE);
+			disconnectedOpts.setPersistBuffer(!(persistence instanceof MemoryPersistence));
 			mqttAsyncClient.setBufferOpts(disconnectedOpts);
+			flowController = new FlowController(mqttAsyncClient, config.getMaxInflight(),
+					config.getPublishQueueSize(), config.getBackpressurePolicy(), DEFAULT_ACTION_TIMEOUT);
 		} catch (MqttException e) {
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * Create the persistence store selected by the configuration. Durable stores
+	 * keep unacknowledged QoS 1 and 2 messages and the disconnected buffer across
+	 * restarts of the process.
+	 * 
+	 * @return The persistence store for the MQTT client
+	 */
+	protected MqttClientPersistence createPersistence() {
+		String directory = config.getPersistenceDirectory();
+		if (directory == null) {
+			directory = System.getProperty("user.dir");
+		}
+		switch (config.getPersistenceType()) {
+		case FILE:
+			return new MqttDefaultFilePersistence(directory);
+		case MAPPED:
+			return new MappedFilePersistence(directory);
+		default:
+			return new MemoryPersistence();
+		}
+	}
+
 	/**
 	 * Sleep for a variable period of time between connect attempts.
 	 * 
@@ -218,20 +619,255 @@ public abstract class AbstractClient {
 		}
 	}
 
+	/**
+	 * Encode data into a pooled buffer. Only the returned payload, which the MQTT
+	 * client holds on to until the message is delivered, is allocated for each
+	 * message.
+	 * 
+	 * @param codec The codec for the data
+	 * @param data  The data to encode
+	 * @param topic The topic the data will be published to, which identifies the
+	 *              stream for a {@link StatefulCodec}
+	 * @param <T>   Class of the data
+	 * @return The encoded payload
+	 */
+	protected <T> byte[] encode(MessageCodec<T> codec, T data, String topic) {
+		if (codec instanceof StatefulCodec) {
+			return ((StatefulCodec<T>) codec).encode(topic, data, new DateTime());
+		}
+		PayloadBuffer buffer = PayloadBuffer.acquire();
+		try {
+			codec.encode(data, new DateTime(), buffer);
+			return buffer.toByteArray();
+		} catch (IOException e) {
+			// Not thrown when writing to memory
+			throw new IllegalStateException(e);
+		} finally {
+			buffer.release();
+		}
+	}
+
+	/**
+	 * Encode data and publish it to a topic. Messages for a {@link StatefulCodec}
+	 * are encoded and handed to the flow controller under the codec's lock, so
+	 * they are sent in the order they were encoded, and the codec is told when one
+	 * is rejected, dropped or fails, so later messages do not depend on it.
+	 * 
+	 * @param codec The codec for the data
+	 * @param data  The data to encode
+	 * @param topic The topic to publish to
+	 * @param qos   Quality of Service, in int - can have values 0,1,2
+	 * @param <T>   Class of the data
+	 * @return Whether the message was handed to the MQTT client, or queued until
+	 *         there is space in the in-flight window
+	 */
+	protected <T> boolean publish(MessageCodec<T> codec, T data, String topic, int qos) {
+		if (codec instanceof StatefulCodec) {
+			return !publishAsync(codec, data, topic, qos).isCompletedExceptionally();
+		}
+		return publish(topic, encode(codec, data, topic), qos);
+	}
+
+	/**
+	 * Encode data and publish it to a topic without waiting for it to be delivered,
+	 * as {@link #publish(MessageCodec, Object, String, int)}
+	 * 
+	 * @param codec The codec for the data
+	 * @param data  The data to encode
+	 * @param topic The topic to publish to
+	 * @param qos   Quality of Service, in int - can have values 0,1,2
+	 * @param <T>   Class of the data
+	 * @return A future that completes when the message has been delivered, or
+	 *         exceptionally if it could not be delivered or was rejected or dropped
+	 *         by the backpressure policy
+	 */
+	protected <T> CompletableFuture<IMqttDeliveryToken> publishAsync(MessageCodec<T> codec, T data,
+			final String topic, int qos) {
+		if (!(codec instanceof StatefulCodec)) {
+			return publishAsync(topic, encode(codec, data, topic), qos);
+		}
+		final StatefulCodec<T> stateful = (StatefulCodec<T>) codec;
+		CompletableFuture<IMqttDeliveryToken> future;
+		synchronized (stateful) {
+			future = publishAsync(topic, encode(codec, data, topic), qos);
+		}
+		future.whenComplete(new BiConsumer<IMqttDeliveryToken, Throwable>() {
+			@Override
+			public void accept(IMqttDeliveryToken token, Throwable e) {
+				if (e != null) {
+					stateful.failed(topic);
+				}
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Publish an encoded payload to a topic
+	 * 
+	 * @param topic   The topic to publish to
+	 * @param payload The encoded message payload
+	 * @param qos     Quality of Service, in int - can have values 0,1,2
+	 * @return Whether the message was handed to the MQTT client, or queued until
+	 *         there is space in the in-flight window
+	 */
+	protected boolean publish(String topic, byte[] payload, int qos) {
+		MqttMessage msg = new MqttMessage(payload);
+		msg.setQos(qos);
+		msg.setRetained(false);
+
+		return flowController.publish(topic, msg);
+	}
+
+	/**
+	 * Publish an encoded payload to a topic without waiting for it to be delivered
+	 * 
+	 * @param topic   The topic to publish to
+	 * @param payload The encoded message payload
+	 * @param qos     Quality of Service, in int - can have values 0,1,2
+	 * @return A future that completes when the message has been delivered; for QoS
+	 *         1 and 2 this is when the acknowledgement from the server arrives, for
+	 *         QoS 0 when the message has been written to the network. The future
+	 *         completes exceptionally if the message could not be delivered or was
+	 *         rejected or dropped by the backpressure policy.
+	 */
+	protected CompletableFuture<IMqttDeliveryToken> publishAsync(String topic, byte[] payload, int qos) {
+		MqttMessage msg = new MqttMessage(payload);
+		msg.setQos(qos);
+		msg.setRetained(false);
+
+		return flowController.publishAsync(topic, msg);
+	}
+
+	/**
+	 * @param e The failure
+	 * @param <T> Result type of the future
+	 * @return A future that has already completed exceptionally
+	 */
+	protected static <T> CompletableFuture<T> failedFuture(Throwable e) {
+		CompletableFuture<T> future = new CompletableFuture<T>();
+		future.completeExceptionally(e);
+		return future;
+	}
+
+	/**
+	 * Create a handle that publishes to a fixed topic with a pre-resolved codec
+	 * 
+	 * @param topic The topic to publish to
+	 * @param codec The codec used to encode the data
+	 * @param qos   Quality of Service, in int - can have values 0,1,2
+	 * @param <T>   Class of the published data
+	 * @return The publisher
+	 */
+	protected <T> MessagePublisher<T> createPublisher(String topic, MessageCodec<T> codec, int qos) {
+		return new MessagePublisher<T>(this, topic, codec, qos);
+	}
+
+	/**
+	 * Register a codec used to encode data of its class and decode messages of its
+	 * format. Several codecs, for different classes, may share a format.
+	 * 
+	 * @param codec The codec
+	 */
+	@SuppressWarnings("rawtypes")
+	public void registerCodec(MessageCodec codec) {
+		codecRegistry.register(codec);
+	}
+
+	public CodecRegistry getCodecRegistry() {
+		return codecRegistry;
+	}
+
+	/**
+	 * @param dataClass Class of the data to encode
+	 * @param <T>       Class of the data to encode
+	 * @return The codec registered for the class
+	 * @throws IllegalArgumentException If no codec is registered for the class
+	 */
+	protected <T> MessageCodec<T> getCodec(Class<T> dataClass) {
+		MessageCodec<T> codec = codecRegistry.getCodec(dataClass);
+		if (codec == null) {
+			throw new IllegalArgumentException("No codec registered for class " + dataClass.getName());
+		}
+		return codec;
+	}
+
 	/**
 	 * Disconnect the device from the IBM Watson IoT Platform
 	 */
 	public void disconnect() {
 		try {
 			this.disconnectRequested = true;
+			cancelPendingConnect();
 			if (mqttAsyncClient != null) {
 				LOG.debug("Disconnecting from IBM Watson IoT Platform");
 				mqttAsyncClient.disconnect().waitForCompletion(DEFAULT_ACTION_TIMEOUT);
 				LOG.info("Successfully disconnected from IBM Watson IoT Platform");
 			}
 		} catch (MqttException e) {
-			e.printStackTrace();
+			if (e.getReasonCode() == MqttException.REASON_CODE_CONNECT_IN_PROGRESS) {
+				// Dropped by the connect when it completes
+				LOG.debug("Disconnected while connecting");
+			} else {
+				LOG.warn("Disconnecting from IBM Watson IoT Platform failed: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Disconnect without losing outstanding messages where possible. New publishes
+	 * are rejected, and the client waits up to the timeout for the messages
+	 * waiting in the in-flight window, the disconnected buffer and those awaiting
+	 * acknowledgement to be delivered. If the connection is lost while draining,
+	 * the client reconnects and the MQTT client sends its buffer. <br>
+	 *
+	 * Publishing is accepted again once the client has disconnected. Call
+	 * {@link #close()} afterwards when shutting down, which also stops a reconnect
+	 * still in progress.
+	 * 
+	 * @param timeout Milliseconds to wait for outstanding messages
+	 * @return What happened to the outstanding messages
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	public DrainReport drainAndDisconnect(long timeout) throws InterruptedException {
+		long start = System.nanoTime();
+		FlowController flow = flowController;
+		if (flow == null || mqttAsyncClient == null) {
+			disconnect();
+			return new DrainReport(0, 0, 0, 0, 0, 0, 0);
+		}
+		long delivered = flow.getDeliveredCount();
+		long failed = flow.getFailedCount();
+		long dropped = flow.getDroppedCount();
+		long rejected = flow.getRejectedCount();
+
+		LOG.debug("Draining " + flow.getInflight() + " in-flight and " + flow.getQueueDepth() + " queued messages");
+		boolean drained = flow.drain(timeout);
+		int pending = flow.getInflight();
+		int buffered = drained ? 0 : mqttAsyncClient.getBufferedMessageCount();
+
+		this.disconnectRequested = true;
+		cancelPendingConnect();
+		try {
+			// Nothing is left to quiesce
+			mqttAsyncClient.disconnect(0).waitForCompletion(DEFAULT_ACTION_TIMEOUT);
+			LOG.info("Successfully disconnected from IBM Watson IoT Platform");
+		} catch (MqttException e) {
+			// The connection was lost while draining
+			LOG.debug("Disconnect after draining failed: " + e.getMessage());
+		} finally {
+			flow.resume();
+		}
+
+		DrainReport report = new DrainReport(flow.getDeliveredCount() - delivered, flow.getFailedCount() - failed,
+				flow.getDroppedCount() - dropped, flow.getRejectedCount() - rejected, pending, buffered,
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		if (report.isComplete()) {
+			LOG.info("Drained " + report.getDeliveredCount() + " messages in " + report.getElapsedMillis() + "ms");
+		} else {
+			LOG.warn("Disconnected before draining every message: " + report);
 		}
+		return report;
 	}
 
 	/**
@@ -241,6 +877,12 @@ public abstract class AbstractClient {
 	 */
 	public void close() throws MqttException {
 		LOG.debug("Closing MQTT client (" + config.getClientId() + ")");
+		stopHealthMonitor();
+		disconnectRequested = true;
+		cancelPendingConnect();
+		if (flowController != null) {
+			flowController.close();
+		}
 		if (mqttAsyncClient != null) {
 			mqttAsyncClient.close(true);
 			mqttAsyncClient = null;
@@ -269,6 +911,16 @@ public abstract class AbstractClient {
 		return config;
 	}
 
+	/**
+	 * The flow controller limits how many published messages may be outstanding
+	 * and counts what happened to every publish.
+	 * 
+	 * @return The client's flow controller
+	 */
+	public FlowController getFlowController() {
+		return flowController;
+	}
+
 	/**
 	 * Provides a human readable String representation of this Device, including the
 	 * number of messages sent and the current connect status.
@@ -283,4 +935,26 @@ public abstract class AbstractClient {
 		return this.mqttAsyncClient.getDebug();
 	}
 
+	/*
+	 * Runs the connect attempts of every client. Attempts do not block, so one
+	 * thread serves all clients; it is a daemon so it does not keep the process
+	 * alive.
+	 */
+	private static class ConnectScheduler {
+		static final ScheduledThreadPoolExecutor INSTANCE = create();
+
+		private static ScheduledThreadPoolExecutor create() {
+			ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "wiotp-connect");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			scheduler.setRemoveOnCancelPolicy(true);
+			return scheduler;
+		}
+	}
+
 }
@@ -5,9 +5,14 @@ import java.security.NoSuchAlgorithmException;
 
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 
+import com.ibm.wiotp.sdk.persistence.PersistenceType;
+
 public interface AbstractConfig {
 	public static final int DEFAULT_MAX_INFLIGHT_MESSAGES = 100;
 	public static final int DEFAULT_CONNECTION_TIMEMOUT = 80;
+	public static final int DEFAULT_PUBLISH_QUEUE_SIZE = 5000;
+	public static final int MQTT_VERSION_3_1_1 = 4;
+	public static final int MQTT_VERSION_5 = 5;
 
 	public String getOrgId();
 
@@ -31,4 +36,38 @@ public interface AbstractConfig {
 
 	public boolean isCleanStart();
 
+	public int getMaxInflight();
+
+	public int getPublishQueueSize();
+
+	public BackpressurePolicy getBackpressurePolicy();
+
+	public PersistenceType getPersistenceType();
+
+	public String getPersistenceDirectory();
+
+	/**
+	 * @return The MQTT protocol version, {@link #MQTT_VERSION_3_1_1} or
+	 *         {@link #MQTT_VERSION_5}
+	 */
+	public int getMqttVersion();
+
+	/**
+	 * @return Seconds the server keeps the session after the client disconnects
+	 *         (MQTT 5 only)
+	 */
+	public int getSessionExpiry();
+
+	/**
+	 * @return Most QoS 1 and 2 messages the server may send before they are
+	 *         acknowledged, or 0 for the server default (MQTT 5 only)
+	 */
+	public int getReceiveMaximum();
+
+	/**
+	 * @return Most topic aliases the server may use when sending to the client,
+	 *         or 0 for none (MQTT 5 only)
+	 */
+	public int getTopicAliasMaximum();
+
 }
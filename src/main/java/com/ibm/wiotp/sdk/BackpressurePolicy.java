@@ -0,0 +1,39 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk;
+
+/**
+ * What a client does with a new publish when both its in-flight window and its
+ * publish queue are full
+ */
+public enum BackpressurePolicy {
+	/**
+	 * Wait for space, up to the action timeout, before failing the publish. A
+	 * publish from the MQTT callback thread fails at once instead of waiting.
+	 */
+	BLOCK,
+	/** Discard the oldest queued message to make space for the new one */
+	DROP_OLDEST,
+	/** Discard the new message */
+	DROP_NEWEST,
+	/** Reject the new message and report it as a failure */
+	FAIL;
+
+	/**
+	 * Parse a policy name, ignoring case and accepting "-" in place of "_"
+	 *
+	 * @param name The policy name, for example "drop-oldest"
+	 * @return The policy
+	 */
+	public static BackpressurePolicy parse(String name) {
+		return valueOf(name.trim().toUpperCase().replace('-', '_'));
+	}
+}
@@ -0,0 +1,109 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long {@link AbstractClient#connectAsync()} waits between connect
+ * attempts. <br>
+ *
+ * The ceiling on the delay starts at the initial delay and is multiplied after
+ * every failed attempt, up to the maximum delay. Each delay is chosen at random
+ * between zero and the ceiling ("full jitter"), so clients that lost their
+ * connection at the same moment do not all retry at the same moment.
+ */
+public class ConnectBackoff {
+
+	public static final long DEFAULT_INITIAL_DELAY = TimeUnit.SECONDS.toMillis(1);
+	public static final long DEFAULT_MAX_DELAY = TimeUnit.MINUTES.toMillis(5);
+	public static final double DEFAULT_MULTIPLIER = 2.0;
+
+	private final long initialDelay;
+	private final long maxDelay;
+	private final double multiplier;
+	private final int maxAttempts;
+
+	public ConnectBackoff() {
+		this(DEFAULT_INITIAL_DELAY, DEFAULT_MAX_DELAY, DEFAULT_MULTIPLIER, AbstractClient.DEFAULT_MAX_CONNECT_ATTEMPTS);
+	}
+
+	/**
+	 * @param initialDelay Ceiling, in milliseconds, on the delay after the first
+	 *                     failed attempt
+	 * @param maxDelay     Largest delay, in milliseconds
+	 * @param multiplier   Factor the ceiling grows by after each failed attempt
+	 * @param maxAttempts  Attempts made before giving up, or 0 to keep trying
+	 *                     until the client is disconnected
+	 */
+	public ConnectBackoff(long initialDelay, long maxDelay, double multiplier, int maxAttempts) {
+		if (initialDelay < 1 || maxDelay < initialDelay) {
+			throw new IllegalArgumentException("Delays must be positive, and the initial delay at most the maximum");
+		}
+		if (multiplier < 1) {
+			throw new IllegalArgumentException("The multiplier must be at least 1");
+		}
+		if (maxAttempts < 0) {
+			throw new IllegalArgumentException("The maximum number of attempts can not be negative");
+		}
+		this.initialDelay = initialDelay;
+		this.maxDelay = maxDelay;
+		this.multiplier = multiplier;
+		this.maxAttempts = maxAttempts;
+	}
+
+	/**
+	 * @param attempts Number of consecutive failed attempts, at least 1
+	 * @return Ceiling, in milliseconds, on the delay before the next attempt
+	 */
+	public long getCeiling(int attempts) {
+		double ceiling = initialDelay * Math.pow(multiplier, attempts - 1);
+		return ceiling >= maxDelay ? maxDelay : (long) ceiling;
+	}
+
+	/**
+	 * @param attempts Number of consecutive failed attempts, at least 1
+	 * @return Delay, in milliseconds, before the next attempt
+	 */
+	public long nextDelay(int attempts) {
+		return ThreadLocalRandom.current().nextLong(getCeiling(attempts) + 1);
+	}
+
+	/**
+	 * @param attempts Number of attempts made so far
+	 * @return Whether another attempt should be made
+	 */
+	public boolean shouldRetry(int attempts) {
+		return maxAttempts == 0 || attempts < maxAttempts;
+	}
+
+	public long getInitialDelay() {
+		return initialDelay;
+	}
+
+	public long getMaxDelay() {
+		return maxDelay;
+	}
+
+	public double getMultiplier() {
+		return multiplier;
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	public String toString() {
+		return "ConnectBackoff [initialDelay=" + initialDelay + ", maxDelay=" + maxDelay + ", multiplier="
+				+ multiplier + ", maxAttempts=" + maxAttempts + "]";
+	}
+}
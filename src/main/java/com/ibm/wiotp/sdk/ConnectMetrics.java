@@ -0,0 +1,111 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts a client's connect attempts and their outcomes, including the
+ * attempts it makes to restore a lost connection.
+ */
+public class ConnectMetrics {
+
+	private final LongAdder attempts = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder connects = new LongAdder();
+	private final LongAdder reconnects = new LongAdder();
+	private final LongAdder connectionsLost = new LongAdder();
+	private final AtomicInteger consecutiveFailures = new AtomicInteger();
+	private volatile long lastDelay = 0;
+
+	void attempted() {
+		attempts.increment();
+	}
+
+	void failed() {
+		failures.increment();
+		consecutiveFailures.incrementAndGet();
+	}
+
+	void retrying(long delay) {
+		lastDelay = delay;
+	}
+
+	void connected() {
+		connects.increment();
+		consecutiveFailures.set(0);
+	}
+
+	void reconnected() {
+		reconnects.increment();
+		consecutiveFailures.set(0);
+	}
+
+	void connectionLost() {
+		connectionsLost.increment();
+	}
+
+	/**
+	 * @return Connect attempts made by connect() and connectAsync(), and to
+	 *         restore lost connections
+	 */
+	public long getAttemptCount() {
+		return attempts.sum();
+	}
+
+	/**
+	 * @return Connect attempts that failed
+	 */
+	public long getFailureCount() {
+		return failures.sum();
+	}
+
+	/**
+	 * @return Connect attempts that succeeded, other than those restoring a lost
+	 *         connection
+	 */
+	public long getConnectCount() {
+		return connects.sum();
+	}
+
+	/**
+	 * @return Lost connections that were restored
+	 */
+	public long getReconnectCount() {
+		return reconnects.sum();
+	}
+
+	public long getConnectionLostCount() {
+		return connectionsLost.sum();
+	}
+
+	/**
+	 * @return Attempts that failed since the client was last connected
+	 */
+	public int getConsecutiveFailures() {
+		return consecutiveFailures.get();
+	}
+
+	/**
+	 * @return The most recent delay, in milliseconds, chosen before retrying
+	 */
+	public long getLastDelay() {
+		return lastDelay;
+	}
+
+	public String toString() {
+		return "ConnectMetrics [attempts=" + getAttemptCount() + ", failures=" + getFailureCount() + ", connects="
+				+ getConnectCount() + ", reconnects=" + getReconnectCount() + ", connectionsLost="
+				+ getConnectionLostCount() + ", consecutiveFailures=" + getConsecutiveFailures() + ", lastDelay="
+				+ lastDelay + "]";
+	}
+}
@@ -0,0 +1,103 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk;
+
+/**
+ * What happened to the client's outstanding messages during
+ * {@link AbstractClient#drainAndDisconnect(long)}. <br>
+ *
+ * Messages still pending when the client disconnected stay with the MQTT
+ * client: they are sent if it connects again, and QoS 1 and 2 messages in
+ * file persistence survive a restart with the same client id. Closing the
+ * client loses those held only in memory.
+ */
+public class DrainReport {
+	private final long delivered;
+	private final long failed;
+	private final long dropped;
+	private final long rejected;
+	private final int pending;
+	private final int buffered;
+	private final long elapsed;
+
+	DrainReport(long delivered, long failed, long dropped, long rejected, int pending, int buffered,
+			long elapsed) {
+		this.delivered = delivered;
+		this.failed = failed;
+		this.dropped = dropped;
+		this.rejected = rejected;
+		this.pending = pending;
+		this.buffered = buffered;
+		this.elapsed = elapsed;
+	}
+
+	/**
+	 * @return Messages whose delivery completed while draining
+	 */
+	public long getDeliveredCount() {
+		return delivered;
+	}
+
+	/**
+	 * @return Messages the MQTT client failed to send or deliver while draining
+	 */
+	public long getFailedCount() {
+		return failed;
+	}
+
+	/**
+	 * @return Messages still waiting for space in the in-flight window at the
+	 *         timeout, which were discarded
+	 */
+	public long getDroppedCount() {
+		return dropped;
+	}
+
+	/**
+	 * @return Publishes refused because the client was draining
+	 */
+	public long getRejectedCount() {
+		return rejected;
+	}
+
+	/**
+	 * @return Messages handed to the MQTT client but not delivered when it
+	 *         disconnected, including those in its disconnected buffer
+	 */
+	public int getPendingCount() {
+		return pending;
+	}
+
+	/**
+	 * @return Pending messages that were never sent, as they were still in the
+	 *         disconnected buffer
+	 */
+	public int getBufferedCount() {
+		return buffered;
+	}
+
+	/**
+	 * @return Whether every outstanding message was delivered before
+	 *         disconnecting
+	 */
+	public boolean isComplete() {
+		return pending == 0 && dropped == 0 && failed == 0;
+	}
+
+	public long getElapsedMillis() {
+		return elapsed;
+	}
+
+	public String toString() {
+		return "DrainReport [delivered=" + delivered + ", failed=" + failed + ", dropped=" + dropped + ", rejected="
+				+ rejected + ", pending=" + pending + ", buffered=" + buffered + ", elapsed=" + elapsed + "ms]";
+	}
+}
@@ -0,0 +1,394 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the number of messages a client has handed to the MQTT client but not
+ * yet seen delivered. <br>
+ *
+ * Publishes beyond the in-flight window wait in a bounded queue and are sent as
+ * earlier messages complete. When the queue is also full the configured
+ * {@link BackpressurePolicy} decides what happens. Counters for every outcome
+ * are kept so the behaviour under load can be observed. <br>
+ *
+ * Under {@link BackpressurePolicy#BLOCK} a publish made on the MQTT client's
+ * callback thread, for example from a message callback or a stage chained to a
+ * publish future, does not wait: that thread is the one that completes earlier
+ * messages, so space could never become free. Such a publish fails at once as
+ * under {@link BackpressurePolicy#FAIL}.
+ */
+public class FlowController {
+	private static final Logger LOG = LoggerFactory.getLogger(FlowController.class);
+
+	private final MqttAsyncClient mqttAsyncClient;
+	private final int window;
+	private final int queueCapacity;
+	private final BackpressurePolicy policy;
+	private final long blockTimeout;
+	// Paho delivers messages and completes tokens on a thread of this name
+	private final String callbackThreadName;
+
+	private final Object lock = new Object();
+	private final ArrayDeque<Publish> queue = new ArrayDeque<Publish>();
+	private int inflight = 0;
+	private boolean closed = false;
+	// Set while the client drains before disconnecting
+	private boolean draining = false;
+
+	private final LongAdder sent = new LongAdder();
+	private final LongAdder delivered = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder queued = new LongAdder();
+	private final LongAdder blocked = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+
+	FlowController(MqttAsyncClient mqttAsyncClient, int window, int queueCapacity, BackpressurePolicy policy,
+			long blockTimeout) {
+		if (window < 1) {
+			throw new IllegalArgumentException("The in-flight window must be at least 1");
+		}
+		this.mqttAsyncClient = mqttAsyncClient;
+		this.window = window;
+		this.queueCapacity = Math.max(0, queueCapacity);
+		this.policy = policy;
+		this.blockTimeout = blockTimeout;
+		this.callbackThreadName = "MQTT Call: " + mqttAsyncClient.getClientId();
+	}
+
+	/**
+	 * Publish a message, applying the backpressure policy if the client is
+	 * saturated
+	 *
+	 * @param topic The topic to publish to
+	 * @param msg   The message
+	 * @return Whether the message was accepted (sent or queued)
+	 */
+	boolean publish(String topic, MqttMessage msg) {
+		return submit(new Publish(topic, msg));
+	}
+
+	/**
+	 * Publish a message, applying the backpressure policy if the client is
+	 * saturated
+	 *
+	 * @param topic The topic to publish to
+	 * @param msg   The message
+	 * @return A future that completes when the message is delivered, or
+	 *         exceptionally if it is rejected, dropped or fails
+	 */
+	CompletableFuture<IMqttDeliveryToken> publishAsync(String topic, MqttMessage msg) {
+		Publish publish = new Publish(topic, msg);
+		submit(publish);
+		return publish;
+	}
+
+	private boolean submit(Publish publish) {
+		Publish evicted = null;
+		boolean sendNow = false;
+
+		synchronized (lock) {
+			long deadline = 0;
+			while (!closed && !draining && inflight >= window && queue.size() >= queueCapacity
+					&& policy == BackpressurePolicy.BLOCK) {
+				if (isCallbackThread()) {
+					LOG.debug("Publish window full on the MQTT callback thread, not blocking for {}", publish.topic);
+					break;
+				}
+				long now = System.nanoTime();
+				if (deadline == 0) {
+					blocked.increment();
+					deadline = now + TimeUnit.MILLISECONDS.toNanos(blockTimeout);
+				} else if (now >= deadline) {
+					break;
+				}
+				try {
+					TimeUnit.NANOSECONDS.timedWait(lock, deadline - now);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+
+			if (closed) {
+				rejected.increment();
+				publish.completeExceptionally(new MqttException(MqttException.REASON_CODE_CLIENT_CLOSED));
+				return false;
+			} else if (draining) {
+				rejected.increment();
+				publish.completeExceptionally(new MqttException(MqttException.REASON_CODE_CLIENT_DISCONNECTING));
+				return false;
+			} else if (inflight < window && queue.isEmpty()) {
+				inflight++;
+				sendNow = true;
+			} else if (queue.size() < queueCapacity) {
+				queue.add(publish);
+				queued.increment();
+			} else if (policy == BackpressurePolicy.DROP_OLDEST && !queue.isEmpty()) {
+				evicted = queue.poll();
+				dropped.increment();
+				queue.add(publish);
+				queued.increment();
+			} else if (policy == BackpressurePolicy.DROP_NEWEST || policy == BackpressurePolicy.DROP_OLDEST) {
+				dropped.increment();
+				LOG.debug("Publish window full, dropped message to {}", publish.topic);
+				publish.completeExceptionally(new MqttException(MqttException.REASON_CODE_MAX_INFLIGHT));
+				return false;
+			} else {
+				// FAIL, or BLOCK after timing out
+				rejected.increment();
+				LOG.debug("Publish window full, rejected message to {}", publish.topic);
+				publish.completeExceptionally(new MqttException(MqttException.REASON_CODE_MAX_INFLIGHT));
+				return false;
+			}
+		}
+
+		if (evicted != null) {
+			LOG.debug("Publish window full, dropped oldest queued message to {}", evicted.topic);
+			evicted.completeExceptionally(new MqttException(MqttException.REASON_CODE_MAX_INFLIGHT));
+		}
+		if (sendNow) {
+			send(publish);
+		}
+		return true;
+	}
+
+	private boolean isCallbackThread() {
+		return Thread.currentThread().getName().equals(callbackThreadName);
+	}
+
+	/*
+	 * Hand a message to the MQTT client. The caller owns an in-flight slot, which
+	 * passes to the next queued message if this one can not be sent.
+	 */
+	private void send(Publish publish) {
+		while (publish != null) {
+			try {
+				mqttAsyncClient.publish(publish.topic, publish.message, null, publish);
+				sent.increment();
+				return;
+			} catch (MqttException e) {
+				failed.increment();
+				LOG.warn("Failed to publish to " + publish.topic + ": " + e.getMessage());
+				publish.completeExceptionally(e);
+				publish = releaseSlot();
+			}
+		}
+	}
+
+	/*
+	 * Returns the next queued message, which inherits the released slot, or null
+	 * if there is none.
+	 */
+	private Publish releaseSlot() {
+		synchronized (lock) {
+			Publish next = closed ? null : queue.poll();
+			if (next == null) {
+				inflight--;
+			}
+			lock.notifyAll();
+			return next;
+		}
+	}
+
+	/**
+	 * Stop accepting publishes and fail any queued messages
+	 */
+	void close() {
+		synchronized (lock) {
+			closed = true;
+		}
+		discardQueue(MqttException.REASON_CODE_CLIENT_CLOSED);
+	}
+
+	/**
+	 * Stop accepting publishes, and wait for the queued and in-flight messages to
+	 * complete. Messages still queued at the timeout are discarded; those in flight
+	 * are left with the MQTT client. Publishes are rejected until
+	 * {@link #resume()} is called.
+	 *
+	 * @param timeout Milliseconds to wait
+	 * @return Whether every message completed in time
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	boolean drain(long timeout) throws InterruptedException {
+		synchronized (lock) {
+			draining = true;
+			// Publishers blocked for space are rejected rather than left waiting
+			lock.notifyAll();
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+			while (inflight > 0 || !queue.isEmpty()) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					break;
+				}
+				TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+			}
+			if (inflight == 0 && queue.isEmpty()) {
+				return true;
+			}
+		}
+		discardQueue(MqttException.REASON_CODE_CLIENT_DISCONNECTING);
+		return false;
+	}
+
+	/**
+	 * Accept publishes again after {@link #drain(long)}
+	 */
+	void resume() {
+		synchronized (lock) {
+			draining = false;
+		}
+	}
+
+	private void discardQueue(int reasonCode) {
+		ArrayDeque<Publish> abandoned;
+		synchronized (lock) {
+			abandoned = new ArrayDeque<Publish>(queue);
+			queue.clear();
+			lock.notifyAll();
+		}
+		for (Publish publish : abandoned) {
+			dropped.increment();
+			publish.completeExceptionally(new MqttException(reasonCode));
+		}
+	}
+
+	public int getWindow() {
+		return window;
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	public BackpressurePolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * @return Number of messages handed to the MQTT client and not yet completed
+	 */
+	public int getInflight() {
+		synchronized (lock) {
+			return inflight;
+		}
+	}
+
+	/**
+	 * @return Number of messages waiting for space in the in-flight window
+	 */
+	public int getQueueDepth() {
+		synchronized (lock) {
+			return queue.size();
+		}
+	}
+
+	/**
+	 * @return Total messages handed to the MQTT client
+	 */
+	public long getSentCount() {
+		return sent.sum();
+	}
+
+	/**
+	 * @return Total messages whose delivery completed
+	 */
+	public long getDeliveredCount() {
+		return delivered.sum();
+	}
+
+	/**
+	 * @return Total messages that the MQTT client failed to send or deliver
+	 */
+	public long getFailedCount() {
+		return failed.sum();
+	}
+
+	/**
+	 * @return Total messages that had to wait in the queue
+	 */
+	public long getQueuedCount() {
+		return queued.sum();
+	}
+
+	/**
+	 * @return Total publishes that blocked waiting for space (BLOCK policy)
+	 */
+	public long getBlockedCount() {
+		return blocked.sum();
+	}
+
+	/**
+	 * @return Total messages discarded by the DROP_OLDEST or DROP_NEWEST policies
+	 *         or abandoned in the queue when the client closed or finished
+	 *         draining
+	 */
+	public long getDroppedCount() {
+		return dropped.sum();
+	}
+
+	/**
+	 * @return Total publishes rejected by the FAIL policy, by the BLOCK policy
+	 *         after timing out, or because the client was closed or draining
+	 */
+	public long getRejectedCount() {
+		return rejected.sum();
+	}
+
+	public String toString() {
+		return "FlowController [inflight=" + getInflight() + "/" + window + ", queued=" + getQueueDepth() + "/"
+				+ queueCapacity + ", policy=" + policy + ", sent=" + getSentCount() + ", delivered="
+				+ getDeliveredCount() + ", failed=" + getFailedCount() + ", dropped=" + getDroppedCount()
+				+ ", rejected=" + getRejectedCount() + "]";
+	}
+
+	private class Publish extends CompletableFuture<IMqttDeliveryToken> implements IMqttActionListener {
+		final String topic;
+		final MqttMessage message;
+
+		Publish(String topic, MqttMessage message) {
+			this.topic = topic;
+			this.message = message;
+		}
+
+		@Override
+		public void onSuccess(IMqttToken token) {
+			delivered.increment();
+			// Release the slot before completing, so dependent actions can publish
+			Publish next = releaseSlot();
+			complete((IMqttDeliveryToken) token);
+			send(next);
+		}
+
+		@Override
+		public void onFailure(IMqttToken token, Throwable e) {
+			failed.increment();
+			Publish next = releaseSlot();
+			completeExceptionally(e);
+			send(next);
+		}
+	}
+}
@@ -0,0 +1,339 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks that a client's connection delivers messages, not only that its socket
+ * is open. <br>
+ *
+ * At a fixed interval the monitor publishes a small probe, at QoS 0, to a
+ * topic the client is subscribed to, and measures how long it takes to come
+ * back. A probe that does not come back within the timeout is missed; after
+ * the configured number of consecutive missed probes the connection is
+ * considered stalled, and is dropped and reconnected the way a lost
+ * connection is. Probes are consumed by the client and never passed to its
+ * callbacks, but other subscribers to the probe topic receive them. <br>
+ *
+ * Start a monitor with
+ * {@link AbstractClient#startHealthMonitor(String, long, long, int)}.
+ */
+public class HealthMonitor {
+	private static final Logger LOG = LoggerFactory.getLogger(HealthMonitor.class);
+
+	public static final long DEFAULT_INTERVAL = 10 * 1000L;
+	public static final long DEFAULT_TIMEOUT = 5 * 1000L;
+	public static final int DEFAULT_MAX_MISSED = 3;
+
+	private static final int PROBE_LENGTH = 16;
+
+	public enum State {
+		/** No probe has come back yet */
+		STARTING,
+		/** The last probe came back in time */
+		HEALTHY,
+		/** Recent probes were missed, but not enough to reconnect */
+		DEGRADED,
+		/** Too many probes were missed; the connection is being replaced */
+		STALLED,
+		/** The client is not connected */
+		DISCONNECTED
+	}
+
+	private final AbstractClient client;
+	private final String probeTopic;
+	private final long interval;
+	private final long timeoutNanos;
+	private final int maxMissed;
+	// Tells this monitor's probes apart from others on the same topic
+	private final long monitorId = ThreadLocalRandom.current().nextLong();
+
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final LongAdder probesSent = new LongAdder();
+	private final LongAdder probesReceived = new LongAdder();
+	private final LongAdder probesMissed = new LongAdder();
+	private final LongAdder forcedReconnects = new LongAdder();
+	private volatile State state = State.STARTING;
+	private volatile long lastLatency = -1;
+	private volatile long lastReceived = 0;
+
+	// The probe waiting to come back, if any, and the state of the checks
+	private long sequence = 0;
+	private long pendingSequence = -1;
+	private long pendingSentAt;
+	private int missed = 0;
+	private boolean reconnecting = false;
+	private ScheduledFuture<?> task = null;
+
+	/**
+	 * @param client     The client to monitor
+	 * @param probeTopic A topic the client can both publish to and receive
+	 * @param interval   Milliseconds between probes
+	 * @param timeout    Milliseconds to wait for a probe to come back
+	 * @param maxMissed  Consecutive missed probes before reconnecting
+	 */
+	public HealthMonitor(AbstractClient client, String probeTopic, long interval, long timeout, int maxMissed) {
+		if (interval <= 0 || timeout <= 0 || maxMissed < 1) {
+			throw new IllegalArgumentException("Interval and timeout must be positive, and maxMissed at least 1");
+		}
+		this.client = client;
+		this.probeTopic = probeTopic;
+		this.interval = interval;
+		this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+		this.maxMissed = maxMissed;
+	}
+
+	public synchronized void start() {
+		if (task != null) {
+			return;
+		}
+		subscribe();
+		task = HealthScheduler.INSTANCE.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					check();
+				} catch (RuntimeException e) {
+					LOG.warn("Health check of " + client.getConfig().getClientId() + " failed", e);
+				}
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	public synchronized void stop() {
+		if (task != null) {
+			task.cancel(false);
+			task = null;
+		}
+		pendingSequence = -1;
+	}
+
+	/*
+	 * The probe subscription does not survive a clean session, so it is made on
+	 * every connect
+	 */
+	void connected() {
+		synchronized (this) {
+			reconnecting = false;
+			missed = 0;
+			pendingSequence = -1;
+		}
+		subscribe();
+	}
+
+	private void subscribe() {
+		MqttAsyncClient mqtt = client.mqttAsyncClient;
+		if (mqtt == null || !mqtt.isConnected()) {
+			return;
+		}
+		try {
+			// Not waited for, as this runs on the MQTT client's callback thread
+			mqtt.subscribe(probeTopic, 0);
+		} catch (MqttException e) {
+			LOG.warn("Unable to subscribe to health probes on " + probeTopic, e);
+		}
+	}
+
+	/*
+	 * Check whether the last probe came back, and send the next
+	 */
+	synchronized void check() {
+		MqttAsyncClient mqtt = client.mqttAsyncClient;
+		if (client.disconnectRequested || mqtt == null) {
+			state = State.DISCONNECTED;
+			pendingSequence = -1;
+			return;
+		}
+		if (!mqtt.isConnected()) {
+			pendingSequence = -1;
+			if (reconnecting) {
+				// Does nothing while the replacement connection is being made
+				client.reconnect();
+			} else {
+				state = State.DISCONNECTED;
+			}
+			return;
+		}
+
+		long now = System.nanoTime();
+		if (pendingSequence >= 0) {
+			if (now - pendingSentAt < timeoutNanos) {
+				return;
+			}
+			pendingSequence = -1;
+			missed++;
+			probesMissed.increment();
+			LOG.warn("Health probe on " + client.getConfig().getClientId() + " timed out (" + missed + " of "
+					+ maxMissed + ")");
+			if (missed >= maxMissed) {
+				forceReconnect(mqtt);
+				return;
+			}
+			state = State.DEGRADED;
+		}
+
+		pendingSequence = ++sequence;
+		pendingSentAt = now;
+		probesSent.increment();
+		MqttMessage probe = new MqttMessage(
+				ByteBuffer.allocate(PROBE_LENGTH).putLong(monitorId).putLong(pendingSequence).array());
+		probe.setQos(0);
+		try {
+			mqtt.publish(probeTopic, probe);
+		} catch (MqttException e) {
+			// Counted as missed when it times out
+			LOG.debug("Unable to publish health probe: " + e.getMessage());
+		}
+	}
+
+	private void forceReconnect(MqttAsyncClient mqtt) {
+		LOG.warn("Connection of " + client.getConfig().getClientId() + " stalled, reconnecting");
+		state = State.STALLED;
+		missed = 0;
+		reconnecting = true;
+		forcedReconnects.increment();
+		try {
+			mqtt.disconnectForcibly(0, 0, false);
+		} catch (MqttException e) {
+			LOG.debug("Unable to drop stalled connection: " + e.getMessage());
+		}
+		// Counted as a reconnect, and makes stateful codecs send keyframes
+		client.reconnect();
+	}
+
+	/**
+	 * @param topic   The topic of a message the client received
+	 * @param message The message
+	 * @return Whether the message is a health probe, which the client should not
+	 *         process further
+	 */
+	boolean probeArrived(String topic, MqttMessage message) {
+		if (!probeTopic.equals(topic)) {
+			return false;
+		}
+		byte[] payload = message.getPayload();
+		if (payload.length != PROBE_LENGTH) {
+			return true;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(payload);
+		long id = buffer.getLong();
+		long probeSequence = buffer.getLong();
+		long elapsed;
+		synchronized (this) {
+			// Another monitor's probe, or one that already timed out
+			if (id != monitorId || probeSequence != pendingSequence) {
+				return true;
+			}
+			elapsed = System.nanoTime() - pendingSentAt;
+			pendingSequence = -1;
+			missed = 0;
+			reconnecting = false;
+			state = State.HEALTHY;
+		}
+		latency.record(elapsed);
+		lastLatency = elapsed / 1000;
+		lastReceived = System.currentTimeMillis();
+		probesReceived.increment();
+		return true;
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * @return Whether the last probe came back in time
+	 */
+	public boolean isHealthy() {
+		return state == State.HEALTHY;
+	}
+
+	/**
+	 * @return Round trip latencies of the probes that came back
+	 */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	/**
+	 * @return Round trip latency of the last probe that came back, in
+	 *         microseconds, or -1 if none has
+	 */
+	public long getLastLatencyMicros() {
+		return lastLatency;
+	}
+
+	/**
+	 * @return When the last probe came back, in milliseconds since the epoch, or 0
+	 *         if none has
+	 */
+	public long getLastReceived() {
+		return lastReceived;
+	}
+
+	public long getProbesSent() {
+		return probesSent.sum();
+	}
+
+	public long getProbesReceived() {
+		return probesReceived.sum();
+	}
+
+	public long getProbesMissed() {
+		return probesMissed.sum();
+	}
+
+	public long getForcedReconnects() {
+		return forcedReconnects.sum();
+	}
+
+	public String getProbeTopic() {
+		return probeTopic;
+	}
+
+	@Override
+	public String toString() {
+		return "[" + client.getConfig().getClientId() + "] " + state + ", sent = " + getProbesSent()
+				+ ", received = " + getProbesReceived() + ", missed = " + getProbesMissed() + ", reconnects = "
+				+ getForcedReconnects() + ", latency: " + latency;
+	}
+
+	/**
+	 * The thread that runs every monitor's checks
+	 */
+	private static class HealthScheduler {
+		static final ScheduledThreadPoolExecutor INSTANCE = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "wiotp-health");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		static {
+			INSTANCE.setRemoveOnCancelPolicy(true);
+		}
+	}
+}
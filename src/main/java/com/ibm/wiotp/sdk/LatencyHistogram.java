@@ -0,0 +1,100 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies in buckets of powers of two microseconds, so
+ * percentiles are accurate to within a factor of two at any scale. Recording
+ * is lock free and may run concurrently with reading.
+ */
+public class LatencyHistogram {
+
+	// Bucket i holds latencies below 2^i microseconds; the last holds the rest
+	private static final int BUCKETS = 40;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * @param nanos A latency in nanoseconds
+	 */
+	public void record(long nanos) {
+		long micros = Math.max(0, nanos / 1000);
+		counts.incrementAndGet(bucket(micros));
+		count.increment();
+		sum.add(micros);
+		long current = max.get();
+		while (micros > current && !max.compareAndSet(current, micros)) {
+			current = max.get();
+		}
+	}
+
+	private static int bucket(long micros) {
+		return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getMaxMicros() {
+		return max.get();
+	}
+
+	public double getMeanMicros() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) sum.sum() / n;
+	}
+
+	/**
+	 * @param percentile Between 0 and 100
+	 * @return The upper bound of the bucket that holds the percentile, in
+	 *         microseconds, or 0 if nothing has been recorded
+	 */
+	public long getPercentileMicros(double percentile) {
+		long n = count.sum();
+		if (n == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(n * percentile / 100);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS - 1; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				// Never report more than the largest latency seen
+				return Math.min(1L << i, max.get());
+			}
+		}
+		return max.get();
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return "count = " + getCount() + ", mean = " + String.format("%.0f", getMeanMicros()) + "us, p50 = "
+				+ getPercentileMicros(50) + "us, p99 = " + getPercentileMicros(99) + "us, max = " + getMaxMicros()
+				+ "us";
+	}
+}
@@ -0,0 +1,85 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+
+import com.ibm.wiotp.sdk.codecs.MessageCodec;
+
+/**
+ * A handle for publishing repeatedly to the same topic. <br>
+ *
+ * The topic and codec are resolved once when the publisher is created, so each
+ * publish only encodes the data and hands it to the MQTT client. Publishers are
+ * obtained from the client, for example
+ * {@link com.ibm.wiotp.sdk.device.DeviceClient#getEventPublisher(String, Class)},
+ * and are safe to share between threads.
+ *
+ * @param <T> Class of the published data
+ */
+public class MessagePublisher<T> {
+
+	private final AbstractClient client;
+	private final String topic;
+	private final MessageCodec<T> codec;
+	private final int qos;
+
+	MessagePublisher(AbstractClient client, String topic, MessageCodec<T> codec, int qos) {
+		this.client = client;
+		this.topic = topic;
+		this.codec = codec;
+		this.qos = qos;
+	}
+
+	/**
+	 * Encode and publish data
+	 *
+	 * @param data Payload data
+	 * @return Whether the send was successful.
+	 */
+	public boolean publish(T data) {
+		if (data == null) {
+			throw new NullPointerException("Data object for publish can not be null");
+		}
+		return client.publish(codec, data, topic, qos);
+	}
+
+	/**
+	 * Encode and publish data without waiting for it to be delivered
+	 *
+	 * @param data Payload data
+	 * @return A future that completes when the message has been delivered
+	 */
+	public CompletableFuture<IMqttDeliveryToken> publishAsync(T data) {
+		if (data == null) {
+			throw new NullPointerException("Data object for publish can not be null");
+		}
+		return client.publishAsync(codec, data, topic, qos);
+	}
+
+	public String getTopic() {
+		return topic;
+	}
+
+	public MessageCodec<T> getCodec() {
+		return codec;
+	}
+
+	public int getQos() {
+		return qos;
+	}
+
+	public String toString() {
+		return "MessagePublisher [" + topic + "] QoS:" + qos;
+	}
+}
@@ -0,0 +1,781 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk;
+
+import java.nio.charset.StandardCharsets;
+
+import org.eclipse.paho.client.mqttv3.DisconnectedBufferOptions;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.MqttSecurityException;
+import org.eclipse.paho.client.mqttv3.internal.wire.MqttWireMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.paho.client.mqttv3.util.Debug;
+import org.eclipse.paho.mqttv5.client.MqttActionListener;
+import org.eclipse.paho.mqttv5.client.MqttConnectionOptions;
+import org.eclipse.paho.mqttv5.client.MqttDisconnectResponse;
+import org.eclipse.paho.mqttv5.client.persist.MqttDefaultFilePersistence;
+import org.eclipse.paho.mqttv5.common.MqttSubscription;
+import org.eclipse.paho.mqttv5.common.packet.MqttProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ibm.wiotp.sdk.persistence.PersistenceType;
+
+/**
+ * An MQTT 5 connection behind the MQTT 3.1.1 client interface the rest of the
+ * library is written against, selected with the <code>version: 5</code> MQTT
+ * option. <br>
+ *
+ * Over MQTT 5 the session expires the configured number of seconds after the
+ * client disconnects, the server sends no more unacknowledged QoS 1 and 2
+ * messages than the configured receive maximum, and topics are replaced with
+ * topic aliases, up to the maximum the server allows, after the first message
+ * published to them. <br>
+ *
+ * Only the persistence types of the MQTT 5 client are available: mapped file
+ * persistence is replaced with file persistence. A message cannot be removed
+ * from the client once published.
+ */
+public class Mqtt5AsyncClient extends MqttAsyncClient {
+	private static final Logger LOG = LoggerFactory.getLogger(Mqtt5AsyncClient.class);
+
+	// MQTT 5 CONNACK reason codes for a refused login
+	private static final int BAD_USER_NAME_OR_PASSWORD = 0x86;
+	private static final int NOT_AUTHORIZED = 0x87;
+	private static final int NORMAL_DISCONNECTION = 0;
+
+	// The MQTT 3.1.1 client's defaults, which are private to it
+	private static final long QUIESCE_TIMEOUT = 30000;
+	private static final long DISCONNECT_TIMEOUT = 10000;
+
+	private final AbstractConfig config;
+	private final org.eclipse.paho.mqttv5.client.MqttClientPersistence persistence;
+	private final org.eclipse.paho.mqttv5.client.MqttAsyncClient client;
+	private volatile MqttCallback callback;
+
+	/**
+	 * @param config The configuration of the connection
+	 * @throws MqttException Invalid server URI or client id
+	 */
+	public Mqtt5AsyncClient(AbstractConfig config) throws MqttException {
+		// The MQTT 3.1.1 client underneath is never connected
+		super(config.getMqttServerURI(), config.getClientId(), new MemoryPersistence());
+		this.config = config;
+		this.persistence = createPersistence(config);
+		try {
+			client = new org.eclipse.paho.mqttv5.client.MqttAsyncClient(config.getMqttServerURI(),
+					config.getClientId(), persistence);
+		} catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+			throw translate(e);
+		}
+		client.setCallback(new CallbackAdapter());
+	}
+
+	private static org.eclipse.paho.mqttv5.client.MqttClientPersistence createPersistence(AbstractConfig config) {
+		if (config.getPersistenceType() == PersistenceType.MEMORY) {
+			return new org.eclipse.paho.mqttv5.client.persist.MemoryPersistence();
+		}
+		String directory = config.getPersistenceDirectory();
+		if (directory == null) {
+			directory = System.getProperty("user.dir");
+		}
+		if (config.getPersistenceType() == PersistenceType.MAPPED) {
+			LOG.info("Mapped file persistence is not available over MQTT 5, using file persistence");
+		}
+		return new MqttDefaultFilePersistence(directory);
+	}
+
+	/**
+	 * Build the MQTT 5 connect options from MQTT 3.1.1 ones, with the settings
+	 * only MQTT 5 has taken from the configuration
+	 *
+	 * @param options The MQTT 3.1.1 connect options
+	 * @param config  The configuration of the connection
+	 * @return The MQTT 5 connect options
+	 */
+	public static MqttConnectionOptions connectionOptions(MqttConnectOptions options, AbstractConfig config) {
+		MqttConnectionOptions connectionOptions = new MqttConnectionOptions();
+		connectionOptions.setUserName(options.getUserName());
+		if (options.getPassword() != null) {
+			connectionOptions.setPassword(new String(options.getPassword()).getBytes(StandardCharsets.UTF_8));
+		}
+		if (options.getServerURIs() != null) {
+			connectionOptions.setServerURIs(options.getServerURIs());
+		}
+		connectionOptions.setCleanStart(options.isCleanSession());
+		connectionOptions.setKeepAliveInterval(options.getKeepAliveInterval());
+		connectionOptions.setConnectionTimeout(options.getConnectionTimeout());
+		connectionOptions.setAutomaticReconnect(options.isAutomaticReconnect());
+		connectionOptions.setMaxReconnectDelay(options.getMaxReconnectDelay());
+		connectionOptions.setSocketFactory(options.getSocketFactory());
+		if (options.getSSLProperties() != null) {
+			connectionOptions.setSSLProperties(options.getSSLProperties());
+		}
+		if (options.getSSLHostnameVerifier() != null) {
+			connectionOptions.setSSLHostnameVerifier(options.getSSLHostnameVerifier());
+		}
+		connectionOptions.setHttpsHostnameVerificationEnabled(options.isHttpsHostnameVerificationEnabled());
+		if (options.getWillDestination() != null) {
+			connectionOptions.setWill(options.getWillDestination(), toMqtt5(options.getWillMessage()));
+		}
+
+		connectionOptions.setSessionExpiryInterval(Long.valueOf(config.getSessionExpiry()));
+		if (config.getReceiveMaximum() > 0) {
+			connectionOptions.setReceiveMaximum(Integer.valueOf(config.getReceiveMaximum()));
+		}
+		if (config.getTopicAliasMaximum() > 0) {
+			connectionOptions.setTopicAliasMaximum(Integer.valueOf(config.getTopicAliasMaximum()));
+		}
+		return connectionOptions;
+	}
+
+	@Override
+	public IMqttToken connect(MqttConnectOptions options, Object userContext, IMqttActionListener callback)
+			throws MqttException {
+		Token token = new Token(null, userContext, callback);
+		try {
+			token.bind(client.connect(connectionOptions(options, config), userContext, token));
+		} catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+			throw translate(e);
+		}
+		return token;
+	}
+
+	@Override
+	public IMqttToken connect() throws MqttException {
+		return connect(null, null);
+	}
+
+	@Override
+	public IMqttToken connect(MqttConnectOptions options) throws MqttException {
+		return connect(options, null, null);
+	}
+
+	@Override
+	public IMqttToken connect(Object userContext, IMqttActionListener callback) throws MqttException {
+		return connect(new MqttConnectOptions(), userContext, callback);
+	}
+
+	@Override
+	public void reconnect() throws MqttException {
+		try {
+			client.reconnect();
+		} catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+			throw translate(e);
+		}
+	}
+
+	@Override
+	public IMqttToken disconnect(long quiesceTimeout, Object userContext, IMqttActionListener callback)
+			throws MqttException {
+		Token token = new Token(null, userContext, callback);
+		try {
+			token.bind(client.disconnect(quiesceTimeout, userContext, token, NORMAL_DISCONNECTION, null));
+		} catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+			throw translate(e);
+		}
+		return token;
+	}
+
+	@Override
+	public IMqttToken disconnect() throws MqttException {
+		return disconnect(null, null);
+	}
+
+	@Override
+	public IMqttToken disconnect(long quiesceTimeout) throws MqttException {
+		return disconnect(quiesceTimeout, null, null);
+	}
+
+	@Override
+	public IMqttToken disconnect(Object userContext, IMqttActionListener callback) throws MqttException {
+		return disconnect(QUIESCE_TIMEOUT, userContext, callback);
+	}
+
+	@Override
+	public void disconnectForcibly() throws MqttException {
+		disconnectForcibly(QUIESCE_TIMEOUT, DISCONNECT_TIMEOUT);
+	}
+
+	@Override
+	public void disconnectForcibly(long disconnectTimeout) throws MqttException {
+		disconnectForcibly(QUIESCE_TIMEOUT, disconnectTimeout);
+	}
+
+	@Override
+	public void disconnectForcibly(long quiesceTimeout, long disconnectTimeout) throws MqttException {
+		disconnectForcibly(quiesceTimeout, disconnectTimeout, true);
+	}
+
+	@Override
+	public void disconnectForcibly(long quiesceTimeout, long disconnectTimeout, boolean sendDisconnectPacket)
+			throws MqttException {
+		try {
+			client.disconnectForcibly(quiesceTimeout, disconnectTimeout, sendDisconnectPacket);
+		} catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+			throw translate(e);
+		}
+	}
+
+	@Override
+	public boolean isConnected() {
+		return client.isConnected();
+	}
+
+	@Override
+	public String getCurrentServerURI() {
+		return client.getCurrentServerURI();
+	}
+
+	@Override
+	public IMqttToken checkPing(Object userContext, IMqttActionListener callback) throws MqttException {
+		Token token = new Token(null, userContext, callback);
+		try {
+			token.bind(client.checkPing(userContext, token));
+		} catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+			throw translate(e);
+		}
+		return token;
+	}
+
+	@Override
+	public IMqttToken subscribe(String topicFilter, int qos) throws MqttException {
+		return subscribe(new String[] { topicFilter }, new int[] { qos }, null, null);
+	}
+
+	@Override
+	public IMqttToken subscribe(String topicFilter, int qos, Object userContext, IMqttActionListener callback)
+			throws MqttException {
+		return subscribe(new String[] { topicFilter }, new int[] { qos }, userContext, callback);
+	}
+
+	@Override
+	public IMqttToken subscribe(String[] topicFilters, int[] qos) throws MqttException {
+		return subscribe(topicFilters, qos, null, null);
+	}
+
+	@Override
+	public IMqttToken subscribe(String[] topicFilters, int[] qos, Object userContext, IMqttActionListener callback)
+			throws MqttException {
+		Token token = new Token(null, userContext, callback);
+		try {
+			token.bind(client.subscribe(topicFilters, qos, userContext, token));
+		} catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+			throw translate(e);
+		}
+		return token;
+	}
+
+	@Override
+	public IMqttToken subscribe(String[] topicFilters, int[] qos, Object userContext, IMqttActionListener callback,
+			IMqttMessageListener[] messageListeners) throws MqttException {
+		if (messageListeners == null || topicFilters.length != qos.length
+				|| topicFilters.length != messageListeners.length) {
+			throw new IllegalArgumentException();
+		}
+		MqttSubscription[] subscriptions = new MqttSubscription[topicFilters.length];
+		org.eclipse.paho.mqttv5.client.IMqttMessageListener[] listeners;
+		listeners = new org.eclipse.paho.mqttv5.client.IMqttMessageListener[topicFilters.length];
+		for (int i = 0; i < topicFilters.length; i++) {
+			subscriptions[i] = new MqttSubscription(topicFilters[i], qos[i]);
+			listeners[i] = messageListeners[i] == null ? null : new MessageListenerAdapter(messageListeners[i]);
+		}
+		Token token = new Token(null, userContext, callback);
+		try {
+			token.bind(client.subscribe(subscriptions, userContext, token, listeners, new MqttProperties()));
+		} catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+			throw translate(e);
+		}
+		return token;
+	}
+
+	@Override
+	public IMqttToken subscribe(String[] topicFilters, int[] qos, IMqttMessageListener[] messageListeners)
+			throws MqttException {
+		return subscribe(topicFilters, qos, null, null, messageListeners);
+	}
+
+	@Override
+	public IMqttToken subscribe(String topicFilter, int qos, Object userContext, IMqttActionListener callback,
+			IMqttMessageListener messageListener) throws MqttException {
+		return subscribe(new String[] { topicFilter }, new int[] { qos }, userContext, callback,
+				new IMqttMessageListener[] { messageListener });
+	}
+
+	@Override
+	public IMqttToken subscribe(String topicFilter, int qos, IMqttMessageListener messageListener)
+			throws MqttException {
+		return subscribe(topicFilter, qos, null, null, messageListener);
+	}
+
+	@Override
+	public IMqttToken unsubscribe(String topicFilter) throws MqttException {
+		return unsubscribe(new String[] { topicFilter }, null, null);
+	}
+
+	@Override
+	public IMqttToken unsubscribe(String topicFilter, Object userContext, IMqttActionListener callback)
+			throws MqttException {
+		return unsubscribe(new String[] { topicFilter }, userContext, callback);
+	}
+
+	@Override
+	public IMqttToken unsubscribe(String[] topicFilters) throws MqttException {
+		return unsubscribe(topicFilters, null, null);
+	}
+
+	@Override
+	public IMqttToken unsubscribe(String[] topicFilters, Object userContext, IMqttActionListener callback)
+			throws MqttException {
+		Token token = new Token(null, userContext, callback);
+		try {
+			token.bind(client.unsubscribe(topicFilters, userContext, token, null));
+		} catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+			throw translate(e);
+		}
+		return token;
+	}
+
+	@Override
+	public IMqttDeliveryToken publish(String topic, byte[] payload, int qos, boolean retained) throws MqttException {
+		return publish(topic, payload, qos, retained, null, null);
+	}
+
+	@Override
+	public IMqttDeliveryToken publish(String topic, byte[] payload, int qos, boolean retained, Object userContext,
+			IMqttActionListener callback) throws MqttException {
+		MqttMessage message = new MqttMessage(payload);
+		message.setQos(qos);
+		message.setRetained(retained);
+		return publish(topic, message, userContext, callback);
+	}
+
+	@Override
+	public IMqttDeliveryToken publish(String topic, MqttMessage message) throws MqttException {
+		return publish(topic, message, null, null);
+	}
+
+	@Override
+	public IMqttDeliveryToken publish(String topic, MqttMessage message, Object userContext,
+			IMqttActionListener callback) throws MqttException {
+		Token token = new Token(message, userContext, callback);
+		try {
+			token.bind(client.publish(topic, toMqtt5(message), userContext, token));
+		} catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+			throw translate(e);
+		}
+		return token;
+	}
+
+	/**
+	 * @throws MqttException Always, as the MQTT 5 client cannot remove a message
+	 */
+	@Override
+	public boolean removeMessage(IMqttDeliveryToken token) throws MqttException {
+		throw new MqttException(MqttException.REASON_CODE_CLIENT_EXCEPTION,
+				new IllegalStateException("Messages cannot be removed from an MQTT 5 client"));
+	}
+
+	@Override
+	public void setCallback(MqttCallback callback) {
+		this.callback = callback;
+	}
+
+	@Override
+	public void setManualAcks(boolean manualAcks) {
+		client.setManualAcks(manualAcks);
+	}
+
+	@Override
+	public void messageArrivedComplete(int messageId, int qos) throws MqttException {
+		try {
+			client.messageArrivedComplete(messageId, qos);
+		} catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+			throw translate(e);
+		}
+	}
+
+	@Override
+	public void setBufferOpts(DisconnectedBufferOptions bufferOpts) {
+		org.eclipse.paho.mqttv5.client.DisconnectedBufferOptions options = new org.eclipse.paho.mqttv5.client.DisconnectedBufferOptions();
+		options.setBufferEnabled(bufferOpts.isBufferEnabled());
+		options.setBufferSize(bufferOpts.getBufferSize());
+		options.setDeleteOldestMessages(bufferOpts.isDeleteOldestMessages());
+		// There is nothing to persist the buffer to with memory persistence
+		options.setPersistBuffer(bufferOpts.isPersistBuffer()
+				&& !(persistence instanceof org.eclipse.paho.mqttv5.client.persist.MemoryPersistence));
+		client.setBufferOpts(options);
+	}
+
+	@Override
+	public int getBufferedMessageCount() {
+		return client.getBufferedMessageCount();
+	}
+
+	@Override
+	public MqttMessage getBufferedMessage(int bufferIndex) {
+		return toMqtt3(client.getBufferedMessage(bufferIndex));
+	}
+
+	@Override
+	public void deleteBufferedMessage(int bufferIndex) {
+		client.deleteBufferedMessage(bufferIndex);
+	}
+
+	@Override
+	public int getInFlightMessageCount() {
+		return client.getInFlightMessageCount();
+	}
+
+	@Override
+	public IMqttDeliveryToken[] getPendingDeliveryTokens() {
+		org.eclipse.paho.mqttv5.client.IMqttToken[] pending = client.getPendingTokens();
+		IMqttDeliveryToken[] tokens = new IMqttDeliveryToken[pending.length];
+		for (int i = 0; i < pending.length; i++) {
+			tokens[i] = wrap(pending[i]);
+		}
+		return tokens;
+	}
+
+	@Override
+	public Debug getDebug() {
+		return new DebugAdapter(client.getDebug());
+	}
+
+	@Override
+	public void close() throws MqttException {
+		close(false);
+	}
+
+	@Override
+	public void close(boolean force) throws MqttException {
+		try {
+			client.close(force);
+		} catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+			throw translate(e);
+		}
+		super.close(force);
+	}
+
+	/**
+	 * @param e A failure reported by the MQTT 5 client
+	 * @return The equivalent MQTT 3.1.1 exception; a refused login is a
+	 *         {@link MqttSecurityException}, so that connection attempts are not
+	 *         retried
+	 */
+	public static MqttException translate(Throwable e) {
+		if (e instanceof MqttException) {
+			return (MqttException) e;
+		}
+		if (e instanceof org.eclipse.paho.mqttv5.common.MqttException) {
+			int reasonCode = ((org.eclipse.paho.mqttv5.common.MqttException) e).getReasonCode();
+			if (reasonCode == NOT_AUTHORIZED) {
+				return new MqttSecurityException(MqttException.REASON_CODE_NOT_AUTHORIZED, e);
+			} else if (reasonCode == BAD_USER_NAME_OR_PASSWORD
+					|| e instanceof org.eclipse.paho.mqttv5.common.MqttSecurityException) {
+				return new MqttSecurityException(MqttException.REASON_CODE_FAILED_AUTHENTICATION, e);
+			}
+			return new MqttException(reasonCode, e);
+		}
+		return new MqttException(e);
+	}
+
+	private static org.eclipse.paho.mqttv5.common.MqttMessage toMqtt5(MqttMessage message) {
+		return new org.eclipse.paho.mqttv5.common.MqttMessage(message.getPayload(), message.getQos(),
+				message.isRetained(), new MqttProperties());
+	}
+
+	private static MqttMessage toMqtt3(org.eclipse.paho.mqttv5.common.MqttMessage message) {
+		MqttMessage converted = new MqttMessage(message.getPayload());
+		converted.setQos(message.getQos());
+		converted.setRetained(message.isRetained());
+		converted.setId(message.getId());
+		return converted;
+	}
+
+	private Token wrap(org.eclipse.paho.mqttv5.client.IMqttToken delegate) {
+		MqttMessage message = null;
+		try {
+			if (delegate.getMessage() != null) {
+				message = toMqtt3(delegate.getMessage());
+			}
+		} catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+			// Not a publish
+		}
+		Token token = new Token(message, delegate.getUserContext(), null);
+		token.bind(delegate);
+		return token;
+	}
+
+	/**
+	 * An MQTT 3.1.1 token for an action of the MQTT 5 client, which also passes the
+	 * completion of the action on to the MQTT 3.1.1 listener
+	 */
+	private class Token implements IMqttDeliveryToken, MqttActionListener {
+		private final MqttMessage message;
+		private volatile Object userContext;
+		private volatile IMqttActionListener callback;
+		private volatile org.eclipse.paho.mqttv5.client.IMqttToken delegate;
+
+		Token(MqttMessage message, Object userContext, IMqttActionListener callback) {
+			this.message = message;
+			this.userContext = userContext;
+			this.callback = callback;
+		}
+
+		/*
+		 * The action may complete before the MQTT 5 client returns its token
+		 */
+		void bind(org.eclipse.paho.mqttv5.client.IMqttToken delegate) {
+			if (this.delegate == null) {
+				this.delegate = delegate;
+			}
+		}
+
+		@Override
+		public void onSuccess(org.eclipse.paho.mqttv5.client.IMqttToken asyncActionToken) {
+			bind(asyncActionToken);
+			IMqttActionListener listener = callback;
+			if (listener != null) {
+				listener.onSuccess(this);
+			}
+		}
+
+		@Override
+		public void onFailure(org.eclipse.paho.mqttv5.client.IMqttToken asyncActionToken, Throwable exception) {
+			bind(asyncActionToken);
+			IMqttActionListener listener = callback;
+			if (listener != null) {
+				listener.onFailure(this, translate(exception));
+			}
+		}
+
+		@Override
+		public void waitForCompletion() throws MqttException {
+			try {
+				delegate.waitForCompletion();
+			} catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+				throw translate(e);
+			}
+		}
+
+		@Override
+		public void waitForCompletion(long timeout) throws MqttException {
+			try {
+				delegate.waitForCompletion(timeout);
+			} catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+				throw translate(e);
+			}
+		}
+
+		@Override
+		public boolean isComplete() {
+			return delegate.isComplete();
+		}
+
+		@Override
+		public MqttException getException() {
+			org.eclipse.paho.mqttv5.common.MqttException e = delegate.getException();
+			return e == null ? null : translate(e);
+		}
+
+		@Override
+		public void setActionCallback(IMqttActionListener listener) {
+			this.callback = listener;
+		}
+
+		@Override
+		public IMqttActionListener getActionCallback() {
+			return callback;
+		}
+
+		@Override
+		public IMqttAsyncClient getClient() {
+			return Mqtt5AsyncClient.this;
+		}
+
+		@Override
+		public String[] getTopics() {
+			return delegate.getTopics();
+		}
+
+		@Override
+		public void setUserContext(Object userContext) {
+			this.userContext = userContext;
+		}
+
+		@Override
+		public Object getUserContext() {
+			return userContext;
+		}
+
+		@Override
+		public int getMessageId() {
+			return delegate.getMessageId();
+		}
+
+		/**
+		 * MQTT 5 reason codes of 0x80 and above are all reported as the MQTT 3.1.1
+		 * failure code, 0x80
+		 */
+		@Override
+		public int[] getGrantedQos() {
+			int[] reasonCodes = delegate.getReasonCodes();
+			if (reasonCodes == null) {
+				return null;
+			}
+			int[] granted = new int[reasonCodes.length];
+			for (int i = 0; i < reasonCodes.length; i++) {
+				granted[i] = reasonCodes[i] >= 0x80 ? 0x80 : reasonCodes[i];
+			}
+			return granted;
+		}
+
+		@Override
+		public boolean getSessionPresent() {
+			return delegate.getSessionPresent();
+		}
+
+		/**
+		 * @return Always null, as the response is an MQTT 5 packet
+		 */
+		@Override
+		public MqttWireMessage getResponse() {
+			return null;
+		}
+
+		@Override
+		public MqttMessage getMessage() throws MqttException {
+			return message;
+		}
+	}
+
+	/**
+	 * Passes messages for a subscription on to its MQTT 3.1.1 message listener
+	 */
+	private static class MessageListenerAdapter implements org.eclipse.paho.mqttv5.client.IMqttMessageListener {
+		private final IMqttMessageListener listener;
+
+		MessageListenerAdapter(IMqttMessageListener listener) {
+			this.listener = listener;
+		}
+
+		@Override
+		public void messageArrived(String topic, org.eclipse.paho.mqttv5.common.MqttMessage message)
+				throws Exception {
+			listener.messageArrived(topic, toMqtt3(message));
+		}
+	}
+
+	/**
+	 * Dumps the state of the MQTT 5 client rather than that of the MQTT 3.1.1
+	 * client underneath, which is never connected
+	 */
+	private static class DebugAdapter extends Debug {
+		private final org.eclipse.paho.mqttv5.client.util.Debug debug;
+
+		DebugAdapter(org.eclipse.paho.mqttv5.client.util.Debug debug) {
+			super(null, null);
+			this.debug = debug;
+		}
+
+		@Override
+		public void dumpClientDebug() {
+			debug.dumpClientDebug();
+		}
+
+		@Override
+		public void dumpBaseDebug() {
+			debug.dumpBaseDebug();
+		}
+
+		@Override
+		public void dumpSystemProperties() {
+			debug.dumpSystemProperties();
+		}
+
+		@Override
+		public void dumpClientState() {
+			debug.dumpClientState();
+		}
+
+		@Override
+		public void dumpClientComms() {
+			debug.dumpClientComms();
+		}
+
+		@Override
+		public void dumpConOptions() {
+			debug.dumpConOptions();
+		}
+	}
+
+	/**
+	 * Passes the MQTT 5 client's callbacks on as MQTT 3.1.1 ones
+	 */
+	private class CallbackAdapter implements org.eclipse.paho.mqttv5.client.MqttCallback {
+
+		@Override
+		public void disconnected(MqttDisconnectResponse response) {
+			LOG.warn("Disconnected from " + config.getMqttServerURI() + ": " + response);
+			MqttCallback target = callback;
+			if (target != null) {
+				target.connectionLost(response.getException() != null ? translate(response.getException())
+						: new MqttException(MqttException.REASON_CODE_CONNECTION_LOST));
+			}
+		}
+
+		@Override
+		public void mqttErrorOccurred(org.eclipse.paho.mqttv5.common.MqttException exception) {
+			LOG.warn("MQTT error on " + config.getClientId(), exception);
+		}
+
+		@Override
+		public void messageArrived(String topic, org.eclipse.paho.mqttv5.common.MqttMessage message)
+				throws Exception {
+			MqttCallback target = callback;
+			if (target != null) {
+				target.messageArrived(topic, toMqtt3(message));
+			}
+		}
+
+		@Override
+		public void deliveryComplete(org.eclipse.paho.mqttv5.client.IMqttToken token) {
+			MqttCallback target = callback;
+			if (target != null) {
+				target.deliveryComplete(wrap(token));
+			}
+		}
+
+		@Override
+		public void connectComplete(boolean reconnect, String serverURI) {
+			MqttCallback target = callback;
+			if (target instanceof MqttCallbackExtended) {
+				((MqttCallbackExtended) target).connectComplete(reconnect, serverURI);
+			}
+		}
+
+		@Override
+		public void authPacketArrived(int reasonCode, MqttProperties properties) {
+			LOG.debug("Ignoring AUTH packet with reason code " + reasonCode);
+		}
+	}
+}
@@ -0,0 +1,138 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyManagementException;
+import java.security.KeyStore;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The TLS contexts used to connect to the IBM Watson IoT Platform, created
+ * once for each CA file and shared by every client that uses it. <br>
+ *
+ * Sharing the context shares its TLS session cache, so a client that
+ * reconnects, or another client connecting to the same server, resumes an
+ * earlier session with an abbreviated handshake instead of a full one. This
+ * matters most when many connections reconnect at once.
+ */
+public class TlsContextCache {
+	private static final Logger LOG = LoggerFactory.getLogger(TlsContextCache.class);
+
+	public static final String PROTOCOL = "TLSv1.2";
+	// Sessions are cached per server, so a small cache covers many connections
+	public static final int SESSION_CACHE_SIZE = 1000;
+	public static final int SESSION_TIMEOUT_SECONDS = 24 * 60 * 60;
+
+	// Key for the contexts that trust the default CAs
+	private static final String DEFAULT_TRUST = "";
+
+	private static final ConcurrentHashMap<String, SSLContext> contexts = new ConcurrentHashMap<String, SSLContext>();
+
+	private TlsContextCache() {
+	}
+
+	/**
+	 * @param caFile Path of a PEM file holding the CA certificates to trust, or
+	 *               null to trust the default CAs of the JVM
+	 * @return The shared socket factory for the CA file
+	 * @throws NoSuchAlgorithmException TLS is not available
+	 * @throws KeyManagementException   The CA file could not be read
+	 */
+	public static SSLSocketFactory getSocketFactory(String caFile)
+			throws NoSuchAlgorithmException, KeyManagementException {
+		return getContext(caFile).getSocketFactory();
+	}
+
+	/**
+	 * @param caFile Path of a PEM file holding the CA certificates to trust, or
+	 *               null to trust the default CAs of the JVM
+	 * @return The shared TLS context for the CA file
+	 * @throws NoSuchAlgorithmException TLS is not available
+	 * @throws KeyManagementException   The CA file could not be read
+	 */
+	public static SSLContext getContext(String caFile) throws NoSuchAlgorithmException, KeyManagementException {
+		String key = caFile == null ? DEFAULT_TRUST : caFile;
+		SSLContext context = contexts.get(key);
+		if (context == null) {
+			// Two threads may both create one; only the first is kept
+			SSLContext created = createContext(caFile);
+			context = contexts.putIfAbsent(key, created);
+			if (context == null) {
+				context = created;
+			}
+		}
+		return context;
+	}
+
+	/**
+	 * Forget every context, so that the next connection reads its CA file again
+	 * and does a full handshake
+	 */
+	public static void clear() {
+		contexts.clear();
+	}
+
+	private static SSLContext createContext(String caFile) throws NoSuchAlgorithmException, KeyManagementException {
+		SSLContext context = SSLContext.getInstance(PROTOCOL);
+		if (caFile == null) {
+			context.init(null, null, null);
+		} else {
+			LOG.debug("Trusting the CA certificates in " + caFile);
+			context.init(null, loadTrustManagers(caFile).getTrustManagers(), null);
+		}
+		SSLSessionContext sessions = context.getClientSessionContext();
+		sessions.setSessionCacheSize(SESSION_CACHE_SIZE);
+		sessions.setSessionTimeout(SESSION_TIMEOUT_SECONDS);
+		return context;
+	}
+
+	private static TrustManagerFactory loadTrustManagers(String caFile) throws KeyManagementException {
+		Collection<? extends Certificate> certificates;
+		try (InputStream in = new FileInputStream(caFile)) {
+			certificates = CertificateFactory.getInstance("X.509").generateCertificates(in);
+		} catch (IOException | GeneralSecurityException e) {
+			throw new KeyManagementException("Unable to read CA file " + caFile, e);
+		}
+		if (certificates.isEmpty()) {
+			throw new KeyManagementException("No certificates in CA file " + caFile);
+		}
+		try {
+			KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+			trustStore.load(null, null);
+			int i = 0;
+			for (Certificate certificate : certificates) {
+				trustStore.setCertificateEntry("ca-" + i++, certificate);
+			}
+			TrustManagerFactory trustManagers = TrustManagerFactory
+					.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+			trustManagers.init(trustStore);
+			return trustManagers;
+		} catch (IOException | GeneralSecurityException e) {
+			throw new KeyManagementException("Unable to trust the certificates in CA file " + caFile, e);
+		}
+	}
+}
@@ -10,34 +10,49 @@
  */
 package com.ibm.wiotp.sdk.app;
 
-import java.io.UnsupportedEncodingException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
 import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
-import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.ibm.wiotp.sdk.AbstractClient;
-import com.ibm.wiotp.sdk.MessageInterface;
+import com.ibm.wiotp.sdk.MessagePublisher;
 import com.ibm.wiotp.sdk.app.callbacks.CommandCallback;
 import com.ibm.wiotp.sdk.app.callbacks.EventCallback;
 import com.ibm.wiotp.sdk.app.callbacks.StatusCallback;
+import com.ibm.wiotp.sdk.app.callbacks.StatusViewCallback;
 import com.ibm.wiotp.sdk.app.config.ApplicationConfig;
 import com.ibm.wiotp.sdk.app.messages.ApplicationStatus;
 import com.ibm.wiotp.sdk.app.messages.Command;
 import com.ibm.wiotp.sdk.app.messages.DeviceStatus;
+import com.ibm.wiotp.sdk.app.messages.StatusView;
 import com.ibm.wiotp.sdk.app.messages.Event;
+import com.ibm.wiotp.sdk.codecs.LazyMessage;
 import com.ibm.wiotp.sdk.codecs.MessageCodec;
+import com.ibm.wiotp.sdk.exceptions.MalformedMessageException;
+import com.ibm.wiotp.sdk.util.SubscriptionRegistry;
+import com.ibm.wiotp.sdk.util.Topic;
+import com.ibm.wiotp.sdk.util.TopicTrie;
 
 /**
  * A client, used by application, that handles connections with the IBM Watson
@@ -49,24 +64,35 @@ import com.ibm.wiotp.sdk.codecs.MessageCodec;
 public class ApplicationClient extends AbstractClient implements MqttCallbackExtended {
 	private static final Logger LOG = LoggerFactory.getLogger(ApplicationClient.class);
 
-	private static final Pattern DEVICE_EVENT_PATTERN = Pattern.compile("iot-2/type/(.+)/id/(.+)/evt/(.+)/fmt/(.+)");
-	private static final Pattern DEVICE_STATUS_PATTERN = Pattern.compile("iot-2/type/(.+)/id/(.+)/mon");
-	private static final Pattern APP_STATUS_PATTERN = Pattern.compile("iot-2/app/(.+)/mon");
-	private static final Pattern DEVICE_COMMAND_PATTERN = Pattern.compile("iot-2/type/(.+)/id/(.+)/cmd/(.+)/fmt/(.+)");
+	// Status views are reused for every status message handled on a thread
+	private static final ThreadLocal<StatusView> STATUS_VIEWS = new ThreadLocal<StatusView>() {
+		@Override
+		protected StatusView initialValue() {
+			return new StatusView();
+		}
+	};
 
 	private StatusCallback statusCallback = null;
+	private StatusViewCallback statusViewCallback = null;
+	private volatile StripedDispatcher dispatcher = null;
 
-	private HashMap<String, Integer> subscriptions = new HashMap<String, Integer>();
+	public static final int DEFAULT_SUBSCRIBE_BATCH_SIZE = 100;
 
-	@SuppressWarnings("rawtypes")
-	private Map<Class, MessageCodec> messageCodecs = new HashMap<Class, MessageCodec>();
-	@SuppressWarnings("rawtypes")
-	private Map<String, MessageCodec> messageCodecsByFormat = new HashMap<String, MessageCodec>();
+	// Health probes are published as events of a device that does not exist
+	public static final String PROBE_TYPE_ID = "wiotp-probe";
+	public static final String PROBE_EVENT_ID = "probe";
 
+	// Changed by callers, read when resubscribing from the MQTT client's callback
+	private final SubscriptionRegistry subscriptions = new SubscriptionRegistry();
+	private volatile int subscribeBatchSize = DEFAULT_SUBSCRIBE_BATCH_SIZE;
+	private volatile CompletableFuture<SubscribeReport> resubscription = null;
+
+	@SuppressWarnings("rawtypes")
+	private Map<Class, CommandCallback> commandCallbacks = new ConcurrentHashMap<Class, CommandCallback>();
 	@SuppressWarnings("rawtypes")
-	private Map<Class, CommandCallback> commandCallbacks = new HashMap<Class, CommandCallback>();
+	private Map<Class, EventCallback> eventCallbacks = new ConcurrentHashMap<Class, EventCallback>();
 	@SuppressWarnings("rawtypes")
-	private Map<Class, EventCallback> eventCallbacks = new HashMap<Class, EventCallback>();
+	private TopicTrie<EventCallback> eventRoutes = new TopicTrie<EventCallback>();
 
 	public ApplicationClient() throws Exception {
 		this(ApplicationConfig.generateFromEnv());
@@ -110,7 +136,7 @@ public class ApplicationClient extends AbstractClient implements MqttCallbackExt
 
 		// Find the codec for the data class
 		@SuppressWarnings("rawtypes")
-		MessageCodec codec = messageCodecs.get(data.getClass());
+		MessageCodec codec = codecRegistry.getCodec(data.getClass());
 
 		// Check that a codec is registered
 		if (codec == null) {
@@ -118,28 +144,85 @@ public class ApplicationClient extends AbstractClient implements MqttCallbackExt
 			return false;
 		}
 
-		byte[] payload = codec.encode(data, new DateTime());
 		String topic = "iot-2/type/" + typeId + "/id/" + deviceId + "/evt/" + eventId + "/fmt/"
 				+ codec.getMessageFormat();
-		LOG.debug("Publishing event to " + topic);
+		LOG.debug("Publishing event to {}", topic);
 
-		MqttMessage msg = new MqttMessage(payload);
-		msg.setQos(qos);
-		msg.setRetained(false);
-
-		try {
-			mqttAsyncClient.publish(topic, msg);
-		} catch (MqttException e) {
-			e.printStackTrace();
-			return false;
-		}
-		return true;
+		return publish(codec, data, topic, qos);
 	}
 
 	public boolean publishEvent(String typeId, String deviceId, String eventId, Object data) {
 		return publishEvent(typeId, deviceId, eventId, data, 0);
 	}
 
+	/**
+	 * Publish event, on the behalf of a device, to the IBM Watson IoT Platform
+	 * without waiting for it to be delivered. <br>
+	 * 
+	 * @param typeId   object of String which denotes deviceType
+	 * @param deviceId object of String which denotes deviceId
+	 * @param eventId  object of String which denotes event
+	 * @param data     Payload data
+	 * @param qos      Quality of Service, in int - can have values 0,1,2
+	 * 
+	 * @return A future that completes when the message has been delivered (for QoS
+	 *         1 and 2, acknowledged by the server), or completes exceptionally if
+	 *         it could not be encoded or delivered.
+	 */
+	@SuppressWarnings("unchecked")
+	public CompletableFuture<IMqttDeliveryToken> publishEventAsync(String typeId, String deviceId, String eventId,
+			Object data, int qos) {
+		if (data == null) {
+			throw new NullPointerException("Data object for event publish can not be null");
+		}
+
+		@SuppressWarnings("rawtypes")
+		MessageCodec codec = codecRegistry.getCodec(data.getClass());
+		if (codec == null) {
+			return failedFuture(
+					new IllegalArgumentException("Unable to encode event data of class " + data.getClass().getName()));
+		}
+
+		String topic = "iot-2/type/" + typeId + "/id/" + deviceId + "/evt/" + eventId + "/fmt/"
+				+ codec.getMessageFormat();
+		LOG.debug("Publishing event to {}", topic);
+
+		return publishAsync(codec, data, topic, qos);
+	}
+
+	public CompletableFuture<IMqttDeliveryToken> publishEventAsync(String typeId, String deviceId, String eventId,
+			Object data) {
+		return publishEventAsync(typeId, deviceId, eventId, data, 0);
+	}
+
+	/**
+	 * Create a handle for publishing the same event, on the behalf of a device,
+	 * repeatedly. The topic and codec are resolved once, when the handle is
+	 * created.
+	 * 
+	 * @param typeId    object of String which denotes deviceType
+	 * @param deviceId  object of String which denotes deviceId
+	 * @param eventId   object of String which denotes event
+	 * @param dataClass Class of the data that will be published
+	 * @param qos       Quality of Service, in int - can have values 0,1,2
+	 * @param <T>       Class of the data that will be published
+	 * @return The publisher
+	 * @throws IllegalArgumentException If no codec is registered for the data
+	 *                                  class
+	 */
+	public <T> MessagePublisher<T> getEventPublisher(String typeId, String deviceId, String eventId,
+			Class<T> dataClass, int qos) {
+		MessageCodec<T> codec = getCodec(dataClass);
+		String topic = "iot-2/type/" + typeId + "/id/" + deviceId + "/evt/" + eventId + "/fmt/"
+				+ codec.getMessageFormat();
+		return createPublisher(topic, codec, qos);
+	}
+
+	public <T> MessagePublisher<T> getEventPublisher(String typeId, String deviceId, String eventId,
+			Class<T> dataClass) {
+		return getEventPublisher(typeId, deviceId, eventId, dataClass, 0);
+	}
+
 	/**
 	 * Publish command to the IBM Watson IoT Platform. <br>
 	 * This method will attempt to create a JSON obejct out of the payload
@@ -160,7 +243,7 @@ public class ApplicationClient extends AbstractClient implements MqttCallbackExt
 
 		// Find the codec for the data class
 		@SuppressWarnings("rawtypes")
-		MessageCodec codec = messageCodecs.get(data.getClass());
+		MessageCodec codec = codecRegistry.getCodec(data.getClass());
 
 		// Check that a codec is registered
 		if (codec == null) {
@@ -168,26 +251,329 @@ public class ApplicationClient extends AbstractClient implements MqttCallbackExt
 			return false;
 		}
 
-		byte[] payload = codec.encode(data, new DateTime());
 		String topic = "iot-2/type/" + typeId + "/id/" + deviceId + "/cmd/" + commandId + "/fmt/"
 				+ codec.getMessageFormat();
-		LOG.debug("Publishing command to " + topic);
+		LOG.debug("Publishing command to {}", topic);
 
-		MqttMessage msg = new MqttMessage(payload);
-		msg.setQos(qos);
-		msg.setRetained(false);
+		return publish(codec, data, topic, qos);
+	}
 
+	public boolean publishCommand(String typeId, String deviceId, String commandId, Object data) {
+		return publishCommand(typeId, deviceId, commandId, data, 1);
+	}
+
+	/**
+	 * Publish command to the IBM Watson IoT Platform without waiting for it to be
+	 * delivered. <br>
+	 * 
+	 * @param typeId    object of String which denotes deviceType
+	 * @param deviceId  object of String which denotes deviceId
+	 * @param commandId object of String which denotes command
+	 * @param data      Payload data
+	 * @param qos       Quality of Service, in int - can have values 0,1,2
+	 * 
+	 * @return A future that completes when the message has been delivered (for QoS
+	 *         1 and 2, acknowledged by the server), or completes exceptionally if
+	 *         it could not be encoded or delivered.
+	 */
+	@SuppressWarnings("unchecked")
+	public CompletableFuture<IMqttDeliveryToken> publishCommandAsync(String typeId, String deviceId,
+			String commandId, Object data, int qos) {
+		if (data == null) {
+			throw new NullPointerException("Data object for command publish can not be null");
+		}
+
+		@SuppressWarnings("rawtypes")
+		MessageCodec codec = codecRegistry.getCodec(data.getClass());
+		if (codec == null) {
+			return failedFuture(new IllegalArgumentException(
+					"Unable to encode command data of class " + data.getClass().getName()));
+		}
+
+		String topic = "iot-2/type/" + typeId + "/id/" + deviceId + "/cmd/" + commandId + "/fmt/"
+				+ codec.getMessageFormat();
+		LOG.debug("Publishing command to {}", topic);
+
+		return publishAsync(codec, data, topic, qos);
+	}
+
+	public CompletableFuture<IMqttDeliveryToken> publishCommandAsync(String typeId, String deviceId,
+			String commandId, Object data) {
+		return publishCommandAsync(typeId, deviceId, commandId, data, 1);
+	}
+
+	/**
+	 * Create a handle for publishing the same command repeatedly. The topic and
+	 * codec are resolved once, when the handle is created.
+	 * 
+	 * @param typeId    object of String which denotes deviceType
+	 * @param deviceId  object of String which denotes deviceId
+	 * @param commandId object of String which denotes command
+	 * @param dataClass Class of the data that will be published
+	 * @param qos       Quality of Service, in int - can have values 0,1,2
+	 * @param <T>       Class of the data that will be published
+	 * @return The publisher
+	 * @throws IllegalArgumentException If no codec is registered for the data
+	 *                                  class
+	 */
+	public <T> MessagePublisher<T> getCommandPublisher(String typeId, String deviceId, String commandId,
+			Class<T> dataClass, int qos) {
+		MessageCodec<T> codec = getCodec(dataClass);
+		String topic = "iot-2/type/" + typeId + "/id/" + deviceId + "/cmd/" + commandId + "/fmt/"
+				+ codec.getMessageFormat();
+		return createPublisher(topic, codec, qos);
+	}
+
+	public <T> MessagePublisher<T> getCommandPublisher(String typeId, String deviceId, String commandId,
+			Class<T> dataClass) {
+		return getCommandPublisher(typeId, deviceId, commandId, dataClass, 1);
+	}
+
+	/**
+	 * Subscribe to many topic filters at once. The filters are packed into
+	 * SUBSCRIBE packets of up to {@link #setSubscribeBatchSize(int)} filters each,
+	 * which are all sent without waiting for the earlier ones to be acknowledged.
+	 * <br>
+	 * 
+	 * Filters covered by a broader filter that is already subscribed to are
+	 * registered but not sent, and filters that a new one covers are unsubscribed
+	 * from once it has been acknowledged. Filters the server refuses are
+	 * unregistered again, and the filters they would have replaced are kept. The
+	 * filters are restored in the same way after a reconnect.
+	 * 
+	 * @param topicFilters Topic filters, with the QoS for each
+	 * @return A future that completes once every packet has been acknowledged or
+	 *         has failed, with a report of the filters that were refused
+	 */
+	public CompletableFuture<SubscribeReport> subscribeAsync(Map<String, Integer> topicFilters) {
+		SubscriptionRegistry.Change change = subscriptions.addAll(topicFilters);
+		CompletableFuture<SubscribeReport> future = new CompletableFuture<SubscribeReport>();
+		sendSubscriptions(change.getSubscribe(), future);
+		return completeChange(future, change);
+	}
+
+	/**
+	 * Subscribe to many topic filters at once, waiting until the server has
+	 * acknowledged them all. While the client is disconnected the packets are
+	 * held until it connects, and this returns after the action timeout with a
+	 * report that is not yet finished.
+	 * 
+	 * @param topicFilters Topic filters, with the QoS for each
+	 * @return A report of the filters that were refused
+	 * @see #subscribeAsync(Map)
+	 */
+	public SubscribeReport subscribe(Map<String, Integer> topicFilters) {
+		SubscriptionRegistry.Change change = subscriptions.addAll(topicFilters);
+		CompletableFuture<SubscribeReport> future = new CompletableFuture<SubscribeReport>();
+		SubscribeReport report = sendSubscriptions(change.getSubscribe(), future);
 		try {
-			mqttAsyncClient.publish(topic, msg);
+			completeChange(future, change).get(DEFAULT_ACTION_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			LOG.warn("Timed out waiting for " + report.getTopicCount() + " subscriptions to be acknowledged");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			// Not completed exceptionally
+		}
+		return report;
+	}
+
+	private SubscribeReport sendSubscriptions(Map<String, Integer> topicFilters,
+			final CompletableFuture<SubscribeReport> future) {
+		int batchSize = subscribeBatchSize;
+		int packets = (topicFilters.size() + batchSize - 1) / batchSize;
+		final SubscribeReport report = new SubscribeReport(topicFilters.size(), packets);
+		if (packets == 0) {
+			future.complete(report);
+			return report;
+		}
+
+		Iterator<Entry<String, Integer>> iterator = topicFilters.entrySet().iterator();
+		int remaining = topicFilters.size();
+		while (remaining > 0) {
+			final String[] topics = new String[Math.min(batchSize, remaining)];
+			int[] qos = new int[topics.length];
+			for (int i = 0; i < topics.length; i++) {
+				Entry<String, Integer> entry = iterator.next();
+				topics[i] = entry.getKey();
+				qos[i] = entry.getValue().intValue();
+			}
+			remaining -= topics.length;
+
+			try {
+				mqttAsyncClient.subscribe(topics, qos, null, new IMqttActionListener() {
+					@Override
+					public void onSuccess(IMqttToken token) {
+						if (report.acknowledged(topics, token.getGrantedQos())) {
+							future.complete(report);
+						}
+					}
+
+					@Override
+					public void onFailure(IMqttToken token, Throwable e) {
+						LOG.warn("Subscribing to " + topics.length + " topics failed: " + e.getMessage());
+						if (report.failed(topics)) {
+							future.complete(report);
+						}
+					}
+				});
+			} catch (MqttException e) {
+				LOG.warn("Subscribing to " + topics.length + " topics failed: " + e.getMessage());
+				if (report.failed(topics)) {
+					future.complete(report);
+				}
+			}
+		}
+		return report;
+	}
+
+	/*
+	 * Unsubscribe from filters a new subscription covers once it has been
+	 * acknowledged, so no message is missed in between. Filters the server refused
+	 * are rolled back, and the filters they would have replaced are kept.
+	 */
+	private CompletableFuture<SubscribeReport> completeChange(CompletableFuture<SubscribeReport> future,
+			final SubscriptionRegistry.Change change) {
+		return future.thenApply(new Function<SubscribeReport, SubscribeReport>() {
+			@Override
+			public SubscribeReport apply(SubscribeReport report) {
+				SubscriptionRegistry.Change remaining = change;
+				List<String> refused = report.getFailedTopics();
+				if (!refused.isEmpty()) {
+					remaining = subscriptions.rollBack(change, refused);
+					if (!remaining.getSubscribe().isEmpty()) {
+						// Covered filters that were never sent are subscribed to in their place
+						CompletableFuture<SubscribeReport> next = new CompletableFuture<SubscribeReport>();
+						sendSubscriptions(remaining.getSubscribe(), next);
+						completeChange(next, remaining);
+						return report;
+					}
+				}
+				List<String> topics = remaining.getUnsubscribe();
+				if (!topics.isEmpty()) {
+					try {
+						unsubscribe(topics);
+					} catch (MqttException e) {
+						LOG.warn("Unsubscribing from " + topics.size() + " covered topics failed: " + e.getMessage());
+					}
+				}
+				return report;
+			}
+		});
+	}
+
+	/*
+	 * Register a topic filter, subscribing to it unless a broader filter already
+	 * covers it
+	 */
+	private void addSubscription(String topic, int qos) {
+		LOG.debug("Subscribing to " + topic);
+		applyChange(subscriptions.add(topic, qos));
+	}
+
+	/*
+	 * Unregister the filters for every format under a topic prefix
+	 */
+	private void removeSubscriptions(String prefix) {
+		List<String> topics = new ArrayList<String>();
+		for (String topic : subscriptions.getFilters().keySet()) {
+			if (topic.startsWith(prefix) && topic.indexOf('/', prefix.length()) < 0) {
+				topics.add(topic);
+			}
+		}
+		applyChange(subscriptions.removeAll(topics));
+	}
+
+	/*
+	 * Bring the server in line with a change to the registry, rolling back
+	 * filters that could not be subscribed to
+	 */
+	private void applyChange(SubscriptionRegistry.Change change) {
+		Map<String, Integer> subscribe = change.getSubscribe();
+		if (!subscribe.isEmpty()) {
+			String[] topics = new String[subscribe.size()];
+			int[] qos = new int[topics.length];
+			int i = 0;
+			for (Entry<String, Integer> entry : subscribe.entrySet()) {
+				topics[i] = entry.getKey();
+				qos[i++] = entry.getValue().intValue();
+			}
+			List<String> refused = new ArrayList<String>();
+			try {
+				IMqttToken token = mqttAsyncClient.subscribe(topics, qos);
+				token.waitForCompletion(DEFAULT_ACTION_TIMEOUT);
+				int[] granted = token.getGrantedQos();
+				for (i = 0; i < topics.length; i++) {
+					if (granted != null && i < granted.length
+							&& granted[i] == MqttException.REASON_CODE_SUBSCRIBE_FAILED) {
+						refused.add(topics[i]);
+					}
+				}
+			} catch (MqttException e) {
+				LOG.warn("Subscribing to " + topics.length + " topics failed: " + e.getMessage());
+				Collections.addAll(refused, topics);
+			}
+			if (!refused.isEmpty()) {
+				LOG.warn("Subscriptions to " + refused + " were not made and have been removed");
+				applyChange(subscriptions.rollBack(change, refused));
+				return;
+			}
+		}
+		try {
+			List<String> unsubscribe = change.getUnsubscribe();
+			if (!unsubscribe.isEmpty()) {
+				unsubscribe(unsubscribe).waitForCompletion(DEFAULT_ACTION_TIMEOUT);
+			}
 		} catch (MqttException e) {
 			e.printStackTrace();
-			return false;
 		}
-		return true;
 	}
 
-	public boolean publishCommand(String typeId, String deviceId, String commandId, Object data) {
-		return publishCommand(typeId, deviceId, commandId, data, 1);
+	/*
+	 * Unsubscribe from filters, telling the registry when the server has
+	 * acknowledged it so messages on them are no longer dropped
+	 */
+	private IMqttToken unsubscribe(final List<String> topics) throws MqttException {
+		try {
+			return mqttAsyncClient.unsubscribe(topics.toArray(new String[topics.size()]), null,
+					new IMqttActionListener() {
+						@Override
+						public void onSuccess(IMqttToken token) {
+							subscriptions.unsubscribed(topics);
+						}
+
+						@Override
+						public void onFailure(IMqttToken token, Throwable e) {
+							subscriptions.unsubscribed(topics);
+						}
+					});
+		} catch (MqttException e) {
+			subscriptions.unsubscribed(topics);
+			throw e;
+		}
+	}
+
+	/**
+	 * @param batchSize Most topic filters sent in one SUBSCRIBE packet
+	 */
+	public void setSubscribeBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be at least 1");
+		}
+		this.subscribeBatchSize = batchSize;
+	}
+
+	public int getSubscribeBatchSize() {
+		return subscribeBatchSize;
+	}
+
+	/**
+	 * @return The restoring of subscriptions after the most recent reconnect, or
+	 *         null if the client has not reconnected. Its report says how long it
+	 *         took until the client was fully subscribed again.
+	 */
+	public CompletableFuture<SubscribeReport> getResubscription() {
+		return resubscription;
 	}
 
 	/**
@@ -201,14 +587,7 @@ public class ApplicationClient extends AbstractClient implements MqttCallbackExt
 	 */
 	public void subscribeToDeviceEvents(String typeId, String deviceId, String eventId, String format, int qos) {
 		String newTopic = "iot-2/type/" + typeId + "/id/" + deviceId + "/evt/" + eventId + "/fmt/" + format;
-		LOG.debug("Subscribing to " + newTopic);
-
-		try {
-			subscriptions.put(newTopic, new Integer(qos));
-			mqttAsyncClient.subscribe(newTopic, qos).waitForCompletion(DEFAULT_ACTION_TIMEOUT);
-		} catch (MqttException e) {
-			e.printStackTrace();
-		}
+		addSubscription(newTopic, qos);
 	}
 
 	public void subscribeToDeviceEvents(String typeId, String deviceId, String eventId, String format) {
@@ -237,15 +616,22 @@ public class ApplicationClient extends AbstractClient implements MqttCallbackExt
 	 * @param typeId   object of String which denotes deviceType
 	 * @param deviceId object of String which denotes deviceId
 	 * @param eventId  object of String which denotes event
+	 * @param format   object of String which denotes format
+	 */
+	public void unsubscribeFromDeviceEvents(String typeId, String deviceId, String eventId, String format) {
+		String topic = "iot-2/type/" + typeId + "/id/" + deviceId + "/evt/" + eventId + "/fmt/" + format;
+		applyChange(subscriptions.remove(topic));
+	}
+
+	/**
+	 * Unsubscribe from device events in every format subscribed to. <br>
+	 * 
+	 * @param typeId   object of String which denotes deviceType
+	 * @param deviceId object of String which denotes deviceId
+	 * @param eventId  object of String which denotes event
 	 */
 	public void unsubscribeFromDeviceEvents(String typeId, String deviceId, String eventId) {
-		try {
-			String topic = "iot-2/type/" + typeId + "/id/" + deviceId + "/evt/" + eventId + "/fmt/json";
-			subscriptions.remove(topic);
-			mqttAsyncClient.unsubscribe(topic).waitForCompletion(DEFAULT_ACTION_TIMEOUT);
-		} catch (MqttException e) {
-			e.printStackTrace();
-		}
+		removeSubscriptions("iot-2/type/" + typeId + "/id/" + deviceId + "/evt/" + eventId + "/fmt/");
 	}
 
 	public void unsubscribeFromDeviceEvents(String typeId, String deviceId) {
@@ -272,13 +658,7 @@ public class ApplicationClient extends AbstractClient implements MqttCallbackExt
 	 */
 	public void subscribeToDeviceCommands(String typeId, String deviceId, String commandId, String format, int qos) {
 		String newTopic = "iot-2/type/" + typeId + "/id/" + deviceId + "/cmd/" + commandId + "/fmt/" + format;
-		LOG.debug("Subscribing to " + newTopic);
-		try {
-			subscriptions.put(newTopic, new Integer(qos));
-			mqttAsyncClient.subscribe(newTopic, qos).waitForCompletion(DEFAULT_ACTION_TIMEOUT);
-		} catch (MqttException e) {
-			e.printStackTrace();
-		}
+		addSubscription(newTopic, qos);
 	}
 
 	public void subscribeToDeviceCommands(String typeId, String deviceId, String commandId, String format) {
@@ -303,19 +683,26 @@ public class ApplicationClient extends AbstractClient implements MqttCallbackExt
 	 * @param typeId    object of String which denotes deviceType
 	 * @param deviceId  object of String which denotes deviceId
 	 * @param commandId object of String which denotes command
+	 * @param format    object of String which denotes format
+	 */
+	public void unsubscribeFromDeviceCommands(String typeId, String deviceId, String commandId, String format) {
+		String topic = "iot-2/type/" + typeId + "/id/" + deviceId + "/cmd/" + commandId + "/fmt/" + format;
+		applyChange(subscriptions.remove(topic));
+	}
+
+	/**
+	 * Unsubscribe from device commands in every format subscribed to. <br>
+	 * 
+	 * @param typeId    object of String which denotes deviceType
+	 * @param deviceId  object of String which denotes deviceId
+	 * @param commandId object of String which denotes command
 	 */
 	public void unsubscribeFromDeviceCommands(String typeId, String deviceId, String commandId) {
-		try {
-			String topic = "iot-2/type/" + typeId + "/id/" + deviceId + "/cmd/" + commandId + "/fmt/json";
-			subscriptions.remove(topic);
-			mqttAsyncClient.unsubscribe(topic).waitForCompletion(DEFAULT_ACTION_TIMEOUT);
-		} catch (MqttException e) {
-			e.printStackTrace();
-		}
+		removeSubscriptions("iot-2/type/" + typeId + "/id/" + deviceId + "/cmd/" + commandId + "/fmt/");
 	}
 
-	public void unsubscribeFromDeviceCommands(String typeId, String commandId) {
-		unsubscribeFromDeviceCommands(typeId, commandId, "+");
+	public void unsubscribeFromDeviceCommands(String typeId, String deviceId) {
+		unsubscribeFromDeviceCommands(typeId, deviceId, "+");
 	}
 
 	public void unsubscribeFromDeviceCommands(String typeId) {
@@ -333,14 +720,8 @@ public class ApplicationClient extends AbstractClient implements MqttCallbackExt
 	 * @param deviceId object of String which denotes deviceId
 	 */
 	public void subscribeToDeviceStatus(String typeId, String deviceId) {
-		try {
-			String newTopic = "iot-2/type/" + typeId + "/id/" + deviceId + "/mon";
-			subscriptions.put(newTopic, new Integer(0));
-			mqttAsyncClient.subscribe(newTopic, 0).waitForCompletion(DEFAULT_ACTION_TIMEOUT);
-			;
-		} catch (MqttException e) {
-			e.printStackTrace();
-		}
+		String newTopic = "iot-2/type/" + typeId + "/id/" + deviceId + "/mon";
+		addSubscription(newTopic, 0);
 	}
 
 	/**
@@ -350,13 +731,8 @@ public class ApplicationClient extends AbstractClient implements MqttCallbackExt
 	 *              organization
 	 */
 	public void subscribeToApplicationStatus(String appId) {
-		try {
-			String newTopic = "iot-2/app/" + appId + "/mon";
-			subscriptions.put(newTopic, new Integer(0));
-			mqttAsyncClient.subscribe(newTopic, 0).waitForCompletion(DEFAULT_ACTION_TIMEOUT);
-		} catch (MqttException e) {
-			e.printStackTrace();
-		}
+		String newTopic = "iot-2/app/" + appId + "/mon";
+		addSubscription(newTopic, 0);
 	}
 
 	/**
@@ -366,18 +742,15 @@ public class ApplicationClient extends AbstractClient implements MqttCallbackExt
 	 *              organization
 	 */
 	public void unSubscribeFromApplicationStatus(String appId) {
-		try {
-			String topic = "iot-2/app/" + appId + "/mon";
-			mqttAsyncClient.unsubscribe(topic).waitForCompletion(DEFAULT_ACTION_TIMEOUT);
-		} catch (MqttException e) {
-			e.printStackTrace();
-		}
+		String topic = "iot-2/app/" + appId + "/mon";
+		applyChange(subscriptions.remove(topic));
 	}
 
 	/**
 	 * Simply log error when connection is lost
 	 */
 	public void connectionLost(Throwable e) {
+		recordConnectionLost();
 		if (e instanceof MqttException) {
 			MqttException e2 = (MqttException) e;
 			LOG.warn("Connection lost: Reason Code: " + e2.getReasonCode() + " Cause: "
@@ -390,24 +763,56 @@ public class ApplicationClient extends AbstractClient implements MqttCallbackExt
 
 	@Override
 	public void connectComplete(boolean reconnect, String serverURI) {
-		if (reconnect) {
-			LOG.info("Reconnected to " + serverURI);
-			if (config.isCleanSession() == true) {
-				Iterator<Entry<String, Integer>> iterator = subscriptions.entrySet().iterator();
-				while (iterator.hasNext()) {
-					Entry<String, Integer> pairs = iterator.next();
-					String topic = pairs.getKey();
-					Integer qos = pairs.getValue();
-					LOG.debug("Resubscribing topic(" + topic + ") QoS:" + qos);
-					try {
-						mqttAsyncClient.subscribe(topic, qos.intValue());
-					} catch (NumberFormatException | MqttException e1) {
-						e1.printStackTrace();
-					}
-				}
-			}
+		restoreHealthProbe();
+		/*
+		 * The client restores lost connections itself, so the MQTT client never
+		 * reports a reconnect, but a new clean session starts without subscriptions
+		 */
+		if (config.isCleanStart() && !subscriptions.isEmpty()) {
+			resubscribe();
+		}
+	}
 
+	/**
+	 * By default health probes are sent as events of a device of type
+	 * {@value #PROBE_TYPE_ID} named after the application. They are not private:
+	 * every application subscribed to events of all device types or ids receives
+	 * them as well. Members of a shared subscription have no default, as the
+	 * probes would be spread across the group; they must give a probe topic to
+	 * {@link #startHealthMonitor(String, long, long, int)}.
+	 */
+	@Override
+	protected String getProbeTopic() {
+		ApplicationConfig appConfig = (ApplicationConfig) config;
+		if (appConfig.options.mqtt.sharedSubscription) {
+			return null;
 		}
+		return "iot-2/type/" + PROBE_TYPE_ID + "/id/" + appConfig.identity.appId + "/evt/" + PROBE_EVENT_ID
+				+ "/fmt/bin";
+	}
+
+	/*
+	 * Restore every subscription without blocking the MQTT client's callback
+	 * thread
+	 */
+	private void resubscribe() {
+		Map<String, Integer> active = subscriptions.getActive();
+		LOG.debug("Resubscribing {} topics", active.size());
+		CompletableFuture<SubscribeReport> future = new CompletableFuture<SubscribeReport>();
+		resubscription = future;
+		sendSubscriptions(active, future);
+		future.thenAccept(new Consumer<SubscribeReport>() {
+			@Override
+			public void accept(SubscribeReport report) {
+				if (report.isComplete()) {
+					LOG.info("Resubscribed to " + report.getTopicCount() + " topics in " + report.getElapsedMillis()
+							+ "ms");
+				} else {
+					LOG.warn("Resubscribing failed for " + report.getFailedTopics().size() + " of "
+							+ report.getTopicCount() + " topics: " + report.getFailedTopics());
+				}
+			}
+		});
 	}
 
 	public void deliveryComplete(IMqttDeliveryToken token) {
@@ -415,107 +820,173 @@ public class ApplicationClient extends AbstractClient implements MqttCallbackExt
 
 	@SuppressWarnings({ "rawtypes", "unchecked" })
 	public void messageArrived(String topic, MqttMessage msg) {
-		if (!eventCallbacks.isEmpty()) {
+		if (probeArrived(topic, msg)) {
+			return;
+		}
+		// Messages still in flight when their filter was unsubscribed from
+		if (subscriptions.isRemoved(topic)) {
+			LOG.debug("Dropping message on {}, no longer subscribed", topic);
+			return;
+		}
+		Topic parsed = Topic.parse(topic);
+
+		switch (parsed.getKind()) {
+		case DEVICE_EVENT: {
 			/*
-			 * Only check whether the message is a device event if a callback has been
-			 * defined for events, otherwise it is a waste of time as without a callback
-			 * there is nothing to process the generated event.
+			 * Only process the device event if a callback has been defined for events,
+			 * otherwise it is a waste of time as without a callback there is nothing to
+			 * process the generated event.
 			 */
-			Matcher matcher = DEVICE_EVENT_PATTERN.matcher(topic);
-			if (matcher.matches()) {
-				String type = matcher.group(1);
-				String id = matcher.group(2);
-				String event = matcher.group(3);
-				String format = matcher.group(4);
-
-				MessageCodec codec = messageCodecsByFormat.get(format);
-				if (codec == null) {
-					LOG.warn("Unable to decode event of format " + format);
-					// We don't throw an exception, as doing so will cause the underlying MQTT Paho
-					// client to disconnect.
-					return;
-				}
-				MessageInterface message = codec.decode(msg);
-				Event evt = new Event(type, id, event, format, message);
-
-				LOG.debug("Event received: " + evt.toString());
-
-				EventCallback callback = eventCallbacks.get(codec.getMessageClass());
-				if (callback != null) {
-					callback.processEvent(evt);
-				}
+			if (eventCallbacks.isEmpty() && eventRoutes.isEmpty()) {
 				return;
 			}
+			if (dispatcher != null) {
+				try {
+					dispatcher.dispatch(parsed.getTypeId(), parsed.getDeviceId(), new Runnable() {
+						@Override
+						public void run() {
+							processEvent(parsed, msg);
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					LOG.warn("Unable to dispatch event received on " + topic + ": " + e.getMessage());
+				}
+			} else {
+				processEvent(parsed, msg);
+			}
+			return;
 		}
-
-		if (!commandCallbacks.isEmpty()) {
-			Matcher matcher = DEVICE_COMMAND_PATTERN.matcher(topic);
-			if (matcher.matches()) {
-				String type = matcher.group(1);
-				String id = matcher.group(2);
-				String command = matcher.group(3);
-				String format = matcher.group(4);
-
-				MessageCodec codec = messageCodecsByFormat.get(format);
-				if (codec == null) {
-					LOG.warn("Unable to decode command of format " + format);
-					// We don't throw an exception, as doing so will cause the underlying MQTT Paho
-					// client to disconnect.
-					return;
+		case DEVICE_COMMAND: {
+			if (commandCallbacks.isEmpty()) {
+				return;
+			}
+			String format = parsed.getFormat();
+			List<MessageCodec> codecs = codecRegistry.getCodecs(format);
+			if (codecs.isEmpty()) {
+				LOG.warn("Unable to decode command of format " + format);
+				// We don't throw an exception, as doing so will cause the underlying MQTT Paho
+				// client to disconnect.
+				return;
+			}
+			// Each codec for the format decodes for the callback registered for its class
+			for (MessageCodec codec : codecs) {
+				CommandCallback callback = commandCallbacks.get(codec.getMessageClass());
+				if (callback == null) {
+					continue;
 				}
-				MessageInterface message = codec.decode(msg);
-				Command cmd = new Command(type, id, command, format, message);
+				// The payload is only decoded if the callback asks for the data
+				Command cmd = new Command(parsed.getTypeId(), parsed.getDeviceId(), parsed.getCommandId(), format,
+						LazyMessage.of(codec, topic, msg));
 
 				LOG.debug("Command received: " + cmd.toString());
 
-				CommandCallback callback = commandCallbacks.get(codec.getMessageClass());
-				if (callback != null) {
+				try {
 					callback.processCommand(cmd);
+				} catch (MalformedMessageException e) {
+					LOG.warn("Unable to decode command received on " + topic + ": " + e.getMessage());
 				}
-				return;
 			}
-
+			return;
 		}
-
-		if (statusCallback != null) {
+		case DEVICE_STATUS:
 			/*
-			 * Only check whether the message is a status event if a callback has been
-			 * defined for status events, otherwise it is a waste of time as without a
-			 * callback there is nothing to process the generated event.
+			 * Only process the status event if a callback has been defined for status
+			 * events, otherwise it is a waste of time as without a callback there is
+			 * nothing to process the generated event.
 			 */
-			Matcher matcher = DEVICE_STATUS_PATTERN.matcher(topic);
-			if (matcher.matches()) {
-				String type = matcher.group(1);
-				String id = matcher.group(2);
+			if (statusCallback != null || statusViewCallback != null) {
 				try {
-					DeviceStatus status = new DeviceStatus(type, id, msg);
-					LOG.debug("Device status received: " + status.toString());
-					statusCallback.processDeviceStatus(status);
-				} catch (UnsupportedEncodingException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
+					StatusView view = STATUS_VIEWS.get().wrapDevice(parsed.getTypeId(), parsed.getDeviceId(),
+							msg.getPayload());
+					if (statusCallback != null) {
+						DeviceStatus status = new DeviceStatus(view);
+						LOG.debug("Device status received: {}", status);
+						statusCallback.processDeviceStatus(status);
+					}
+					if (statusViewCallback != null) {
+						statusViewCallback.processDeviceStatus(view);
+					}
+				} catch (MalformedMessageException e) {
+					LOG.warn("Unable to parse status received on " + topic + ": " + e.getMessage());
 				}
 			}
-
-			matcher = APP_STATUS_PATTERN.matcher(topic);
-			if (matcher.matches()) {
-				String id = matcher.group(1);
+			return;
+		case APP_STATUS:
+			if (statusCallback != null || statusViewCallback != null) {
 				try {
-					ApplicationStatus status = new ApplicationStatus(id, msg);
-					LOG.debug("Application status received: " + status.toString());
-					statusCallback.processApplicationStatus(status);
-				} catch (UnsupportedEncodingException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
+					StatusView view = STATUS_VIEWS.get().wrapApplication(parsed.getAppId(), msg.getPayload());
+					if (statusCallback != null) {
+						ApplicationStatus status = new ApplicationStatus(view);
+						LOG.debug("Application status received: {}", status);
+						statusCallback.processApplicationStatus(status);
+					}
+					if (statusViewCallback != null) {
+						statusViewCallback.processApplicationStatus(view);
+					}
+				} catch (MalformedMessageException e) {
+					LOG.warn("Unable to parse status received on " + topic + ": " + e.getMessage());
 				}
 			}
+			return;
+		default:
+			return;
 		}
 	}
 
-	@SuppressWarnings("rawtypes")
-	public void registerCodec(MessageCodec codec) {
-		this.messageCodecs.put(codec.getMessageClass(), codec);
-		this.messageCodecsByFormat.put(codec.getMessageFormat(), codec);
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private void processEvent(Topic parsed, MqttMessage msg) {
+		String format = parsed.getFormat();
+		List<MessageCodec> codecs = codecRegistry.getCodecs(format);
+		if (codecs.isEmpty()) {
+			LOG.warn("Unable to decode event of format " + format);
+			// We don't throw an exception, as doing so will cause the underlying MQTT Paho
+			// client to disconnect.
+			return;
+		}
+
+		// One event per codec, created when a callback wants it. The payload is only
+		// decoded if a callback asks for the data, and then only once however many
+		// callbacks receive the event.
+		Event[] events = new Event[codecs.size()];
+		for (int i = 0; i < events.length; i++) {
+			EventCallback callback = eventCallbacks.get(codecs.get(i).getMessageClass());
+			if (callback != null) {
+				deliverEvent(callback, eventFor(parsed, msg, codecs, events, i));
+			}
+		}
+
+		if (!eventRoutes.isEmpty()) {
+			for (EventCallback routed : eventRoutes.match(parsed.getTopic())) {
+				// The first codec whose class the callback accepts decodes for it
+				for (int i = 0; i < events.length; i++) {
+					if (routed.getMessageClass().isAssignableFrom(codecs.get(i).getMessageClass())) {
+						deliverEvent(routed, eventFor(parsed, msg, codecs, events, i));
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static Event eventFor(Topic parsed, MqttMessage msg, List<MessageCodec> codecs, Event[] events,
+			int index) {
+		if (events[index] == null) {
+			events[index] = new Event(parsed.getTypeId(), parsed.getDeviceId(), parsed.getEventId(),
+					parsed.getFormat(), LazyMessage.of(codecs.get(index), parsed.getTopic(), msg));
+			LOG.debug("Event received: " + events[index].toString());
+		}
+		return events[index];
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private void deliverEvent(EventCallback callback, Event evt) {
+		try {
+			callback.processEvent(evt);
+		} catch (MalformedMessageException e) {
+			LOG.warn("Unable to decode event of format " + evt.getFormat() + " from " + evt.getTypeId() + ":"
+					+ evt.getDeviceId() + ": " + e.getMessage());
+		}
 	}
 
 	@SuppressWarnings("rawtypes")
@@ -528,8 +999,67 @@ public class ApplicationClient extends AbstractClient implements MqttCallbackExt
 		this.eventCallbacks.put(callback.getMessageClass(), callback);
 	}
 
+	/**
+	 * Register a callback for the device events whose topic matches an MQTT topic
+	 * filter, for example <code>iot-2/type/pump/id/+/evt/alarm/fmt/json</code>.
+	 * <br>
+	 * 
+	 * The callback is only invoked for events decoded to its message class (or a
+	 * subclass). Registering a callback does not create a subscription.
+	 * 
+	 * @param topicFilter MQTT topic filter, may contain the + and # wildcards
+	 * @param callback    The callback to invoke for matching events
+	 */
+	@SuppressWarnings("rawtypes")
+	public void registerEventCallback(String topicFilter, EventCallback callback) {
+		this.eventRoutes.add(topicFilter, callback);
+	}
+
+	/**
+	 * Remove a callback previously registered against a topic filter
+	 * 
+	 * @param topicFilter MQTT topic filter the callback was registered against
+	 * @param callback    The registered callback
+	 * @return Whether the callback was registered against the topic filter
+	 */
+	@SuppressWarnings("rawtypes")
+	public boolean unregisterEventCallback(String topicFilter, EventCallback callback) {
+		return this.eventRoutes.remove(topicFilter, callback);
+	}
+
 	public void setStatusCallback(StatusCallback callback) {
 		this.statusCallback = callback;
 	}
 
+	/**
+	 * Process status messages through a reused view instead of a new status object
+	 * per message, which avoids most of the allocation when status messages from
+	 * a large fleet arrive in bulk. May be set alongside a {@link StatusCallback}.
+	 * 
+	 * @param callback The callback, or null to stop using one
+	 */
+	public void setStatusViewCallback(StatusViewCallback callback) {
+		this.statusViewCallback = callback;
+	}
+
+	/**
+	 * Decode and process device events on a pool of worker threads instead of the
+	 * MQTT client's callback thread. Events from the same device are processed in
+	 * the order they arrived; events from different devices are processed in
+	 * parallel. <br>
+	 * 
+	 * The dispatcher is not shut down when the client is closed, the same
+	 * dispatcher may be shared by several clients.
+	 * 
+	 * @param dispatcher The dispatcher to use, or null to process events on the
+	 *                   MQTT client's callback thread (the default)
+	 */
+	public void setEventDispatcher(StripedDispatcher dispatcher) {
+		this.dispatcher = dispatcher;
+	}
+
+	public StripedDispatcher getEventDispatcher() {
+		return dispatcher;
+	}
+
 }
@@ -0,0 +1,421 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.app;
+
+import java.io.File;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ibm.wiotp.sdk.app.callbacks.CommandCallback;
+import com.ibm.wiotp.sdk.app.callbacks.EventCallback;
+import com.ibm.wiotp.sdk.app.callbacks.StatusCallback;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfig;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigIdentity;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigOptions;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigOptionsMqtt;
+import com.ibm.wiotp.sdk.codecs.MessageCodec;
+import com.ibm.wiotp.sdk.codecs.StatefulCodec;
+import com.ibm.wiotp.sdk.persistence.PersistenceType;
+
+/**
+ * Consumes with several shared subscription connections to the IBM Watson IoT
+ * Platform in one process, so that receiving and decoding messages scales
+ * across cores rather than across hand started processes. <br>
+ *
+ * Every member connects with the same "A:" client id, so the platform shares
+ * the messages of each subscription between them. Subscriptions and callbacks
+ * are applied to all members, and events from every member are processed by
+ * one {@link StripedDispatcher}, which keeps the events of each device in the
+ * order they were received. When a member loses its connection the platform
+ * sends its share to the members that are still connected until it reconnects
+ * and rejoins. <br>
+ *
+ * Connect the group before subscribing, as with {@link ApplicationClient}.
+ * Messages of one device may be received by different members, so their order
+ * is only kept for messages received by the same member. For the same reason
+ * a {@link StatefulCodec}, which relies on seeing every message of a stream,
+ * can not be registered with a group.
+ */
+public class ApplicationConsumerGroup {
+	private static final Logger LOG = LoggerFactory.getLogger(ApplicationConsumerGroup.class);
+
+	private final Member[] members;
+	private final StripedDispatcher dispatcher;
+	// Whether the dispatcher was created, and is shut down, by the group
+	private final boolean ownsDispatcher;
+	private final AtomicInteger activeMembers = new AtomicInteger();
+
+	public ApplicationConsumerGroup(int memberCount) throws Exception {
+		this(ApplicationConfig.generateFromEnv(), memberCount);
+	}
+
+	public ApplicationConsumerGroup(String fileName, int memberCount) throws Exception {
+		this(ApplicationConfig.generateFromConfig(fileName), memberCount);
+	}
+
+	/**
+	 * Create a group whose events are processed by a dispatcher with one stripe
+	 * per available processor
+	 *
+	 * @param config      Configuration shared by all members
+	 * @param memberCount Number of connections to consume with
+	 *
+	 * @throws Exception Failure in creating a member
+	 */
+	public ApplicationConsumerGroup(ApplicationConfig config, int memberCount) throws Exception {
+		this(config, memberCount, new StripedDispatcher(), true);
+	}
+
+	/**
+	 * @param config      Configuration shared by all members
+	 * @param memberCount Number of connections to consume with
+	 * @param dispatcher  Dispatcher that processes the events of all members
+	 *
+	 * @throws Exception Failure in creating a member
+	 */
+	public ApplicationConsumerGroup(ApplicationConfig config, int memberCount, StripedDispatcher dispatcher)
+			throws Exception {
+		this(config, memberCount, dispatcher, false);
+	}
+
+	private ApplicationConsumerGroup(ApplicationConfig config, int memberCount, StripedDispatcher dispatcher,
+			boolean ownsDispatcher) throws Exception {
+		if (memberCount < 1) {
+			throw new IllegalArgumentException("A consumer group needs at least one member");
+		}
+		this.dispatcher = dispatcher;
+		this.ownsDispatcher = ownsDispatcher;
+		members = new Member[memberCount];
+		for (int i = 0; i < memberCount; i++) {
+			members[i] = new Member(i, memberConfig(config, i));
+			members[i].setEventDispatcher(dispatcher);
+		}
+	}
+
+	/*
+	 * Members share the client id, but each needs its own persistence store
+	 */
+	private static ApplicationConfig memberConfig(ApplicationConfig config, int index) {
+		ApplicationConfigOptionsMqtt mqtt = new ApplicationConfigOptionsMqtt(config.options.mqtt);
+		mqtt.sharedSubscription = true;
+		if (mqtt.persistence != PersistenceType.MEMORY) {
+			String directory = mqtt.persistenceDir != null ? mqtt.persistenceDir : System.getProperty("user.dir");
+			mqtt.persistenceDir = new File(directory, "member-" + index).getPath();
+		}
+		ApplicationConfigOptions options = new ApplicationConfigOptions(config.options.domain,
+				config.options.logLevel, mqtt);
+		options.http = config.options.http;
+		return new ApplicationConfig(new ApplicationConfigIdentity(config.identity.appId), config.auth, options);
+	}
+
+	/**
+	 * Connect every member. All members are attempted even if one fails; those
+	 * that connected stay connected and consume the whole share of the group.
+	 *
+	 * @throws MqttException            The first connection failure
+	 * @throws NoSuchAlgorithmException Problems with TLS
+	 * @throws KeyManagementException   Problems with TLS
+	 */
+	public void connect() throws MqttException, KeyManagementException, NoSuchAlgorithmException {
+		MqttException failure = null;
+		for (Member member : members) {
+			try {
+				member.connect();
+			} catch (MqttException e) {
+				LOG.warn("Consumer group member " + member.index + " failed to connect", e);
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	public void disconnect() {
+		for (Member member : members) {
+			member.disconnect();
+		}
+	}
+
+	/**
+	 * Close every member and, if it was created by the group, shut down the
+	 * dispatcher once the events already queued have been processed
+	 *
+	 * @param timeout How long to wait for queued events
+	 * @param unit    Unit of the timeout
+	 * @throws MqttException        Thrown if an error occurs closing a member
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	public void close(long timeout, TimeUnit unit) throws MqttException, InterruptedException {
+		for (Member member : members) {
+			member.close();
+		}
+		if (ownsDispatcher) {
+			dispatcher.shutdown(timeout, unit);
+		}
+	}
+
+	public void close() throws MqttException, InterruptedException {
+		close(0, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Register a codec with every member
+	 *
+	 * @param codec The codec, which must not keep state between messages
+	 * @throws IllegalArgumentException If the codec is a {@link StatefulCodec}
+	 */
+	@SuppressWarnings("rawtypes")
+	public void registerCodec(MessageCodec codec) {
+		if (codec instanceof StatefulCodec) {
+			throw new IllegalArgumentException("Stateful codec " + codec.getClass().getName()
+					+ " can not be shared by the members of a consumer group");
+		}
+		for (Member member : members) {
+			member.registerCodec(codec);
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	public void registerEventCallback(EventCallback callback) {
+		for (Member member : members) {
+			member.registerEventCallback(callback);
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	public void registerEventCallback(String topicFilter, EventCallback callback) {
+		for (Member member : members) {
+			member.registerEventCallback(topicFilter, callback);
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	public void registerCommandCallback(CommandCallback callback) {
+		for (Member member : members) {
+			member.registerCommandCallback(callback);
+		}
+	}
+
+	public void setStatusCallback(StatusCallback callback) {
+		for (Member member : members) {
+			member.setStatusCallback(callback);
+		}
+	}
+
+	public void subscribeToDeviceEvents(String typeId, String deviceId, String eventId, String format, int qos) {
+		for (Member member : members) {
+			member.subscribeToDeviceEvents(typeId, deviceId, eventId, format, qos);
+		}
+	}
+
+	public void subscribeToDeviceEvents(String typeId, String deviceId, String eventId) {
+		subscribeToDeviceEvents(typeId, deviceId, eventId, "+", 0);
+	}
+
+	public void subscribeToDeviceEvents() {
+		subscribeToDeviceEvents("+", "+", "+");
+	}
+
+	public void unsubscribeFromDeviceEvents(String typeId, String deviceId, String eventId) {
+		for (Member member : members) {
+			member.unsubscribeFromDeviceEvents(typeId, deviceId, eventId);
+		}
+	}
+
+	public void subscribeToDeviceCommands(String typeId, String deviceId, String commandId, String format, int qos) {
+		for (Member member : members) {
+			member.subscribeToDeviceCommands(typeId, deviceId, commandId, format, qos);
+		}
+	}
+
+	public void subscribeToDeviceCommands(String typeId, String deviceId, String commandId) {
+		subscribeToDeviceCommands(typeId, deviceId, commandId, "+", 1);
+	}
+
+	public void unsubscribeFromDeviceCommands(String typeId, String deviceId, String commandId) {
+		for (Member member : members) {
+			member.unsubscribeFromDeviceCommands(typeId, deviceId, commandId);
+		}
+	}
+
+	public void subscribeToDeviceStatus(String typeId, String deviceId) {
+		for (Member member : members) {
+			member.subscribeToDeviceStatus(typeId, deviceId);
+		}
+	}
+
+	public StripedDispatcher getDispatcher() {
+		return dispatcher;
+	}
+
+	public ApplicationClient getMember(int index) {
+		return members[index];
+	}
+
+	public int getMemberCount() {
+		return members.length;
+	}
+
+	/**
+	 * @return Number of members currently connected and sharing the group's
+	 *         messages
+	 */
+	public int getActiveMemberCount() {
+		return activeMembers.get();
+	}
+
+	/**
+	 * @return Whether every member is connected
+	 */
+	public boolean isConnected() {
+		for (Member member : members) {
+			if (!member.isConnected()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return Statistics for each member, in index order
+	 */
+	public List<MemberStatistics> getStatistics() {
+		List<MemberStatistics> statistics = new ArrayList<MemberStatistics>(members.length);
+		for (Member member : members) {
+			statistics.add(new MemberStatistics(member.index, member.active, member.received.sum(),
+					member.connectionsLost.sum()));
+		}
+		return Collections.unmodifiableList(statistics);
+	}
+
+	@Override
+	public String toString() {
+		return "[" + members.length + " members] Active = " + activeMembers.get();
+	}
+
+	/*
+	 * A member of the group, which tracks whether it is taking its share of the
+	 * messages
+	 */
+	private class Member extends ApplicationClient {
+		private final int index;
+		private final LongAdder received = new LongAdder();
+		private final LongAdder connectionsLost = new LongAdder();
+		private volatile boolean active = false;
+
+		Member(int index, ApplicationConfig config) throws Exception {
+			super(config);
+			this.index = index;
+		}
+
+		@Override
+		public void connectComplete(boolean reconnect, String serverURI) {
+			super.connectComplete(reconnect, serverURI);
+			joined();
+		}
+
+		@Override
+		public void connectionLost(Throwable e) {
+			super.connectionLost(e);
+			connectionsLost.increment();
+			left();
+		}
+
+		@Override
+		public void disconnect() {
+			super.disconnect();
+			left();
+		}
+
+		@Override
+		public void messageArrived(String topic, MqttMessage msg) {
+			received.increment();
+			super.messageArrived(topic, msg);
+		}
+
+		private synchronized void joined() {
+			if (!active) {
+				active = true;
+				int count = activeMembers.incrementAndGet();
+				LOG.info("Consumer group member " + index + " joined, " + count + " of " + members.length
+						+ " members active");
+			}
+		}
+
+		private synchronized void left() {
+			if (active) {
+				active = false;
+				int count = activeMembers.decrementAndGet();
+				LOG.warn("Consumer group member " + index + " left, its share is sent to the " + count
+						+ " active members");
+			}
+		}
+	}
+
+	/**
+	 * A snapshot of the counters of one member of a consumer group
+	 */
+	public static class MemberStatistics {
+		private final int index;
+		private final boolean active;
+		private final long receivedCount;
+		private final long connectionsLost;
+
+		MemberStatistics(int index, boolean active, long receivedCount, long connectionsLost) {
+			this.index = index;
+			this.active = active;
+			this.receivedCount = receivedCount;
+			this.connectionsLost = connectionsLost;
+		}
+
+		public int getIndex() {
+			return index;
+		}
+
+		public boolean isActive() {
+			return active;
+		}
+
+		/**
+		 * @return Messages received by the member since the group was created
+		 */
+		public long getReceivedCount() {
+			return receivedCount;
+		}
+
+		/**
+		 * @return How many times the member's connection has been lost
+		 */
+		public long getConnectionsLost() {
+			return connectionsLost;
+		}
+
+		@Override
+		public String toString() {
+			return "[member " + index + "] Active = " + active + ", received = " + receivedCount
+					+ ", connections lost = " + connectionsLost;
+		}
+	}
+}
@@ -0,0 +1,345 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.app;
+
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ibm.wiotp.sdk.FlowController;
+import com.ibm.wiotp.sdk.MessagePublisher;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfig;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigIdentity;
+import com.ibm.wiotp.sdk.codecs.MessageCodec;
+import com.ibm.wiotp.sdk.util.DeviceHash;
+
+/**
+ * Publishes events and commands over several connections to the IBM Watson IoT
+ * Platform, for backends that need more throughput than one connection, and the
+ * one thread that sends its messages, can give. <br>
+ *
+ * Each connection is an {@link ApplicationClient} with its own client id, the
+ * configured application id followed by "-" and the index of the connection.
+ * Messages for the same device (type and id) are always published on the same
+ * connection, so they arrive in the order they were published, while messages
+ * for different devices are spread across all of them. Each connection
+ * reconnects on its own; while one is disconnected its messages are buffered
+ * and the others carry on publishing. <br>
+ *
+ * The pool only publishes. Use a separate {@link ApplicationClient} to
+ * subscribe.
+ */
+public class PooledApplicationClient {
+	private static final Logger LOG = LoggerFactory.getLogger(PooledApplicationClient.class);
+
+	private final ApplicationClient[] connections;
+	// The counters at the last statistics snapshot of each connection
+	private final long[] lastDelivered;
+	private final long[] lastSnapshot;
+
+	public PooledApplicationClient(int connectionCount) throws Exception {
+		this(ApplicationConfig.generateFromEnv(), connectionCount);
+	}
+
+	public PooledApplicationClient(String fileName, int connectionCount) throws Exception {
+		this(ApplicationConfig.generateFromConfig(fileName), connectionCount);
+	}
+
+	/**
+	 * @param config          Configuration shared by all connections
+	 * @param connectionCount Number of connections to publish over
+	 *
+	 * @throws Exception Failure in creating a connection
+	 */
+	public PooledApplicationClient(ApplicationConfig config, int connectionCount) throws Exception {
+		if (connectionCount < 1) {
+			throw new IllegalArgumentException("A pool needs at least one connection");
+		}
+		connections = new ApplicationClient[connectionCount];
+		lastDelivered = new long[connectionCount];
+		lastSnapshot = new long[connectionCount];
+		long now = System.nanoTime();
+		for (int i = 0; i < connectionCount; i++) {
+			ApplicationConfig connectionConfig = new ApplicationConfig(
+					new ApplicationConfigIdentity(config.identity.appId + "-" + i), config.auth, config.options);
+			connections[i] = new ApplicationClient(connectionConfig);
+			lastSnapshot[i] = now;
+		}
+	}
+
+	/**
+	 * Connect every connection in the pool. All connections are attempted even if
+	 * one fails; those that connected stay connected.
+	 *
+	 * @throws MqttException            The first connection failure
+	 * @throws NoSuchAlgorithmException Problems with TLS
+	 * @throws KeyManagementException   Problems with TLS
+	 */
+	public void connect() throws MqttException, KeyManagementException, NoSuchAlgorithmException {
+		MqttException failure = null;
+		for (ApplicationClient connection : connections) {
+			try {
+				connection.connect();
+			} catch (MqttException e) {
+				LOG.warn("Connection " + connection.getConfig().getClientId() + " failed to connect", e);
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	public void disconnect() {
+		for (ApplicationClient connection : connections) {
+			connection.disconnect();
+		}
+	}
+
+	public void close() throws MqttException {
+		for (ApplicationClient connection : connections) {
+			connection.close();
+		}
+	}
+
+	/**
+	 * @return Whether every connection in the pool is connected
+	 */
+	public boolean isConnected() {
+		for (ApplicationClient connection : connections) {
+			if (!connection.isConnected()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Register a codec with every connection in the pool. A codec that keeps state
+	 * per topic, such as DeltaCodec, encodes each device's messages in order, as
+	 * they are always published on the same connection, but it is told when any
+	 * connection reconnects. A DeltaCodec then sends a keyframe on every stream,
+	 * not only on those of the connection that reconnected.
+	 *
+	 * @param codec The codec
+	 */
+	@SuppressWarnings("rawtypes")
+	public void registerCodec(MessageCodec codec) {
+		for (ApplicationClient connection : connections) {
+			connection.registerCodec(codec);
+		}
+	}
+
+	public boolean publishEvent(String typeId, String deviceId, String eventId, Object data, int qos) {
+		return connectionFor(typeId, deviceId).publishEvent(typeId, deviceId, eventId, data, qos);
+	}
+
+	public boolean publishEvent(String typeId, String deviceId, String eventId, Object data) {
+		return connectionFor(typeId, deviceId).publishEvent(typeId, deviceId, eventId, data);
+	}
+
+	public CompletableFuture<IMqttDeliveryToken> publishEventAsync(String typeId, String deviceId, String eventId,
+			Object data, int qos) {
+		return connectionFor(typeId, deviceId).publishEventAsync(typeId, deviceId, eventId, data, qos);
+	}
+
+	public CompletableFuture<IMqttDeliveryToken> publishEventAsync(String typeId, String deviceId, String eventId,
+			Object data) {
+		return connectionFor(typeId, deviceId).publishEventAsync(typeId, deviceId, eventId, data);
+	}
+
+	public <T> MessagePublisher<T> getEventPublisher(String typeId, String deviceId, String eventId,
+			Class<T> dataClass, int qos) {
+		return connectionFor(typeId, deviceId).getEventPublisher(typeId, deviceId, eventId, dataClass, qos);
+	}
+
+	public <T> MessagePublisher<T> getEventPublisher(String typeId, String deviceId, String eventId,
+			Class<T> dataClass) {
+		return connectionFor(typeId, deviceId).getEventPublisher(typeId, deviceId, eventId, dataClass);
+	}
+
+	public boolean publishCommand(String typeId, String deviceId, String commandId, Object data, int qos) {
+		return connectionFor(typeId, deviceId).publishCommand(typeId, deviceId, commandId, data, qos);
+	}
+
+	public boolean publishCommand(String typeId, String deviceId, String commandId, Object data) {
+		return connectionFor(typeId, deviceId).publishCommand(typeId, deviceId, commandId, data);
+	}
+
+	public CompletableFuture<IMqttDeliveryToken> publishCommandAsync(String typeId, String deviceId,
+			String commandId, Object data, int qos) {
+		return connectionFor(typeId, deviceId).publishCommandAsync(typeId, deviceId, commandId, data, qos);
+	}
+
+	public CompletableFuture<IMqttDeliveryToken> publishCommandAsync(String typeId, String deviceId,
+			String commandId, Object data) {
+		return connectionFor(typeId, deviceId).publishCommandAsync(typeId, deviceId, commandId, data);
+	}
+
+	public <T> MessagePublisher<T> getCommandPublisher(String typeId, String deviceId, String commandId,
+			Class<T> dataClass, int qos) {
+		return connectionFor(typeId, deviceId).getCommandPublisher(typeId, deviceId, commandId, dataClass, qos);
+	}
+
+	public <T> MessagePublisher<T> getCommandPublisher(String typeId, String deviceId, String commandId,
+			Class<T> dataClass) {
+		return connectionFor(typeId, deviceId).getCommandPublisher(typeId, deviceId, commandId, dataClass);
+	}
+
+	/**
+	 * @param typeId   The device type
+	 * @param deviceId The device id
+	 * @return The index of the connection that publishes for the device
+	 */
+	public int connectionIndexFor(String typeId, String deviceId) {
+		return DeviceHash.bucketFor(typeId, deviceId, connections.length);
+	}
+
+	/**
+	 * @param typeId   The device type
+	 * @param deviceId The device id
+	 * @return The connection that publishes for the device
+	 */
+	public ApplicationClient connectionFor(String typeId, String deviceId) {
+		return connections[connectionIndexFor(typeId, deviceId)];
+	}
+
+	public ApplicationClient getConnection(int index) {
+		return connections[index];
+	}
+
+	public int getConnectionCount() {
+		return connections.length;
+	}
+
+	/**
+	 * Take a snapshot of the counters of every connection. The delivery rate of
+	 * each connection is measured since the previous snapshot, or since the pool
+	 * was created.
+	 *
+	 * @return Statistics for each connection, in index order
+	 */
+	public synchronized List<ConnectionStatistics> getStatistics() {
+		List<ConnectionStatistics> statistics = new ArrayList<ConnectionStatistics>(connections.length);
+		long now = System.nanoTime();
+		for (int i = 0; i < connections.length; i++) {
+			ApplicationClient connection = connections[i];
+			FlowController flow = connection.getFlowController();
+			long delivered = flow.getDeliveredCount();
+			long elapsed = now - lastSnapshot[i];
+			double rate = elapsed > 0 ? (delivered - lastDelivered[i]) * 1e9 / elapsed : 0;
+			statistics.add(new ConnectionStatistics(i, connection.getConfig().getClientId(),
+					connection.isConnected(), flow.getSentCount(), delivered, flow.getFailedCount(),
+					flow.getInflight(), flow.getQueueDepth(), rate));
+			lastDelivered[i] = delivered;
+			lastSnapshot[i] = now;
+		}
+		return Collections.unmodifiableList(statistics);
+	}
+
+	@Override
+	public String toString() {
+		return "[" + connections.length + " connections] Connected = " + String.valueOf(isConnected());
+	}
+
+	/**
+	 * A snapshot of the publishing counters of one connection in a pool
+	 */
+	public static class ConnectionStatistics {
+		private final int index;
+		private final String clientId;
+		private final boolean connected;
+		private final long sentCount;
+		private final long deliveredCount;
+		private final long failedCount;
+		private final int inflight;
+		private final int queueDepth;
+		private final double deliveredPerSecond;
+
+		ConnectionStatistics(int index, String clientId, boolean connected, long sentCount, long deliveredCount,
+				long failedCount, int inflight, int queueDepth, double deliveredPerSecond) {
+			this.index = index;
+			this.clientId = clientId;
+			this.connected = connected;
+			this.sentCount = sentCount;
+			this.deliveredCount = deliveredCount;
+			this.failedCount = failedCount;
+			this.inflight = inflight;
+			this.queueDepth = queueDepth;
+			this.deliveredPerSecond = deliveredPerSecond;
+		}
+
+		public int getIndex() {
+			return index;
+		}
+
+		public String getClientId() {
+			return clientId;
+		}
+
+		public boolean isConnected() {
+			return connected;
+		}
+
+		/**
+		 * @return Messages handed to the MQTT client since the pool was created
+		 */
+		public long getSentCount() {
+			return sentCount;
+		}
+
+		/**
+		 * @return Messages delivered since the pool was created
+		 */
+		public long getDeliveredCount() {
+			return deliveredCount;
+		}
+
+		/**
+		 * @return Messages that could not be delivered since the pool was created
+		 */
+		public long getFailedCount() {
+			return failedCount;
+		}
+
+		public int getInflight() {
+			return inflight;
+		}
+
+		public int getQueueDepth() {
+			return queueDepth;
+		}
+
+		/**
+		 * @return Messages delivered per second since the previous snapshot
+		 */
+		public double getDeliveredPerSecond() {
+			return deliveredPerSecond;
+		}
+
+		@Override
+		public String toString() {
+			return "[" + clientId + "] Connected = " + connected + ", sent = " + sentCount + ", delivered = "
+					+ deliveredCount + ", failed = " + failedCount + ", inflight = " + inflight + ", queued = "
+					+ queueDepth + ", delivered/s = " + String.format("%.1f", deliveredPerSecond);
+		}
+	}
+}
@@ -0,0 +1,194 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.app;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ibm.wiotp.sdk.util.DeviceHash;
+
+/**
+ * Dispatches work to a fixed set of single threaded stripes. <br>
+ *
+ * Work for the same device (type and id) is always sent to the same stripe, so
+ * it is processed in the order it arrived, while work for different devices is
+ * processed in parallel. Each stripe has a bounded queue; when a stripe's queue
+ * is full the submitting thread blocks until space is available.
+ */
+public class StripedDispatcher {
+	private static final Logger LOG = LoggerFactory.getLogger(StripedDispatcher.class);
+
+	public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+	private static final AtomicInteger DISPATCHER_COUNT = new AtomicInteger();
+
+	private final ThreadPoolExecutor[] stripes;
+	private final int queueCapacity;
+
+	/**
+	 * Create a dispatcher with one stripe per available processor
+	 */
+	public StripedDispatcher() {
+		this(Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY);
+	}
+
+	/**
+	 * @param workers       Number of stripes (and worker threads)
+	 * @param queueCapacity Maximum number of queued messages per stripe
+	 */
+	public StripedDispatcher(int workers, int queueCapacity) {
+		if (workers < 1) {
+			throw new IllegalArgumentException("Number of workers must be at least 1");
+		}
+		if (queueCapacity < 1) {
+			throw new IllegalArgumentException("Queue capacity must be at least 1");
+		}
+		this.queueCapacity = queueCapacity;
+		this.stripes = new ThreadPoolExecutor[workers];
+
+		final int dispatcherId = DISPATCHER_COUNT.incrementAndGet();
+		for (int i = 0; i < workers; i++) {
+			final String threadName = "wiotp-dispatch-" + dispatcherId + "-" + i;
+			ThreadFactory threadFactory = new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, threadName);
+					t.setDaemon(true);
+					return t;
+				}
+			};
+			stripes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(queueCapacity), threadFactory, new BlockWhenFull());
+		}
+	}
+
+	/**
+	 * Queue work for a device. Blocks while the device's stripe is full.
+	 *
+	 * @param typeId   The device type
+	 * @param deviceId The device id
+	 * @param task     The work to run
+	 */
+	public void dispatch(String typeId, String deviceId, Runnable task) {
+		stripes[stripeFor(typeId, deviceId)].execute(new GuardedTask(task));
+	}
+
+	/**
+	 * @param typeId   The device type
+	 * @param deviceId The device id
+	 * @return The index of the stripe that processes work for the device
+	 */
+	public int stripeFor(String typeId, String deviceId) {
+		return DeviceHash.bucketFor(typeId, deviceId, stripes.length);
+	}
+
+	public int getStripeCount() {
+		return stripes.length;
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/**
+	 * @param stripe Index of the stripe
+	 * @return Number of messages waiting to be processed by the stripe
+	 */
+	public int getQueueDepth(int stripe) {
+		return stripes[stripe].getQueue().size();
+	}
+
+	/**
+	 * @return Number of messages waiting to be processed by each stripe
+	 */
+	public int[] getQueueDepths() {
+		int[] depths = new int[stripes.length];
+		for (int i = 0; i < stripes.length; i++) {
+			depths[i] = stripes[i].getQueue().size();
+		}
+		return depths;
+	}
+
+	/**
+	 * @return Total number of messages processed by all stripes
+	 */
+	public long getCompletedCount() {
+		long completed = 0;
+		for (ThreadPoolExecutor stripe : stripes) {
+			completed += stripe.getCompletedTaskCount();
+		}
+		return completed;
+	}
+
+	/**
+	 * Stop accepting work and wait for queued work to finish
+	 *
+	 * @param timeout How long to wait
+	 * @param unit    Unit of the timeout
+	 * @return Whether all queued work finished before the timeout
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+		for (ThreadPoolExecutor stripe : stripes) {
+			stripe.shutdown();
+		}
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (ThreadPoolExecutor stripe : stripes) {
+			if (!stripe.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * An exception thrown by a user callback must not kill the stripe's worker
+	 */
+	private static class GuardedTask implements Runnable {
+		private final Runnable task;
+
+		GuardedTask(Runnable task) {
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				LOG.warn("Dispatched message processing failed", e);
+			}
+		}
+	}
+
+	private static class BlockWhenFull implements RejectedExecutionHandler {
+		@Override
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+			if (executor.isShutdown()) {
+				throw new RejectedExecutionException("Dispatcher has been shut down");
+			}
+			try {
+				executor.getQueue().put(r);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RejectedExecutionException("Interrupted while waiting for space in the dispatch queue", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.app;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The outcome of subscribing to many topic filters at once, sent as several
+ * SUBSCRIBE packets that are all in flight together. <br>
+ *
+ * The report is updated as acknowledgements arrive, until it is finished.
+ */
+public class SubscribeReport {
+	// MQTT 3.1.1 return code for a topic filter the server refused
+	private static final int FAILURE = 0x80;
+
+	private final int topicCount;
+	private final int packetCount;
+	private final long start;
+	private int packetsDone = 0;
+	private int subscribed = 0;
+	private final List<String> failed = new ArrayList<String>();
+	private long elapsed = 0;
+
+	SubscribeReport(int topicCount, int packetCount) {
+		this.topicCount = topicCount;
+		this.packetCount = packetCount;
+		this.start = System.nanoTime();
+	}
+
+	/*
+	 * Returns whether this was the last outstanding packet
+	 */
+	synchronized boolean acknowledged(String[] topics, int[] grantedQos) {
+		for (int i = 0; i < topics.length; i++) {
+			if (grantedQos != null && i < grantedQos.length && grantedQos[i] == FAILURE) {
+				failed.add(topics[i]);
+			} else {
+				subscribed++;
+			}
+		}
+		return packetDone();
+	}
+
+	synchronized boolean failed(String[] topics) {
+		Collections.addAll(failed, topics);
+		return packetDone();
+	}
+
+	private boolean packetDone() {
+		packetsDone++;
+		if (packetsDone == packetCount) {
+			elapsed = System.nanoTime() - start;
+			return true;
+		}
+		return false;
+	}
+
+	public int getTopicCount() {
+		return topicCount;
+	}
+
+	/**
+	 * @return Number of SUBSCRIBE packets the topic filters were sent in
+	 */
+	public int getPacketCount() {
+		return packetCount;
+	}
+
+	public synchronized int getSubscribedCount() {
+		return subscribed;
+	}
+
+	/**
+	 * @return Topic filters that the server refused, or whose packet could not be
+	 *         sent
+	 */
+	public synchronized List<String> getFailedTopics() {
+		return Collections.unmodifiableList(new ArrayList<String>(failed));
+	}
+
+	/**
+	 * @return Whether every packet has been acknowledged or has failed
+	 */
+	public synchronized boolean isFinished() {
+		return packetsDone == packetCount;
+	}
+
+	/**
+	 * @return Whether every topic filter was subscribed
+	 */
+	public synchronized boolean isComplete() {
+		return subscribed == topicCount;
+	}
+
+	/**
+	 * @return Time from sending the first packet until the last was acknowledged
+	 */
+	public synchronized long getElapsedMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(elapsed);
+	}
+
+	public synchronized String toString() {
+		return "SubscribeReport [topics=" + topicCount + ", packets=" + packetCount + ", subscribed=" + subscribed
+				+ ", failed=" + failed.size() + ", elapsed=" + getElapsedMillis() + "ms]";
+	}
+}
@@ -0,0 +1,36 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.app.callbacks;
+
+import com.ibm.wiotp.sdk.app.messages.StatusView;
+
+/**
+ * Callbacks for processing status messages through a reused
+ * {@link StatusView}, rather than a new status object for each message. The
+ * view is only valid until the callback returns; copy out anything that needs
+ * to be kept.
+ */
+public interface StatusViewCallback {
+
+	/**
+	 * This method processes the application status
+	 * 
+	 * @param status a view of the application status
+	 */
+	public void processApplicationStatus(StatusView status);
+
+	/**
+	 * This method processes device status
+	 * 
+	 * @param status a view of the device status
+	 */
+	public void processDeviceStatus(StatusView status);
+}
@@ -7,12 +7,13 @@ import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.util.Map;
 
-import javax.net.ssl.SSLContext;
-
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.yaml.snakeyaml.Yaml;
 
 import com.ibm.wiotp.sdk.AbstractConfig;
+import com.ibm.wiotp.sdk.BackpressurePolicy;
+import com.ibm.wiotp.sdk.TlsContextCache;
+import com.ibm.wiotp.sdk.persistence.PersistenceType;
 
 public class ApplicationConfig implements AbstractConfig {
 
@@ -20,7 +21,7 @@ public class ApplicationConfig implements AbstractConfig {
 	 * identity: appId: myApp auth: key: a-23gh56-sdsdajhjnee token: Ab$76s)asj8_s5
 	 * options: domain: internetofthings.ibmcloud.com logLevel:
 	 * error|warning|info|debug mqtt: port: 8883 transport: tcp cleanStart: false
-	 * sessionExpiry: 3600 keepAlive: 60 sharedSubscription: false caFile:
+	 * sessionExpiry: 3600 keepAlive: 60 version: 5 sharedSubscription: false caFile:
 	 * /path/to/certificateAuthorityFile.pem http: verify: true
 	 */
 
@@ -76,13 +77,12 @@ public class ApplicationConfig implements AbstractConfig {
 
 		connectOptions.setCleanSession(this.options.mqtt.cleanStart);
 		connectOptions.setKeepAliveInterval(this.options.mqtt.keepAlive);
-		connectOptions.setMaxInflight(DEFAULT_MAX_INFLIGHT_MESSAGES);
-		connectOptions.setAutomaticReconnect(true);
-
-		SSLContext sslContext = SSLContext.getInstance("TLSv1.2");
-		sslContext.init(null, null, null);
+		connectOptions.setMaxInflight(getMaxInflight());
+		// The client reconnects itself, with jitter
+		connectOptions.setAutomaticReconnect(false);
 
-		connectOptions.setSocketFactory(sslContext.getSocketFactory());
+		// Shared, so that reconnects resume the TLS session
+		connectOptions.setSocketFactory(TlsContextCache.getSocketFactory(options.mqtt.caFile));
 
 		return connectOptions;
 	}
@@ -128,6 +128,51 @@ public class ApplicationConfig implements AbstractConfig {
 		return options.mqtt.cleanStart;
 	}
 
+	@Override
+	public int getMaxInflight() {
+		return options.mqtt.maxInflight;
+	}
+
+	@Override
+	public int getPublishQueueSize() {
+		return options.mqtt.publishQueueSize;
+	}
+
+	@Override
+	public BackpressurePolicy getBackpressurePolicy() {
+		return options.mqtt.backpressure;
+	}
+
+	@Override
+	public PersistenceType getPersistenceType() {
+		return options.mqtt.persistence;
+	}
+
+	@Override
+	public String getPersistenceDirectory() {
+		return options.mqtt.persistenceDir;
+	}
+
+	@Override
+	public int getMqttVersion() {
+		return options.mqtt.version;
+	}
+
+	@Override
+	public int getSessionExpiry() {
+		return options.mqtt.sessionExpiry;
+	}
+
+	@Override
+	public int getReceiveMaximum() {
+		return options.mqtt.receiveMaximum;
+	}
+
+	@Override
+	public int getTopicAliasMaximum() {
+		return options.mqtt.topicAliasMaximum;
+	}
+
 	@Override
 	public String getMqttUsername() {
 		return auth.key;
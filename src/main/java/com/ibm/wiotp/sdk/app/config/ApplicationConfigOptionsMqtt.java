@@ -2,14 +2,26 @@ package com.ibm.wiotp.sdk.app.config;
 
 import java.util.Map;
 
+import com.ibm.wiotp.sdk.AbstractConfig;
+import com.ibm.wiotp.sdk.BackpressurePolicy;
+import com.ibm.wiotp.sdk.persistence.PersistenceType;
+
 public class ApplicationConfigOptionsMqtt {
 	public int port;
 	public String transport = "tcp"; // or "websockets"
-	public String caFile; // Not sure we use this atm
+	public String caFile; // PEM file of the CAs to trust, or null for the JVM's
 	public boolean cleanStart;
 	public int sessionExpiry;
 	public int keepAlive;
 	public boolean sharedSubscription;
+	public int maxInflight;
+	public int publishQueueSize;
+	public BackpressurePolicy backpressure;
+	public PersistenceType persistence;
+	public String persistenceDir;
+	public int version;
+	public int receiveMaximum;
+	public int topicAliasMaximum;
 
 	public ApplicationConfigOptionsMqtt() {
 		port = 8883;
@@ -19,6 +31,14 @@ public class ApplicationConfigOptionsMqtt {
 		sessionExpiry = 60;
 		keepAlive = 60;
 		sharedSubscription = false;
+		maxInflight = AbstractConfig.DEFAULT_MAX_INFLIGHT_MESSAGES;
+		publishQueueSize = AbstractConfig.DEFAULT_PUBLISH_QUEUE_SIZE;
+		backpressure = BackpressurePolicy.FAIL;
+		persistence = PersistenceType.MEMORY;
+		persistenceDir = null;
+		version = AbstractConfig.MQTT_VERSION_3_1_1;
+		receiveMaximum = 0;
+		topicAliasMaximum = 0;
 	}
 
 	public ApplicationConfigOptionsMqtt(int port, String transport, String caFile, boolean cleanStart,
@@ -30,6 +50,38 @@ public class ApplicationConfigOptionsMqtt {
 		this.sessionExpiry = sessionExpiry;
 		this.keepAlive = keepAlive;
 		this.sharedSubscription = sharedSubscription;
+		this.maxInflight = AbstractConfig.DEFAULT_MAX_INFLIGHT_MESSAGES;
+		this.publishQueueSize = AbstractConfig.DEFAULT_PUBLISH_QUEUE_SIZE;
+		this.backpressure = BackpressurePolicy.FAIL;
+		this.persistence = PersistenceType.MEMORY;
+		this.persistenceDir = null;
+		this.version = AbstractConfig.MQTT_VERSION_3_1_1;
+		this.receiveMaximum = 0;
+		this.topicAliasMaximum = 0;
+	}
+
+	/**
+	 * Copy another set of options, so the copy can be changed without affecting
+	 * the original
+	 * 
+	 * @param other The options to copy
+	 */
+	public ApplicationConfigOptionsMqtt(ApplicationConfigOptionsMqtt other) {
+		this.port = other.port;
+		this.transport = other.transport;
+		this.caFile = other.caFile;
+		this.cleanStart = other.cleanStart;
+		this.sessionExpiry = other.sessionExpiry;
+		this.keepAlive = other.keepAlive;
+		this.sharedSubscription = other.sharedSubscription;
+		this.maxInflight = other.maxInflight;
+		this.publishQueueSize = other.publishQueueSize;
+		this.backpressure = other.backpressure;
+		this.persistence = other.persistence;
+		this.persistenceDir = other.persistenceDir;
+		this.version = other.version;
+		this.receiveMaximum = other.receiveMaximum;
+		this.topicAliasMaximum = other.topicAliasMaximum;
 	}
 
 	public static ApplicationConfigOptionsMqtt generateFromEnv() {
@@ -57,6 +109,30 @@ public class ApplicationConfigOptionsMqtt {
 		if (System.getenv("WIOTP_OPTIONS_MQTT_SHAREDSUBSCRIPTION") != null)
 			mqtt.sharedSubscription = Boolean.parseBoolean(System.getenv("WIOTP_OPTIONS_MQTT_SHAREDSUBSCRIPTION"));
 
+		if (System.getenv("WIOTP_OPTIONS_MQTT_MAXINFLIGHT") != null)
+			mqtt.maxInflight = Integer.parseInt(System.getenv("WIOTP_OPTIONS_MQTT_MAXINFLIGHT"));
+
+		if (System.getenv("WIOTP_OPTIONS_MQTT_PUBLISHQUEUESIZE") != null)
+			mqtt.publishQueueSize = Integer.parseInt(System.getenv("WIOTP_OPTIONS_MQTT_PUBLISHQUEUESIZE"));
+
+		if (System.getenv("WIOTP_OPTIONS_MQTT_BACKPRESSURE") != null)
+			mqtt.backpressure = BackpressurePolicy.parse(System.getenv("WIOTP_OPTIONS_MQTT_BACKPRESSURE"));
+
+		if (System.getenv("WIOTP_OPTIONS_MQTT_PERSISTENCE") != null)
+			mqtt.persistence = PersistenceType.parse(System.getenv("WIOTP_OPTIONS_MQTT_PERSISTENCE"));
+
+		if (System.getenv("WIOTP_OPTIONS_MQTT_PERSISTENCEDIR") != null)
+			mqtt.persistenceDir = System.getenv("WIOTP_OPTIONS_MQTT_PERSISTENCEDIR");
+
+		if (System.getenv("WIOTP_OPTIONS_MQTT_VERSION") != null)
+			mqtt.version = Integer.parseInt(System.getenv("WIOTP_OPTIONS_MQTT_VERSION"));
+
+		if (System.getenv("WIOTP_OPTIONS_MQTT_RECEIVEMAXIMUM") != null)
+			mqtt.receiveMaximum = Integer.parseInt(System.getenv("WIOTP_OPTIONS_MQTT_RECEIVEMAXIMUM"));
+
+		if (System.getenv("WIOTP_OPTIONS_MQTT_TOPICALIASMAXIMUM") != null)
+			mqtt.topicAliasMaximum = Integer.parseInt(System.getenv("WIOTP_OPTIONS_MQTT_TOPICALIASMAXIMUM"));
+
 		return mqtt;
 	}
 
@@ -85,6 +161,30 @@ public class ApplicationConfigOptionsMqtt {
 		if (yamlMqtt.get("sharedSubscription") != null)
 			mqtt.sharedSubscription = Boolean.parseBoolean((String) yamlMqtt.get("sharedSubscription"));
 
+		if (yamlMqtt.get("maxInflight") != null)
+			mqtt.maxInflight = Integer.parseInt((String) yamlMqtt.get("maxInflight"));
+
+		if (yamlMqtt.get("publishQueueSize") != null)
+			mqtt.publishQueueSize = Integer.parseInt((String) yamlMqtt.get("publishQueueSize"));
+
+		if (yamlMqtt.get("backpressure") != null)
+			mqtt.backpressure = BackpressurePolicy.parse((String) yamlMqtt.get("backpressure"));
+
+		if (yamlMqtt.get("persistence") != null)
+			mqtt.persistence = PersistenceType.parse((String) yamlMqtt.get("persistence"));
+
+		if (yamlMqtt.get("persistenceDir") != null)
+			mqtt.persistenceDir = (String) yamlMqtt.get("persistenceDir");
+
+		if (yamlMqtt.get("version") != null)
+			mqtt.version = Integer.parseInt((String) yamlMqtt.get("version"));
+
+		if (yamlMqtt.get("receiveMaximum") != null)
+			mqtt.receiveMaximum = Integer.parseInt((String) yamlMqtt.get("receiveMaximum"));
+
+		if (yamlMqtt.get("topicAliasMaximum") != null)
+			mqtt.topicAliasMaximum = Integer.parseInt((String) yamlMqtt.get("topicAliasMaximum"));
+
 		return mqtt;
 	}
 }
\ No newline at end of file
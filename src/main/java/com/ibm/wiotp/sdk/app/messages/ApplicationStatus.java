@@ -36,6 +36,17 @@ public class ApplicationStatus extends Status {
 		this.id = id;
 	}
 
+	/**
+	 * Copy an application status out of a view, so it can be kept after the view
+	 * moves on to the next message
+	 * 
+	 * @param view A view wrapped around an application status message
+	 */
+	public ApplicationStatus(StatusView view) {
+		super(view);
+		this.id = view.getAppId();
+	}
+
 	public String getId() {
 		return id;
 	}
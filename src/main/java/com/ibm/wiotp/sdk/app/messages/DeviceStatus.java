@@ -45,4 +45,16 @@ public class DeviceStatus extends Status {
 		this.deviceId = deviceId;
 	}
 
+	/**
+	 * Copy a device status out of a view, so it can be kept after the view moves
+	 * on to the next message
+	 * 
+	 * @param view A view wrapped around a device status message
+	 */
+	public DeviceStatus(StatusView view) {
+		super(view);
+		this.deviceType = view.getTypeId();
+		this.deviceId = view.getDeviceId();
+	}
+
 }
@@ -13,6 +13,7 @@ package com.ibm.wiotp.sdk.app.messages;
 import org.joda.time.DateTime;
 
 import com.ibm.wiotp.sdk.MessageInterface;
+import com.ibm.wiotp.sdk.codecs.LazyMessage;
 
 /**
  * This class inherits from Message and denotes the device event <br>
@@ -84,4 +85,18 @@ public class Event<T> implements EventInterface<T> {
 		return message.getTimestamp();
 	}
 
+	/**
+	 * Returns the raw payload, without decoding it. Forwarding the payload this way
+	 * avoids the cost of decoding when the data itself is not needed.
+	 * 
+	 * @return The raw payload, or null if the event was not created from a
+	 *         received MQTT message
+	 */
+	@SuppressWarnings("rawtypes")
+	public byte[] getPayload() {
+		if (message instanceof LazyMessage) {
+			return ((LazyMessage) message).getPayload();
+		}
+		return null;
+	}
 }
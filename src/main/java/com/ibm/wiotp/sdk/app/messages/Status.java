@@ -11,21 +11,28 @@
 package com.ibm.wiotp.sdk.app.messages;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
 
-import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.ibm.wiotp.sdk.exceptions.MalformedMessageException;
 
 /**
  * This is an abstract class which is inherited by application status and device
- * status
+ * status <br>
  *
+ * The payload is parsed in a single pass with a {@link StatusView}. The time,
+ * and the payload as a String, are only created when first requested.
  */
 public abstract class Status {
+	/**
+	 * @deprecated Statuses are no longer parsed into a JsonObject
+	 */
+	@Deprecated
 	protected final static JsonParser JSON_PARSER = new JsonParser();
 	protected final static DateTimeFormatter DT_PARSER = ISODateTimeFormat.dateTimeParser();
 
@@ -37,7 +44,9 @@ public abstract class Status {
 	private String action;
 	private String connectTime;
 	private int port = 0;
-	private DateTime time;
+	private final String timeText;
+	private final long receivedAt;
+	private volatile DateTime time;
 
 	// Additional "Disconnect" status properties
 	private int writeMsg = 0;
@@ -46,7 +55,7 @@ public abstract class Status {
 	private int writeBytes = 0;
 	private String reason;
 
-	private String payload;
+	private final byte[] payload;
 
 	public String getClientAddr() {
 		return clientAddr;
@@ -76,8 +85,17 @@ public abstract class Status {
 		return port;
 	}
 
+	/**
+	 * @return The time of the status, parsed on first use, or the time it was
+	 *         received if it has none
+	 */
 	public DateTime getTime() {
-		return time;
+		DateTime result = time;
+		if (result == null) {
+			result = timeText != null ? DT_PARSER.parseDateTime(timeText) : new DateTime(receivedAt);
+			time = result;
+		}
+		return result;
 	}
 
 	public int getWriteMsg() {
@@ -105,64 +123,39 @@ public abstract class Status {
 	 * constructor
 	 * 
 	 * @param msg The MQTT message
-	 * @throws UnsupportedEncodingException Failure when the Format is not UTF-8
+	 * @throws MalformedMessageException If the payload is not a JSON object
 	 */
 	public Status(MqttMessage msg) throws UnsupportedEncodingException {
-		this.payload = new String(msg.getPayload(), "UTF8");
-
-		JsonObject payloadJson = JSON_PARSER.parse(payload).getAsJsonObject();
-
-		// Common attributes
-		if (payloadJson.has("ClientAddr"))
-			clientAddr = payloadJson.get("ClientAddr").getAsString();
-		else
-			clientAddr = new String();
-		if (payloadJson.has("Protocol"))
-			protocol = payloadJson.get("Protocol").getAsString();
-		else
-			protocol = new String();
-		if (payloadJson.has("ClientID"))
-			clientId = payloadJson.get("ClientID").getAsString();
-		else
-			clientId = new String();
-		if (payloadJson.has("Time"))
-			time = DT_PARSER.parseDateTime(payloadJson.get("Time").getAsString());
-		else
-			time = new DateTime();
-		if (payloadJson.has("Action"))
-			action = payloadJson.get("Action").getAsString();
-		else
-			action = new String();
-		if (payloadJson.has("Port"))
-			port = payloadJson.get("Port").getAsInt();
-
-		if (action.equals("Disconnect")) {
-			if (payloadJson.has("User"))
-				user = payloadJson.get("User").getAsString();
-			else
-				user = new String();
-			if (payloadJson.has("ConnectTime"))
-				connectTime = payloadJson.get("ConnectTime").getAsString();
-			else
-				connectTime = new String();
-			if (payloadJson.has("WriteMsg"))
-				writeMsg = payloadJson.get("WriteMsg").getAsInt();
-			if (payloadJson.has("ReadMsg"))
-				readMsg = payloadJson.get("ReadMsg").getAsInt();
-			if (payloadJson.has("ReadBytes"))
-				readBytes = payloadJson.get("ReadBytes").getAsInt();
-			if (payloadJson.has("WriteBytes"))
-				writeBytes = payloadJson.get("WriteBytes").getAsInt();
-			if (payloadJson.has("Reason"))
-				reason = payloadJson.get("Reason").getAsString();
-			else
-				reason = new String();
-		}
+		this(new StatusView().wrap(msg.getPayload()));
+	}
 
+	/**
+	 * Copy a status out of a view
+	 * 
+	 * @param view A view of the status message
+	 */
+	protected Status(StatusView view) {
+		this.payload = view.getPayload();
+		this.clientAddr = view.getClientAddr();
+		this.protocol = view.getProtocol();
+		this.clientId = view.getClientId();
+		this.action = view.getAction();
+		this.port = view.getPort();
+		this.timeText = view.getTimeText();
+		this.receivedAt = view.getReceivedAt();
+
+		// Null or 0 unless this is a disconnect
+		this.user = view.getUser();
+		this.connectTime = view.getConnectTime();
+		this.writeMsg = view.getWriteMsg();
+		this.readMsg = view.getReadMsg();
+		this.readBytes = view.getReadBytes();
+		this.writeBytes = view.getWriteBytes();
+		this.reason = view.getReason();
 	}
 
 	public String getPayload() {
-		return payload;
+		return new String(payload, StandardCharsets.UTF_8);
 	}
 
 	/**
@@ -172,9 +165,9 @@ public abstract class Status {
 	 */
 	public String toString() {
 		if (action.equals("Disconnect")) {
-			return "Status [" + time.toString() + "] " + clientId + ":" + action + " (" + reason + ")";
+			return "Status [" + getTime().toString() + "] " + clientId + ":" + action + " (" + reason + ")";
 		} else {
-			return "Status [" + time.toString() + "] " + clientId + ":" + action;
+			return "Status [" + getTime().toString() + "] " + clientId + ":" + action;
 		}
 	}
 
@@ -0,0 +1,486 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.app.messages;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+import com.ibm.wiotp.sdk.exceptions.MalformedMessageException;
+
+/**
+ * A reusable, read only view of a device or application status message. <br>
+ *
+ * {@link #wrap(byte[])} scans the payload once, recording only where each
+ * known property is, so a view can be pointed at message after message without
+ * allocating. Properties are decoded from the payload bytes when they are read,
+ * and the time only when {@link #getTime()} is called. A view, and the values
+ * it returns, are only valid until it is wrapped around the next message; use
+ * {@link DeviceStatus} or {@link ApplicationStatus} to keep a status. <br>
+ *
+ * As with {@link Status}, missing text properties read as empty strings and
+ * missing numbers as 0, and the properties only reported on disconnect are
+ * null or 0 for other actions.
+ */
+public class StatusView {
+	private static final DateTimeFormatter DT_PARSER = ISODateTimeFormat.dateTimeParser();
+
+	private static final int CLIENT_ADDR = 0;
+	private static final int PROTOCOL = 1;
+	private static final int CLIENT_ID = 2;
+	private static final int USER = 3;
+	private static final int ACTION = 4;
+	private static final int CONNECT_TIME = 5;
+	private static final int PORT = 6;
+	private static final int TIME = 7;
+	private static final int WRITE_MSG = 8;
+	private static final int READ_MSG = 9;
+	private static final int READ_BYTES = 10;
+	private static final int WRITE_BYTES = 11;
+	private static final int REASON = 12;
+
+	private static final byte[][] NAMES = ascii("ClientAddr", "Protocol", "ClientID", "User", "Action",
+			"ConnectTime", "Port", "Time", "WriteMsg", "ReadMsg", "ReadBytes", "WriteBytes", "Reason");
+	private static final byte[] DISCONNECT = ascii("Disconnect")[0];
+
+	private byte[] payload;
+	private final int[] start = new int[NAMES.length];
+	private final int[] end = new int[NAMES.length];
+	// Bit per property: the value is a string containing escapes
+	private int escaped;
+	private int position;
+	private long receivedAt;
+	private boolean disconnect;
+
+	private String typeId;
+	private String deviceId;
+	private String appId;
+
+	/**
+	 * Point the view at a device status message
+	 *
+	 * @param typeId   The device type
+	 * @param deviceId The device id
+	 * @param payload  The payload of the status message
+	 * @return This view
+	 * @throws MalformedMessageException If the payload is not a JSON object
+	 */
+	public StatusView wrapDevice(String typeId, String deviceId, byte[] payload) throws MalformedMessageException {
+		wrap(payload);
+		this.typeId = typeId;
+		this.deviceId = deviceId;
+		return this;
+	}
+
+	/**
+	 * Point the view at an application status message
+	 *
+	 * @param appId   The application id
+	 * @param payload The payload of the status message
+	 * @return This view
+	 * @throws MalformedMessageException If the payload is not a JSON object
+	 */
+	public StatusView wrapApplication(String appId, byte[] payload) throws MalformedMessageException {
+		wrap(payload);
+		this.appId = appId;
+		return this;
+	}
+
+	/**
+	 * Point the view at a status message
+	 *
+	 * @param payload The payload of the status message
+	 * @return This view
+	 * @throws MalformedMessageException If the payload is not a JSON object
+	 */
+	public StatusView wrap(byte[] payload) throws MalformedMessageException {
+		this.payload = payload;
+		this.position = 0;
+		this.escaped = 0;
+		this.receivedAt = System.currentTimeMillis();
+		this.typeId = null;
+		this.deviceId = null;
+		this.appId = null;
+		for (int i = 0; i < start.length; i++) {
+			start[i] = -1;
+		}
+		try {
+			scan();
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw malformed("unexpected end of payload");
+		}
+
+		disconnect = matches(ACTION, DISCONNECT);
+		if (!disconnect) {
+			// Only reported on disconnect
+			start[USER] = start[CONNECT_TIME] = start[REASON] = -1;
+			start[WRITE_MSG] = start[READ_MSG] = start[READ_BYTES] = start[WRITE_BYTES] = -1;
+		}
+		return this;
+	}
+
+	/*
+	 * Single pass over the top level object, recording the extent of the value of
+	 * each known property and skipping everything else
+	 */
+	private void scan() throws MalformedMessageException {
+		skipWhitespace();
+		expect('{');
+		skipWhitespace();
+		if (payload[position] == '}') {
+			position++;
+		} else {
+			while (true) {
+				skipWhitespace();
+				expect('"');
+				int nameStart = position;
+				boolean nameEscaped = skipString();
+				int property = nameEscaped ? -1 : property(nameStart, position - 1);
+				skipWhitespace();
+				expect(':');
+				skipWhitespace();
+
+				int valueStart = position;
+				byte b = payload[position];
+				if (b == '"') {
+					position++;
+					boolean valueEscaped = skipString();
+					if (property >= 0) {
+						start[property] = valueStart + 1;
+						end[property] = position - 1;
+						if (valueEscaped) {
+							escaped |= 1 << property;
+						}
+					}
+				} else if (b == '{' || b == '[') {
+					skipNested();
+				} else {
+					skipLiteral();
+					// null is treated as missing
+					if (property >= 0 && !(position - valueStart == 4 && b == 'n')) {
+						start[property] = valueStart;
+						end[property] = position;
+					}
+				}
+
+				skipWhitespace();
+				b = payload[position++];
+				if (b == '}') {
+					break;
+				} else if (b != ',') {
+					throw malformed("expected ',' or '}' at offset " + (position - 1));
+				}
+			}
+		}
+		// Only whitespace may follow the object
+		while (position < payload.length) {
+			if (!isWhitespace(payload[position++])) {
+				throw malformed("trailing data after the document");
+			}
+		}
+	}
+
+	private int property(int from, int to) {
+		int length = to - from;
+		for (int i = 0; i < NAMES.length; i++) {
+			byte[] name = NAMES[i];
+			if (name.length == length) {
+				int j = 0;
+				while (j < length && payload[from + j] == name[j]) {
+					j++;
+				}
+				if (j == length) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * Skip to just after the closing quote of a string whose opening quote has
+	 * been read, returning whether it contains escapes
+	 */
+	private boolean skipString() {
+		boolean hasEscape = false;
+		while (true) {
+			byte b = payload[position++];
+			if (b == '"') {
+				return hasEscape;
+			} else if (b == '\\') {
+				hasEscape = true;
+				position++;
+			}
+		}
+	}
+
+	private void skipNested() throws MalformedMessageException {
+		int depth = 0;
+		do {
+			byte b = payload[position++];
+			if (b == '"') {
+				skipString();
+			} else if (b == '{' || b == '[') {
+				depth++;
+			} else if (b == '}' || b == ']') {
+				depth--;
+			}
+		} while (depth > 0);
+	}
+
+	private void skipLiteral() throws MalformedMessageException {
+		int from = position;
+		while (position < payload.length) {
+			byte b = payload[position];
+			if (b == ',' || b == '}' || isWhitespace(b)) {
+				break;
+			}
+			position++;
+		}
+		if (position == from) {
+			throw malformed("missing value at offset " + from);
+		}
+	}
+
+	private void skipWhitespace() {
+		while (isWhitespace(payload[position])) {
+			position++;
+		}
+	}
+
+	private void expect(char c) throws MalformedMessageException {
+		if (payload[position] != c) {
+			throw malformed("expected '" + c + "' at offset " + position);
+		}
+		position++;
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+	}
+
+	private static MalformedMessageException malformed(String reason) {
+		return new MalformedMessageException("Unable to parse status: " + reason);
+	}
+
+	/*
+	 * The text of a property, an empty string if it is missing, or null if it is
+	 * only reported on disconnect and this is not one
+	 */
+	private String text(int property) {
+		if (start[property] < 0) {
+			return !disconnect && (property == USER || property == CONNECT_TIME || property == REASON) ? null : "";
+		}
+		String raw = new String(payload, start[property], end[property] - start[property], StandardCharsets.UTF_8);
+		return (escaped & (1 << property)) == 0 ? raw : unescape(raw);
+	}
+
+	private int number(int property) {
+		if (start[property] < 0) {
+			return 0;
+		}
+		long value = 0;
+		boolean negative = payload[start[property]] == '-';
+		int i = negative ? start[property] + 1 : start[property];
+		if (i < end[property]) {
+			for (; i < end[property]; i++) {
+				int digit = payload[i] - '0';
+				if (digit < 0 || digit > 9 || value > Long.MAX_VALUE / 10) {
+					break;
+				}
+				value = value * 10 + digit;
+			}
+			if (i == end[property]) {
+				return (int) (negative ? -value : value);
+			}
+		}
+		// Fractions, exponents and very large values, converted as Gson's getAsInt
+		try {
+			return new BigDecimal(text(property)).intValue();
+		} catch (NumberFormatException e) {
+			throw malformed(new String(NAMES[property], StandardCharsets.US_ASCII) + " is not a number");
+		}
+	}
+
+	private boolean matches(int property, byte[] value) {
+		if (start[property] < 0 || end[property] - start[property] != value.length) {
+			return false;
+		}
+		for (int i = 0; i < value.length; i++) {
+			if (payload[start[property] + i] != value[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * The unparsed time, or null if the status has none
+	 */
+	String getTimeText() {
+		return start[TIME] < 0 ? null : text(TIME);
+	}
+
+	long getReceivedAt() {
+		return receivedAt;
+	}
+
+	public boolean isDisconnect() {
+		return disconnect;
+	}
+
+	public String getClientAddr() {
+		return text(CLIENT_ADDR);
+	}
+
+	public String getProtocol() {
+		return text(PROTOCOL);
+	}
+
+	public String getClientId() {
+		return text(CLIENT_ID);
+	}
+
+	public String getUser() {
+		return text(USER);
+	}
+
+	public String getAction() {
+		return text(ACTION);
+	}
+
+	public String getConnectTime() {
+		return text(CONNECT_TIME);
+	}
+
+	public int getPort() {
+		return number(PORT);
+	}
+
+	/**
+	 * @return The time of the status, parsed on each call, or the time the view
+	 *         was wrapped around the message if it has none
+	 */
+	public DateTime getTime() {
+		if (start[TIME] < 0) {
+			return new DateTime(receivedAt);
+		}
+		return DT_PARSER.parseDateTime(text(TIME));
+	}
+
+	public int getWriteMsg() {
+		return number(WRITE_MSG);
+	}
+
+	public int getReadMsg() {
+		return number(READ_MSG);
+	}
+
+	public int getReadBytes() {
+		return number(READ_BYTES);
+	}
+
+	public int getWriteBytes() {
+		return number(WRITE_BYTES);
+	}
+
+	public String getReason() {
+		return text(REASON);
+	}
+
+	/**
+	 * @return The device type, for a device status
+	 */
+	public String getTypeId() {
+		return typeId;
+	}
+
+	/**
+	 * @return The device id, for a device status
+	 */
+	public String getDeviceId() {
+		return deviceId;
+	}
+
+	/**
+	 * @return The application id, for an application status
+	 */
+	public String getAppId() {
+		return appId;
+	}
+
+	/**
+	 * @return The payload the view is wrapped around, which is not copied
+	 */
+	public byte[] getPayload() {
+		return payload;
+	}
+
+	public String toString() {
+		if (disconnect) {
+			return "Status [" + getTime() + "] " + getClientId() + ":" + getAction() + " (" + getReason() + ")";
+		} else {
+			return "Status [" + getTime() + "] " + getClientId() + ":" + getAction();
+		}
+	}
+
+	private static String unescape(String raw) {
+		StringBuilder text = new StringBuilder(raw.length());
+		for (int i = 0; i < raw.length(); i++) {
+			char c = raw.charAt(i);
+			if (c != '\\') {
+				text.append(c);
+				continue;
+			}
+			c = raw.charAt(++i);
+			switch (c) {
+			case 'b':
+				text.append('\b');
+				break;
+			case 'f':
+				text.append('\f');
+				break;
+			case 'n':
+				text.append('\n');
+				break;
+			case 'r':
+				text.append('\r');
+				break;
+			case 't':
+				text.append('\t');
+				break;
+			case 'u':
+				try {
+					text.append((char) Integer.parseInt(raw.substring(i + 1, i + 5), 16));
+				} catch (NumberFormatException | IndexOutOfBoundsException e) {
+					throw malformed("invalid escape \\u" + raw.substring(i + 1, Math.min(i + 5, raw.length())));
+				}
+				i += 4;
+				break;
+			default:
+				// \" \\ \/
+				text.append(c);
+			}
+		}
+		return text.toString();
+	}
+
+	private static byte[][] ascii(String... names) {
+		byte[][] bytes = new byte[names.length][];
+		for (int i = 0; i < names.length; i++) {
+			bytes[i] = names[i].getBytes(StandardCharsets.US_ASCII);
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,470 @@
+package com.ibm.wiotp.sdk.codecs;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.ibm.wiotp.sdk.exceptions.MalformedMessageException;
+
+/**
+ * Converts between Gson JSON trees and CBOR (RFC 7049). <br>
+ *
+ * Integers are written in the shortest CBOR integer form and other numbers as
+ * single precision floats when that is exact, otherwise double precision, so
+ * values read back compare equal to those JSON would produce. Byte strings in
+ * received documents are read as base64url text, as RFC 7049 suggests for
+ * conversion to JSON, and tags are ignored.
+ */
+class Cbor {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int MAJOR_UNSIGNED = 0;
+	private static final int MAJOR_NEGATIVE = 1;
+	private static final int MAJOR_BYTES = 2;
+	private static final int MAJOR_TEXT = 3;
+	private static final int MAJOR_ARRAY = 4;
+	private static final int MAJOR_MAP = 5;
+	private static final int MAJOR_TAG = 6;
+
+	private static final int FALSE = 0xF4;
+	private static final int TRUE = 0xF5;
+	private static final int NULL = 0xF6;
+	private static final int FLOAT16 = 0xF9;
+	private static final int FLOAT32 = 0xFA;
+	private static final int FLOAT64 = 0xFB;
+	private static final int BREAK = 0xFF;
+
+	private static final int TAG_BIGNUM = 2;
+	private static final int TAG_NEGATIVE_BIGNUM = 3;
+	private static final int TAG_DECIMAL_FRACTION = 4;
+
+	private static final int INDEFINITE = 31;
+	private static final int MAX_DEPTH = 256;
+
+	private static final Base64.Encoder BASE64 = Base64.getUrlEncoder().withoutPadding();
+
+	private static final BigInteger MIN_LONG = BigInteger.valueOf(Long.MIN_VALUE);
+	private static final BigInteger MAX_LONG = BigInteger.valueOf(Long.MAX_VALUE);
+
+	private Cbor() {
+	}
+
+	static byte[] encode(JsonElement element) {
+		Writer writer = new Writer();
+		writer.write(element);
+		return writer.toByteArray();
+	}
+
+	static JsonElement decode(byte[] bytes) throws MalformedMessageException {
+		Reader reader = new Reader(bytes);
+		try {
+			JsonElement element = reader.read(0);
+			if (reader.position != bytes.length) {
+				throw new MalformedMessageException("Unable to parse CBOR: trailing data after the document");
+			}
+			return element;
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new MalformedMessageException("Unable to parse CBOR: unexpected end of payload");
+		}
+	}
+
+	private static class Writer {
+		private byte[] buffer = new byte[256];
+		private int position = 0;
+
+		void write(JsonElement element) {
+			if (element == null || element.isJsonNull()) {
+				writeByte(NULL);
+			} else if (element.isJsonObject()) {
+				JsonObject object = element.getAsJsonObject();
+				writeHeader(MAJOR_MAP, object.size());
+				for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+					writeText(entry.getKey());
+					write(entry.getValue());
+				}
+			} else if (element.isJsonArray()) {
+				JsonArray array = element.getAsJsonArray();
+				writeHeader(MAJOR_ARRAY, array.size());
+				for (JsonElement item : array) {
+					write(item);
+				}
+			} else {
+				JsonPrimitive primitive = element.getAsJsonPrimitive();
+				if (primitive.isBoolean()) {
+					writeByte(primitive.getAsBoolean() ? TRUE : FALSE);
+				} else if (primitive.isNumber()) {
+					writeNumber(primitive.getAsNumber());
+				} else {
+					writeText(primitive.getAsString());
+				}
+			}
+		}
+
+		private void writeNumber(Number number) {
+			if (number instanceof Integer || number instanceof Long || number instanceof Short
+					|| number instanceof Byte) {
+				writeInteger(number.longValue());
+				return;
+			}
+			if (number instanceof Double || number instanceof Float) {
+				writeFloat(number.doubleValue());
+				return;
+			}
+
+			// BigInteger, BigDecimal or Gson's LazilyParsedNumber: integers that fit a long
+			// are written as integers, as JSON text would read them back
+			String text = number.toString();
+			if (text.indexOf('.') < 0 && text.indexOf('e') < 0 && text.indexOf('E') < 0) {
+				BigInteger value = new BigInteger(text);
+				if (value.compareTo(MIN_LONG) >= 0 && value.compareTo(MAX_LONG) <= 0) {
+					writeInteger(value.longValue());
+					return;
+				}
+			}
+			writeFloat(new BigDecimal(text).doubleValue());
+		}
+
+		private void writeInteger(long value) {
+			if (value >= 0) {
+				writeHeader(MAJOR_UNSIGNED, value);
+			} else {
+				writeHeader(MAJOR_NEGATIVE, -1 - value);
+			}
+		}
+
+		private void writeFloat(double value) {
+			float single = (float) value;
+			if (single == value || Double.isNaN(value)) {
+				int half = floatToHalf(single);
+				if (halfToFloat(half) == single || Double.isNaN(value)) {
+					ensureCapacity(3);
+					buffer[position++] = (byte) FLOAT16;
+					buffer[position++] = (byte) (half >>> 8);
+					buffer[position++] = (byte) half;
+					return;
+				}
+				ensureCapacity(5);
+				buffer[position++] = (byte) FLOAT32;
+				writeInt(Float.floatToIntBits(single));
+			} else if (!writeDecimal(value)) {
+				ensureCapacity(9);
+				buffer[position++] = (byte) FLOAT64;
+				long bits = Double.doubleToLongBits(value);
+				writeInt((int) (bits >>> 32));
+				writeInt((int) bits);
+			}
+		}
+
+		/*
+		 * Short decimals such as 21.37 are not exact in binary floating point, so
+		 * would need a double. A decimal fraction (tag 4) holding the shortest decimal
+		 * form of the value is usually smaller and reads back as the same double.
+		 */
+		private boolean writeDecimal(double value) {
+			if (Double.isInfinite(value)) {
+				return false;
+			}
+			BigDecimal decimal = BigDecimal.valueOf(value);
+			// Only worthwhile while the exponent and mantissa fit in 1 and 4 bytes
+			if (decimal.scale() <= 0 || decimal.scale() > 24 || decimal.unscaledValue().bitLength() > 32) {
+				return false;
+			}
+			ensureCapacity(1);
+			buffer[position++] = (byte) ((MAJOR_TAG << 5) | TAG_DECIMAL_FRACTION);
+			writeHeader(MAJOR_ARRAY, 2);
+			writeInteger(-decimal.scale());
+			writeInteger(decimal.unscaledValue().longValue());
+			return true;
+		}
+
+		private void writeText(String text) {
+			byte[] bytes = text.getBytes(UTF8);
+			writeHeader(MAJOR_TEXT, bytes.length);
+			ensureCapacity(bytes.length);
+			System.arraycopy(bytes, 0, buffer, position, bytes.length);
+			position += bytes.length;
+		}
+
+		/*
+		 * The argument is treated as unsigned, so negative integers can pass their
+		 * full 64 bit magnitude
+		 */
+		private void writeHeader(int major, long argument) {
+			ensureCapacity(9);
+			int type = major << 5;
+			if (argument >= 0 && argument < 24) {
+				buffer[position++] = (byte) (type | (int) argument);
+			} else if (argument >= 0 && argument <= 0xFF) {
+				buffer[position++] = (byte) (type | 24);
+				buffer[position++] = (byte) argument;
+			} else if (argument >= 0 && argument <= 0xFFFF) {
+				buffer[position++] = (byte) (type | 25);
+				buffer[position++] = (byte) (argument >>> 8);
+				buffer[position++] = (byte) argument;
+			} else if (argument >= 0 && argument <= 0xFFFFFFFFL) {
+				buffer[position++] = (byte) (type | 26);
+				writeInt((int) argument);
+			} else {
+				buffer[position++] = (byte) (type | 27);
+				writeInt((int) (argument >>> 32));
+				writeInt((int) argument);
+			}
+		}
+
+		private void writeInt(int value) {
+			buffer[position++] = (byte) (value >>> 24);
+			buffer[position++] = (byte) (value >>> 16);
+			buffer[position++] = (byte) (value >>> 8);
+			buffer[position++] = (byte) value;
+		}
+
+		private void writeByte(int value) {
+			ensureCapacity(1);
+			buffer[position++] = (byte) value;
+		}
+
+		private void ensureCapacity(int length) {
+			if (position + length > buffer.length) {
+				buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+			}
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(buffer, position);
+		}
+	}
+
+	private static class Reader {
+		private final byte[] bytes;
+		private int position = 0;
+
+		Reader(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		JsonElement read(int depth) throws MalformedMessageException {
+			if (depth > MAX_DEPTH) {
+				throw new MalformedMessageException("Unable to parse CBOR: nesting is too deep");
+			}
+			int initial = bytes[position++] & 0xFF;
+			int major = initial >>> 5;
+			int info = initial & 0x1F;
+
+			switch (major) {
+			case MAJOR_UNSIGNED: {
+				long value = readArgument(info);
+				if (value < 0) {
+					return new JsonPrimitive(new BigInteger(Long.toUnsignedString(value)));
+				}
+				return new JsonPrimitive(value);
+			}
+			case MAJOR_NEGATIVE: {
+				long value = readArgument(info);
+				if (value < 0) {
+					BigInteger magnitude = new BigInteger(Long.toUnsignedString(value));
+					return new JsonPrimitive(BigInteger.ONE.negate().subtract(magnitude));
+				}
+				return new JsonPrimitive(-1 - value);
+			}
+			case MAJOR_BYTES:
+				return new JsonPrimitive(BASE64.encodeToString(readString(info, MAJOR_BYTES)));
+			case MAJOR_TEXT:
+				return new JsonPrimitive(new String(readString(info, MAJOR_TEXT), UTF8));
+			case MAJOR_ARRAY: {
+				JsonArray array = new JsonArray();
+				if (info == INDEFINITE) {
+					while (!readBreak()) {
+						array.add(read(depth + 1));
+					}
+				} else {
+					long size = readLength(info);
+					for (long i = 0; i < size; i++) {
+						array.add(read(depth + 1));
+					}
+				}
+				return array;
+			}
+			case MAJOR_MAP: {
+				JsonObject object = new JsonObject();
+				if (info == INDEFINITE) {
+					while (!readBreak()) {
+						object.add(readKey(depth), read(depth + 1));
+					}
+				} else {
+					long size = readLength(info);
+					for (long i = 0; i < size; i++) {
+						object.add(readKey(depth), read(depth + 1));
+					}
+				}
+				return object;
+			}
+			case MAJOR_TAG:
+				return readTagged(readArgument(info), depth);
+			default:
+				// Major type 7, simple values and floats
+				return readSimple(info);
+			}
+		}
+
+		/*
+		 * Numeric tags are converted to numbers, other tags are ignored
+		 */
+		private JsonElement readTagged(long tag, int depth) throws MalformedMessageException {
+			if (tag == TAG_BIGNUM || tag == TAG_NEGATIVE_BIGNUM) {
+				// The magnitude of a bignum must be a byte string
+				int initial = bytes[position++] & 0xFF;
+				if (initial >>> 5 != MAJOR_BYTES) {
+					throw new MalformedMessageException("Unable to parse CBOR: bignum content is not a byte string");
+				}
+				BigInteger value = new BigInteger(1, readString(initial & 0x1F, MAJOR_BYTES));
+				return new JsonPrimitive(tag == TAG_BIGNUM ? value : BigInteger.ONE.negate().subtract(value));
+			}
+			JsonElement content = read(depth + 1);
+			if (tag == TAG_DECIMAL_FRACTION) {
+				if (!content.isJsonArray() || content.getAsJsonArray().size() != 2) {
+					throw new MalformedMessageException("Unable to parse CBOR: invalid decimal fraction");
+				}
+				JsonArray parts = content.getAsJsonArray();
+				try {
+					int exponent = parts.get(0).getAsInt();
+					BigInteger mantissa = parts.get(1).getAsBigInteger();
+					return new JsonPrimitive(new BigDecimal(mantissa, -exponent));
+				} catch (NumberFormatException | IllegalStateException | UnsupportedOperationException e) {
+					throw new MalformedMessageException("Unable to parse CBOR: invalid decimal fraction");
+				}
+			}
+			return content;
+		}
+
+		private JsonElement readSimple(int info) throws MalformedMessageException {
+			switch (info) {
+			case FALSE & 0x1F:
+				return new JsonPrimitive(false);
+			case TRUE & 0x1F:
+				return new JsonPrimitive(true);
+			case NULL & 0x1F:
+			case 23: // undefined
+				return JsonNull.INSTANCE;
+			case FLOAT16 & 0x1F:
+				return new JsonPrimitive((double) halfToFloat((int) readUnsigned(2)));
+			case FLOAT32 & 0x1F:
+				return new JsonPrimitive((double) Float.intBitsToFloat((int) readUnsigned(4)));
+			case FLOAT64 & 0x1F:
+				return new JsonPrimitive(Double.longBitsToDouble(readUnsigned(8)));
+			default:
+				throw new MalformedMessageException("Unable to parse CBOR: unsupported simple value " + info);
+			}
+		}
+
+		private String readKey(int depth) throws MalformedMessageException {
+			JsonElement key = read(depth + 1);
+			if (!key.isJsonPrimitive()) {
+				throw new MalformedMessageException("Unable to parse CBOR: map keys must be strings or numbers");
+			}
+			return key.getAsString();
+		}
+
+		private byte[] readString(int info, int major) throws MalformedMessageException {
+			if (info != INDEFINITE) {
+				int length = (int) readLength(info);
+				if (length > bytes.length - position) {
+					throw new MalformedMessageException("Unable to parse CBOR: string exceeds the payload");
+				}
+				byte[] result = Arrays.copyOfRange(bytes, position, position + length);
+				position += length;
+				return result;
+			}
+
+			// Indefinite length strings are a sequence of definite length chunks
+			byte[] result = new byte[0];
+			while (!readBreak()) {
+				int chunk = bytes[position++] & 0xFF;
+				if (chunk >>> 5 != major || (chunk & 0x1F) == INDEFINITE) {
+					throw new MalformedMessageException("Unable to parse CBOR: invalid string chunk");
+				}
+				byte[] part = readString(chunk & 0x1F, major);
+				int offset = result.length;
+				result = Arrays.copyOf(result, offset + part.length);
+				System.arraycopy(part, 0, result, offset, part.length);
+			}
+			return result;
+		}
+
+		private boolean readBreak() {
+			if ((bytes[position] & 0xFF) == BREAK) {
+				position++;
+				return true;
+			}
+			return false;
+		}
+
+		private long readLength(int info) throws MalformedMessageException {
+			long length = readArgument(info);
+			// Every item takes at least a byte, so a longer length can not be valid
+			if (length < 0 || length > bytes.length - position) {
+				throw new MalformedMessageException("Unable to parse CBOR: length exceeds the payload");
+			}
+			return length;
+		}
+
+		private long readArgument(int info) throws MalformedMessageException {
+			if (info < 24) {
+				return info;
+			}
+			switch (info) {
+			case 24:
+				return readUnsigned(1);
+			case 25:
+				return readUnsigned(2);
+			case 26:
+				return readUnsigned(4);
+			case 27:
+				return readUnsigned(8);
+			default:
+				throw new MalformedMessageException("Unable to parse CBOR: invalid additional information " + info);
+			}
+		}
+
+		private long readUnsigned(int length) {
+			long value = 0;
+			for (int i = 0; i < length; i++) {
+				value = (value << 8) | (bytes[position++] & 0xFF);
+			}
+			return value;
+		}
+	}
+
+	private static int floatToHalf(float value) {
+		int bits = Float.floatToIntBits(value);
+		int sign = (bits >>> 16) & 0x8000;
+		int exponent = ((bits >>> 23) & 0xFF) - 127 + 15;
+		int mantissa = bits & 0x7FFFFF;
+		if (exponent <= 0 || exponent >= 31) {
+			// Zero, subnormal or out of range: callers check the result is exact
+			return value == 0 ? sign : sign | 0x7C01;
+		}
+		return sign | (exponent << 10) | (mantissa >>> 13);
+	}
+
+	private static float halfToFloat(int half) {
+		int sign = (half & 0x8000) << 16;
+		int exponent = (half >>> 10) & 0x1F;
+		int mantissa = half & 0x3FF;
+		if (exponent == 0) {
+			// Subnormal, mantissa * 2^-24 is exact in single precision
+			float value = mantissa * 5.9604645E-8f;
+			return sign != 0 ? -value : value;
+		} else if (exponent == 31) {
+			return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+		}
+		return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+	}
+}
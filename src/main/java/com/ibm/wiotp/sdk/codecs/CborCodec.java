@@ -0,0 +1,92 @@
+package com.ibm.wiotp.sdk.codecs;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.joda.time.DateTime;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.ibm.wiotp.sdk.exceptions.MalformedMessageException;
+
+/**
+ * Codec for CBOR (RFC 7049), a compact binary equivalent of JSON, registered
+ * under the "cbor" format. <br>
+ *
+ * Data is converted through the same JSON tree as {@link JsonCodec}, so a
+ * document decodes to the same data whichever of the two formats a device
+ * sends, and callbacks registered for the message class receive both. Maps and
+ * other classes are converted to and from the tree with Gson.
+ *
+ * <pre>
+ * client.registerCodec(new CborCodec&lt;JsonObject&gt;(JsonObject.class));
+ * client.registerCodec(new CborCodec&lt;Telemetry&gt;(Telemetry.class));
+ * </pre>
+ *
+ * @param <T> Class of the encoded and decoded data
+ */
+public class CborCodec<T> implements MessageCodec<T> {
+
+	private final Class<T> messageClass;
+	private final Gson gson;
+
+	/**
+	 * @param messageClass The class to decode messages to, for example
+	 *                     JsonObject.class
+	 */
+	public CborCodec(Class<T> messageClass) {
+		this(messageClass, new Gson());
+	}
+
+	/**
+	 * @param messageClass The class to decode messages to
+	 * @param gson         Gson instance used to convert data to and from the JSON
+	 *                     tree, for classes other than JsonObject
+	 */
+	public CborCodec(Class<T> messageClass, Gson gson) {
+		this.messageClass = messageClass;
+		this.gson = gson;
+	}
+
+	@Override
+	public byte[] encode(T data, DateTime timestamp) {
+		if (data == null) {
+			return new byte[0];
+		}
+		JsonElement element = data instanceof JsonElement ? (JsonElement) data : gson.toJsonTree(data);
+		return Cbor.encode(element);
+	}
+
+	@Override
+	public CborMessage<T> decode(MqttMessage msg) throws MalformedMessageException {
+		byte[] payload = msg.getPayload();
+		if (payload.length == 0) {
+			return new CborMessage<T>(null, null);
+		}
+
+		JsonElement element = Cbor.decode(payload);
+		if (JsonElement.class.isAssignableFrom(messageClass)) {
+			if (!messageClass.isInstance(element)) {
+				throw new MalformedMessageException("Unable to parse CBOR: payload is not a "
+						+ messageClass.getSimpleName());
+			}
+			return new CborMessage<T>(messageClass.cast(element), null);
+		}
+		try {
+			return new CborMessage<T>(gson.fromJson(element, messageClass), null);
+		} catch (JsonParseException e) {
+			throw new MalformedMessageException("Unable to parse CBOR: " + e.toString());
+		}
+	}
+
+	@Override
+	public Class<T> getMessageClass() {
+		return messageClass;
+	}
+
+	@Override
+	public String getMessageFormat() {
+		return "cbor";
+	}
+
+}
@@ -0,0 +1,268 @@
+package com.ibm.wiotp.sdk.codecs;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The codecs registered with a client, indexed by the class they encode and by
+ * the format they decode. <br>
+ *
+ * Each class or interface has one codec, used to encode data of that class or
+ * of its subclasses and implementations. A format may have several codecs, one
+ * per class, so for example a JsonObject codec and any number of POJO codecs
+ * can all decode "json" messages, each for the callbacks registered for its
+ * class. <br>
+ *
+ * A "-deflate" format with no codec of its own is decoded by wrapping the
+ * codecs of the base format in a {@link DeflateCodec}. <br>
+ *
+ * Registration is expected to be infrequent; lookups are lock free.
+ */
+public class CodecRegistry {
+
+	@SuppressWarnings("rawtypes")
+	private final Map<Class, MessageCodec> byClass = new ConcurrentHashMap<Class, MessageCodec>();
+	@SuppressWarnings("rawtypes")
+	private final Map<String, List<MessageCodec>> byFormat = new ConcurrentHashMap<String, List<MessageCodec>>();
+	@SuppressWarnings("rawtypes")
+	private final Map<String, List<MessageCodec>> derived = new ConcurrentHashMap<String, List<MessageCodec>>();
+	// Replaced, rather than cleared, on registration so that a lookup racing with
+	// a registration can not cache a stale result
+	@SuppressWarnings("rawtypes")
+	private volatile Map<Class, MessageCodec> resolved = new ConcurrentHashMap<Class, MessageCodec>();
+
+	// Cached for classes that have no codec, as the cache can not hold null
+	@SuppressWarnings("rawtypes")
+	private static final MessageCodec NONE = new Utf8Codec();
+
+	/**
+	 * Register a codec, replacing any codec already registered for the same class,
+	 * and for the same class and format
+	 * 
+	 * @param codec The codec
+	 */
+	@SuppressWarnings("rawtypes")
+	public synchronized void register(MessageCodec codec) {
+		byClass.put(codec.getMessageClass(), codec);
+
+		// Lists are replaced rather than modified, so readers never see a partial
+		// update
+		String format = codec.getMessageFormat();
+		List<MessageCodec> codecs = new ArrayList<MessageCodec>();
+		List<MessageCodec> existing = byFormat.get(format);
+		if (existing != null) {
+			for (MessageCodec other : existing) {
+				if (!other.getMessageClass().equals(codec.getMessageClass())) {
+					codecs.add(other);
+				}
+			}
+		}
+		codecs.add(codec);
+		byFormat.put(format, Collections.unmodifiableList(codecs));
+		derived.clear();
+		resolved = new ConcurrentHashMap<Class, MessageCodec>();
+	}
+
+	/**
+	 * Find the codec to encode data of a class. A codec registered for the class
+	 * itself is preferred, then one for the nearest superclass, then one for an
+	 * interface it implements, so subclasses and proxies of a registered class, or
+	 * of a registered interface, can be published. <br>
+	 *
+	 * The class hierarchy is only searched the first time a class is seen; after
+	 * that the result is a single cache lookup until another codec is registered.
+	 * 
+	 * @param dataClass Class of the data to encode
+	 * @return The codec for the class, or null if there is none
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public <T> MessageCodec<T> getCodec(Class<T> dataClass) {
+		Map<Class, MessageCodec> cache = resolved;
+		MessageCodec codec = cache.get(dataClass);
+		if (codec == null) {
+			codec = resolve(dataClass);
+			cache.put(dataClass, codec == null ? NONE : codec);
+		}
+		return codec == NONE ? null : codec;
+	}
+
+	@SuppressWarnings("rawtypes")
+	private MessageCodec resolve(Class dataClass) {
+		for (Class c = dataClass; c != null; c = c.getSuperclass()) {
+			MessageCodec codec = byClass.get(c);
+			if (codec != null) {
+				return codec;
+			}
+		}
+
+		// Interfaces breadth first, so those declared closest to the class win
+		Set<Class> seen = new HashSet<Class>();
+		ArrayDeque<Class> pending = new ArrayDeque<Class>();
+		for (Class c = dataClass; c != null; c = c.getSuperclass()) {
+			Collections.addAll(pending, c.getInterfaces());
+		}
+		while (!pending.isEmpty()) {
+			Class c = pending.poll();
+			if (seen.add(c)) {
+				MessageCodec codec = byClass.get(c);
+				if (codec != null) {
+					return codec;
+				}
+				Collections.addAll(pending, c.getInterfaces());
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param format Format of a received message
+	 * @return The codecs that can decode the format, in the order they were
+	 *         registered, or an empty list if there are none
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public List<MessageCodec> getCodecs(String format) {
+		List<MessageCodec> codecs = byFormat.get(format);
+		if (codecs != null) {
+			return codecs;
+		}
+		codecs = derived.get(format);
+		if (codecs != null) {
+			return codecs;
+		}
+
+		if (format != null && format.endsWith(DeflateCodec.FORMAT_SUFFIX)) {
+			List<MessageCodec> base = byFormat
+					.get(format.substring(0, format.length() - DeflateCodec.FORMAT_SUFFIX.length()));
+			if (base != null) {
+				List<MessageCodec> wrapped = new ArrayList<MessageCodec>(base.size());
+				for (MessageCodec codec : base) {
+					wrapped.add(new DeflateCodec(codec));
+				}
+				codecs = Collections.unmodifiableList(wrapped);
+				derived.put(format, codecs);
+				return codecs;
+			}
+		}
+		return Collections.emptyList();
+	}
+
+	/**
+	 * @param format    Format of a received message
+	 * @param dataClass Class to decode to
+	 * @return The codec that decodes the format to the class, or null if there is
+	 *         none
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public <T> MessageCodec<T> getCodec(String format, Class<T> dataClass) {
+		for (MessageCodec codec : getCodecs(format)) {
+			if (codec.getMessageClass().equals(dataClass)) {
+				return codec;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Tell the stateful codecs that the client has reconnected, as messages sent
+	 * in the meantime may have been lost
+	 */
+	@SuppressWarnings("rawtypes")
+	public void reconnected() {
+		for (List<MessageCodec> codecs : byFormat.values()) {
+			for (MessageCodec codec : codecs) {
+				if (codec instanceof StatefulCodec) {
+					((StatefulCodec) codec).reconnected();
+				}
+			}
+		}
+	}
+
+	public boolean isEmpty() {
+		return byClass.isEmpty();
+	}
+
+	/**
+	 * A view of the codecs by the class they encode, in the form of the map clients
+	 * held before this registry. Putting a codec registers it.
+	 * 
+	 * @return The view
+	 * @deprecated Use {@link #getCodec(Class)} and {@link #register(MessageCodec)}
+	 */
+	@Deprecated
+	@SuppressWarnings("rawtypes")
+	public Map<Class, MessageCodec> classView() {
+		return new AbstractMap<Class, MessageCodec>() {
+			@Override
+			public MessageCodec get(Object key) {
+				return byClass.get(key);
+			}
+
+			@Override
+			public MessageCodec put(Class key, MessageCodec value) {
+				if (!key.equals(value.getMessageClass())) {
+					throw new IllegalArgumentException("Codec for " + value.getMessageClass().getName()
+							+ " can not be registered for " + key.getName());
+				}
+				MessageCodec previous = byClass.get(key);
+				register(value);
+				return previous;
+			}
+
+			@Override
+			public Set<Map.Entry<Class, MessageCodec>> entrySet() {
+				return Collections.unmodifiableMap(byClass).entrySet();
+			}
+		};
+	}
+
+	/**
+	 * A view of the codecs by the format they decode, in the form of the map
+	 * clients held before this registry. A format with several codecs maps to the
+	 * one registered last. Putting a codec registers it.
+	 * 
+	 * @return The view
+	 * @deprecated Use {@link #getCodecs(String)} and
+	 *             {@link #register(MessageCodec)}
+	 */
+	@Deprecated
+	@SuppressWarnings("rawtypes")
+	public Map<String, MessageCodec> formatView() {
+		return new AbstractMap<String, MessageCodec>() {
+			@Override
+			public MessageCodec get(Object key) {
+				List<MessageCodec> codecs = byFormat.get(key);
+				return codecs == null ? null : codecs.get(codecs.size() - 1);
+			}
+
+			@Override
+			public MessageCodec put(String key, MessageCodec value) {
+				if (!key.equals(value.getMessageFormat())) {
+					throw new IllegalArgumentException(
+							"Codec for " + value.getMessageFormat() + " can not be registered for " + key);
+				}
+				MessageCodec previous = get(key);
+				register(value);
+				return previous;
+			}
+
+			@Override
+			public Set<Map.Entry<String, MessageCodec>> entrySet() {
+				Map<String, MessageCodec> latest = new HashMap<String, MessageCodec>();
+				for (Map.Entry<String, List<MessageCodec>> entry : byFormat.entrySet()) {
+					List<MessageCodec> codecs = entry.getValue();
+					latest.put(entry.getKey(), codecs.get(codecs.size() - 1));
+				}
+				return Collections.unmodifiableMap(latest).entrySet();
+			}
+		};
+	}
+
+}
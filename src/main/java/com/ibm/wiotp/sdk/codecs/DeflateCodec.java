@@ -0,0 +1,184 @@
+package com.ibm.wiotp.sdk.codecs;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.joda.time.DateTime;
+
+import com.ibm.wiotp.sdk.MessageInterface;
+import com.ibm.wiotp.sdk.exceptions.MalformedMessageException;
+
+/**
+ * Wraps another codec and compresses its output with deflate, under the format
+ * of the inner codec followed by "-deflate", for example "json-deflate". <br>
+ *
+ * Every payload starts with a one byte header saying whether the rest is
+ * compressed. Payloads smaller than the threshold, or that do not get smaller
+ * when compressed, are sent as they are, so small messages do not pay for
+ * compression. Deflater and Inflater instances are reused per thread.
+ *
+ * <pre>
+ * client.registerCodec(new DeflateCodec&lt;JsonObject&gt;(new JsonCodec()));
+ * </pre>
+ *
+ * @param <T> Class of the encoded and decoded data
+ */
+public class DeflateCodec<T> implements MessageCodec<T> {
+
+	/**
+	 * Suffix added to the inner codec's format. MQTT does not allow "+" in the
+	 * topic names that carry the format, so "-" is used instead.
+	 */
+	public static final String FORMAT_SUFFIX = "-deflate";
+
+	public static final int DEFAULT_THRESHOLD = 1024;
+	public static final int DEFAULT_MAX_INFLATED_SIZE = 16 * 1024 * 1024;
+
+	private static final byte STORED = 0;
+	private static final byte DEFLATED = 1;
+
+	private static final ThreadLocal<Deflater> DEFLATER = new ThreadLocal<Deflater>() {
+		@Override
+		protected Deflater initialValue() {
+			return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		}
+	};
+
+	private static final ThreadLocal<Inflater> INFLATER = new ThreadLocal<Inflater>() {
+		@Override
+		protected Inflater initialValue() {
+			return new Inflater(true);
+		}
+	};
+
+	private final MessageCodec<T> codec;
+	private final int threshold;
+	private final int maxInflatedSize;
+
+	public DeflateCodec(MessageCodec<T> codec) {
+		this(codec, DEFAULT_THRESHOLD, DEFAULT_MAX_INFLATED_SIZE);
+	}
+
+	/**
+	 * @param codec           The codec whose output is compressed
+	 * @param threshold       Payloads smaller than this many bytes are not
+	 *                        compressed
+	 * @param maxInflatedSize Largest payload, in bytes, that a received message
+	 *                        may inflate to, which protects against compression
+	 *                        bombs
+	 */
+	public DeflateCodec(MessageCodec<T> codec, int threshold, int maxInflatedSize) {
+		this.codec = codec;
+		this.threshold = threshold;
+		this.maxInflatedSize = maxInflatedSize;
+	}
+
+	@Override
+	public byte[] encode(T data, DateTime timestamp) {
+		byte[] payload = codec.encode(data, timestamp);
+		if (payload.length >= threshold) {
+			byte[] compressed = deflate(payload);
+			if (compressed != null) {
+				return compressed;
+			}
+		}
+		byte[] stored = new byte[payload.length + 1];
+		stored[0] = STORED;
+		System.arraycopy(payload, 0, stored, 1, payload.length);
+		return stored;
+	}
+
+	@Override
+	public MessageInterface<T> decode(MqttMessage msg) throws MalformedMessageException {
+		byte[] payload = msg.getPayload();
+		if (payload.length == 0) {
+			return codec.decode(msg);
+		}
+
+		byte[] inner;
+		if (payload[0] == STORED) {
+			inner = Arrays.copyOfRange(payload, 1, payload.length);
+		} else if (payload[0] == DEFLATED) {
+			inner = inflate(payload);
+		} else {
+			throw new MalformedMessageException("Unknown compression header " + payload[0]);
+		}
+
+		MqttMessage innerMsg = new MqttMessage(inner);
+		innerMsg.setQos(msg.getQos());
+		innerMsg.setRetained(msg.isRetained());
+		return codec.decode(innerMsg);
+	}
+
+	/*
+	 * Returns the header and compressed payload, or null if compressing does not
+	 * make the payload smaller
+	 */
+	private byte[] deflate(byte[] payload) {
+		Deflater deflater = DEFLATER.get();
+		deflater.reset();
+		deflater.setInput(payload);
+		deflater.finish();
+
+		// Give up as soon as the output would be no smaller than the input
+		byte[] output = new byte[payload.length];
+		output[0] = DEFLATED;
+		int length = 1;
+		while (!deflater.finished()) {
+			if (length == output.length) {
+				return null;
+			}
+			length += deflater.deflate(output, length, output.length - length);
+		}
+		return Arrays.copyOf(output, length);
+	}
+
+	private byte[] inflate(byte[] payload) throws MalformedMessageException {
+		Inflater inflater = INFLATER.get();
+		inflater.reset();
+		inflater.setInput(payload, 1, payload.length - 1);
+
+		byte[] output = new byte[Math.min(maxInflatedSize, Math.max(256, payload.length * 4))];
+		int length = 0;
+		try {
+			while (!inflater.finished()) {
+				if (length == output.length) {
+					if (output.length >= maxInflatedSize) {
+						throw new MalformedMessageException("Inflated payload exceeds " + maxInflatedSize + " bytes");
+					}
+					output = Arrays.copyOf(output, (int) Math.min(maxInflatedSize, output.length * 2L));
+				}
+				int inflated = inflater.inflate(output, length, output.length - length);
+				if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new MalformedMessageException("Compressed payload is truncated");
+				}
+				length += inflated;
+			}
+		} catch (DataFormatException e) {
+			throw new MalformedMessageException("Unable to inflate payload: " + e.getMessage());
+		}
+		return length == output.length ? output : Arrays.copyOf(output, length);
+	}
+
+	public MessageCodec<T> getCodec() {
+		return codec;
+	}
+
+	public int getThreshold() {
+		return threshold;
+	}
+
+	@Override
+	public Class<T> getMessageClass() {
+		return codec.getMessageClass();
+	}
+
+	@Override
+	public String getMessageFormat() {
+		return codec.getMessageFormat() + FORMAT_SUFFIX;
+	}
+
+}
@@ -0,0 +1,274 @@
+package com.ibm.wiotp.sdk.codecs;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.joda.time.DateTime;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.ibm.wiotp.sdk.exceptions.MalformedMessageException;
+
+/**
+ * Codec for JSON objects published periodically with mostly unchanged values,
+ * such as device telemetry. Only the top level fields that changed since the
+ * last message on the same stream are sent, with a complete keyframe every so
+ * many messages, and the receiver rebuilds the complete object before it is
+ * passed to callbacks. <br>
+ *
+ * Each payload is a JSON object holding a sequence number, "seq", the changed
+ * or, for a keyframe, all fields in "set", the names of removed fields in
+ * "del", and "key": true on keyframes. A receiver that misses a message, or
+ * starts part way through a stream, drops the deltas that follow until the next
+ * keyframe. Fields whose value is an object or array are sent whole when any
+ * part of them changes. When the client fails to publish a message, or drops
+ * it, the next message on its stream is a keyframe. <br>
+ *
+ * Both the device and the application register the codec:
+ *
+ * <pre>
+ * client.registerCodec(new DeltaCodec());
+ * </pre>
+ */
+public class DeltaCodec implements StatefulCodec<JsonObject> {
+
+	public static final String FORMAT = "json-delta";
+	public static final int DEFAULT_KEYFRAME_INTERVAL = 20;
+
+	// Stream used when the codec is called without one
+	private static final String DEFAULT_STREAM = "";
+
+	private final JsonCodec json = new JsonCodec();
+	private final int keyframeInterval;
+	private final boolean resyncOnReconnect;
+
+	private final ConcurrentHashMap<String, Stream> sent = new ConcurrentHashMap<String, Stream>();
+	private final ConcurrentHashMap<String, Stream> received = new ConcurrentHashMap<String, Stream>();
+
+	public DeltaCodec() {
+		this(DEFAULT_KEYFRAME_INTERVAL, true);
+	}
+
+	/**
+	 * @param keyframeInterval  Send a complete object every this many messages on
+	 *                          a stream; 1 sends every message complete
+	 * @param resyncOnReconnect Send a keyframe on every stream after the client
+	 *                          reconnects, so receivers that missed messages
+	 *                          while it was disconnected do not wait for the next
+	 *                          scheduled keyframe
+	 */
+	public DeltaCodec(int keyframeInterval, boolean resyncOnReconnect) {
+		if (keyframeInterval < 1) {
+			throw new IllegalArgumentException("The keyframe interval must be at least 1");
+		}
+		this.keyframeInterval = keyframeInterval;
+		this.resyncOnReconnect = resyncOnReconnect;
+	}
+
+	/**
+	 * Encode as the only stream sent with this codec
+	 */
+	@Override
+	public byte[] encode(JsonObject data, DateTime timestamp) {
+		return encode(DEFAULT_STREAM, data, timestamp);
+	}
+
+	@Override
+	public byte[] encode(String stream, JsonObject data, DateTime timestamp) {
+		if (data == null) {
+			return new byte[0];
+		}
+		Stream state = stream(sent, stream);
+		JsonObject envelope = new JsonObject();
+		synchronized (state) {
+			state.sequence++;
+			envelope.addProperty("seq", state.sequence);
+			if (state.last == null || state.sinceKeyframe + 1 >= keyframeInterval) {
+				envelope.addProperty("key", true);
+				envelope.add("set", data);
+				state.sinceKeyframe = 0;
+			} else {
+				JsonObject changed = new JsonObject();
+				for (Map.Entry<String, JsonElement> entry : data.entrySet()) {
+					if (!entry.getValue().equals(state.last.get(entry.getKey()))) {
+						changed.add(entry.getKey(), entry.getValue());
+					}
+				}
+				envelope.add("set", changed);
+				JsonArray removed = new JsonArray();
+				for (String name : state.last.keySet()) {
+					if (!data.has(name)) {
+						removed.add(name);
+					}
+				}
+				if (removed.size() > 0) {
+					envelope.add("del", removed);
+				}
+				state.sinceKeyframe++;
+			}
+			// The caller may change the object once it has been published
+			state.last = copy(data);
+		}
+		return json.encode(envelope, timestamp);
+	}
+
+	/**
+	 * Decode as the only stream received with this codec
+	 */
+	@Override
+	public JsonMessage decode(MqttMessage msg) throws MalformedMessageException {
+		return decode(DEFAULT_STREAM, msg);
+	}
+
+	@Override
+	public JsonMessage decode(String stream, MqttMessage msg) throws MalformedMessageException {
+		byte[] payload = msg.getPayload();
+		if (payload.length == 0) {
+			return new JsonMessage((JsonObject) null, null);
+		}
+
+		JsonObject envelope = JsonCodec.parse(payload);
+		long sequence;
+		JsonObject changed;
+		try {
+			sequence = envelope.get("seq").getAsLong();
+			changed = envelope.getAsJsonObject("set");
+		} catch (RuntimeException e) {
+			throw new MalformedMessageException("Unable to decode delta: " + e.toString());
+		}
+		if (changed == null) {
+			throw new MalformedMessageException("Unable to decode delta: no fields");
+		}
+		boolean keyframe = envelope.has("key") && envelope.get("key").getAsBoolean();
+
+		Stream state = stream(received, stream);
+		synchronized (state) {
+			if (keyframe) {
+				state.last = changed;
+			} else if (state.last == null) {
+				state.sequence = sequence;
+				throw new MalformedMessageException("Delta on " + stream + " dropped while waiting for a keyframe");
+			} else if (sequence <= state.sequence) {
+				// Redelivered, the state already includes it
+				throw new MalformedMessageException("Delta " + sequence + " on " + stream + " dropped as a duplicate");
+			} else if (sequence != state.sequence + 1) {
+				long expected = state.sequence + 1;
+				state.last = null;
+				state.sequence = sequence;
+				throw new MalformedMessageException("Delta " + sequence + " on " + stream + " dropped, expected "
+						+ expected + "; waiting for a keyframe");
+			} else {
+				for (Map.Entry<String, JsonElement> entry : changed.entrySet()) {
+					state.last.add(entry.getKey(), entry.getValue());
+				}
+				if (envelope.has("del")) {
+					for (JsonElement name : envelope.getAsJsonArray("del")) {
+						state.last.remove(name.getAsString());
+					}
+				}
+			}
+			state.sequence = sequence;
+			// Callbacks are free to change the object they are given
+			return new JsonMessage(copy(state.last), null);
+		}
+	}
+
+	/**
+	 * Forget what was last sent on each stream, so the next message on every
+	 * stream is a keyframe
+	 */
+	public void reset() {
+		sent.clear();
+	}
+
+	/**
+	 * Forget what was last sent on a stream whose message was not delivered, so
+	 * the next message on it is a keyframe
+	 */
+	@Override
+	public void failed(String stream) {
+		sent.remove(stream);
+	}
+
+	@Override
+	public void reconnected() {
+		if (resyncOnReconnect) {
+			reset();
+		}
+	}
+
+	public int getKeyframeInterval() {
+		return keyframeInterval;
+	}
+
+	public boolean isResyncOnReconnect() {
+		return resyncOnReconnect;
+	}
+
+	/**
+	 * @return The streams the codec has sent messages on since it was last reset
+	 */
+	public Set<String> getSentStreams() {
+		return sent.keySet();
+	}
+
+	/**
+	 * @return The streams the codec has received messages on
+	 */
+	public Set<String> getReceivedStreams() {
+		return received.keySet();
+	}
+
+	@Override
+	public Class<JsonObject> getMessageClass() {
+		return JsonObject.class;
+	}
+
+	@Override
+	public String getMessageFormat() {
+		return FORMAT;
+	}
+
+	private static Stream stream(ConcurrentHashMap<String, Stream> streams, String name) {
+		Stream stream = streams.get(name);
+		if (stream == null) {
+			Stream created = new Stream();
+			stream = streams.putIfAbsent(name, created);
+			if (stream == null) {
+				stream = created;
+			}
+		}
+		return stream;
+	}
+
+	private static JsonObject copy(JsonObject object) {
+		JsonObject copy = new JsonObject();
+		for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+			copy.add(entry.getKey(), copy(entry.getValue()));
+		}
+		return copy;
+	}
+
+	private static JsonElement copy(JsonElement element) {
+		if (element.isJsonObject()) {
+			return copy(element.getAsJsonObject());
+		} else if (element.isJsonArray()) {
+			JsonArray copy = new JsonArray();
+			for (JsonElement item : element.getAsJsonArray()) {
+				copy.add(copy(item));
+			}
+			return copy;
+		}
+		// Primitives and null are immutable
+		return element;
+	}
+
+	private static class Stream {
+		JsonObject last;
+		long sequence;
+		int sinceKeyframe;
+	}
+}
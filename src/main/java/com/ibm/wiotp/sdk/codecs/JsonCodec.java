@@ -1,46 +1,115 @@
 package com.ibm.wiotp.sdk.codecs;
 
-import java.io.UnsupportedEncodingException;
-import java.nio.charset.Charset;
+import java.io.IOException;
+import java.io.OutputStream;
 
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.joda.time.DateTime;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import com.ibm.wiotp.sdk.exceptions.MalformedMessageException;
 
+/**
+ * Codec for JSON objects. <br>
+ *
+ * Payloads are parsed straight from the message bytes with a streaming reader,
+ * without first being copied into a String. A lazy codec defers parsing until
+ * the data is first requested, and {@link JsonMessage#getReader()} gives
+ * streaming access to the payload without building the JSON tree at all.
+ * Objects are likewise written straight to UTF-8 bytes, without first being
+ * converted to a String.
+ */
 public class JsonCodec implements MessageCodec<JsonObject> {
 	private final static JsonParser JSON_PARSER = new JsonParser();
+	private final static TypeAdapter<JsonElement> JSON_WRITER = new Gson().getAdapter(JsonElement.class);
+
+	private final boolean lazy;
+
+	public JsonCodec() {
+		this(false);
+	}
+
+	/**
+	 * @param lazy If true the payload is only parsed when
+	 *             {@link JsonMessage#getData()} is first called, so malformed
+	 *             payloads are reported then rather than on decode
+	 */
+	public JsonCodec(boolean lazy) {
+		this.lazy = lazy;
+	}
 
 	@Override
 	public byte[] encode(JsonObject data, DateTime timestamp) {
-		if (data != null) {
-			return data.toString().getBytes(Charset.forName("UTF-8"));
-		} else {
+		if (data == null) {
 			return new byte[0];
 		}
+		PayloadBuffer buffer = PayloadBuffer.acquire();
+		try {
+			encode(data, timestamp, buffer);
+			return buffer.toByteArray();
+		} catch (IOException e) {
+			// Not thrown when writing to memory
+			throw new IllegalStateException(e);
+		} finally {
+			buffer.release();
+		}
+	}
+
+	@Override
+	public void encode(JsonObject data, DateTime timestamp, OutputStream out) throws IOException {
+		if (data == null) {
+			return;
+		}
+		// Lenient, as JsonObject.toString() is, so NaN and infinities are written
+		JsonWriter writer = new JsonWriter(new Utf8Writer(out));
+		writer.setLenient(true);
+		JSON_WRITER.write(writer, data);
+		writer.close();
 	}
 
 	@Override
 	public JsonMessage decode(MqttMessage msg) throws MalformedMessageException {
-		JsonObject data;
-
-		if (msg.getPayload().length == 0) {
-			data = null;
-		} else {
-			try {
-				final String payloadInString = new String(msg.getPayload(), "UTF8");
-				data = JSON_PARSER.parse(payloadInString).getAsJsonObject();
-			} catch (JsonParseException | UnsupportedEncodingException e) {
-				throw new MalformedMessageException("Unable to parse JSON: " + e.toString());
-			}
+		byte[] payload = msg.getPayload();
+		if (lazy) {
+			return new JsonMessage(payload, null);
 		}
 
+		JsonObject data = null;
+		if (payload.length > 0) {
+			data = parse(payload);
+		}
 		return new JsonMessage(data, null);
 	}
 
+	/**
+	 * Parse a UTF-8 encoded JSON object directly from a byte array
+	 * 
+	 * @param payload The encoded JSON object
+	 * @return The JSON object
+	 * @throws MalformedMessageException If the payload is not a single JSON
+	 *                                   object
+	 */
+	static JsonObject parse(byte[] payload) throws MalformedMessageException {
+		try {
+			JsonReader reader = new JsonReader(new Utf8Reader(payload));
+			JsonElement element = JSON_PARSER.parse(reader);
+			if (!element.isJsonObject() || reader.peek() != JsonToken.END_DOCUMENT) {
+				throw new MalformedMessageException("Unable to parse JSON: payload is not a single JSON object");
+			}
+			return element.getAsJsonObject();
+		} catch (JsonParseException | IOException | IllegalStateException e) {
+			throw new MalformedMessageException("Unable to parse JSON: " + e.toString());
+		}
+	}
+
 	@Override
 	public Class<JsonObject> getMessageClass() {
 		return JsonObject.class;
@@ -3,21 +3,70 @@ package com.ibm.wiotp.sdk.codecs;
 import org.joda.time.DateTime;
 
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
 import com.ibm.wiotp.sdk.MessageInterface;
+import com.ibm.wiotp.sdk.exceptions.MalformedMessageException;
 
 public class JsonMessage implements MessageInterface<JsonObject> {
 
-	private JsonObject data;
+	private volatile JsonObject data;
 	private DateTime timestamp;
+	private final byte[] payload;
 
 	public JsonMessage(JsonObject data, DateTime timestamp) {
 		this.data = data;
 		this.timestamp = timestamp;
+		this.payload = null;
 	}
 
+	/**
+	 * Create a message whose JSON tree is only built when {@link #getData()} is
+	 * first called
+	 * 
+	 * @param payload   The UTF-8 encoded JSON payload
+	 * @param timestamp The time that the message was generated
+	 */
+	public JsonMessage(byte[] payload, DateTime timestamp) {
+		this.payload = payload;
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * @return The decoded JSON object, built from the payload on first use
+	 * @throws MalformedMessageException If the message was decoded lazily and
+	 *                                   the payload is not a JSON object
+	 */
 	@Override
 	public JsonObject getData() {
-		return data;
+		JsonObject result = data;
+		if (result == null && payload != null && payload.length > 0) {
+			result = JsonCodec.parse(payload);
+			data = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Open a streaming reader over the payload, for callbacks that only need a
+	 * few fields and would rather not build the whole JSON tree. Each call returns
+	 * a new reader positioned at the start of the payload.
+	 * 
+	 * @return A reader over the payload, or null if the message was not created
+	 *         from a payload
+	 */
+	public JsonReader getReader() {
+		if (payload == null) {
+			return null;
+		}
+		return new JsonReader(new Utf8Reader(payload));
+	}
+
+	/**
+	 * @return The raw payload, or null if the message was not created from a
+	 *         payload
+	 */
+	public byte[] getPayload() {
+		return payload;
 	}
 
 	@Override
@@ -0,0 +1,106 @@
+package com.ibm.wiotp.sdk.codecs;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.joda.time.DateTime;
+
+import com.ibm.wiotp.sdk.MessageInterface;
+import com.ibm.wiotp.sdk.exceptions.MalformedMessageException;
+
+/**
+ * A message that keeps a reference to the received MQTT message and only
+ * decodes it when its data or timestamp is first requested, so messages that
+ * are routed, filtered or dropped, or only forwarded as raw bytes, are never
+ * parsed. <br>
+ *
+ * The decoded message is cached, and decoding happens at most once even if
+ * several threads request the data at the same time. Messages for a
+ * {@link StatefulCodec} are decoded straight away, as such codecs must see
+ * messages in the order they arrive; a failure to decode is still only
+ * reported when the data is requested.
+ *
+ * @param <T> Class of the decoded data
+ */
+public class LazyMessage<T> implements MessageInterface<T> {
+
+	private final MessageCodec<T> codec;
+	private final MqttMessage msg;
+	private volatile MessageInterface<T> decoded;
+	private MalformedMessageException failure;
+
+	public LazyMessage(MessageCodec<T> codec, MqttMessage msg) {
+		this.codec = codec;
+		this.msg = msg;
+	}
+
+	/**
+	 * @param codec  The codec for the message's format
+	 * @param stream The stream, usually the topic, the message arrived on
+	 * @param msg    The received message
+	 * @param <T>    Class of the decoded data
+	 * @return A message that decodes on first use, or for a stateful codec one
+	 *         that has already been decoded
+	 */
+	public static <T> LazyMessage<T> of(MessageCodec<T> codec, String stream, MqttMessage msg) {
+		LazyMessage<T> message = new LazyMessage<T>(codec, msg);
+		if (codec instanceof StatefulCodec) {
+			try {
+				message.decoded = ((StatefulCodec<T>) codec).decode(stream, msg);
+			} catch (MalformedMessageException e) {
+				message.failure = e;
+			}
+		}
+		return message;
+	}
+
+	/**
+	 * @throws MalformedMessageException If the payload can not be decoded
+	 */
+	@Override
+	public T getData() {
+		return decode().getData();
+	}
+
+	/**
+	 * @throws MalformedMessageException If the payload can not be decoded
+	 */
+	@Override
+	public DateTime getTimestamp() {
+		return decode().getTimestamp();
+	}
+
+	/**
+	 * @return The raw payload of the MQTT message, which is not copied
+	 */
+	public byte[] getPayload() {
+		return msg.getPayload();
+	}
+
+	public MessageCodec<T> getCodec() {
+		return codec;
+	}
+
+	/**
+	 * @return Whether the payload has been decoded yet
+	 */
+	public boolean isDecoded() {
+		return decoded != null || failure != null;
+	}
+
+	private MessageInterface<T> decode() {
+		MessageInterface<T> result = decoded;
+		if (result == null) {
+			if (failure != null) {
+				throw failure;
+			}
+			synchronized (this) {
+				result = decoded;
+				if (result == null) {
+					result = codec.decode(msg);
+					decoded = result;
+				}
+			}
+		}
+		return result;
+	}
+
+}
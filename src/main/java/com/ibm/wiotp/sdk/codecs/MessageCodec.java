@@ -1,5 +1,8 @@
 package com.ibm.wiotp.sdk.codecs;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.joda.time.DateTime;
 
@@ -17,6 +20,27 @@ public interface MessageCodec<T> {
 	 */
 	public byte[] encode(T data, DateTime timestamp);
 
+	/**
+	 * Encode an Object straight into a stream, which lets the client encode
+	 * into a reused {@link PayloadBuffer} rather than a new array per message.
+	 * Codecs that can write incrementally should override this; the default
+	 * writes the result of {@link #encode(Object, DateTime)}.
+	 * 
+	 * @param data      the Object to be encoded
+	 * @param timestamp the time that the message was generated
+	 * @param out       the stream to write the MQTT message payload to
+	 * @throws IOException If writing to the stream fails
+	 */
+	public default void encode(T data, DateTime timestamp, OutputStream out) throws IOException {
+		byte[] payload = encode(data, timestamp);
+		if (out instanceof PayloadBuffer) {
+			// The array is ours, so the buffer can hand it on without copying it
+			((PayloadBuffer) out).adopt(payload);
+		} else {
+			out.write(payload);
+		}
+	}
+
 	/**
 	 * Convert an MQTT message into an instance of com.ibm.wiotp.sdk.Message
 	 * 
@@ -0,0 +1,136 @@
+package com.ibm.wiotp.sdk.codecs;
+
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * A growable in-memory stream that codecs encode payloads into, reused between
+ * messages so that encoding does not allocate a new buffer, and regrow it, for
+ * every publish. <br>
+ *
+ * Buffers are pooled per thread: {@link #acquire()} one, encode into it, take
+ * the payload with {@link #toByteArray()} and {@link #release()} it. The MQTT
+ * client keeps a reference to each message's payload until it has been
+ * delivered, so the payload itself is always a copy of exactly the encoded
+ * length. Unlike ByteArrayOutputStream the buffer is not synchronized, as it is
+ * only used by one thread at a time.
+ */
+public class PayloadBuffer extends OutputStream {
+	private static final int INITIAL_CAPACITY = 512;
+	// Buffers that grew beyond this are shrunk on release rather than kept
+	private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+	// Enough for a codec that wraps another, with room to spare
+	private static final int MAX_POOLED = 4;
+
+	private static final ThreadLocal<ArrayDeque<PayloadBuffer>> POOL = new ThreadLocal<ArrayDeque<PayloadBuffer>>() {
+		@Override
+		protected ArrayDeque<PayloadBuffer> initialValue() {
+			return new ArrayDeque<PayloadBuffer>(MAX_POOLED);
+		}
+	};
+
+	private byte[] buffer;
+	private int count = 0;
+	// An encoded payload handed over whole, returned without copying it
+	private byte[] adopted = null;
+
+	public PayloadBuffer() {
+		this(INITIAL_CAPACITY);
+	}
+
+	public PayloadBuffer(int capacity) {
+		buffer = new byte[capacity];
+	}
+
+	/**
+	 * @return An empty buffer from the current thread's pool, or a new one if the
+	 *         pool is empty. Return it with {@link #release()} when done.
+	 */
+	public static PayloadBuffer acquire() {
+		PayloadBuffer buffer = POOL.get().poll();
+		return buffer != null ? buffer : new PayloadBuffer();
+	}
+
+	/**
+	 * Empty the buffer and return it to the current thread's pool. The buffer must
+	 * not be used after it has been released.
+	 */
+	public void release() {
+		reset();
+		if (buffer.length > MAX_RETAINED_CAPACITY) {
+			buffer = new byte[INITIAL_CAPACITY];
+		}
+		ArrayDeque<PayloadBuffer> pool = POOL.get();
+		if (pool.size() < MAX_POOLED) {
+			pool.push(this);
+		}
+	}
+
+	@Override
+	public void write(int b) {
+		if (adopted != null || count == buffer.length) {
+			ensureCapacity(count + 1);
+		}
+		buffer[count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		if (off < 0 || len < 0 || off + len > b.length) {
+			throw new IndexOutOfBoundsException();
+		}
+		ensureCapacity(count + len);
+		System.arraycopy(b, off, buffer, count, len);
+		count += len;
+	}
+
+	/*
+	 * Take ownership of a freshly encoded payload. If nothing else is written it is
+	 * returned by toByteArray as it is, so codecs that only encode to a byte array
+	 * cost no extra copy.
+	 */
+	void adopt(byte[] payload) {
+		if (count == 0 && adopted == null) {
+			adopted = payload;
+			count = payload.length;
+		} else {
+			write(payload, 0, payload.length);
+		}
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (adopted != null) {
+			byte[] payload = adopted;
+			adopted = null;
+			count = 0;
+			ensureCapacity(Math.max(capacity, payload.length));
+			System.arraycopy(payload, 0, buffer, 0, payload.length);
+			count = payload.length;
+		}
+		if (capacity > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+		}
+	}
+
+	/**
+	 * @return An array holding exactly the bytes written, which the buffer does
+	 *         not write to again
+	 */
+	public byte[] toByteArray() {
+		if (adopted != null) {
+			return adopted;
+		}
+		return Arrays.copyOf(buffer, count);
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public void reset() {
+		count = 0;
+		adopted = null;
+	}
+
+}
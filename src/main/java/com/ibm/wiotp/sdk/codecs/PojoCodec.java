@@ -0,0 +1,109 @@
+package com.ibm.wiotp.sdk.codecs;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.joda.time.DateTime;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.ibm.wiotp.sdk.exceptions.MalformedMessageException;
+
+/**
+ * Codec that maps JSON messages to and from instances of a class. <br>
+ *
+ * The Gson type adapter for the class is resolved once, when the codec is
+ * created, and reads from and writes to the payload bytes directly, without
+ * building a JSON tree. Several POJO codecs, and a {@link JsonCodec}, can be
+ * registered for the same format; each decodes messages for the callbacks
+ * registered for its class.
+ *
+ * <pre>
+ * client.registerCodec(new PojoCodec&lt;Telemetry&gt;(Telemetry.class));
+ * </pre>
+ *
+ * @param <T> Class of the encoded and decoded data
+ */
+public class PojoCodec<T> implements MessageCodec<T> {
+	private final Class<T> messageClass;
+	private final String format;
+	private final TypeAdapter<T> adapter;
+
+	public PojoCodec(Class<T> messageClass) {
+		this(messageClass, "json", new Gson());
+	}
+
+	/**
+	 * @param messageClass The class to encode and decode
+	 * @param format       The format to register the codec under, for example
+	 *                     "json"
+	 * @param gson         Gson instance that provides the type adapter, for
+	 *                     custom naming or serializers
+	 */
+	public PojoCodec(Class<T> messageClass, String format, Gson gson) {
+		this.messageClass = messageClass;
+		this.format = format;
+		this.adapter = gson.getAdapter(messageClass);
+	}
+
+	@Override
+	public byte[] encode(T data, DateTime timestamp) {
+		if (data == null) {
+			return new byte[0];
+		}
+		PayloadBuffer buffer = PayloadBuffer.acquire();
+		try {
+			encode(data, timestamp, buffer);
+			return buffer.toByteArray();
+		} catch (IOException e) {
+			// Not thrown when writing to memory
+			throw new IllegalStateException(e);
+		} finally {
+			buffer.release();
+		}
+	}
+
+	@Override
+	public void encode(T data, DateTime timestamp, OutputStream out) throws IOException {
+		if (data == null) {
+			return;
+		}
+		JsonWriter writer = new JsonWriter(new Utf8Writer(out));
+		adapter.write(writer, data);
+		writer.close();
+	}
+
+	@Override
+	public PojoMessage<T> decode(MqttMessage msg) throws MalformedMessageException {
+		byte[] payload = msg.getPayload();
+		if (payload.length == 0) {
+			return new PojoMessage<T>(null, null);
+		}
+		try {
+			JsonReader reader = new JsonReader(new Utf8Reader(payload));
+			T data = adapter.read(reader);
+			if (reader.peek() != JsonToken.END_DOCUMENT) {
+				throw new MalformedMessageException("Unable to parse JSON: trailing data after the document");
+			}
+			return new PojoMessage<T>(data, null);
+		} catch (JsonParseException | IOException | IllegalStateException | NumberFormatException e) {
+			throw new MalformedMessageException("Unable to parse JSON: " + e.toString());
+		}
+	}
+
+	@Override
+	public Class<T> getMessageClass() {
+		return messageClass;
+	}
+
+	@Override
+	public String getMessageFormat() {
+		return format;
+	}
+
+}
@@ -0,0 +1,27 @@
+package com.ibm.wiotp.sdk.codecs;
+
+import org.joda.time.DateTime;
+
+import com.ibm.wiotp.sdk.MessageInterface;
+
+public class PojoMessage<T> implements MessageInterface<T> {
+
+	private T data;
+	private DateTime timestamp;
+
+	public PojoMessage(T data, DateTime timestamp) {
+		this.data = data;
+		this.timestamp = timestamp;
+	}
+
+	@Override
+	public T getData() {
+		return data;
+	}
+
+	@Override
+	public DateTime getTimestamp() {
+		return timestamp;
+	}
+
+}
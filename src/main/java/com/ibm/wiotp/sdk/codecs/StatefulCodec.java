@@ -0,0 +1,55 @@
+package com.ibm.wiotp.sdk.codecs;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.joda.time.DateTime;
+
+import com.ibm.wiotp.sdk.MessageInterface;
+import com.ibm.wiotp.sdk.exceptions.MalformedMessageException;
+
+/**
+ * A codec whose encoding of a message depends on the messages sent before it
+ * on the same stream, such as {@link DeltaCodec}. <br>
+ *
+ * Clients identify each stream by its topic, and decode messages from a
+ * stateful codec as soon as they arrive, in order, rather than when a callback
+ * first asks for the data.
+ *
+ * @param <T> Class of the encoded and decoded data
+ */
+public interface StatefulCodec<T> extends MessageCodec<T> {
+
+	/**
+	 * Convert an Object into a byte array suitable to send via MQTT
+	 * 
+	 * @param stream    the stream, usually the topic, the message is sent on
+	 * @param data      the Object to be encoded
+	 * @param timestamp the time that the message was generated
+	 * @return Byte array ready for MQTT message payload
+	 */
+	public byte[] encode(String stream, T data, DateTime timestamp);
+
+	/**
+	 * Convert an MQTT message into an instance of com.ibm.wiotp.sdk.Message
+	 * 
+	 * @param stream the stream, usually the topic, the message arrived on
+	 * @param msg    the MqttMessage from Paho MQTT client to decode
+	 * @return Object of class T from the decoded MQTT message
+	 * @throws MalformedMessageException If unable to decode the message
+	 */
+	public MessageInterface<T> decode(String stream, MqttMessage msg) throws MalformedMessageException;
+
+	/**
+	 * Called when a message encoded for a stream was rejected, dropped or could not
+	 * be delivered, so the messages that follow must not depend on it
+	 * 
+	 * @param stream the stream the message was encoded for
+	 */
+	public void failed(String stream);
+
+	/**
+	 * Called when the client reconnects after losing its connection, as messages
+	 * sent in the meantime may not have arrived
+	 */
+	public void reconnected();
+
+}
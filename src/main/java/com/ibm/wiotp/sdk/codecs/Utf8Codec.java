@@ -1,7 +1,7 @@
 package com.ibm.wiotp.sdk.codecs;
 
 import java.io.UnsupportedEncodingException;
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.joda.time.DateTime;
@@ -13,7 +13,7 @@ public class Utf8Codec implements MessageCodec<String> {
 	@Override
 	public byte[] encode(String data, DateTime timestamp) {
 		if (data != null) {
-			return data.getBytes(Charset.forName("UTF-8"));
+			return data.getBytes(StandardCharsets.UTF_8);
 		} else {
 			return new byte[0];
 		}
@@ -0,0 +1,111 @@
+package com.ibm.wiotp.sdk.codecs;
+
+import java.io.Reader;
+
+/**
+ * A reader that decodes UTF-8 directly from a byte array, so a payload can be
+ * parsed without first copying it into a String or an intermediate buffer.
+ * Malformed sequences are replaced with U+FFFD, as {@code new String(bytes,
+ * "UTF-8")} does.
+ */
+class Utf8Reader extends Reader {
+	private static final char REPLACEMENT = '\uFFFD';
+	private static final int[] MINIMUM = { 0, 0x80, 0x800, 0x10000 };
+
+	private final byte[] bytes;
+	private final int end;
+	private int position;
+	// Low surrogate of a supplementary character that did not fit the last read
+	private char pending = 0;
+
+	Utf8Reader(byte[] bytes) {
+		this(bytes, 0, bytes.length);
+	}
+
+	Utf8Reader(byte[] bytes, int offset, int length) {
+		this.bytes = bytes;
+		this.position = offset;
+		this.end = offset + length;
+	}
+
+	@Override
+	public int read(char[] cbuf, int off, int len) {
+		if (len == 0) {
+			return 0;
+		}
+		int n = 0;
+		if (pending != 0) {
+			cbuf[off + n++] = pending;
+			pending = 0;
+		}
+		while (n < len && position < end) {
+			int b = bytes[position];
+			if (b >= 0) {
+				cbuf[off + n++] = (char) b;
+				position++;
+				continue;
+			}
+
+			int codePoint;
+			int extra;
+			if ((b & 0xE0) == 0xC0) {
+				codePoint = b & 0x1F;
+				extra = 1;
+			} else if ((b & 0xF0) == 0xE0) {
+				codePoint = b & 0x0F;
+				extra = 2;
+			} else if ((b & 0xF8) == 0xF0) {
+				codePoint = b & 0x07;
+				extra = 3;
+			} else {
+				cbuf[off + n++] = REPLACEMENT;
+				position++;
+				continue;
+			}
+
+			if (position + extra >= end) {
+				// Truncated sequence at the end of the payload
+				cbuf[off + n++] = REPLACEMENT;
+				position = end;
+				continue;
+			}
+			int i = 1;
+			for (; i <= extra; i++) {
+				int next = bytes[position + i];
+				if ((next & 0xC0) != 0x80) {
+					break;
+				}
+				codePoint = (codePoint << 6) | (next & 0x3F);
+			}
+			if (i <= extra) {
+				cbuf[off + n++] = REPLACEMENT;
+				position += i;
+				continue;
+			}
+			position += extra + 1;
+			if (codePoint < MINIMUM[extra] || codePoint > Character.MAX_CODE_POINT
+					|| (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+				// Overlong encoding, surrogate or out of range
+				cbuf[off + n++] = REPLACEMENT;
+				continue;
+			}
+
+			if (codePoint < 0x10000) {
+				cbuf[off + n++] = (char) codePoint;
+			} else {
+				cbuf[off + n++] = Character.highSurrogate(codePoint);
+				char low = Character.lowSurrogate(codePoint);
+				if (n < len) {
+					cbuf[off + n++] = low;
+				} else {
+					pending = low;
+				}
+			}
+		}
+		return n == 0 ? -1 : n;
+	}
+
+	@Override
+	public void close() {
+	}
+}
@@ -0,0 +1,109 @@
+package com.ibm.wiotp.sdk.codecs;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * A writer that encodes UTF-8 straight to a stream, the counterpart of
+ * {@link Utf8Reader}. It avoids the 8KB buffer that OutputStreamWriter
+ * allocates for each instance, so a payload can be written without any
+ * allocation proportional to its size. Unpaired surrogates are replaced with
+ * '?', as {@code String.getBytes("UTF-8")} does.
+ */
+class Utf8Writer extends Writer {
+	private static final int REPLACEMENT = '?';
+
+	private final OutputStream out;
+	private final byte[] bytes = new byte[256];
+	private int count = 0;
+	// High surrogate waiting for the low surrogate in the next write
+	private char pending = 0;
+
+	Utf8Writer(OutputStream out) {
+		this.out = out;
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		encode((char) c);
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		for (int i = off; i < off + len; i++) {
+			encode(cbuf[i]);
+		}
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		for (int i = off; i < off + len; i++) {
+			encode(str.charAt(i));
+		}
+	}
+
+	private void encode(char c) throws IOException {
+		if (count > bytes.length - 4) {
+			drain();
+		}
+		if (pending != 0) {
+			char high = pending;
+			pending = 0;
+			if (Character.isLowSurrogate(c)) {
+				int codePoint = Character.toCodePoint(high, c);
+				bytes[count++] = (byte) (0xF0 | (codePoint >> 18));
+				bytes[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+				bytes[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+				bytes[count++] = (byte) (0x80 | (codePoint & 0x3F));
+				return;
+			}
+			bytes[count++] = REPLACEMENT;
+			if (count > bytes.length - 4) {
+				drain();
+			}
+		}
+
+		if (c < 0x80) {
+			bytes[count++] = (byte) c;
+		} else if (c < 0x800) {
+			bytes[count++] = (byte) (0xC0 | (c >> 6));
+			bytes[count++] = (byte) (0x80 | (c & 0x3F));
+		} else if (Character.isHighSurrogate(c)) {
+			pending = c;
+		} else if (Character.isLowSurrogate(c)) {
+			bytes[count++] = REPLACEMENT;
+		} else {
+			bytes[count++] = (byte) (0xE0 | (c >> 12));
+			bytes[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+			bytes[count++] = (byte) (0x80 | (c & 0x3F));
+		}
+	}
+
+	private void drain() throws IOException {
+		out.write(bytes, 0, count);
+		count = 0;
+	}
+
+	/**
+	 * Write out buffered bytes. A trailing unpaired high surrogate is kept, in
+	 * case its low surrogate follows.
+	 */
+	@Override
+	public void flush() throws IOException {
+		drain();
+	}
+
+	/**
+	 * Write out buffered bytes, replacing a trailing unpaired high surrogate. The
+	 * underlying stream is not closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (pending != 0) {
+			pending = 0;
+			bytes[count++] = REPLACEMENT;
+		}
+		drain();
+	}
+}
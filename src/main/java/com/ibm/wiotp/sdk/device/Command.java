@@ -13,6 +13,7 @@ package com.ibm.wiotp.sdk.device;
 import org.joda.time.DateTime;
 
 import com.ibm.wiotp.sdk.MessageInterface;
+import com.ibm.wiotp.sdk.codecs.LazyMessage;
 
 /**
  * The objects of this class hold the command and the format of the command sent
@@ -69,4 +70,19 @@ public class Command<T> implements MessageInterface<T> {
 	public DateTime getTimestamp() {
 		return message.getTimestamp();
 	}
+
+	/**
+	 * Returns the raw payload, without decoding it. Forwarding the payload this way
+	 * avoids the cost of decoding when the data itself is not needed.
+	 * 
+	 * @return The raw payload, or null if the command was not created from a
+	 *         received MQTT message
+	 */
+	@SuppressWarnings("rawtypes")
+	public byte[] getPayload() {
+		if (message instanceof LazyMessage) {
+			return ((LazyMessage) message).getPayload();
+		}
+		return null;
+	}
 }
@@ -13,23 +13,27 @@ package com.ibm.wiotp.sdk.device;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
 import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
-import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.ibm.wiotp.sdk.AbstractClient;
-import com.ibm.wiotp.sdk.MessageInterface;
+import com.ibm.wiotp.sdk.MessagePublisher;
+import com.ibm.wiotp.sdk.codecs.LazyMessage;
 import com.ibm.wiotp.sdk.codecs.MessageCodec;
 import com.ibm.wiotp.sdk.device.config.DeviceConfig;
+import com.ibm.wiotp.sdk.exceptions.MalformedMessageException;
+import com.ibm.wiotp.sdk.util.Topic;
 
 /**
  * A client, used by device, that handles connections with the IBM Watson IoT
@@ -38,15 +42,24 @@ import com.ibm.wiotp.sdk.device.config.DeviceConfig;
  */
 public class DeviceClient extends AbstractClient implements MqttCallbackExtended {
 	private static final Logger LOG = LoggerFactory.getLogger(DeviceClient.class);
-	private static final Pattern COMMAND_PATTERN = Pattern.compile("iot-2/cmd/(.+)/fmt/(.+)");
+	private static final String COMMAND_TOPIC = "iot-2/cmd/+/fmt/+";
 
 	@SuppressWarnings("rawtypes")
-	protected Map<Class, MessageCodec> messageCodecs = new HashMap<Class, MessageCodec>();
+	protected Map<Class, CommandCallback> commandCallbacks = new HashMap<Class, CommandCallback>();
+
+	/**
+	 * @deprecated Use {@link #getCodecRegistry()}; this is a view of it
+	 */
+	@Deprecated
 	@SuppressWarnings("rawtypes")
-	protected Map<String, MessageCodec> messageCodecsByFormat = new HashMap<String, MessageCodec>();
+	protected Map<Class, MessageCodec> messageCodecs = codecRegistry.classView();
 
+	/**
+	 * @deprecated Use {@link #getCodecRegistry()}; this is a view of it
+	 */
+	@Deprecated
 	@SuppressWarnings("rawtypes")
-	protected Map<Class, CommandCallback> commandCallbacks = new HashMap<Class, CommandCallback>();
+	protected Map<String, MessageCodec> messageCodecsByFormat = codecRegistry.formatView();
 
 	public DeviceClient() throws Exception {
 		this(DeviceConfig.generateFromEnv());
@@ -92,9 +105,38 @@ public class DeviceClient extends AbstractClient implements MqttCallbackExtended
 		}
 	}
 
+	@Override
+	protected void connectedAsync(final CompletableFuture<Void> future) {
+		if (config.getOrgId().equals("quickstart")) {
+			future.complete(null);
+			return;
+		}
+		try {
+			mqttAsyncClient.subscribe(COMMAND_TOPIC, 2, null, new IMqttActionListener() {
+				@Override
+				public void onSuccess(IMqttToken token) {
+					if (token.getGrantedQos()[0] == MqttException.REASON_CODE_SUBSCRIBE_FAILED) {
+						LOG.warn("Subscription to " + COMMAND_TOPIC + " was refused");
+						future.completeExceptionally(new MqttException(MqttException.REASON_CODE_SUBSCRIBE_FAILED));
+					} else {
+						future.complete(null);
+					}
+				}
+
+				@Override
+				public void onFailure(IMqttToken token, Throwable e) {
+					LOG.warn("Unable to subscribe to " + COMMAND_TOPIC + ": " + e.getMessage());
+					future.completeExceptionally(e);
+				}
+			});
+		} catch (MqttException e) {
+			future.completeExceptionally(e);
+		}
+	}
+
 	private void subscribeToCommands() throws MqttException {
 		try {
-			mqttAsyncClient.subscribe("iot-2/cmd/+/fmt/+", 2).waitForCompletion(DEFAULT_ACTION_TIMEOUT);
+			mqttAsyncClient.subscribe(COMMAND_TOPIC, 2).waitForCompletion(DEFAULT_ACTION_TIMEOUT);
 		} catch (MqttException e) {
 			e.printStackTrace();
 			throw e;
@@ -116,38 +158,81 @@ public class DeviceClient extends AbstractClient implements MqttCallbackExtended
 		}
 
 		// Find the codec for the data class
-		MessageCodec codec = messageCodecs.get(data.getClass());
+		MessageCodec codec = codecRegistry.getCodec(data.getClass());
 
 		// Check that a codec is registered
 		if (codec == null) {
 			LOG.warn("Unable to encode event of class " + data.getClass().getName());
 			return false;
 		}
-		byte[] payload = codec.encode(data, new DateTime());
 		String topic = "iot-2/evt/" + eventId + "/fmt/" + codec.getMessageFormat();
-		LOG.debug("Publishing event to " + topic);
-
-		MqttMessage msg = new MqttMessage(payload);
-		msg.setQos(qos);
-		msg.setRetained(false);
+		LOG.debug("Publishing event to {}", topic);
 
-		try {
-			mqttAsyncClient.publish(topic, msg);
-		} catch (MqttException e) {
-			e.printStackTrace();
-			return false;
-		}
-		return true;
+		return publish(codec, data, topic, qos);
 	}
 
 	public boolean publishEvent(String eventId, Object data) {
 		return publishEvent(eventId, data, 0);
 	}
 
+	/**
+	 * Publish data to the IBM Watson IoT Platform without waiting for it to be
+	 * delivered.<br>
+	 * 
+	 * @param eventId object of String which denotes event
+	 * @param data    Payload data
+	 * @param qos     Quality of Service, in int - can have values 0,1,2
+	 * @return A future that completes when the message has been delivered (for QoS
+	 *         1 and 2, acknowledged by the server), or completes exceptionally if
+	 *         it could not be encoded or delivered.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public CompletableFuture<IMqttDeliveryToken> publishEventAsync(String eventId, Object data, int qos) {
+		if (data == null) {
+			throw new NullPointerException("Data object for event publish can not be null");
+		}
+
+		MessageCodec codec = codecRegistry.getCodec(data.getClass());
+		if (codec == null) {
+			return failedFuture(
+					new IllegalArgumentException("Unable to encode event of class " + data.getClass().getName()));
+		}
+		String topic = "iot-2/evt/" + eventId + "/fmt/" + codec.getMessageFormat();
+		LOG.debug("Publishing event to {}", topic);
+
+		return publishAsync(codec, data, topic, qos);
+	}
+
+	public CompletableFuture<IMqttDeliveryToken> publishEventAsync(String eventId, Object data) {
+		return publishEventAsync(eventId, data, 0);
+	}
+
+	/**
+	 * Create a handle for publishing the same event repeatedly. The topic and codec
+	 * are resolved once, when the handle is created.
+	 * 
+	 * @param eventId   object of String which denotes event
+	 * @param dataClass Class of the data that will be published
+	 * @param qos       Quality of Service, in int - can have values 0,1,2
+	 * @param <T>       Class of the data that will be published
+	 * @return The publisher
+	 * @throws IllegalArgumentException If no codec is registered for the data
+	 *                                  class
+	 */
+	public <T> MessagePublisher<T> getEventPublisher(String eventId, Class<T> dataClass, int qos) {
+		MessageCodec<T> codec = getCodec(dataClass);
+		return createPublisher("iot-2/evt/" + eventId + "/fmt/" + codec.getMessageFormat(), codec, qos);
+	}
+
+	public <T> MessagePublisher<T> getEventPublisher(String eventId, Class<T> dataClass) {
+		return getEventPublisher(eventId, dataClass, 0);
+	}
+
 	/**
 	 * Simply log error when connection is lost
 	 */
 	public void connectionLost(Throwable e) {
+		recordConnectionLost();
 		if (e instanceof MqttException) {
 			MqttException e2 = (MqttException) e;
 			LOG.warn("Connection lost: Reason Code: " + e2.getReasonCode() + " Cause: "
@@ -170,24 +255,32 @@ public class DeviceClient extends AbstractClient implements MqttCallbackExtended
 			 * otherwise it is a waste of time as without a callback there is nothing to
 			 * process the generated command.
 			 */
-			Matcher matcher = COMMAND_PATTERN.matcher(topic);
-			if (matcher.matches()) {
-				String command = matcher.group(1);
-				String format = matcher.group(2);
+			Topic parsed = Topic.parse(topic);
+			if (parsed.getKind() == Topic.Kind.COMMAND) {
+				String format = parsed.getFormat();
 
-				MessageCodec codec = messageCodecsByFormat.get(format);
+				List<MessageCodec> codecs = codecRegistry.getCodecs(format);
 				// Check that a codec is registered
-				if (codec == null) {
+				if (codecs.isEmpty()) {
 					LOG.warn("Unable to decode command from format " + format);
+					return;
 				}
-				MessageInterface message = codec.decode(msg);
-				Command cmd = new Command(command, format, message);
+				// Each codec for the format decodes for the callback registered for its class
+				for (MessageCodec codec : codecs) {
+					CommandCallback callback = commandCallbacks.get(codec.getMessageClass());
+					if (callback == null) {
+						continue;
+					}
+					// The payload is only decoded if the callback asks for the data
+					Command cmd = new Command(parsed.getCommandId(), format, LazyMessage.of(codec, topic, msg));
 
-				LOG.debug("Command received: " + cmd.toString());
+					LOG.debug("Command received: " + cmd.toString());
 
-				CommandCallback callback = commandCallbacks.get(codec.getMessageClass());
-				if (callback != null) {
-					callback.processCommand(cmd);
+					try {
+						callback.processCommand(cmd);
+					} catch (MalformedMessageException e) {
+						LOG.warn("Unable to decode command received on " + topic + ": " + e.getMessage());
+					}
 				}
 			}
 		}
@@ -195,22 +288,9 @@ public class DeviceClient extends AbstractClient implements MqttCallbackExtended
 
 	@Override
 	public void connectComplete(boolean reconnect, String serverURI) {
-		if (reconnect) {
-			LOG.info("Reconnected to " + serverURI);
-			if (!config.getOrgId().equals("quickstart")) {
-				try {
-					subscribeToCommands();
-				} catch (MqttException e) {
-					e.printStackTrace();
-				}
-			}
-		}
-	}
-
-	@SuppressWarnings("rawtypes")
-	public void registerCodec(MessageCodec codec) {
-		this.messageCodecs.put(codec.getMessageClass(), codec);
-		this.messageCodecsByFormat.put(codec.getMessageFormat(), codec);
+		// A lost connection is restored by AbstractClient, which resubscribes to
+		// commands through connectedAsync()
+		LOG.debug("Connected to " + serverURI);
 	}
 
 	@SuppressWarnings("rawtypes")
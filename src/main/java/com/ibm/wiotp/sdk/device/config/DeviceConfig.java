@@ -8,11 +8,12 @@ import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Map;
 
-import javax.net.ssl.SSLContext;
-
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 
 import com.ibm.wiotp.sdk.AbstractConfig;
+import com.ibm.wiotp.sdk.BackpressurePolicy;
+import com.ibm.wiotp.sdk.TlsContextCache;
+import com.ibm.wiotp.sdk.persistence.PersistenceType;
 
 import org.yaml.snakeyaml.Yaml;
 
@@ -21,7 +22,7 @@ public class DeviceConfig implements AbstractConfig {
 	/*
 	 * identity: orgId: myOrg typeId: myType deviceId: myDevice auth: token: myToken
 	 * options: domain: internetofthings.ibmcloud.com logLevel: info mqtt: port:
-	 * 8883 transport: tcp cleanStart: true sessionExpiry: 3600 keepAlive: 60
+	 * 8883 transport: tcp cleanStart: true sessionExpiry: 3600 keepAlive: 60 version: 5
 	 * caFile: myPath
 	 */
 
@@ -83,14 +84,13 @@ public class DeviceConfig implements AbstractConfig {
 
 		connectOptions.setCleanSession(this.options.mqtt.cleanStart);
 		connectOptions.setKeepAliveInterval(this.options.mqtt.keepAlive);
-		connectOptions.setMaxInflight(DEFAULT_MAX_INFLIGHT_MESSAGES);
-		connectOptions.setAutomaticReconnect(true);
+		connectOptions.setMaxInflight(getMaxInflight());
+		// The client reconnects itself, with jitter
+		connectOptions.setAutomaticReconnect(false);
 
 		if (!Arrays.asList(1883, 80).contains(options.mqtt.port)) {
-			SSLContext sslContext = SSLContext.getInstance("TLSv1.2");
-			sslContext.init(null, null, null);
-
-			connectOptions.setSocketFactory(sslContext.getSocketFactory());
+			// Shared, so that reconnects resume the TLS session
+			connectOptions.setSocketFactory(TlsContextCache.getSocketFactory(options.mqtt.caFile));
 		}
 
 		return connectOptions;
@@ -132,6 +132,51 @@ public class DeviceConfig implements AbstractConfig {
 		return options.mqtt.cleanStart;
 	}
 
+	@Override
+	public int getMaxInflight() {
+		return options.mqtt.maxInflight;
+	}
+
+	@Override
+	public int getPublishQueueSize() {
+		return options.mqtt.publishQueueSize;
+	}
+
+	@Override
+	public BackpressurePolicy getBackpressurePolicy() {
+		return options.mqtt.backpressure;
+	}
+
+	@Override
+	public PersistenceType getPersistenceType() {
+		return options.mqtt.persistence;
+	}
+
+	@Override
+	public String getPersistenceDirectory() {
+		return options.mqtt.persistenceDir;
+	}
+
+	@Override
+	public int getMqttVersion() {
+		return options.mqtt.version;
+	}
+
+	@Override
+	public int getSessionExpiry() {
+		return options.mqtt.sessionExpiry;
+	}
+
+	@Override
+	public int getReceiveMaximum() {
+		return options.mqtt.receiveMaximum;
+	}
+
+	@Override
+	public int getTopicAliasMaximum() {
+		return options.mqtt.topicAliasMaximum;
+	}
+
 	@Override
 	public String getMqttUsername() {
 		return "use-token-auth";
@@ -2,13 +2,25 @@ package com.ibm.wiotp.sdk.device.config;
 
 import java.util.Map;
 
+import com.ibm.wiotp.sdk.AbstractConfig;
+import com.ibm.wiotp.sdk.BackpressurePolicy;
+import com.ibm.wiotp.sdk.persistence.PersistenceType;
+
 public class DeviceConfigOptionsMqtt {
 	public int port = 8883;
 	public String transport = "tcp"; // or "websockets"
-	public String caFile = null;
+	public String caFile = null; // PEM file of the CAs to trust, or null for the JVM's
 	public boolean cleanStart = true;
 	public int sessionExpiry = 60;
 	public int keepAlive = 60;
+	public int maxInflight = AbstractConfig.DEFAULT_MAX_INFLIGHT_MESSAGES;
+	public int publishQueueSize = AbstractConfig.DEFAULT_PUBLISH_QUEUE_SIZE;
+	public BackpressurePolicy backpressure = BackpressurePolicy.FAIL;
+	public PersistenceType persistence = PersistenceType.MEMORY;
+	public String persistenceDir = null;
+	public int version = AbstractConfig.MQTT_VERSION_3_1_1;
+	public int receiveMaximum = 0;
+	public int topicAliasMaximum = 0;
 
 	public DeviceConfigOptionsMqtt() {
 	}
@@ -49,6 +61,30 @@ public class DeviceConfigOptionsMqtt {
 		if (System.getenv("WIOTP_OPTIONS_MQTT_KEEPALIVE") != null)
 			mqtt.keepAlive = Integer.parseInt(System.getenv("WIOTP_OPTIONS_MQTT_KEEPALIVE"));
 
+		if (System.getenv("WIOTP_OPTIONS_MQTT_MAXINFLIGHT") != null)
+			mqtt.maxInflight = Integer.parseInt(System.getenv("WIOTP_OPTIONS_MQTT_MAXINFLIGHT"));
+
+		if (System.getenv("WIOTP_OPTIONS_MQTT_PUBLISHQUEUESIZE") != null)
+			mqtt.publishQueueSize = Integer.parseInt(System.getenv("WIOTP_OPTIONS_MQTT_PUBLISHQUEUESIZE"));
+
+		if (System.getenv("WIOTP_OPTIONS_MQTT_BACKPRESSURE") != null)
+			mqtt.backpressure = BackpressurePolicy.parse(System.getenv("WIOTP_OPTIONS_MQTT_BACKPRESSURE"));
+
+		if (System.getenv("WIOTP_OPTIONS_MQTT_PERSISTENCE") != null)
+			mqtt.persistence = PersistenceType.parse(System.getenv("WIOTP_OPTIONS_MQTT_PERSISTENCE"));
+
+		if (System.getenv("WIOTP_OPTIONS_MQTT_PERSISTENCEDIR") != null)
+			mqtt.persistenceDir = System.getenv("WIOTP_OPTIONS_MQTT_PERSISTENCEDIR");
+
+		if (System.getenv("WIOTP_OPTIONS_MQTT_VERSION") != null)
+			mqtt.version = Integer.parseInt(System.getenv("WIOTP_OPTIONS_MQTT_VERSION"));
+
+		if (System.getenv("WIOTP_OPTIONS_MQTT_RECEIVEMAXIMUM") != null)
+			mqtt.receiveMaximum = Integer.parseInt(System.getenv("WIOTP_OPTIONS_MQTT_RECEIVEMAXIMUM"));
+
+		if (System.getenv("WIOTP_OPTIONS_MQTT_TOPICALIASMAXIMUM") != null)
+			mqtt.topicAliasMaximum = Integer.parseInt(System.getenv("WIOTP_OPTIONS_MQTT_TOPICALIASMAXIMUM"));
+
 		return mqtt;
 	}
 
@@ -74,6 +110,30 @@ public class DeviceConfigOptionsMqtt {
 		if (yamlMqtt.get("keepAlive") != null)
 			mqtt.keepAlive = Integer.parseInt((String) yamlMqtt.get("keepAlive"));
 
+		if (yamlMqtt.get("maxInflight") != null)
+			mqtt.maxInflight = Integer.parseInt((String) yamlMqtt.get("maxInflight"));
+
+		if (yamlMqtt.get("publishQueueSize") != null)
+			mqtt.publishQueueSize = Integer.parseInt((String) yamlMqtt.get("publishQueueSize"));
+
+		if (yamlMqtt.get("backpressure") != null)
+			mqtt.backpressure = BackpressurePolicy.parse((String) yamlMqtt.get("backpressure"));
+
+		if (yamlMqtt.get("persistence") != null)
+			mqtt.persistence = PersistenceType.parse((String) yamlMqtt.get("persistence"));
+
+		if (yamlMqtt.get("persistenceDir") != null)
+			mqtt.persistenceDir = (String) yamlMqtt.get("persistenceDir");
+
+		if (yamlMqtt.get("version") != null)
+			mqtt.version = Integer.parseInt((String) yamlMqtt.get("version"));
+
+		if (yamlMqtt.get("receiveMaximum") != null)
+			mqtt.receiveMaximum = Integer.parseInt((String) yamlMqtt.get("receiveMaximum"));
+
+		if (yamlMqtt.get("topicAliasMaximum") != null)
+			mqtt.topicAliasMaximum = Integer.parseInt((String) yamlMqtt.get("topicAliasMaximum"));
+
 		return mqtt;
 	}
 }
\ No newline at end of file
@@ -13,6 +13,7 @@ package com.ibm.wiotp.sdk.gateway;
 import org.joda.time.DateTime;
 
 import com.ibm.wiotp.sdk.MessageInterface;
+import com.ibm.wiotp.sdk.codecs.LazyMessage;
 
 /**
  * The Command class
@@ -74,4 +75,18 @@ public class Command<T> implements CommandInterface<T> {
 		return message.getData();
 	}
 
+	/**
+	 * Returns the raw payload, without decoding it. Forwarding the payload this way
+	 * avoids the cost of decoding when the data itself is not needed.
+	 * 
+	 * @return The raw payload, or null if the command was not created from a
+	 *         received MQTT message
+	 */
+	@SuppressWarnings("rawtypes")
+	public byte[] getPayload() {
+		if (message instanceof LazyMessage) {
+			return ((LazyMessage) message).getPayload();
+		}
+		return null;
+	}
 }
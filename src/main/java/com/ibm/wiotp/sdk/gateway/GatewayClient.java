@@ -12,23 +12,26 @@
 package com.ibm.wiotp.sdk.gateway;
 
 import java.nio.charset.Charset;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
 import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
-import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.gson.JsonObject;
-import com.ibm.wiotp.sdk.MessageInterface;
+import com.ibm.wiotp.sdk.MessagePublisher;
+import com.ibm.wiotp.sdk.codecs.LazyMessage;
 import com.ibm.wiotp.sdk.codecs.MessageCodec;
 import com.ibm.wiotp.sdk.device.Command;
 import com.ibm.wiotp.sdk.device.CommandCallback;
 import com.ibm.wiotp.sdk.device.DeviceClient;
+import com.ibm.wiotp.sdk.exceptions.MalformedMessageException;
 import com.ibm.wiotp.sdk.gateway.config.GatewayConfig;
+import com.ibm.wiotp.sdk.util.Topic;
 
 /**
  * A client, used by Gateway, that simplifies the Gateway interactions with IBM
@@ -59,7 +62,7 @@ import com.ibm.wiotp.sdk.gateway.config.GatewayConfig;
  */
 public class GatewayClient extends DeviceClient implements MqttCallbackExtended {
 	private static final Logger LOG = LoggerFactory.getLogger(GatewayClient.class);
-	private static final Pattern GATEWAY_COMMAND_PATTERN = Pattern.compile("iot-2/type/(.+)/id/(.+)/cmd/(.+)/fmt/(.+)");
+	private static final Charset UTF8 = Charset.forName("UTF-8");
 
 	/**
 	 * <p>
@@ -110,23 +113,72 @@ public class GatewayClient extends DeviceClient implements MqttCallbackExtended
 		}
 		payload = gson.toJsonTree(data);
 
-		LOG.debug("Topic   = " + topic);
-		LOG.debug("Payload = " + payload.toString());
+		String payloadString = payload.toString();
+		LOG.debug("Topic   = {}", topic);
+		LOG.debug("Payload = {}", payloadString);
 
-		MqttMessage msg = new MqttMessage(payload.toString().getBytes(Charset.forName("UTF-8")));
-		msg.setQos(qos);
-		msg.setRetained(false);
+		return publish(topic, payloadString.getBytes(UTF8), qos);
+	}
 
-		try {
-			mqttAsyncClient.publish(topic, msg);
-		} catch (MqttPersistenceException e) {
-			e.printStackTrace();
-			return false;
-		} catch (MqttException e) {
-			e.printStackTrace();
-			return false;
+	/**
+	 * Publish an event on the behalf of a device to the IBM Watson IoT Platform
+	 * without waiting for it to be delivered. <br>
+	 * 
+	 * @param typeId   object of String which denotes deviceType
+	 * @param deviceId object of String which denotes deviceId
+	 * @param eventId  object of String which denotes event
+	 * @param data     Payload data
+	 * @param qos      Quality of Service, in int - can have values 0,1,2
+	 * 
+	 * @return A future that completes when the message has been delivered (for QoS
+	 *         1 and 2, acknowledged by the server), or completes exceptionally if
+	 *         it could not be encoded or delivered.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public CompletableFuture<IMqttDeliveryToken> publishDeviceEventAsync(String typeId, String deviceId,
+			String eventId, Object data, int qos) {
+		if (data == null) {
+			throw new NullPointerException("Data object for event publish can not be null");
+		}
+
+		MessageCodec codec = codecRegistry.getCodec(data.getClass());
+		if (codec == null) {
+			return failedFuture(
+					new IllegalArgumentException("Unable to encode event of class " + data.getClass().getName()));
 		}
-		return true;
+		String topic = "iot-2/type/" + typeId + "/id/" + deviceId + "/evt/" + eventId + "/fmt/"
+				+ codec.getMessageFormat();
+		LOG.debug("Publishing event to {}", topic);
+
+		return publishAsync(codec, data, topic, qos);
+	}
+
+	/**
+	 * Create a handle for publishing the same event, on the behalf of a device,
+	 * repeatedly. The topic and codec are resolved once, when the handle is
+	 * created.
+	 * 
+	 * @param typeId    object of String which denotes deviceType
+	 * @param deviceId  object of String which denotes deviceId
+	 * @param eventId   object of String which denotes event
+	 * @param dataClass Class of the data that will be published
+	 * @param qos       Quality of Service, in int - can have values 0,1,2
+	 * @param <T>       Class of the data that will be published
+	 * @return The publisher
+	 * @throws IllegalArgumentException If no codec is registered for the data
+	 *                                  class
+	 */
+	public <T> MessagePublisher<T> getDeviceEventPublisher(String typeId, String deviceId, String eventId,
+			Class<T> dataClass, int qos) {
+		MessageCodec<T> codec = getCodec(dataClass);
+		String topic = "iot-2/type/" + typeId + "/id/" + deviceId + "/evt/" + eventId + "/fmt/"
+				+ codec.getMessageFormat();
+		return createPublisher(topic, codec, qos);
+	}
+
+	public <T> MessagePublisher<T> getDeviceEventPublisher(String typeId, String deviceId, String eventId,
+			Class<T> dataClass) {
+		return getDeviceEventPublisher(typeId, deviceId, eventId, dataClass, 0);
 	}
 
 	/**
@@ -183,24 +235,32 @@ public class GatewayClient extends DeviceClient implements MqttCallbackExtended
 			 * otherwise it is a waste of time as without a callback there is nothing to
 			 * process the generated command.
 			 */
-			Matcher matcher = GATEWAY_COMMAND_PATTERN.matcher(topic);
-			if (matcher.matches()) {
-				String command = matcher.group(1);
-				String format = matcher.group(2);
+			Topic parsed = Topic.parse(topic);
+			if (parsed.getKind() == Topic.Kind.DEVICE_COMMAND) {
+				String format = parsed.getFormat();
 
-				MessageCodec codec = messageCodecsByFormat.get(format);
+				List<MessageCodec> codecs = codecRegistry.getCodecs(format);
 				// Check that a codec is registered
-				if (codec == null) {
+				if (codecs.isEmpty()) {
 					LOG.warn("Unable to decode command from format " + format);
+					return;
 				}
-				MessageInterface message = codec.decode(msg);
-				Command cmd = new Command(command, format, message);
+				// Each codec for the format decodes for the callback registered for its class
+				for (MessageCodec codec : codecs) {
+					CommandCallback callback = commandCallbacks.get(codec.getMessageClass());
+					if (callback == null) {
+						continue;
+					}
+					// The payload is only decoded if the callback asks for the data
+					Command cmd = new Command(parsed.getCommandId(), format, LazyMessage.of(codec, topic, msg));
 
-				LOG.debug("Command received: " + cmd.toString());
+					LOG.debug("Command received: " + cmd.toString());
 
-				CommandCallback callback = commandCallbacks.get(codec.getMessageClass());
-				if (callback != null) {
-					callback.processCommand(cmd);
+					try {
+						callback.processCommand(cmd);
+					} catch (MalformedMessageException e) {
+						LOG.warn("Unable to decode command received on " + topic + ": " + e.getMessage());
+					}
 				}
 			}
 		}
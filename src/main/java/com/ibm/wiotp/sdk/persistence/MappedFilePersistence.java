@@ -0,0 +1,567 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An MQTT client persistence store backed by an append-only, memory-mapped log
+ * file. <br>
+ *
+ * Every put and remove is appended to the log as a checksummed record, and an
+ * in-memory index maps each live key to its latest record. Writes go to the
+ * operating system's page cache through the memory mapping, so they survive a
+ * restart of the process (but not necessarily of the machine) without a system
+ * call per message. On open the log is replayed to rebuild the index, stopping
+ * at the first incomplete or corrupt record. <br>
+ *
+ * When most of the log is occupied by removed or overwritten records it is
+ * compacted: the live records are copied to a new file, which atomically
+ * replaces the old one.
+ */
+public class MappedFilePersistence implements MqttClientPersistence {
+	private static final Logger LOG = LoggerFactory.getLogger(MappedFilePersistence.class);
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final String LOG_FILE = "messages.log";
+	private static final String COMPACT_FILE = "messages.log.compact";
+	private static final String LOCK_FILE = ".lck";
+
+	private static final byte OP_PUT = 1;
+	private static final byte OP_REMOVE = 2;
+
+	// length(4) + op(1) + keyLength(2) ... crc(4)
+	private static final int RECORD_OVERHEAD = 4 + 1 + 2 + 4;
+
+	public static final int DEFAULT_INITIAL_SIZE = 16 * 1024 * 1024;
+	public static final int DEFAULT_COMPACT_THRESHOLD = 4 * 1024 * 1024;
+
+	private final File baseDirectory;
+	private final int initialSize;
+	private final int compactThreshold;
+
+	private File directory;
+	private RandomAccessFile lockFile;
+	private FileLock lock;
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private MappedByteBuffer buffer;
+
+	/*
+	 * Mapped buffers have no public way to be released. Java 9 and later offer
+	 * Unsafe.invokeCleaner, Java 8 the buffer's own cleaner.
+	 */
+	private static final Object UNSAFE;
+	private static final Method UNMAP;
+
+	static {
+		Object unsafe = null;
+		Method unmap = null;
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			try {
+				unmap = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+				Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+				theUnsafe.setAccessible(true);
+				unsafe = theUnsafe.get(null);
+			} catch (NoSuchMethodException e) {
+				unmap = Class.forName("sun.misc.Cleaner").getMethod("clean");
+			}
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			LOG.debug("Mapped buffers can not be released explicitly: " + e.getMessage());
+			unsafe = null;
+			unmap = null;
+		}
+		UNSAFE = unsafe;
+		UNMAP = unmap;
+	}
+
+	private final Map<String, Record> index = new HashMap<String, Record>();
+	private final CRC32 crc = new CRC32();
+	private int writePosition;
+	private long liveBytes;
+
+	/**
+	 * @param directory Directory in which each client's log is created
+	 */
+	public MappedFilePersistence(String directory) {
+		this(directory, DEFAULT_INITIAL_SIZE, DEFAULT_COMPACT_THRESHOLD);
+	}
+
+	/**
+	 * @param directory        Directory in which each client's log is created
+	 * @param initialSize      Initial size of the mapped log file, in bytes. The
+	 *                         file grows by doubling when it is full.
+	 * @param compactThreshold Minimum log size, in bytes, before the log is
+	 *                         compacted
+	 */
+	public MappedFilePersistence(String directory, int initialSize, int compactThreshold) {
+		this.baseDirectory = new File(directory);
+		this.initialSize = initialSize;
+		this.compactThreshold = compactThreshold;
+	}
+
+	@Override
+	public synchronized void open(String clientId, String serverURI) throws MqttPersistenceException {
+		if (file != null) {
+			return;
+		}
+		directory = new File(baseDirectory, sanitize(clientId + "-" + serverURI));
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new MqttPersistenceException(
+					new IOException("Unable to create persistence directory " + directory.getAbsolutePath()));
+		}
+
+		try {
+			lockFile = new RandomAccessFile(new File(directory, LOCK_FILE), "rw");
+			try {
+				lock = lockFile.getChannel().tryLock();
+			} catch (OverlappingFileLockException e) {
+				// Already open in this process
+				lock = null;
+			}
+			if (lock == null) {
+				lockFile.close();
+				lockFile = null;
+				throw new MqttPersistenceException(MqttPersistenceException.REASON_CODE_PERSISTENCE_IN_USE);
+			}
+
+			// A compaction that did not complete leaves the original log intact
+			File compact = new File(directory, COMPACT_FILE);
+			if (compact.exists() && !compact.delete()) {
+				LOG.warn("Unable to delete incomplete compaction file " + compact.getAbsolutePath());
+			}
+
+			map(new File(directory, LOG_FILE));
+			replay();
+			LOG.debug("Opened " + directory.getAbsolutePath() + " with " + index.size() + " persisted messages");
+			compactIfNeeded();
+		} catch (IOException e) {
+			release();
+			throw new MqttPersistenceException(e);
+		}
+	}
+
+	@Override
+	public synchronized void close() throws MqttPersistenceException {
+		if (buffer != null) {
+			buffer.force();
+		}
+		release();
+	}
+
+	@Override
+	public synchronized void put(String key, MqttPersistable persistable) throws MqttPersistenceException {
+		checkOpen();
+		byte[] keyBytes = key.getBytes(UTF8);
+		int headerLength = persistable.getHeaderLength();
+		int payloadLength = persistable.getPayloadBytes() == null ? 0 : persistable.getPayloadLength();
+		int length = RECORD_OVERHEAD + keyBytes.length + 4 + headerLength + 4 + payloadLength;
+
+		ensureCapacity(length);
+		int start = writePosition;
+		seek(buffer, start + 4);
+		buffer.put(OP_PUT);
+		buffer.putShort((short) keyBytes.length);
+		buffer.put(keyBytes);
+		buffer.putInt(headerLength);
+		buffer.put(persistable.getHeaderBytes(), persistable.getHeaderOffset(), headerLength);
+		buffer.putInt(payloadLength);
+		if (payloadLength > 0) {
+			buffer.put(persistable.getPayloadBytes(), persistable.getPayloadOffset(), payloadLength);
+		}
+		commit(start, length);
+
+		Record previous = index.put(key, new Record(start, length));
+		if (previous != null) {
+			liveBytes -= previous.length;
+		}
+		liveBytes += length;
+	}
+
+	@Override
+	public synchronized MqttPersistable get(String key) throws MqttPersistenceException {
+		checkOpen();
+		Record record = index.get(key);
+		if (record == null) {
+			return null;
+		}
+		return read(key, record);
+	}
+
+	@Override
+	public synchronized void remove(String key) throws MqttPersistenceException {
+		checkOpen();
+		Record previous = index.remove(key);
+		if (previous == null) {
+			return;
+		}
+		liveBytes -= previous.length;
+
+		byte[] keyBytes = key.getBytes(UTF8);
+		int length = RECORD_OVERHEAD + keyBytes.length;
+		ensureCapacity(length);
+		int start = writePosition;
+		seek(buffer, start + 4);
+		buffer.put(OP_REMOVE);
+		buffer.putShort((short) keyBytes.length);
+		buffer.put(keyBytes);
+		commit(start, length);
+
+		compactIfNeeded();
+	}
+
+	@Override
+	public synchronized Enumeration<String> keys() throws MqttPersistenceException {
+		checkOpen();
+		return Collections.enumeration(new HashMap<String, Record>(index).keySet());
+	}
+
+	@Override
+	public synchronized void clear() throws MqttPersistenceException {
+		checkOpen();
+		index.clear();
+		liveBytes = 0;
+		try {
+			compact();
+		} catch (IOException e) {
+			throw new MqttPersistenceException(e);
+		}
+	}
+
+	@Override
+	public synchronized boolean containsKey(String key) throws MqttPersistenceException {
+		checkOpen();
+		return index.containsKey(key);
+	}
+
+	/**
+	 * @return Number of bytes of the log in use, including removed records that
+	 *         have not been compacted yet
+	 */
+	public synchronized int getLogSize() {
+		return writePosition;
+	}
+
+	/*
+	 * Write the checksum and then the length, which makes the record visible to
+	 * replay
+	 */
+	private void commit(int start, int length) {
+		int end = start + length - 4;
+		buffer.putInt(end, checksum(start, end));
+		buffer.putInt(start, length);
+		writePosition = start + length;
+	}
+
+	private void replay() {
+		writePosition = 0;
+		liveBytes = 0;
+		int capacity = buffer.capacity();
+		while (writePosition + 4 <= capacity) {
+			int start = writePosition;
+			int length = buffer.getInt(start);
+			if (length < RECORD_OVERHEAD || start + length > capacity || !verify(start, length)) {
+				break;
+			}
+			byte op = buffer.get(start + 4);
+			int keyLength = buffer.getShort(start + 5) & 0xFFFF;
+			byte[] keyBytes = new byte[keyLength];
+			seek(buffer, start + 7);
+			buffer.get(keyBytes);
+			String key = new String(keyBytes, UTF8);
+
+			Record previous;
+			if (op == OP_PUT) {
+				previous = index.put(key, new Record(start, length));
+				liveBytes += length;
+			} else {
+				previous = index.remove(key);
+			}
+			if (previous != null) {
+				liveBytes -= previous.length;
+			}
+			writePosition = start + length;
+		}
+
+		// Zero whatever follows the last good record, so a torn write is not
+		// mistaken for a record later on
+		for (int i = writePosition; i < Math.min(capacity, writePosition + RECORD_OVERHEAD); i++) {
+			buffer.put(i, (byte) 0);
+		}
+	}
+
+	private boolean verify(int start, int length) {
+		int end = start + length - 4;
+		return buffer.getInt(end) == checksum(start, end);
+	}
+
+	private int checksum(int start, int end) {
+		crc.reset();
+		crc.update(range(buffer, start + 4, end));
+		return (int) crc.getValue();
+	}
+
+	private MqttPersistable read(String key, Record record) {
+		int keyLength = buffer.getShort(record.offset + 5) & 0xFFFF;
+		seek(buffer, record.offset + 7 + keyLength);
+		byte[] header = new byte[buffer.getInt()];
+		buffer.get(header);
+		byte[] payload = new byte[buffer.getInt()];
+		buffer.get(payload);
+		return new PersistedMessage(header, payload);
+	}
+
+	private void ensureCapacity(int length) throws MqttPersistenceException {
+		// Always leave room for the length of the following (empty) record
+		if (writePosition + length + 4 <= buffer.capacity()) {
+			return;
+		}
+		try {
+			compactIfNeeded();
+			long required = (long) writePosition + length + 4;
+			if (required > buffer.capacity()) {
+				long size = buffer.capacity();
+				while (size < required) {
+					size *= 2;
+				}
+				if (size > Integer.MAX_VALUE) {
+					throw new MqttPersistenceException(new IOException("Persistence log is full"));
+				}
+				LOG.debug("Growing persistence log to " + size + " bytes");
+				file.setLength(size);
+				MappedByteBuffer previous = buffer;
+				buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+				release(previous);
+			}
+		} catch (IOException e) {
+			throw new MqttPersistenceException(e);
+		}
+	}
+
+	private void compactIfNeeded() throws MqttPersistenceException {
+		if (writePosition >= compactThreshold && liveBytes * 2 < writePosition) {
+			try {
+				compact();
+			} catch (IOException e) {
+				throw new MqttPersistenceException(e);
+			}
+		}
+	}
+
+	/*
+	 * Copy the live records to a new file and replace the log with it
+	 */
+	private void compact() throws IOException {
+		LOG.debug("Compacting persistence log, " + liveBytes + " of " + writePosition + " bytes are live");
+		File compactFile = new File(directory, COMPACT_FILE);
+		long size = Math.max(initialSize, Long.highestOneBit(Math.max(1, liveBytes * 2)) * 2);
+
+		Map<String, Record> compacted = new HashMap<String, Record>();
+		int position = 0;
+		try (RandomAccessFile target = new RandomAccessFile(compactFile, "rw")) {
+			target.setLength(size);
+			MappedByteBuffer targetBuffer = target.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			try {
+				for (Map.Entry<String, Record> entry : index.entrySet()) {
+					Record record = entry.getValue();
+					seek(targetBuffer, position);
+					targetBuffer.put(range(buffer, record.offset, record.offset + record.length));
+					compacted.put(entry.getKey(), new Record(position, record.length));
+					position += record.length;
+				}
+				targetBuffer.force();
+			} finally {
+				// Neither file may still be mapped when it is moved
+				release(targetBuffer);
+			}
+		}
+
+		File logFile = new File(directory, LOG_FILE);
+		unmap();
+		Files.move(compactFile.toPath(), logFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		map(logFile);
+
+		index.clear();
+		index.putAll(compacted);
+		writePosition = position;
+	}
+
+	private void map(File logFile) throws IOException {
+		file = new RandomAccessFile(logFile, "rw");
+		if (file.length() < initialSize) {
+			file.setLength(initialSize);
+		}
+		channel = file.getChannel();
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+	}
+
+	private void unmap() throws IOException {
+		MappedByteBuffer previous = buffer;
+		buffer = null;
+		channel = null;
+		release(previous);
+		if (file != null) {
+			file.close();
+			file = null;
+		}
+	}
+
+	private void release() {
+		index.clear();
+		liveBytes = 0;
+		writePosition = 0;
+		try {
+			unmap();
+			if (lock != null) {
+				lock.release();
+				lock = null;
+			}
+			if (lockFile != null) {
+				lockFile.close();
+				lockFile = null;
+			}
+		} catch (IOException e) {
+			LOG.warn("Failed to release persistence log " + directory + ": " + e.getMessage());
+		}
+	}
+
+	/*
+	 * Unmap a buffer now rather than when it is garbage collected, which would
+	 * keep the memory, and on Windows the file, in use until then. The buffer must
+	 * not be used afterwards.
+	 */
+	private static void release(MappedByteBuffer mapped) {
+		if (mapped == null || UNMAP == null) {
+			return;
+		}
+		try {
+			if (UNSAFE != null) {
+				UNMAP.invoke(UNSAFE, mapped);
+			} else {
+				Method cleaner = mapped.getClass().getMethod("cleaner");
+				cleaner.setAccessible(true);
+				Object c = cleaner.invoke(mapped);
+				if (c != null) {
+					UNMAP.invoke(c);
+				}
+			}
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			LOG.debug("Unable to unmap persistence log, it is released when garbage collected: " + e.getMessage());
+		}
+	}
+
+	private void checkOpen() throws MqttPersistenceException {
+		if (buffer == null) {
+			throw new MqttPersistenceException();
+		}
+	}
+
+	/*
+	 * Position changes go through Buffer so the class also runs on Java 8, where
+	 * ByteBuffer does not override them
+	 */
+	private static void seek(ByteBuffer b, int position) {
+		((Buffer) b).position(position);
+	}
+
+	private static ByteBuffer range(ByteBuffer b, int start, int end) {
+		ByteBuffer view = b.duplicate();
+		((Buffer) view).limit(end);
+		((Buffer) view).position(start);
+		return view;
+	}
+
+	private static String sanitize(String name) {
+		StringBuilder sb = new StringBuilder(name.length());
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			sb.append(Character.isLetterOrDigit(c) || c == '-' || c == '.' ? c : '_');
+		}
+		return sb.toString();
+	}
+
+	private static class Record {
+		final int offset;
+		final int length;
+
+		Record(int offset, int length) {
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	private static class PersistedMessage implements MqttPersistable {
+		private final byte[] header;
+		private final byte[] payload;
+
+		PersistedMessage(byte[] header, byte[] payload) {
+			this.header = header;
+			this.payload = payload;
+		}
+
+		@Override
+		public byte[] getHeaderBytes() {
+			return header;
+		}
+
+		@Override
+		public int getHeaderLength() {
+			return header.length;
+		}
+
+		@Override
+		public int getHeaderOffset() {
+			return 0;
+		}
+
+		@Override
+		public byte[] getPayloadBytes() {
+			return payload;
+		}
+
+		@Override
+		public int getPayloadLength() {
+			return payload.length;
+		}
+
+		@Override
+		public int getPayloadOffset() {
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,34 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.persistence;
+
+/**
+ * Where a client keeps unacknowledged QoS 1 and 2 messages and its
+ * disconnected buffer
+ */
+public enum PersistenceType {
+	/** In memory, lost when the process exits */
+	MEMORY,
+	/** Paho's file persistence, one file per message */
+	FILE,
+	/** {@link MappedFilePersistence}, a single memory-mapped log file */
+	MAPPED;
+
+	/**
+	 * Parse a persistence type name, ignoring case
+	 *
+	 * @param name The type name, for example "mapped"
+	 * @return The persistence type
+	 */
+	public static PersistenceType parse(String name) {
+		return valueOf(name.trim().toUpperCase());
+	}
+}
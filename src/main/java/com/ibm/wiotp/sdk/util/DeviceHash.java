@@ -0,0 +1,36 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.util;
+
+/**
+ * Assigns devices to a fixed number of buckets, such as worker threads or
+ * connections, so that work for the same device (type and id) always goes to
+ * the same bucket.
+ */
+public final class DeviceHash {
+
+	private DeviceHash() {
+	}
+
+	/**
+	 * @param typeId   The device type
+	 * @param deviceId The device id
+	 * @param buckets  Number of buckets
+	 * @return The index of the device's bucket, from 0 to buckets - 1
+	 */
+	public static int bucketFor(String typeId, String deviceId, int buckets) {
+		int hash = 31 * typeId.hashCode() + deviceId.hashCode();
+		// Fold the high bits into the low ones, which alone pick the bucket when the
+		// count is small, so hashes that only differ in their high bits still spread
+		hash ^= (hash >>> 16);
+		return (hash & 0x7fffffff) % buckets;
+	}
+}
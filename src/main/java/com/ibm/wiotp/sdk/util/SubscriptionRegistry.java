@@ -0,0 +1,365 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The topic filters a client has subscribed to, and the smallest set of them
+ * that has to be subscribed to on the server. <br>
+ *
+ * A filter is covered by another if every topic it matches is also matched by
+ * the other, at the same or a higher QoS; for example
+ * <code>iot-2/type/pump/id/+/evt/+/fmt/json</code> is covered by
+ * <code>iot-2/type/+/id/+/evt/+/fmt/+</code>. Only filters that no other
+ * registered filter covers are subscribed to on the server, so each message is
+ * delivered once. Every change returns the subscribes and unsubscribes needed
+ * to bring the server in line. <br>
+ *
+ * Filters that are unregistered and unsubscribed from are tracked until the
+ * server acknowledges the unsubscribe, so that messages it sent before then can
+ * be told apart from those of subscriptions made by other means. <br>
+ *
+ * Changes are serialized; {@link #matches(String)} and
+ * {@link #isRemoved(String)} are lock free and may run concurrently with them.
+ */
+public class SubscriptionRegistry {
+
+	private static final String SINGLE_LEVEL = "+";
+	private static final String MULTI_LEVEL = "#";
+
+	// All registered filters, and the ones subscribed to on the server
+	private final Map<String, Filter> registered = new HashMap<String, Filter>();
+	private final Map<String, Filter> active = new LinkedHashMap<String, Filter>();
+	private final TopicTrie<String> trie = new TopicTrie<String>();
+	// Filters unregistered and being unsubscribed from, once per pending unsubscribe
+	private final TopicTrie<String> removing = new TopicTrie<String>();
+
+	/**
+	 * Register a topic filter, or change the QoS of one already registered
+	 *
+	 * @param filter MQTT topic filter
+	 * @param qos    Quality of Service, in int - can have values 0,1,2
+	 * @return The filters to subscribe to and unsubscribe from on the server
+	 */
+	public synchronized Change add(String filter, int qos) {
+		Change change = new Change();
+		add(filter, qos, change);
+		return change;
+	}
+
+	/**
+	 * Register several topic filters
+	 *
+	 * @param filters MQTT topic filters, with the QoS for each
+	 * @return The filters to subscribe to and unsubscribe from on the server
+	 */
+	public synchronized Change addAll(Map<String, Integer> filters) {
+		Change change = new Change();
+		for (Map.Entry<String, Integer> entry : filters.entrySet()) {
+			add(entry.getKey(), entry.getValue().intValue(), change);
+		}
+		return change;
+	}
+
+	private void add(String filter, int qos, Change change) {
+		Filter existing = registered.get(filter);
+		if (existing != null) {
+			if (existing.qos == qos) {
+				return;
+			}
+			remove(filter, change);
+		}
+		trie.add(filter, filter);
+		Filter added = new Filter(filter, qos);
+		registered.put(filter, added);
+		activate(added, change);
+	}
+
+	/**
+	 * Unregister a topic filter. Filters that it covered, and that no other filter
+	 * covers, are subscribed to on the server in its place.
+	 *
+	 * @param filter MQTT topic filter
+	 * @return The filters to subscribe to and unsubscribe from on the server
+	 */
+	public synchronized Change remove(String filter) {
+		Change change = new Change();
+		remove(filter, change);
+		return removing(change);
+	}
+
+	/**
+	 * Unregister several topic filters
+	 *
+	 * @param filters MQTT topic filters
+	 * @return The filters to subscribe to and unsubscribe from on the server
+	 */
+	public synchronized Change removeAll(Collection<String> filters) {
+		Change change = new Change();
+		for (String filter : filters) {
+			remove(filter, change);
+		}
+		return removing(change);
+	}
+
+	/*
+	 * Track the unregistered filters a change unsubscribes from, as opposed to
+	 * those a broader filter now covers
+	 */
+	private Change removing(Change change) {
+		for (String filter : change.unsubscribe) {
+			if (!registered.containsKey(filter)) {
+				removing.add(filter, filter);
+			}
+		}
+		return change;
+	}
+
+	/**
+	 * Stop tracking filters unsubscribed from by a change once the server has
+	 * acknowledged the unsubscribe, or it has failed
+	 *
+	 * @param filters The filters unsubscribed from
+	 */
+	public void unsubscribed(Collection<String> filters) {
+		for (String filter : filters) {
+			removing.remove(filter, filter);
+		}
+	}
+
+	private void remove(String filter, Change change) {
+		Filter removed = registered.remove(filter);
+		if (removed == null) {
+			return;
+		}
+		trie.remove(filter, filter);
+		if (active.remove(filter) == null) {
+			return;
+		}
+		change.unsubscribe(filter);
+		// Filters only the removed filter covered take its place
+		for (Filter candidate : registered.values()) {
+			if (!active.containsKey(candidate.filter) && removed.covers(candidate)) {
+				activate(candidate, change);
+			}
+		}
+	}
+
+	/**
+	 * Unregister filters the server refused to subscribe to as part of a change,
+	 * before the change's unsubscribes have been sent. Filters that only the
+	 * refused ones covered stay subscribed to, or are subscribed to if they never
+	 * were.
+	 *
+	 * @param change  The change the refused filters were subscribed to in
+	 * @param refused The filters the server refused
+	 * @return The subscribes and unsubscribes still needed to complete the change,
+	 *         in place of its own
+	 */
+	public synchronized Change rollBack(Change change, Collection<String> refused) {
+		Change removed = new Change();
+		for (String filter : refused) {
+			remove(filter, removed);
+		}
+		Change remaining = new Change();
+		for (Map.Entry<String, Integer> entry : removed.subscribe.entrySet()) {
+			// Filters the change would have unsubscribed from are still subscribed to
+			if (!change.unsubscribe.contains(entry.getKey())) {
+				remaining.subscribe.put(entry.getKey(), entry.getValue());
+			}
+		}
+		for (String filter : change.unsubscribe) {
+			if (!removed.subscribe.containsKey(filter)) {
+				remaining.unsubscribe.add(filter);
+			}
+		}
+		for (String filter : removed.unsubscribe) {
+			// The server never subscribed to the refused filters
+			if (!refused.contains(filter)) {
+				remaining.unsubscribe.add(filter);
+			}
+		}
+		return remaining;
+	}
+
+	/*
+	 * Subscribe to a filter unless an active filter covers it, and stop
+	 * subscribing to the active filters it covers
+	 */
+	private void activate(Filter filter, Change change) {
+		for (Filter other : active.values()) {
+			if (other.covers(filter)) {
+				return;
+			}
+		}
+		Iterator<Filter> iterator = active.values().iterator();
+		while (iterator.hasNext()) {
+			Filter other = iterator.next();
+			if (filter.covers(other)) {
+				iterator.remove();
+				change.unsubscribe(other.filter);
+			}
+		}
+		active.put(filter.filter, filter);
+		change.subscribe(filter.filter, filter.qos);
+	}
+
+	/**
+	 * @param topic The topic (without wildcards)
+	 * @return Whether any registered filter matches the topic
+	 */
+	public boolean matches(String topic) {
+		return trie.matches(topic);
+	}
+
+	/**
+	 * @param topic The topic (without wildcards)
+	 * @return Whether the topic only matches filters that were unregistered and
+	 *         whose unsubscribe the server has not yet acknowledged, so a message
+	 *         on it was sent for a subscription that has been removed
+	 */
+	public boolean isRemoved(String topic) {
+		// Checked for every message, so cheap while nothing is being unsubscribed
+		return !removing.isEmpty() && removing.matches(topic) && !trie.matches(topic);
+	}
+
+	public boolean isEmpty() {
+		return trie.isEmpty();
+	}
+
+	/**
+	 * @return Number of registered filters
+	 */
+	public int size() {
+		return trie.size();
+	}
+
+	/**
+	 * @return Every registered filter, with its QoS
+	 */
+	public synchronized Map<String, Integer> getFilters() {
+		Map<String, Integer> filters = new LinkedHashMap<String, Integer>();
+		for (Filter filter : registered.values()) {
+			filters.put(filter.filter, filter.qos);
+		}
+		return filters;
+	}
+
+	/**
+	 * @return The filters subscribed to on the server, with their QoS, for
+	 *         example to restore them after a reconnect
+	 */
+	public synchronized Map<String, Integer> getActive() {
+		Map<String, Integer> filters = new LinkedHashMap<String, Integer>();
+		for (Filter filter : active.values()) {
+			filters.put(filter.filter, filter.qos);
+		}
+		return filters;
+	}
+
+	/**
+	 * @param filter Topic filter that might cover the other
+	 * @param other  Topic filter that might be covered
+	 * @return Whether every topic the other filter matches is also matched by the
+	 *         filter
+	 */
+	public static boolean covers(String filter, String other) {
+		return covers(filter.split("/", -1), other.split("/", -1));
+	}
+
+	private static boolean covers(String[] filter, String[] other) {
+		for (int i = 0; i < filter.length; i++) {
+			if (filter[i].equals(MULTI_LEVEL)) {
+				// "#" also matches the parent level, so "a/#" covers "a"
+				return true;
+			}
+			if (i >= other.length || other[i].equals(MULTI_LEVEL)) {
+				return false;
+			}
+			if (!filter[i].equals(SINGLE_LEVEL) && !filter[i].equals(other[i])) {
+				return false;
+			}
+		}
+		return filter.length == other.length;
+	}
+
+	private static class Filter {
+		final String filter;
+		final String[] levels;
+		final int qos;
+
+		Filter(String filter, int qos) {
+			this.filter = filter;
+			this.levels = filter.split("/", -1);
+			this.qos = qos;
+		}
+
+		boolean covers(Filter other) {
+			return qos >= other.qos && SubscriptionRegistry.covers(levels, other.levels);
+		}
+	}
+
+	/**
+	 * The subscribes and unsubscribes that bring the server in line with a change
+	 * to the registry. Subscribe before unsubscribing, so that no message is missed
+	 * in between.
+	 */
+	public static class Change {
+		private final Map<String, Integer> subscribe = new LinkedHashMap<String, Integer>();
+		private final Set<String> unsubscribe = new LinkedHashSet<String>();
+
+		void subscribe(String filter, int qos) {
+			// Subscribing again replaces the QoS of a filter unsubscribed earlier in the
+			// same change, rather than leaving a gap
+			unsubscribe.remove(filter);
+			subscribe.put(filter, qos);
+		}
+
+		void unsubscribe(String filter) {
+			// A filter subscribed earlier in the same change is never sent
+			if (subscribe.remove(filter) == null) {
+				unsubscribe.add(filter);
+			}
+		}
+
+		/**
+		 * @return Filters to subscribe to, with their QoS
+		 */
+		public Map<String, Integer> getSubscribe() {
+			return Collections.unmodifiableMap(subscribe);
+		}
+
+		/**
+		 * @return Filters to unsubscribe from
+		 */
+		public List<String> getUnsubscribe() {
+			return Collections.unmodifiableList(new ArrayList<String>(unsubscribe));
+		}
+
+		public boolean isEmpty() {
+			return subscribe.isEmpty() && unsubscribe.isEmpty();
+		}
+
+		public String toString() {
+			return "Change [subscribe=" + subscribe + ", unsubscribe=" + unsubscribe + "]";
+		}
+	}
+}
@@ -0,0 +1,221 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.util;
+
+/**
+ * A parsed IBM Watson IoT Platform MQTT topic. <br>
+ *
+ * The topic is tokenized in a single pass without regular expressions. Only the
+ * segment offsets are recorded while parsing, the segment strings are created
+ * on first access and cached.
+ */
+public final class Topic {
+
+	/**
+	 * The kinds of topic understood by the parser
+	 */
+	public enum Kind {
+		/** iot-2/type/{typeId}/id/{deviceId}/evt/{eventId}/fmt/{format} */
+		DEVICE_EVENT,
+		/** iot-2/type/{typeId}/id/{deviceId}/cmd/{commandId}/fmt/{format} */
+		DEVICE_COMMAND,
+		/** iot-2/type/{typeId}/id/{deviceId}/mon */
+		DEVICE_STATUS,
+		/** iot-2/app/{appId}/mon */
+		APP_STATUS,
+		/** iot-2/evt/{eventId}/fmt/{format} */
+		EVENT,
+		/** iot-2/cmd/{commandId}/fmt/{format} */
+		COMMAND,
+		/** Anything else */
+		UNKNOWN
+	}
+
+	private static final String PREFIX = "iot-2/";
+
+	private final String topic;
+	private Kind kind = Kind.UNKNOWN;
+
+	// Start (inclusive) and end (exclusive) offsets of each segment, -1 when absent
+	private int typeStart = -1, typeEnd = -1;
+	private int deviceStart = -1, deviceEnd = -1;
+	private int appStart = -1, appEnd = -1;
+	private int idStart = -1, idEnd = -1;
+	private int formatStart = -1;
+
+	private String typeId;
+	private String deviceId;
+	private String appId;
+	private String id;
+	private String format;
+
+	private Topic(String topic) {
+		this.topic = topic;
+	}
+
+	/**
+	 * Tokenize a topic string
+	 *
+	 * @param topic The MQTT topic the message arrived on
+	 * @return The parsed topic, with kind {@link Kind#UNKNOWN} if the topic is not
+	 *         recognised
+	 */
+	public static Topic parse(String topic) {
+		Topic parsed = new Topic(topic);
+		if (topic != null && topic.startsWith(PREFIX)) {
+			parsed.classify(PREFIX.length());
+		}
+		return parsed;
+	}
+
+	private void classify(int pos) {
+		if (literal(pos, "type/")) {
+			typeStart = pos + 5;
+			typeEnd = segmentEnd(typeStart);
+			if (typeEnd < 0 || !literal(typeEnd + 1, "id/")) {
+				return;
+			}
+			deviceStart = typeEnd + 4;
+			deviceEnd = segmentEnd(deviceStart);
+			if (deviceEnd < 0) {
+				return;
+			}
+			pos = deviceEnd + 1;
+			if (rest(pos, "mon")) {
+				kind = Kind.DEVICE_STATUS;
+			} else if (literal(pos, "evt/")) {
+				if (message(pos + 4)) {
+					kind = Kind.DEVICE_EVENT;
+				}
+			} else if (literal(pos, "cmd/")) {
+				if (message(pos + 4)) {
+					kind = Kind.DEVICE_COMMAND;
+				}
+			}
+		} else if (literal(pos, "app/")) {
+			appStart = pos + 4;
+			appEnd = segmentEnd(appStart);
+			if (appEnd >= 0 && rest(appEnd + 1, "mon")) {
+				kind = Kind.APP_STATUS;
+			}
+		} else if (literal(pos, "evt/")) {
+			if (message(pos + 4)) {
+				kind = Kind.EVENT;
+			}
+		} else if (literal(pos, "cmd/")) {
+			if (message(pos + 4)) {
+				kind = Kind.COMMAND;
+			}
+		}
+	}
+
+	/*
+	 * Parse the "{id}/fmt/{format}" tail shared by events and commands
+	 */
+	private boolean message(int pos) {
+		idStart = pos;
+		idEnd = segmentEnd(idStart);
+		if (idEnd < 0 || !literal(idEnd + 1, "fmt/")) {
+			return false;
+		}
+		formatStart = idEnd + 5;
+		return formatStart < topic.length() && topic.indexOf('/', formatStart) < 0;
+	}
+
+	/*
+	 * Returns the offset of the '/' terminating a non-empty segment, or -1
+	 */
+	private int segmentEnd(int start) {
+		int end = topic.indexOf('/', start);
+		return end > start ? end : -1;
+	}
+
+	private boolean literal(int pos, String literal) {
+		return topic.startsWith(literal, pos);
+	}
+
+	private boolean rest(int pos, String literal) {
+		return topic.length() - pos == literal.length() && topic.startsWith(literal, pos);
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public String getTopic() {
+		return topic;
+	}
+
+	/**
+	 * @return The device type, or null if the topic does not carry one
+	 */
+	public String getTypeId() {
+		if (typeId == null && typeStart >= 0 && kind != Kind.UNKNOWN) {
+			typeId = topic.substring(typeStart, typeEnd);
+		}
+		return typeId;
+	}
+
+	/**
+	 * @return The device id, or null if the topic does not carry one
+	 */
+	public String getDeviceId() {
+		if (deviceId == null && deviceStart >= 0 && kind != Kind.UNKNOWN) {
+			deviceId = topic.substring(deviceStart, deviceEnd);
+		}
+		return deviceId;
+	}
+
+	/**
+	 * @return The application id of an application status topic, otherwise null
+	 */
+	public String getAppId() {
+		if (appId == null && kind == Kind.APP_STATUS) {
+			appId = topic.substring(appStart, appEnd);
+		}
+		return appId;
+	}
+
+	/**
+	 * @return The event id of an event topic, otherwise null
+	 */
+	public String getEventId() {
+		return (kind == Kind.DEVICE_EVENT || kind == Kind.EVENT) ? getMessageId() : null;
+	}
+
+	/**
+	 * @return The command id of a command topic, otherwise null
+	 */
+	public String getCommandId() {
+		return (kind == Kind.DEVICE_COMMAND || kind == Kind.COMMAND) ? getMessageId() : null;
+	}
+
+	private String getMessageId() {
+		if (id == null) {
+			id = topic.substring(idStart, idEnd);
+		}
+		return id;
+	}
+
+	/**
+	 * @return The message format of an event or command topic, otherwise null
+	 */
+	public String getFormat() {
+		if (format == null && formatStart >= 0 && kind != Kind.UNKNOWN) {
+			format = topic.substring(formatStart);
+		}
+		return format;
+	}
+
+	public String toString() {
+		return kind + " " + topic;
+	}
+}
@@ -0,0 +1,200 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Values registered against MQTT topic filters, looked up by topic. <br>
+ *
+ * Filters may use the single level ("+") and multi level ("#") wildcards.
+ * Looking up a topic visits at most three children per topic level, so the
+ * cost depends on the depth of the topic and not on the number of registered
+ * filters. <br>
+ *
+ * Lookups are lock free and may run concurrently with registration.
+ *
+ * @param <V> Type of the registered values
+ */
+public class TopicTrie<V> {
+
+	private static final String SINGLE_LEVEL = "+";
+	private static final String MULTI_LEVEL = "#";
+
+	private final Node<V> root = new Node<V>();
+	private volatile int size = 0;
+
+	/**
+	 * Register a value against a topic filter
+	 *
+	 * @param filter MQTT topic filter
+	 * @param value  The value to return for topics matching the filter
+	 */
+	public synchronized void add(String filter, V value) {
+		validate(filter);
+		Node<V> node = root;
+		for (String level : filter.split("/", -1)) {
+			Node<V> child = node.children.get(level);
+			if (child == null) {
+				child = new Node<V>();
+				node.children.put(level, child);
+			}
+			node = child;
+		}
+		node.values.add(value);
+		size++;
+	}
+
+	/**
+	 * Remove a value previously registered against a topic filter
+	 *
+	 * @param filter MQTT topic filter
+	 * @param value  The registered value
+	 * @return Whether the value was registered against the filter
+	 */
+	public synchronized boolean remove(String filter, V value) {
+		boolean removed = remove(root, filter.split("/", -1), 0, value);
+		if (removed) {
+			size--;
+		}
+		return removed;
+	}
+
+	private boolean remove(Node<V> node, String[] levels, int depth, V value) {
+		if (depth == levels.length) {
+			return node.values.remove(value);
+		}
+		Node<V> child = node.children.get(levels[depth]);
+		if (child == null || !remove(child, levels, depth + 1, value)) {
+			return false;
+		}
+		if (child.values.isEmpty() && child.children.isEmpty()) {
+			node.children.remove(levels[depth]);
+		}
+		return true;
+	}
+
+	/**
+	 * @return Whether no values are registered
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return Number of registered (filter, value) pairs
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Find the values of all filters that match a topic
+	 *
+	 * @param topic The topic (without wildcards)
+	 * @return The matching values, the same value is returned once for each
+	 *         matching filter it was registered against
+	 */
+	public List<V> match(String topic) {
+		List<V> matches = new ArrayList<V>();
+		match(topic, matches);
+		return matches;
+	}
+
+	/**
+	 * Add the values of all filters that match a topic to a collection
+	 *
+	 * @param topic   The topic (without wildcards)
+	 * @param matches Collection to add the matching values to
+	 */
+	public void match(String topic, Collection<? super V> matches) {
+		match(root, topic, 0, matches);
+	}
+
+	private void match(Node<V> node, String topic, int start, Collection<? super V> matches) {
+		// "#" also matches the parent level, so "a/#" matches "a"
+		Node<V> multi = node.children.get(MULTI_LEVEL);
+		if (multi != null) {
+			matches.addAll(multi.values);
+		}
+		if (start > topic.length()) {
+			matches.addAll(node.values);
+			return;
+		}
+		int end = topic.indexOf('/', start);
+		if (end < 0) {
+			end = topic.length();
+		}
+		Node<V> child = node.children.get(topic.substring(start, end));
+		if (child != null) {
+			match(child, topic, end + 1, matches);
+		}
+		Node<V> single = node.children.get(SINGLE_LEVEL);
+		if (single != null) {
+			match(single, topic, end + 1, matches);
+		}
+	}
+
+	/**
+	 * @param topic The topic (without wildcards)
+	 * @return Whether any filter matches the topic, found without collecting the
+	 *         matching values
+	 */
+	public boolean matches(String topic) {
+		return matches(root, topic, 0);
+	}
+
+	private boolean matches(Node<V> node, String topic, int start) {
+		Node<V> multi = node.children.get(MULTI_LEVEL);
+		if (multi != null && !multi.values.isEmpty()) {
+			return true;
+		}
+		if (start > topic.length()) {
+			return !node.values.isEmpty();
+		}
+		int end = topic.indexOf('/', start);
+		if (end < 0) {
+			end = topic.length();
+		}
+		Node<V> child = node.children.get(topic.substring(start, end));
+		if (child != null && matches(child, topic, end + 1)) {
+			return true;
+		}
+		Node<V> single = node.children.get(SINGLE_LEVEL);
+		return single != null && matches(single, topic, end + 1);
+	}
+
+	private static void validate(String filter) {
+		if (filter == null || filter.isEmpty()) {
+			throw new IllegalArgumentException("Topic filter can not be empty");
+		}
+		String[] levels = filter.split("/", -1);
+		for (int i = 0; i < levels.length; i++) {
+			String level = levels[i];
+			if (level.equals(MULTI_LEVEL) && i != levels.length - 1) {
+				throw new IllegalArgumentException("'#' must be the last level of topic filter " + filter);
+			}
+			if (level.length() > 1 && (level.contains(SINGLE_LEVEL) || level.contains(MULTI_LEVEL))) {
+				throw new IllegalArgumentException("Wildcards must occupy an entire level of topic filter " + filter);
+			}
+		}
+	}
+
+	private static class Node<V> {
+		final Map<String, Node<V>> children = new ConcurrentHashMap<String, Node<V>>();
+		final List<V> values = new CopyOnWriteArrayList<V>();
+	}
+}
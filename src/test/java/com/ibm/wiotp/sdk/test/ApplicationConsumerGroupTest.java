@@ -0,0 +1,137 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.ibm.wiotp.sdk.app.ApplicationConsumerGroup;
+import com.ibm.wiotp.sdk.app.ApplicationConsumerGroup.MemberStatistics;
+import com.ibm.wiotp.sdk.app.callbacks.EventCallback;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfig;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigAuth;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigIdentity;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigOptions;
+import com.ibm.wiotp.sdk.app.messages.Event;
+import com.ibm.wiotp.sdk.codecs.DeltaCodec;
+import com.ibm.wiotp.sdk.codecs.JsonCodec;
+import com.ibm.wiotp.sdk.persistence.PersistenceType;
+import com.ibm.wiotp.sdk.test.util.AbstractTest;
+
+public class ApplicationConsumerGroupTest extends AbstractTest {
+
+	private static ApplicationConfig config(ApplicationConfigOptions options) {
+		return new ApplicationConfig(new ApplicationConfigIdentity("GroupTest"),
+				new ApplicationConfigAuth("a-grp123-key", "token"), options);
+	}
+
+	@Test
+	public void testSharedClientId() throws Exception {
+		logTestStart("testSharedClientId");
+		ApplicationConfigOptions options = new ApplicationConfigOptions();
+		options.mqtt.persistence = PersistenceType.MAPPED;
+		options.mqtt.persistenceDir = Files.createTempDirectory("wiotp-group").toString();
+		ApplicationConsumerGroup group = new ApplicationConsumerGroup(config(options), 3);
+		try {
+			for (int i = 0; i < group.getMemberCount(); i++) {
+				ApplicationConfig memberConfig = (ApplicationConfig) group.getMember(i).getConfig();
+				assertEquals("A:grp123:GroupTest", memberConfig.getClientId());
+				assertEquals(new File(options.mqtt.persistenceDir, "member-" + i).getPath(),
+						memberConfig.getPersistenceDirectory());
+			}
+			// The configuration the group was created from is left as it was
+			assertFalse(options.mqtt.sharedSubscription);
+		} finally {
+			group.close();
+		}
+	}
+
+	@Test
+	public void testSharedDispatcher() throws Exception {
+		logTestStart("testSharedDispatcher");
+		ApplicationConsumerGroup group = new ApplicationConsumerGroup(config(new ApplicationConfigOptions()), 2);
+		try {
+			group.registerCodec(new JsonCodec());
+			final CountDownLatch received = new CountDownLatch(4);
+			group.registerEventCallback(new EventCallback<JsonObject>() {
+				public void processEvent(Event<JsonObject> evt) {
+					received.countDown();
+				}
+
+				public Class<JsonObject> getMessageClass() {
+					return JsonObject.class;
+				}
+			});
+
+			byte[] payload = new JsonCodec().encode(new JsonObject(), new DateTime());
+			for (int i = 0; i < 4; i++) {
+				group.getMember(i % 2).messageArrived("iot-2/type/t/id/d" + i + "/evt/e/fmt/json",
+						new MqttMessage(payload));
+			}
+			assertTrue(received.await(5, TimeUnit.SECONDS));
+
+			List<MemberStatistics> statistics = group.getStatistics();
+			assertEquals(2, statistics.get(0).getReceivedCount());
+			assertEquals(2, statistics.get(1).getReceivedCount());
+		} finally {
+			group.close(5, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	public void testStatefulCodecRejected() throws Exception {
+		logTestStart("testStatefulCodecRejected");
+		ApplicationConsumerGroup group = new ApplicationConsumerGroup(config(new ApplicationConfigOptions()), 2);
+		try {
+			group.registerCodec(new DeltaCodec());
+			fail("A stateful codec should not be shared by the members");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		} finally {
+			group.close();
+		}
+	}
+
+	@Test
+	public void testMemberLeavesAndRejoins() throws Exception {
+		logTestStart("testMemberLeavesAndRejoins");
+		ApplicationConsumerGroup group = new ApplicationConsumerGroup(config(new ApplicationConfigOptions()), 2);
+		try {
+			assertEquals(0, group.getActiveMemberCount());
+			group.getMember(0).connectComplete(false, "ssl://localhost:8883");
+			group.getMember(1).connectComplete(false, "ssl://localhost:8883");
+			assertEquals(2, group.getActiveMemberCount());
+
+			group.getMember(1).connectionLost(new Exception("Test"));
+			assertEquals(1, group.getActiveMemberCount());
+			assertFalse(group.getStatistics().get(1).isActive());
+			assertEquals(1, group.getStatistics().get(1).getConnectionsLost());
+
+			group.getMember(1).connectComplete(true, "ssl://localhost:8883");
+			assertEquals(2, group.getActiveMemberCount());
+		} finally {
+			group.close();
+		}
+	}
+}
@@ -0,0 +1,239 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttToken;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.Test;
+
+import com.ibm.wiotp.sdk.app.ApplicationClient;
+import com.ibm.wiotp.sdk.app.SubscribeReport;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfig;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigAuth;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigIdentity;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigOptions;
+import com.ibm.wiotp.sdk.test.util.AbstractTest;
+
+public class BulkSubscribeTest extends AbstractTest {
+
+	private static final String ALL_EVENTS = "iot-2/type/+/id/+/evt/+/fmt/+";
+
+	/*
+	 * Acknowledges every SUBSCRIBE packet from another thread, recording the
+	 * filters sent in each and the filters unsubscribed from
+	 */
+	private static class RecordingMqttClient extends MqttAsyncClient {
+		final List<String[]> packets = Collections.synchronizedList(new ArrayList<String[]>());
+		final List<String> unsubscribed = Collections.synchronizedList(new ArrayList<String>());
+		// Index of a packet to fail, if any
+		volatile int failPacket = -1;
+		// Filters the server refuses
+		final Set<String> refused = Collections.synchronizedSet(new HashSet<String>());
+
+		RecordingMqttClient() throws MqttException {
+			super("tcp://localhost:1883", "recording", new MemoryPersistence());
+		}
+
+		@Override
+		public IMqttToken subscribe(final String[] topicFilters, int[] qos, Object userContext,
+				final IMqttActionListener callback) {
+			final boolean fail = packets.size() == failPacket;
+			packets.add(topicFilters);
+			final int[] granted = new int[topicFilters.length];
+			for (int i = 0; i < granted.length; i++) {
+				granted[i] = refused.contains(topicFilters[i]) ? MqttException.REASON_CODE_SUBSCRIBE_FAILED : qos[i];
+			}
+			final CountDownLatch acknowledged = new CountDownLatch(1);
+			final MqttToken token = new MqttToken("recording") {
+				@Override
+				public int[] getGrantedQos() {
+					return granted;
+				}
+
+				@Override
+				public void waitForCompletion(long timeout) throws MqttException {
+					try {
+						acknowledged.await(timeout, TimeUnit.MILLISECONDS);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					if (fail) {
+						throw new MqttException(MqttException.REASON_CODE_SUBSCRIBE_FAILED);
+					}
+				}
+			};
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					if (callback == null) {
+						// Waited for with waitForCompletion()
+					} else if (fail) {
+						callback.onFailure(token, new MqttException(MqttException.REASON_CODE_SUBSCRIBE_FAILED));
+					} else {
+						callback.onSuccess(token);
+					}
+					acknowledged.countDown();
+				}
+			}).start();
+			return token;
+		}
+
+		@Override
+		public IMqttToken unsubscribe(String[] topicFilters, Object userContext, IMqttActionListener callback) {
+			Collections.addAll(unsubscribed, topicFilters);
+			return new MqttToken("recording") {
+				@Override
+				public void waitForCompletion(long timeout) {
+				}
+			};
+		}
+	}
+
+	private static class RecordingApplicationClient extends ApplicationClient {
+		RecordingApplicationClient(ApplicationConfig config, RecordingMqttClient mqtt) throws Exception {
+			super(config);
+			mqttAsyncClient.close();
+			mqttAsyncClient = mqtt;
+		}
+	}
+
+	private static ApplicationConfig config() {
+		return new ApplicationConfig(new ApplicationConfigIdentity("BulkTest"),
+				new ApplicationConfigAuth("a-bulk12-key", "token"), new ApplicationConfigOptions());
+	}
+
+	private static Map<String, Integer> topics(int count) {
+		Map<String, Integer> topics = new LinkedHashMap<String, Integer>();
+		for (int i = 0; i < count; i++) {
+			topics.put("iot-2/type/t/id/d" + i + "/evt/+/fmt/+", 0);
+		}
+		return topics;
+	}
+
+	@Test
+	public void testBatches() throws Exception {
+		logTestStart("testBatches");
+		RecordingMqttClient mqtt = new RecordingMqttClient();
+		ApplicationClient client = new RecordingApplicationClient(config(), mqtt);
+		client.setSubscribeBatchSize(100);
+
+		SubscribeReport report = client.subscribeAsync(topics(250)).get(5, TimeUnit.SECONDS);
+		assertTrue(report.isComplete());
+		assertEquals(250, report.getSubscribedCount());
+		assertEquals(3, report.getPacketCount());
+		assertEquals(3, mqtt.packets.size());
+		Set<Integer> sizes = new HashSet<Integer>();
+		for (String[] packet : mqtt.packets) {
+			sizes.add(packet.length);
+		}
+		assertEquals(new HashSet<Integer>(Arrays.asList(100, 50)), sizes);
+	}
+
+	@Test
+	public void testResubscribe() throws Exception {
+		logTestStart("testResubscribe");
+		RecordingMqttClient mqtt = new RecordingMqttClient();
+		ApplicationClient client = new RecordingApplicationClient(config(), mqtt);
+		client.setSubscribeBatchSize(1000);
+		client.subscribe(topics(5001));
+		mqtt.packets.clear();
+		assertNull(client.getResubscription());
+
+		client.connectComplete(true, "tcp://localhost:1883");
+		SubscribeReport report = client.getResubscription().get(5, TimeUnit.SECONDS);
+		assertTrue(report.isComplete());
+		assertEquals(5001, report.getTopicCount());
+		assertEquals(6, report.getPacketCount());
+		assertEquals(6, mqtt.packets.size());
+	}
+
+	@Test
+	public void testRefusedPacket() throws Exception {
+		logTestStart("testRefusedPacket");
+		RecordingMqttClient mqtt = new RecordingMqttClient();
+		mqtt.failPacket = 1;
+		ApplicationClient client = new RecordingApplicationClient(config(), mqtt);
+		client.setSubscribeBatchSize(10);
+
+		SubscribeReport report = client.subscribe(topics(25));
+		assertTrue(report.isFinished());
+		assertFalse(report.isComplete());
+		assertEquals(15, report.getSubscribedCount());
+		assertEquals(Arrays.asList(mqtt.packets.get(1)), report.getFailedTopics());
+	}
+
+	@Test
+	public void testCoveredNotSent() throws Exception {
+		logTestStart("testCoveredNotSent");
+		RecordingMqttClient mqtt = new RecordingMqttClient();
+		ApplicationClient client = new RecordingApplicationClient(config(), mqtt);
+
+		Map<String, Integer> topics = topics(250);
+		topics.put(ALL_EVENTS, 0);
+		SubscribeReport report = client.subscribeAsync(topics).get(5, TimeUnit.SECONDS);
+		assertTrue(report.isComplete());
+		assertEquals(1, report.getTopicCount());
+		assertEquals(Arrays.asList(ALL_EVENTS), Arrays.asList(mqtt.packets.get(0)));
+	}
+
+	@Test
+	public void testRefusedBroadFilter() throws Exception {
+		logTestStart("testRefusedBroadFilter");
+		RecordingMqttClient mqtt = new RecordingMqttClient();
+		ApplicationClient client = new RecordingApplicationClient(config(), mqtt);
+		client.subscribe(topics(3));
+		mqtt.packets.clear();
+
+		mqtt.refused.add(ALL_EVENTS);
+		SubscribeReport report = client.subscribeAsync(Collections.singletonMap(ALL_EVENTS, 0)).get(5,
+				TimeUnit.SECONDS);
+		assertEquals(Arrays.asList(ALL_EVENTS), report.getFailedTopics());
+		// The narrower filters are kept, and only they are restored after a reconnect
+		assertTrue(mqtt.unsubscribed.isEmpty());
+		client.connectComplete(true, "tcp://localhost:1883");
+		client.getResubscription().get(5, TimeUnit.SECONDS);
+		assertEquals(topics(3).keySet(), new HashSet<String>(Arrays.asList(mqtt.packets.get(1))));
+
+		// The same through the single filter methods, which wait for the server
+		mqtt.packets.clear();
+		client.subscribeToDeviceEvents();
+		assertEquals(Arrays.asList(ALL_EVENTS), Arrays.asList(mqtt.packets.get(0)));
+		assertTrue(mqtt.unsubscribed.isEmpty());
+		client.connectComplete(true, "tcp://localhost:1883");
+		client.getResubscription().get(5, TimeUnit.SECONDS);
+		assertEquals(topics(3).keySet(), new HashSet<String>(Arrays.asList(mqtt.packets.get(1))));
+
+		// Once granted, the broad filter replaces them
+		mqtt.refused.clear();
+		client.subscribeToDeviceEvents();
+		assertEquals(topics(3).keySet(), new HashSet<String>(mqtt.unsubscribed));
+	}
+}
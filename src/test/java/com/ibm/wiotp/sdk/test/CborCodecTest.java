@@ -0,0 +1,150 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.ibm.wiotp.sdk.codecs.CborCodec;
+import com.ibm.wiotp.sdk.codecs.JsonCodec;
+import com.ibm.wiotp.sdk.exceptions.MalformedMessageException;
+import com.ibm.wiotp.sdk.test.util.AbstractTest;
+
+public class CborCodecTest extends AbstractTest {
+
+	public static class Reading {
+		String name;
+		double value;
+		long count;
+		boolean valid;
+	}
+
+	private static byte[] bytes(int... values) {
+		byte[] result = new byte[values.length];
+		for (int i = 0; i < values.length; i++) {
+			result[i] = (byte) values[i];
+		}
+		return result;
+	}
+
+	@Test
+	public void testEncodingMatchesRfc() throws Exception {
+		logTestStart("testEncodingMatchesRfc");
+		CborCodec<JsonObject> codec = new CborCodec<JsonObject>(JsonObject.class);
+
+		// {"a": 1, "b": [2, 3]} from RFC 7049 appendix A
+		JsonObject data = new JsonObject();
+		data.addProperty("a", 1);
+		JsonArray b = new JsonArray();
+		b.add(2);
+		b.add(3);
+		data.add("b", b);
+		assertArrayEquals(bytes(0xa2, 0x61, 0x61, 0x01, 0x61, 0x62, 0x82, 0x02, 0x03),
+				codec.encode(data, new DateTime()));
+
+		JsonObject numbers = new JsonObject();
+		numbers.addProperty("n", -1000);
+		assertArrayEquals(bytes(0xa1, 0x61, 0x6e, 0x39, 0x03, 0xe7), codec.encode(numbers, new DateTime()));
+
+		// Half precision 1.5 and an indefinite length array, which are only decoded
+		JsonObject decoded = codec.decode(new MqttMessage(bytes(0xa1, 0x61, 0x78, 0x9f, 0xf9, 0x3e, 0x00, 0xff)))
+				.getData();
+		assertEquals(1.5, decoded.getAsJsonArray("x").get(0).getAsDouble(), 0);
+	}
+
+	@Test
+	public void testSameDataAsJson() throws Exception {
+		logTestStart("testSameDataAsJson");
+		String json = "{\"d\":{\"temp\":21.5,\"humidity\":40,\"big\":12345678901234,\"neg\":-7,"
+				+ "\"precise\":0.1,\"label\":\"café 温度\",\"ok\":true,\"none\":null,\"list\":[1,2.25,\"x\"]}}";
+		JsonCodec jsonCodec = new JsonCodec();
+		CborCodec<JsonObject> cborCodec = new CborCodec<JsonObject>(JsonObject.class);
+
+		JsonObject fromJson = jsonCodec.decode(new MqttMessage(json.getBytes("UTF-8"))).getData();
+		byte[] cbor = cborCodec.encode(fromJson, new DateTime());
+		JsonObject fromCbor = cborCodec.decode(new MqttMessage(cbor)).getData();
+
+		assertEquals(fromJson, fromCbor);
+		assertTrue(cbor.length < json.length());
+		assertEquals(0.1, fromCbor.getAsJsonObject("d").get("precise").getAsDouble(), 0);
+		assertEquals(12345678901234L, fromCbor.getAsJsonObject("d").get("big").getAsLong());
+	}
+
+	@Test
+	public void testPojoAndMap() throws Exception {
+		logTestStart("testPojoAndMap");
+		Reading reading = new Reading();
+		reading.name = "sensor";
+		reading.value = 3.25;
+		reading.count = 42;
+		reading.valid = true;
+
+		CborCodec<Reading> pojoCodec = new CborCodec<Reading>(Reading.class);
+		Reading decoded = pojoCodec.decode(new MqttMessage(pojoCodec.encode(reading, new DateTime()))).getData();
+		assertEquals("sensor", decoded.name);
+		assertEquals(3.25, decoded.value, 0);
+		assertEquals(42, decoded.count);
+		assertTrue(decoded.valid);
+
+		@SuppressWarnings("rawtypes")
+		CborCodec<Map> mapCodec = new CborCodec<Map>(Map.class);
+		Map<String, Object> map = new HashMap<String, Object>();
+		map.put("name", "sensor");
+		map.put("value", 3.25);
+		Map<?, ?> decodedMap = mapCodec.decode(new MqttMessage(mapCodec.encode(map, new DateTime()))).getData();
+		assertEquals("sensor", decodedMap.get("name"));
+		assertEquals(3.25, ((Number) decodedMap.get("value")).doubleValue(), 0);
+	}
+
+	@Test
+	public void testBignum() throws Exception {
+		logTestStart("testBignum");
+		CborCodec<JsonObject> codec = new CborCodec<JsonObject>(JsonObject.class);
+		// {"a": 18446744073709551616, "b": -18446744073709551617}
+		JsonObject data = codec.decode(new MqttMessage(bytes(0xa2, 0x61, 0x61, 0xc2, 0x49, 0x01, 0, 0, 0, 0, 0, 0, 0, 0,
+				0x61, 0x62, 0xc3, 0x49, 0x01, 0, 0, 0, 0, 0, 0, 0, 0))).getData();
+		assertEquals(new BigInteger("18446744073709551616"), data.get("a").getAsBigInteger());
+		assertEquals(new BigInteger("-18446744073709551617"), data.get("b").getAsBigInteger());
+	}
+
+	@Test
+	public void testMalformed() throws Exception {
+		logTestStart("testMalformed");
+		CborCodec<JsonObject> codec = new CborCodec<JsonObject>(JsonObject.class);
+		assertNull(codec.decode(new MqttMessage(new byte[0])).getData());
+
+		byte[][] payloads = { bytes(0xa2, 0x61, 0x61, 0x01), bytes(0x82, 0x01, 0x02), bytes(0xa1, 0x61, 0x61, 0x01, 0x00),
+				bytes(0x7b, 0x7f, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff),
+				// A bignum whose content is a text string
+				bytes(0xa1, 0x61, 0x61, 0xc2, 0x61, 0x21) };
+		for (byte[] payload : payloads) {
+			try {
+				codec.decode(new MqttMessage(payload));
+				fail("Decoding a malformed payload should fail");
+			} catch (MalformedMessageException e) {
+				// Expected
+			}
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.ibm.wiotp.sdk.codecs.CodecRegistry;
+import com.ibm.wiotp.sdk.codecs.PojoCodec;
+import com.ibm.wiotp.sdk.device.DeviceClient;
+import com.ibm.wiotp.sdk.device.config.DeviceConfig;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigAuth;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigIdentity;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigOptions;
+import com.ibm.wiotp.sdk.test.util.AbstractTest;
+
+public class CodecRegistryTest extends AbstractTest {
+
+	public interface Measurement {
+	}
+
+	public static class Reading implements Measurement {
+		double value;
+	}
+
+	public static class CalibratedReading extends Reading {
+		double offset;
+	}
+
+	public static class Alert implements Measurement {
+		String message;
+	}
+
+	@Test
+	public void testSuperclass() throws Exception {
+		logTestStart("testSuperclass");
+		CodecRegistry registry = new CodecRegistry();
+		PojoCodec<Reading> readings = new PojoCodec<Reading>(Reading.class);
+		registry.register(readings);
+		assertSame(readings, registry.getCodec(Reading.class));
+		assertSame(readings, registry.getCodec(CalibratedReading.class));
+		assertNull(registry.getCodec(Alert.class));
+
+		// A codec for the subclass itself takes over once registered
+		PojoCodec<CalibratedReading> calibrated = new PojoCodec<CalibratedReading>(CalibratedReading.class);
+		registry.register(calibrated);
+		assertSame(calibrated, registry.getCodec(CalibratedReading.class));
+		assertSame(readings, registry.getCodec(Reading.class));
+	}
+
+	@Test
+	public void testInterface() throws Exception {
+		logTestStart("testInterface");
+		CodecRegistry registry = new CodecRegistry();
+		PojoCodec<Measurement> measurements = new PojoCodec<Measurement>(Measurement.class);
+		registry.register(measurements);
+		assertSame(measurements, registry.getCodec(Alert.class));
+		assertSame(measurements, registry.getCodec(CalibratedReading.class));
+
+		// Classes are preferred over interfaces
+		PojoCodec<Reading> readings = new PojoCodec<Reading>(Reading.class);
+		registry.register(readings);
+		assertSame(readings, registry.getCodec(CalibratedReading.class));
+		assertSame(measurements, registry.getCodec(Alert.class));
+
+		// Interfaces of interfaces are searched too
+		PojoCodec<Collection> collections = new PojoCodec<Collection>(Collection.class);
+		registry.register(collections);
+		assertSame(collections, registry.getCodec(ArrayList.class));
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void testViews() throws Exception {
+		logTestStart("testViews");
+		CodecRegistry registry = new CodecRegistry();
+		PojoCodec<Reading> readings = new PojoCodec<Reading>(Reading.class);
+		registry.register(readings);
+		PojoCodec<Alert> alerts = new PojoCodec<Alert>(Alert.class);
+		registry.register(alerts);
+		assertSame(readings, registry.classView().get(Reading.class));
+		assertSame(alerts, registry.formatView().get(alerts.getMessageFormat()));
+		assertEquals(2, registry.classView().size());
+		assertEquals(1, registry.formatView().size());
+
+		// Putting into a view registers the codec
+		PojoCodec<Measurement> measurements = new PojoCodec<Measurement>(Measurement.class);
+		registry.classView().put(Measurement.class, measurements);
+		assertSame(measurements, registry.getCodec(Measurement.class));
+		assertSame(measurements, registry.formatView().get(measurements.getMessageFormat()));
+		assertEquals(3, registry.getCodecs(measurements.getMessageFormat()).size());
+	}
+
+	@Test
+	public void testPublishSubclass() throws Exception {
+		logTestStart("testPublishSubclass");
+		DeviceConfigOptions options = new DeviceConfigOptions();
+		options.mqtt.port = 1883;
+		DeviceConfig config = new DeviceConfig(new DeviceConfigIdentity("myOrg", "CodecTestType", "CodecTestDev"),
+				new DeviceConfigAuth(), options);
+		DeviceClient client = new DeviceClient(config);
+		try {
+			assertFalse(client.publishEvent("reading", new CalibratedReading()));
+			client.registerCodec(new PojoCodec<Reading>(Reading.class));
+			assertTrue(client.publishEvent("reading", new CalibratedReading()));
+			client.registerCodec(new PojoCodec<List>(List.class));
+			assertTrue(client.publishEvent("list", new ArrayList<String>()));
+		} finally {
+			client.close();
+		}
+	}
+}
@@ -0,0 +1,294 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.ServerSocket;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.junit.Test;
+
+import com.ibm.wiotp.sdk.ConnectBackoff;
+import com.ibm.wiotp.sdk.device.DeviceClient;
+import com.ibm.wiotp.sdk.device.config.DeviceConfig;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigAuth;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigIdentity;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigOptions;
+import com.ibm.wiotp.sdk.test.util.AbstractTest;
+import com.ibm.wiotp.sdk.test.util.StubBroker;
+
+public class ConnectAsyncTest extends AbstractTest {
+
+	private static DeviceClient unreachableClient() throws Exception {
+		DeviceConfigOptions options = new DeviceConfigOptions();
+		options.mqtt.port = 1883;
+		// The .invalid domain never resolves
+		options.domain = "invalid";
+		DeviceConfig config = new DeviceConfig(new DeviceConfigIdentity("myOrg", "ConnectTestType", "ConnectTestDev"),
+				new DeviceConfigAuth(), options);
+		return new DeviceClient(config);
+	}
+
+	@Test
+	public void testBackoff() throws Exception {
+		logTestStart("testBackoff");
+		ConnectBackoff backoff = new ConnectBackoff(100, 1000, 2, 3);
+		assertEquals(100, backoff.getCeiling(1));
+		assertEquals(200, backoff.getCeiling(2));
+		assertEquals(800, backoff.getCeiling(4));
+		assertEquals(1000, backoff.getCeiling(5));
+		assertEquals(1000, backoff.getCeiling(1000));
+
+		Set<Long> delays = new HashSet<Long>();
+		for (int i = 0; i < 1000; i++) {
+			long delay = backoff.nextDelay(3);
+			assertTrue(delay >= 0 && delay <= 400);
+			delays.add(delay);
+		}
+		// Jittered, not the same delay every time
+		assertTrue(delays.size() > 100);
+
+		assertTrue(backoff.shouldRetry(2));
+		assertFalse(backoff.shouldRetry(3));
+		assertTrue(new ConnectBackoff(100, 1000, 2, 0).shouldRetry(Integer.MAX_VALUE));
+	}
+
+	@Test
+	public void testGivesUp() throws Exception {
+		logTestStart("testGivesUp");
+		DeviceClient client = unreachableClient();
+		try {
+			client.setConnectBackoff(new ConnectBackoff(10, 50, 2, 3));
+			long start = System.nanoTime();
+			CompletableFuture<Void> future = client.connectAsync();
+			assertTrue("connectAsync blocked", System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+			try {
+				future.get(20, TimeUnit.SECONDS);
+				fail("Connecting to an unknown host should fail");
+			} catch (ExecutionException e) {
+				// Expected
+			}
+			assertEquals(3, client.getConnectMetrics().getAttemptCount());
+			assertEquals(3, client.getConnectMetrics().getFailureCount());
+			assertEquals(0, client.getConnectMetrics().getConnectCount());
+			assertTrue(client.getConnectMetrics().getLastDelay() <= 20);
+		} finally {
+			client.close();
+		}
+	}
+
+	@Test
+	public void testDisconnectCancels() throws Exception {
+		logTestStart("testDisconnectCancels");
+		DeviceClient client = unreachableClient();
+		try {
+			client.setConnectBackoff(new ConnectBackoff(60000, 60000, 2, 0));
+			CompletableFuture<Void> future = client.connectAsync();
+			assertSame(future, client.connectAsync());
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+			while (client.getConnectMetrics().getFailureCount() == 0 && System.nanoTime() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(1, client.getConnectMetrics().getFailureCount());
+
+			client.disconnect();
+			try {
+				future.get(1, TimeUnit.SECONDS);
+				fail("Disconnecting should cancel the pending connect");
+			} catch (CancellationException e) {
+				// Expected
+			}
+			assertEquals(1, client.getConnectMetrics().getAttemptCount());
+		} finally {
+			client.close();
+		}
+	}
+
+	@Test
+	public void testDeviceSubscribesToCommands() throws Exception {
+		logTestStart("testDeviceSubscribesToCommands");
+		StubBroker broker = new StubBroker();
+		DeviceClient client = new DeviceClient(
+				broker.deviceConfig(new DeviceConfigIdentity("myOrg", "ConnectTestType", "ConnectTestDev"),
+						new DeviceConfigOptions()));
+		try {
+			client.connectAsync().get(10, TimeUnit.SECONDS);
+			assertTrue(client.isConnected());
+			// As with connect(), the future completes once commands are subscribed to
+			assertEquals("iot-2/cmd/+/fmt/+", broker.nextSubscribed(0));
+		} finally {
+			if (client.isConnected()) {
+				client.disconnect();
+			}
+			client.close();
+			broker.close();
+		}
+	}
+
+	@Test
+	public void testDisconnectDuringConnack() throws Exception {
+		logTestStart("testDisconnectDuringConnack");
+		StubBroker broker = new StubBroker();
+		broker.setConnackDelay(1000);
+		DeviceClient client = new DeviceClient(
+				broker.deviceConfig(new DeviceConfigIdentity("myOrg", "ConnectTestType", "ConnectTestDev"),
+						new DeviceConfigOptions()));
+		try {
+			CompletableFuture<Void> future = client.connectAsync();
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (broker.getConnectCount() == 0 && System.nanoTime() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(1, broker.getConnectCount());
+
+			client.disconnect();
+			try {
+				future.get(1, TimeUnit.SECONDS);
+				fail("Disconnecting should cancel the pending connect");
+			} catch (CancellationException e) {
+				// Expected
+			}
+			// The connection acknowledged after the disconnect is dropped
+			Thread.sleep(2000);
+			assertFalse(client.isConnected());
+			assertEquals(0, client.getConnectMetrics().getConnectCount());
+			assertNull(broker.nextSubscribed(0));
+		} finally {
+			if (client.isConnected()) {
+				client.disconnect();
+			}
+			client.close();
+			broker.close();
+		}
+	}
+
+	@Test
+	public void testDisconnectAsAttemptStarts() throws Exception {
+		logTestStart("testDisconnectAsAttemptStarts");
+		StubBroker broker = new StubBroker();
+		ServerSocket closed = new ServerSocket(0);
+		final String unreachable = "tcp://localhost:" + closed.getLocalPort();
+		closed.close();
+		final CountDownLatch starting = new CountDownLatch(1);
+		final CountDownLatch disconnected = new CountDownLatch(1);
+		final AtomicInteger attempts = new AtomicInteger();
+		DeviceConfigOptions options = new DeviceConfigOptions();
+		options.mqtt.port = 1883;
+		final String serverURI = broker.getServerURI();
+		DeviceConfig config = new DeviceConfig(new DeviceConfigIdentity("myOrg", "ConnectTestType", "ConnectTestDev"),
+				new DeviceConfigAuth(), options) {
+			@Override
+			public String getMqttServerURI() {
+				return serverURI;
+			}
+
+			@Override
+			public MqttConnectOptions getMqttConnectOptions()
+					throws NoSuchAlgorithmException, KeyManagementException {
+				MqttConnectOptions connectOptions = super.getMqttConnectOptions();
+				if (attempts.incrementAndGet() == 1) {
+					// Fail the first attempt, so the second starts on the scheduler
+					connectOptions.setServerURIs(new String[] { unreachable });
+				} else {
+					// The client is disconnected before the MQTT client starts connecting
+					starting.countDown();
+					try {
+						disconnected.await(10, TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				return connectOptions;
+			}
+		};
+		DeviceClient client = new DeviceClient(config);
+		try {
+			client.setConnectBackoff(new ConnectBackoff(10, 10, 2, 0));
+			CompletableFuture<Void> future = client.connectAsync();
+			assertTrue(starting.await(10, TimeUnit.SECONDS));
+			client.disconnect();
+			disconnected.countDown();
+			try {
+				future.get(1, TimeUnit.SECONDS);
+				fail("Disconnecting should cancel the pending connect");
+			} catch (CancellationException e) {
+				// Expected
+			}
+
+			// The attempt still connects, and the connection is dropped
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (broker.getConnectCount() == 0 && System.nanoTime() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(1, broker.getConnectCount());
+			Thread.sleep(1000);
+			assertFalse(client.isConnected());
+			assertEquals(0, client.getConnectMetrics().getConnectCount());
+		} finally {
+			if (client.isConnected()) {
+				client.disconnect();
+			}
+			client.close();
+			broker.close();
+		}
+	}
+
+	@Test
+	public void testReconnectAfterConnectionLost() throws Exception {
+		logTestStart("testReconnectAfterConnectionLost");
+		StubBroker broker = new StubBroker();
+		DeviceClient client = new DeviceClient(
+				broker.deviceConfig(new DeviceConfigIdentity("myOrg", "ConnectTestType", "ConnectTestDev"),
+						new DeviceConfigOptions()));
+		try {
+			client.setConnectBackoff(new ConnectBackoff(200, 1000, 2, 3));
+			client.connectAsync().get(10, TimeUnit.SECONDS);
+			assertEquals("iot-2/cmd/+/fmt/+", broker.nextSubscribed(0));
+
+			broker.dropConnection();
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (client.getConnectMetrics().getReconnectCount() == 0 && System.nanoTime() < deadline) {
+				Thread.sleep(10);
+			}
+			assertTrue(client.isConnected());
+			assertEquals(1, client.getConnectMetrics().getConnectionLostCount());
+			assertEquals(1, client.getConnectMetrics().getReconnectCount());
+			assertEquals(1, client.getConnectMetrics().getConnectCount());
+			assertEquals(2, client.getConnectMetrics().getAttemptCount());
+			// Delayed by the jittered backoff, not a fixed second
+			assertTrue(client.getConnectMetrics().getLastDelay() <= 200);
+			// Commands are subscribed to again on the new connection
+			assertEquals("iot-2/cmd/+/fmt/+", broker.nextSubscribed(5000));
+		} finally {
+			if (client.isConnected()) {
+				client.disconnect();
+			}
+			client.close();
+			broker.close();
+		}
+	}
+}
@@ -0,0 +1,120 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.ibm.wiotp.sdk.app.ApplicationClient;
+import com.ibm.wiotp.sdk.app.callbacks.EventCallback;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfig;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigAuth;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigIdentity;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigOptions;
+import com.ibm.wiotp.sdk.app.messages.Event;
+import com.ibm.wiotp.sdk.codecs.DeflateCodec;
+import com.ibm.wiotp.sdk.codecs.JsonCodec;
+import com.ibm.wiotp.sdk.codecs.Utf8Codec;
+import com.ibm.wiotp.sdk.exceptions.MalformedMessageException;
+import com.ibm.wiotp.sdk.test.util.AbstractTest;
+
+public class DeflateCodecTest extends AbstractTest {
+
+	private static JsonObject diagnostics(int entries) {
+		JsonObject data = new JsonObject();
+		for (int i = 0; i < entries; i++) {
+			data.addProperty("counter" + i, "status ok, value " + (i % 10));
+		}
+		return data;
+	}
+
+	@Test
+	public void testThreshold() throws Exception {
+		logTestStart("testThreshold");
+		DeflateCodec<JsonObject> codec = new DeflateCodec<JsonObject>(new JsonCodec());
+		assertEquals("json-deflate", codec.getMessageFormat());
+		assertEquals(JsonObject.class, codec.getMessageClass());
+
+		JsonObject small = diagnostics(2);
+		byte[] smallPayload = codec.encode(small, new DateTime());
+		assertEquals(small.toString().length() + 1, smallPayload.length);
+		assertEquals(small, codec.decode(new MqttMessage(smallPayload)).getData());
+
+		JsonObject large = diagnostics(2000);
+		byte[] largePayload = codec.encode(large, new DateTime());
+		assertTrue(largePayload.length * 5 < large.toString().length());
+		assertEquals(large, codec.decode(new MqttMessage(largePayload)).getData());
+	}
+
+	@Test
+	public void testIncompressible() throws Exception {
+		logTestStart("testIncompressible");
+		StringBuilder random = new StringBuilder();
+		Random generator = new Random(1);
+		for (int i = 0; i < 4096; i++) {
+			random.append((char) (0x20 + generator.nextInt(0x5f)));
+		}
+		DeflateCodec<String> codec = new DeflateCodec<String>(new Utf8Codec(), 16, 1024 * 1024);
+		byte[] payload = codec.encode(random.toString(), new DateTime());
+		assertTrue(payload.length <= random.length() + 1);
+		assertEquals(random.toString(), codec.decode(new MqttMessage(payload)).getData());
+	}
+
+	@Test
+	public void testMaxInflatedSize() throws Exception {
+		logTestStart("testMaxInflatedSize");
+		byte[] payload = new DeflateCodec<JsonObject>(new JsonCodec()).encode(diagnostics(2000), new DateTime());
+		DeflateCodec<JsonObject> limited = new DeflateCodec<JsonObject>(new JsonCodec(), 1024, 4096);
+		try {
+			limited.decode(new MqttMessage(payload));
+			fail("Inflating beyond the limit should fail");
+		} catch (MalformedMessageException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testApplicationResolvesFormat() throws Exception {
+		logTestStart("testApplicationResolvesFormat");
+		ApplicationConfig config = new ApplicationConfig(new ApplicationConfigIdentity("deflateTest"),
+				new ApplicationConfigAuth("a-myOrg-deflate", "token"), new ApplicationConfigOptions());
+		ApplicationClient app = new ApplicationClient(config);
+		try {
+			app.registerCodec(new JsonCodec());
+			final AtomicReference<JsonObject> received = new AtomicReference<JsonObject>();
+			app.registerEventCallback(new EventCallback<JsonObject>() {
+				public void processEvent(Event<JsonObject> evt) {
+					received.set(evt.getData());
+				}
+
+				public Class<JsonObject> getMessageClass() {
+					return JsonObject.class;
+				}
+			});
+
+			JsonObject data = diagnostics(2000);
+			byte[] payload = new DeflateCodec<JsonObject>(new JsonCodec()).encode(data, new DateTime());
+			app.messageArrived("iot-2/type/t/id/d/evt/diag/fmt/json-deflate", new MqttMessage(payload));
+			assertEquals(data, received.get());
+		} finally {
+			app.close();
+		}
+	}
+}
@@ -0,0 +1,212 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.ibm.wiotp.sdk.BackpressurePolicy;
+import com.ibm.wiotp.sdk.app.ApplicationClient;
+import com.ibm.wiotp.sdk.app.callbacks.EventCallback;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfig;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigAuth;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigIdentity;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigOptions;
+import com.ibm.wiotp.sdk.app.messages.Event;
+import com.ibm.wiotp.sdk.codecs.DeltaCodec;
+import com.ibm.wiotp.sdk.device.DeviceClient;
+import com.ibm.wiotp.sdk.device.config.DeviceConfig;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigAuth;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigIdentity;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigOptions;
+import com.ibm.wiotp.sdk.exceptions.MalformedMessageException;
+import com.ibm.wiotp.sdk.test.util.AbstractTest;
+
+public class DeltaCodecTest extends AbstractTest {
+
+	private static JsonObject telemetry(int i) {
+		JsonObject data = new JsonObject();
+		data.addProperty("hostname", "edge-gateway-01.example.com");
+		data.addProperty("os", "Linux 4.15.0-54-generic x86_64");
+		data.addProperty("cpuCount", 8);
+		data.addProperty("memTotal", 16777216000L);
+		data.addProperty("memUsed", 8000000000L + (i / 3) * 4096);
+		data.addProperty("cpuLoad", (i % 4) * 0.25);
+		data.addProperty("uptime", 1000 + i * 5);
+		return data;
+	}
+
+	private static boolean isKeyframe(byte[] payload) {
+		return new String(payload, StandardCharsets.UTF_8).contains("\"key\":true");
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		logTestStart("testRoundTrip");
+		DeltaCodec sender = new DeltaCodec(5, true);
+		DeltaCodec receiver = new DeltaCodec(5, true);
+		assertEquals("json-delta", sender.getMessageFormat());
+
+		long fullBytes = 0;
+		long deltaBytes = 0;
+		for (int i = 0; i < 50; i++) {
+			JsonObject data = telemetry(i);
+			if (i == 12) {
+				data.remove("os");
+			}
+			byte[] payload = sender.encode("dev1", data, new DateTime());
+			assertEquals(i % 5 == 0, isKeyframe(payload));
+			assertEquals(data, receiver.decode("dev1", new MqttMessage(payload)).getData());
+
+			fullBytes += data.toString().length();
+			deltaBytes += payload.length;
+		}
+		assertTrue("Deltas should be under half the size", deltaBytes * 2 < fullBytes);
+
+		// Streams are independent, so a new stream starts with a keyframe
+		assertTrue(isKeyframe(sender.encode("dev2", telemetry(0), new DateTime())));
+	}
+
+	@Test
+	public void testGapWaitsForKeyframe() throws Exception {
+		logTestStart("testGapWaitsForKeyframe");
+		DeltaCodec sender = new DeltaCodec(4, true);
+		DeltaCodec receiver = new DeltaCodec(4, true);
+		List<byte[]> payloads = new ArrayList<byte[]>();
+		for (int i = 0; i < 9; i++) {
+			payloads.add(sender.encode("dev1", telemetry(i), new DateTime()));
+		}
+
+		receiver.decode("dev1", new MqttMessage(payloads.get(0)));
+		receiver.decode("dev1", new MqttMessage(payloads.get(1)));
+		try {
+			receiver.decode("dev1", new MqttMessage(payloads.get(1)));
+			fail("A redelivered delta should be dropped");
+		} catch (MalformedMessageException e) {
+			// Expected
+		}
+		// Message 2 is lost, so 3 can not be applied
+		try {
+			receiver.decode("dev1", new MqttMessage(payloads.get(3)));
+			fail("A delta after a gap should be dropped");
+		} catch (MalformedMessageException e) {
+			// Expected
+		}
+		assertEquals(telemetry(4), receiver.decode("dev1", new MqttMessage(payloads.get(4))).getData());
+		assertEquals(telemetry(5), receiver.decode("dev1", new MqttMessage(payloads.get(5))).getData());
+
+		// A receiver that joins part way through waits for the next keyframe
+		DeltaCodec late = new DeltaCodec();
+		for (int i = 5; i < 8; i++) {
+			try {
+				late.decode("dev1", new MqttMessage(payloads.get(i)));
+				fail("Deltas before the first keyframe should be dropped");
+			} catch (MalformedMessageException e) {
+				// Expected
+			}
+		}
+		assertEquals(telemetry(8), late.decode("dev1", new MqttMessage(payloads.get(8))).getData());
+	}
+
+	@Test
+	public void testReconnect() throws Exception {
+		logTestStart("testReconnect");
+		DeltaCodec resync = new DeltaCodec(100, true);
+		resync.encode("dev1", telemetry(0), new DateTime());
+		assertFalse(isKeyframe(resync.encode("dev1", telemetry(1), new DateTime())));
+		resync.reconnected();
+		assertTrue(isKeyframe(resync.encode("dev1", telemetry(2), new DateTime())));
+
+		DeltaCodec noResync = new DeltaCodec(100, false);
+		noResync.encode("dev1", telemetry(0), new DateTime());
+		noResync.reconnected();
+		assertFalse(isKeyframe(noResync.encode("dev1", telemetry(1), new DateTime())));
+	}
+
+	@Test
+	public void testRejectedPublish() throws Exception {
+		logTestStart("testRejectedPublish");
+		// Never connected, so the first message holds the only in-flight slot
+		DeviceConfigOptions options = new DeviceConfigOptions();
+		options.mqtt.port = 1883;
+		options.mqtt.maxInflight = 1;
+		options.mqtt.publishQueueSize = 0;
+		options.mqtt.backpressure = BackpressurePolicy.FAIL;
+		DeviceConfig config = new DeviceConfig(new DeviceConfigIdentity("myOrg", "DeltaTestType", "DeltaTestDev"),
+				new DeviceConfigAuth(), options);
+		DeviceClient device = new DeviceClient(config);
+		try {
+			DeltaCodec codec = new DeltaCodec(100, true);
+			device.registerCodec(codec);
+			String topic = "iot-2/evt/status/fmt/json-delta";
+			assertTrue(device.publishEvent("status", telemetry(0), 1));
+			assertTrue(codec.getSentStreams().contains(topic));
+
+			// The receiver never sees the rejected delta, so the next message is a keyframe
+			assertFalse(device.publishEvent("status", telemetry(1), 1));
+			assertFalse(codec.getSentStreams().contains(topic));
+			assertTrue(device.publishEventAsync("status", telemetry(2), 1).isCompletedExceptionally());
+			assertTrue(isKeyframe(codec.encode(topic, telemetry(3), new DateTime())));
+		} finally {
+			device.close();
+		}
+	}
+
+	@Test
+	public void testApplicationRebuildsEvents() throws Exception {
+		logTestStart("testApplicationRebuildsEvents");
+		ApplicationConfig config = new ApplicationConfig(new ApplicationConfigIdentity("deltaTest"),
+				new ApplicationConfigAuth("a-myOrg-delta", "token"), new ApplicationConfigOptions());
+		ApplicationClient app = new ApplicationClient(config);
+		try {
+			app.registerCodec(new DeltaCodec());
+			final List<JsonObject> received = new ArrayList<JsonObject>();
+			app.registerEventCallback(new EventCallback<JsonObject>() {
+				public void processEvent(Event<JsonObject> evt) {
+					received.add(evt.getData());
+				}
+
+				public Class<JsonObject> getMessageClass() {
+					return JsonObject.class;
+				}
+			});
+
+			// Two devices publishing interleaved streams
+			DeltaCodec device1 = new DeltaCodec();
+			DeltaCodec device2 = new DeltaCodec();
+			List<JsonObject> expected = new ArrayList<JsonObject>();
+			for (int i = 0; i < 10; i++) {
+				JsonObject data1 = telemetry(i);
+				JsonObject data2 = telemetry(i * 7);
+				app.messageArrived("iot-2/type/t/id/d1/evt/status/fmt/json-delta",
+						new MqttMessage(device1.encode("iot-2/evt/status/fmt/json-delta", data1, new DateTime())));
+				app.messageArrived("iot-2/type/t/id/d2/evt/status/fmt/json-delta",
+						new MqttMessage(device2.encode("iot-2/evt/status/fmt/json-delta", data2, new DateTime())));
+				expected.add(data1);
+				expected.add(data2);
+			}
+			assertEquals(expected, received);
+		} finally {
+			app.close();
+		}
+	}
+}
@@ -0,0 +1,121 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.ibm.wiotp.sdk.BackpressurePolicy;
+import com.ibm.wiotp.sdk.DrainReport;
+import com.ibm.wiotp.sdk.codecs.JsonCodec;
+import com.ibm.wiotp.sdk.device.DeviceClient;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigIdentity;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigOptions;
+import com.ibm.wiotp.sdk.test.util.AbstractTest;
+import com.ibm.wiotp.sdk.test.util.StubBroker;
+
+public class DrainTest extends AbstractTest {
+
+	private StubBroker broker;
+	private DeviceClient client;
+
+	@After
+	public void cleanupClient() throws Exception {
+		if (client != null) {
+			client.close();
+		}
+		if (broker != null) {
+			broker.close();
+		}
+	}
+
+	private static DeviceClient createClient(StubBroker broker) throws Exception {
+		DeviceConfigOptions options = new DeviceConfigOptions();
+		options.mqtt.maxInflight = 2;
+		options.mqtt.publishQueueSize = 2;
+		options.mqtt.backpressure = BackpressurePolicy.FAIL;
+		DeviceClient deviceClient = new DeviceClient(
+				broker.deviceConfig(new DeviceConfigIdentity("myOrg", "DrainTestType", "DrainTestDev"), options));
+		deviceClient.registerCodec(new JsonCodec());
+		return deviceClient;
+	}
+
+	@Test
+	public void testDelivered() throws Exception {
+		logTestStart("testDelivered");
+		broker = new StubBroker(true);
+		client = createClient(broker);
+		client.connect();
+		assertTrue(client.isConnected());
+		for (int i = 0; i < 4; i++) {
+			assertTrue(client.publishEvent("test", new JsonObject(), 1));
+		}
+		assertEquals(2, client.getFlowController().getQueueDepth());
+
+		// Publish while draining, then let the acknowledgements through
+		final AtomicBoolean accepted = new AtomicBoolean(true);
+		Thread publisher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(200);
+				} catch (InterruptedException e) {
+					return;
+				}
+				accepted.set(client.publishEvent("test", new JsonObject(), 1));
+				broker.release();
+			}
+		});
+		publisher.start();
+
+		DrainReport report = client.drainAndDisconnect(10000);
+		publisher.join();
+		assertFalse(accepted.get());
+		assertTrue(report.toString(), report.isComplete());
+		assertEquals(4, report.getDeliveredCount());
+		assertEquals(1, report.getRejectedCount());
+		assertEquals(0, report.getPendingCount());
+		assertFalse(client.isConnected());
+
+		// Publishes are accepted again, and buffered until the next connect
+		assertTrue(client.publishEvent("test", new JsonObject(), 1));
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		logTestStart("testTimeout");
+		// Never connected, so sent messages stay in the disconnected buffer
+		broker = new StubBroker();
+		client = createClient(broker);
+		client.publishEvent("test", new JsonObject(), 1);
+		client.publishEvent("test", new JsonObject(), 1);
+		client.publishEvent("test", new JsonObject(), 1);
+		CompletableFuture<IMqttDeliveryToken> queued = client.publishEventAsync("test", new JsonObject(), 1);
+
+		DrainReport report = client.drainAndDisconnect(200);
+		assertFalse(report.isComplete());
+		assertEquals(0, report.getDeliveredCount());
+		assertEquals(2, report.getPendingCount());
+		assertEquals(2, report.getBufferedCount());
+		assertEquals(2, report.getDroppedCount());
+		assertTrue(report.getElapsedMillis() >= 200);
+		assertTrue(queued.isCompletedExceptionally());
+	}
+}
@@ -0,0 +1,152 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.ibm.wiotp.sdk.BackpressurePolicy;
+import com.ibm.wiotp.sdk.FlowController;
+import com.ibm.wiotp.sdk.codecs.JsonCodec;
+import com.ibm.wiotp.sdk.device.DeviceClient;
+import com.ibm.wiotp.sdk.device.config.DeviceConfig;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigAuth;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigIdentity;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigOptions;
+import com.ibm.wiotp.sdk.test.util.AbstractTest;
+
+/**
+ * The client is never connected, so published messages stay in the MQTT
+ * client's disconnected buffer and never complete, which fills the in-flight
+ * window.
+ */
+public class FlowControllerTest extends AbstractTest {
+
+	private DeviceClient client;
+
+	@After
+	public void cleanupClient() throws Exception {
+		if (client != null) {
+			client.close();
+		}
+	}
+
+	private DeviceClient createClient(BackpressurePolicy policy) throws Exception {
+		DeviceConfigOptions options = new DeviceConfigOptions();
+		options.mqtt.port = 1883;
+		options.mqtt.maxInflight = 2;
+		options.mqtt.publishQueueSize = 2;
+		options.mqtt.backpressure = policy;
+		DeviceConfig config = new DeviceConfig(new DeviceConfigIdentity("myOrg", "FlowTestType", "FlowTestDev"),
+				new DeviceConfigAuth(), options);
+		DeviceClient deviceClient = new DeviceClient(config);
+		deviceClient.registerCodec(new JsonCodec());
+		return deviceClient;
+	}
+
+	@Test
+	public void testFail() throws Exception {
+		logTestStart("testFail");
+		client = createClient(BackpressurePolicy.FAIL);
+		for (int i = 0; i < 4; i++) {
+			assertTrue(client.publishEvent("test", new JsonObject(), 1));
+		}
+		assertFalse(client.publishEvent("test", new JsonObject(), 1));
+
+		FlowController flow = client.getFlowController();
+		assertEquals(2, flow.getInflight());
+		assertEquals(2, flow.getQueueDepth());
+		assertEquals(2, flow.getSentCount());
+		assertEquals(1, flow.getRejectedCount());
+		assertEquals(0, flow.getDroppedCount());
+	}
+
+	@Test
+	public void testBlockOnCallbackThread() throws Exception {
+		logTestStart("testBlockOnCallbackThread");
+		client = createClient(BackpressurePolicy.BLOCK);
+		for (int i = 0; i < 4; i++) {
+			assertTrue(client.publishEvent("test", new JsonObject(), 1));
+		}
+
+		// A publish from the thread that completes deliveries must not wait for one
+		final AtomicBoolean accepted = new AtomicBoolean(true);
+		Thread callback = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				accepted.set(client.publishEvent("test", new JsonObject(), 1));
+			}
+		}, "MQTT Call: d:myOrg:FlowTestType:FlowTestDev");
+		long start = System.currentTimeMillis();
+		callback.start();
+		callback.join(10000);
+		assertFalse(callback.isAlive());
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		assertFalse(accepted.get());
+
+		FlowController flow = client.getFlowController();
+		assertEquals(1, flow.getRejectedCount());
+		assertEquals(0, flow.getBlockedCount());
+	}
+
+	@Test
+	public void testDropOldest() throws Exception {
+		logTestStart("testDropOldest");
+		client = createClient(BackpressurePolicy.DROP_OLDEST);
+		client.publishEvent("test", new JsonObject(), 1);
+		client.publishEvent("test", new JsonObject(), 1);
+		CompletableFuture<IMqttDeliveryToken> oldest = client.publishEventAsync("test", new JsonObject(), 1);
+		client.publishEvent("test", new JsonObject(), 1);
+		CompletableFuture<IMqttDeliveryToken> newest = client.publishEventAsync("test", new JsonObject(), 1);
+
+		assertTrue(oldest.isCompletedExceptionally());
+		assertFalse(newest.isDone());
+		assertEquals(2, client.getFlowController().getQueueDepth());
+		assertEquals(1, client.getFlowController().getDroppedCount());
+	}
+
+	@Test
+	public void testDropNewest() throws Exception {
+		logTestStart("testDropNewest");
+		client = createClient(BackpressurePolicy.DROP_NEWEST);
+		for (int i = 0; i < 4; i++) {
+			client.publishEvent("test", new JsonObject(), 1);
+		}
+		CompletableFuture<IMqttDeliveryToken> newest = client.publishEventAsync("test", new JsonObject(), 1);
+
+		assertTrue(newest.isCompletedExceptionally());
+		assertEquals(1, client.getFlowController().getDroppedCount());
+		assertEquals(0, client.getFlowController().getRejectedCount());
+	}
+
+	@Test
+	public void testCloseFailsQueued() throws Exception {
+		logTestStart("testCloseFailsQueued");
+		client = createClient(BackpressurePolicy.FAIL);
+		client.publishEvent("test", new JsonObject(), 1);
+		client.publishEvent("test", new JsonObject(), 1);
+		CompletableFuture<IMqttDeliveryToken> queued = client.publishEventAsync("test", new JsonObject(), 1);
+		assertFalse(queued.isDone());
+
+		client.close();
+		client = null;
+		assertTrue(queued.isCompletedExceptionally());
+	}
+}
@@ -0,0 +1,255 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.MqttToken;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.Test;
+
+import com.ibm.wiotp.sdk.ConnectBackoff;
+import com.ibm.wiotp.sdk.HealthMonitor;
+import com.ibm.wiotp.sdk.LatencyHistogram;
+import com.ibm.wiotp.sdk.app.ApplicationClient;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfig;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigAuth;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigIdentity;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigOptions;
+import com.ibm.wiotp.sdk.device.DeviceClient;
+import com.ibm.wiotp.sdk.device.config.DeviceConfig;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigAuth;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigIdentity;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigOptions;
+import com.ibm.wiotp.sdk.test.util.AbstractTest;
+
+public class HealthMonitorTest extends AbstractTest {
+
+	/*
+	 * Delivers every publish back to the client from another thread, unless
+	 * stalled, as a connection that is open but no longer delivers would
+	 */
+	private static class LoopbackMqttClient extends MqttAsyncClient {
+		final List<String> subscribed = new CopyOnWriteArrayList<String>();
+		final AtomicInteger dropped = new AtomicInteger();
+		volatile boolean connected = true;
+		volatile boolean stalled = false;
+		volatile ApplicationClient target;
+
+		LoopbackMqttClient() throws MqttException {
+			super("tcp://localhost:1883", "loopback", new MemoryPersistence());
+		}
+
+		@Override
+		public boolean isConnected() {
+			return connected;
+		}
+
+		@Override
+		public IMqttToken subscribe(String[] topicFilters, int[] qos, Object userContext,
+				IMqttActionListener callback) {
+			for (String topicFilter : topicFilters) {
+				subscribed.add(topicFilter);
+			}
+			return new MqttToken("loopback");
+		}
+
+		@Override
+		public IMqttDeliveryToken publish(final String topic, final MqttMessage message, Object userContext,
+				IMqttActionListener callback) {
+			if (!stalled) {
+				new Thread(new Runnable() {
+					@Override
+					public void run() {
+						target.messageArrived(topic, message);
+					}
+				}).start();
+			}
+			return new MqttDeliveryToken("loopback");
+		}
+
+		@Override
+		public void disconnectForcibly(long quiesceTimeout, long disconnectTimeout, boolean sendDisconnectPacket) {
+			connected = false;
+			dropped.incrementAndGet();
+		}
+
+		@Override
+		public IMqttToken connect(MqttConnectOptions options, Object userContext, final IMqttActionListener callback) {
+			final MqttToken token = new MqttToken("loopback");
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					// The new connection delivers again
+					stalled = false;
+					connected = true;
+					callback.onSuccess(token);
+					target.connectComplete(false, getServerURI());
+				}
+			}).start();
+			return token;
+		}
+	}
+
+	private static class LoopbackApplicationClient extends ApplicationClient {
+		LoopbackApplicationClient(ApplicationConfig config, LoopbackMqttClient mqtt) throws Exception {
+			super(config);
+			mqttAsyncClient.close();
+			mqttAsyncClient = mqtt;
+			mqtt.target = this;
+		}
+	}
+
+	private static ApplicationConfig config(boolean sharedSubscription) {
+		ApplicationConfigOptions options = new ApplicationConfigOptions();
+		options.mqtt.sharedSubscription = sharedSubscription;
+		return new ApplicationConfig(new ApplicationConfigIdentity("HealthTest"),
+				new ApplicationConfigAuth("a-health-key", "token"), options);
+	}
+
+	private static void await(HealthMonitor monitor, HealthMonitor.State state, long minReceived)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (monitor.getState() != state || monitor.getProbesReceived() < minReceived) {
+			if (System.currentTimeMillis() > deadline) {
+				fail("Monitor did not reach " + state + ": " + monitor);
+			}
+			Thread.sleep(10);
+		}
+	}
+
+	@Test
+	public void testHealthy() throws Exception {
+		logTestStart("testHealthy");
+		LoopbackMqttClient mqtt = new LoopbackMqttClient();
+		ApplicationClient client = new LoopbackApplicationClient(config(false), mqtt);
+
+		HealthMonitor monitor = client.startHealthMonitor(20, 1000, 3);
+		assertTrue(mqtt.subscribed.contains(monitor.getProbeTopic()));
+		await(monitor, HealthMonitor.State.HEALTHY, 5);
+		assertTrue(monitor.isHealthy());
+		assertTrue(monitor.getLatency().getCount() >= 5);
+		assertTrue(monitor.getLastLatencyMicros() >= 0);
+		assertEquals(0, monitor.getForcedReconnects());
+
+		client.close();
+		assertNull(client.getHealthMonitor());
+	}
+
+	@Test
+	public void testStalled() throws Exception {
+		logTestStart("testStalled");
+		LoopbackMqttClient mqtt = new LoopbackMqttClient();
+		ApplicationClient client = new LoopbackApplicationClient(config(false), mqtt);
+		client.setConnectBackoff(new ConnectBackoff(10, 50, 2, 5));
+		HealthMonitor monitor = client.startHealthMonitor(20, 50, 2);
+		await(monitor, HealthMonitor.State.HEALTHY, 1);
+		String events = "iot-2/type/HealthTestType/id/+/evt/+/fmt/+";
+		client.subscribeAsync(Collections.singletonMap(events, 0));
+
+		mqtt.stalled = true;
+		long received = monitor.getProbesReceived();
+		long deadline = System.currentTimeMillis() + 10000;
+		while (monitor.getForcedReconnects() == 0) {
+			if (System.currentTimeMillis() > deadline) {
+				fail("Stalled connection was not replaced: " + monitor);
+			}
+			Thread.sleep(10);
+		}
+		assertTrue(monitor.getProbesMissed() >= 2);
+		assertTrue(mqtt.dropped.get() >= 1);
+
+		// The replacement connection subscribes to the probes again and delivers them
+		await(monitor, HealthMonitor.State.HEALTHY, received + 1);
+		assertTrue(Collections.frequency(mqtt.subscribed, monitor.getProbeTopic()) >= 2);
+		assertTrue(client.getConnectMetrics().getReconnectCount() >= 1);
+		// As do the client's own subscriptions, which the new session does not have
+		while (Collections.frequency(mqtt.subscribed, events) < 2) {
+			if (System.currentTimeMillis() > deadline) {
+				fail("Subscriptions were not restored: " + mqtt.subscribed);
+			}
+			Thread.sleep(10);
+		}
+		client.close();
+	}
+
+	@Test
+	public void testNoDefaultTopic() throws Exception {
+		logTestStart("testNoDefaultTopic");
+		try {
+			new ApplicationClient(config(true)).startHealthMonitor();
+			fail("There is no default probe topic with a shared subscription");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+		DeviceConfig config = new DeviceConfig(new DeviceConfigIdentity("myOrg", "HealthTestType", "HealthTestDev"),
+				new DeviceConfigAuth(), new DeviceConfigOptions());
+		try {
+			new DeviceClient(config).startHealthMonitor();
+			fail("There is no default probe topic for devices");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testProbeTopic() throws Exception {
+		logTestStart("testProbeTopic");
+		LoopbackMqttClient mqtt = new LoopbackMqttClient();
+		// Members of a shared subscription can give a topic of their own
+		ApplicationClient client = new LoopbackApplicationClient(config(true), mqtt);
+		String probeTopic = "iot-2/type/HealthTestProbe/id/member-1/evt/probe/fmt/bin";
+		HealthMonitor monitor = client.startHealthMonitor(probeTopic, 20, 1000, 3);
+		assertEquals(probeTopic, monitor.getProbeTopic());
+		assertTrue(mqtt.subscribed.contains(probeTopic));
+		await(monitor, HealthMonitor.State.HEALTHY, 1);
+		client.close();
+	}
+
+	@Test
+	public void testHistogram() throws Exception {
+		logTestStart("testHistogram");
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getPercentileMicros(50));
+		for (int i = 1; i <= 100; i++) {
+			// 1ms to 100ms
+			histogram.record(i * 1000000L);
+		}
+		assertEquals(100, histogram.getCount());
+		assertEquals(100000, histogram.getMaxMicros());
+		assertEquals(50500, histogram.getMeanMicros(), 0.001);
+		// Within a factor of two of the true percentile
+		long p50 = histogram.getPercentileMicros(50);
+		assertTrue(p50 >= 50000 && p50 <= 100000);
+		long p10 = histogram.getPercentileMicros(10);
+		assertTrue(p10 >= 10000 && p10 <= 20000);
+		assertEquals(100000, histogram.getPercentileMicros(100));
+
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+	}
+}
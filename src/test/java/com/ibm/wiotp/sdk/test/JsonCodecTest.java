@@ -0,0 +1,120 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.Charset;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.ibm.wiotp.sdk.codecs.JsonCodec;
+import com.ibm.wiotp.sdk.codecs.JsonMessage;
+import com.ibm.wiotp.sdk.codecs.PayloadBuffer;
+import com.ibm.wiotp.sdk.exceptions.MalformedMessageException;
+import com.ibm.wiotp.sdk.test.util.AbstractTest;
+
+public class JsonCodecTest extends AbstractTest {
+
+	private static MqttMessage message(String payload) {
+		return new MqttMessage(payload.getBytes(Charset.forName("UTF-8")));
+	}
+
+	@Test
+	public void testDecodeUnicode() throws Exception {
+		logTestStart("testDecodeUnicode");
+		JsonObject data = new JsonObject();
+		data.addProperty("name", "café 温度 🌡");
+		data.addProperty("value", 21.5);
+
+		JsonCodec codec = new JsonCodec();
+		JsonMessage decoded = codec.decode(new MqttMessage(codec.encode(data, new DateTime())));
+		assertEquals(data, decoded.getData());
+	}
+
+	@Test
+	public void testEncodeMatchesToString() throws Exception {
+		logTestStart("testEncodeMatchesToString");
+		JsonObject data = new JsonObject();
+		data.addProperty("name", "café 温度 🌡 \"quoted\" \n <tag>");
+		data.addProperty("lone", "\ud83c!");
+		data.addProperty("nan", Double.NaN);
+		data.add("nothing", null);
+		StringBuilder large = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			large.append("🌡°");
+		}
+		data.addProperty("large", large.toString());
+
+		byte[] expected = data.toString().getBytes(Charset.forName("UTF-8"));
+		JsonCodec codec = new JsonCodec();
+		assertArrayEquals(expected, codec.encode(data, new DateTime()));
+		PayloadBuffer buffer = PayloadBuffer.acquire();
+		try {
+			codec.encode(data, new DateTime(), buffer);
+			assertArrayEquals(expected, buffer.toByteArray());
+		} finally {
+			buffer.release();
+		}
+	}
+
+	@Test
+	public void testDecodeEmpty() throws Exception {
+		logTestStart("testDecodeEmpty");
+		assertNull(new JsonCodec().decode(new MqttMessage(new byte[0])).getData());
+		assertNull(new JsonCodec(true).decode(new MqttMessage(new byte[0])).getData());
+	}
+
+	@Test
+	public void testDecodeMalformed() throws Exception {
+		logTestStart("testDecodeMalformed");
+		String[] payloads = { "{\"a\": ", "[1, 2]", "{\"a\": 1} {\"b\": 2}", "null" };
+		for (String payload : payloads) {
+			try {
+				new JsonCodec().decode(message(payload));
+				fail("Decoding " + payload + " should fail");
+			} catch (MalformedMessageException e) {
+				// Expected
+			}
+		}
+
+		JsonMessage lazy = new JsonCodec(true).decode(message("{\"a\": "));
+		try {
+			lazy.getData();
+			fail("Lazily decoding a malformed payload should fail");
+		} catch (MalformedMessageException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testLazyAndStreaming() throws Exception {
+		logTestStart("testLazyAndStreaming");
+		JsonMessage msg = new JsonCodec(true).decode(message("{\"d\": {\"temp\": 21.5, \"label\": \"é\"}}"));
+
+		JsonReader reader = msg.getReader();
+		reader.beginObject();
+		assertEquals("d", reader.nextName());
+		reader.beginObject();
+		assertEquals("temp", reader.nextName());
+		assertEquals(21.5, reader.nextDouble(), 0);
+
+		assertEquals(21.5, msg.getData().getAsJsonObject("d").get("temp").getAsDouble(), 0);
+		assertEquals("é", msg.getData().getAsJsonObject("d").get("label").getAsString());
+	}
+}
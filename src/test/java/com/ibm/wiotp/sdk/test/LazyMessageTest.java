@@ -0,0 +1,100 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.ibm.wiotp.sdk.app.messages.Event;
+import com.ibm.wiotp.sdk.codecs.JsonCodec;
+import com.ibm.wiotp.sdk.codecs.LazyMessage;
+import com.ibm.wiotp.sdk.codecs.Utf8Codec;
+import com.ibm.wiotp.sdk.codecs.Utf8Message;
+import com.ibm.wiotp.sdk.exceptions.MalformedMessageException;
+import com.ibm.wiotp.sdk.test.util.AbstractTest;
+
+public class LazyMessageTest extends AbstractTest {
+
+	private static class CountingCodec extends Utf8Codec {
+		final AtomicInteger decodes = new AtomicInteger();
+
+		@Override
+		public Utf8Message decode(MqttMessage msg) throws MalformedMessageException {
+			decodes.incrementAndGet();
+			if (msg.getPayload().length == 0) {
+				throw new MalformedMessageException("utf8");
+			}
+			return super.decode(msg);
+		}
+	}
+
+	@Test
+	public void testDecodeOnce() throws Exception {
+		logTestStart("testDecodeOnce");
+		CountingCodec codec = new CountingCodec();
+		MqttMessage msg = new MqttMessage(codec.encode("hello", new DateTime()));
+		Event<String> evt = new Event<String>("type", "device", "event", "utf8", new LazyMessage<String>(codec, msg));
+
+		assertSame(msg.getPayload(), evt.getPayload());
+		assertEquals(0, codec.decodes.get());
+
+		assertEquals("hello", evt.getData());
+		assertEquals("hello", evt.getData());
+		assertEquals(1, codec.decodes.get());
+	}
+
+	@Test
+	public void testMalformed() throws Exception {
+		logTestStart("testMalformed");
+		CountingCodec codec = new CountingCodec();
+		LazyMessage<String> message = new LazyMessage<String>(codec, new MqttMessage(new byte[0]));
+		try {
+			message.getData();
+			fail("Decoding an empty payload should fail");
+		} catch (MalformedMessageException e) {
+			// Expected
+		}
+		assertFalse(message.isDecoded());
+	}
+
+	@Test
+	public void testMalformedLazyJson() throws Exception {
+		logTestStart("testMalformedLazyJson");
+		// The JSON tree is built by the message itself, after the codec returned
+		MqttMessage msg = new MqttMessage("{\"a\": ".getBytes(StandardCharsets.UTF_8));
+		Event<JsonObject> evt = new Event<JsonObject>("type", "device", "event", "json",
+				new LazyMessage<JsonObject>(new JsonCodec(true), msg));
+		try {
+			evt.getData();
+			fail("Decoding a truncated JSON payload should fail");
+		} catch (MalformedMessageException e) {
+			// Expected, and caught by the clients around their callbacks
+		}
+	}
+
+	@Test
+	public void testEagerMessageHasNoPayload() throws Exception {
+		logTestStart("testEagerMessageHasNoPayload");
+		Event<String> evt = new Event<String>("type", "device", "event", "utf8", new Utf8Message("hello", null));
+		assertEquals(null, evt.getPayload());
+		assertEquals("hello", evt.getData());
+	}
+}
@@ -0,0 +1,225 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ibm.wiotp.sdk.persistence.MappedFilePersistence;
+import com.ibm.wiotp.sdk.test.util.AbstractTest;
+
+public class MappedFilePersistenceTest extends AbstractTest {
+
+	private static final String CLIENT_ID = "d:myOrg:PersistType:PersistDev";
+	private static final String SERVER_URI = "ssl://myOrg.messaging.internetofthings.ibmcloud.com:8883";
+
+	private File directory;
+	private MappedFilePersistence persistence;
+
+	@Before
+	public void createDirectory() throws Exception {
+		directory = Files.createTempDirectory("wiotp-persistence").toFile();
+		persistence = open();
+	}
+
+	@After
+	public void deleteDirectory() throws Exception {
+		persistence.close();
+		delete(directory);
+	}
+
+	private MappedFilePersistence open() throws MqttPersistenceException {
+		MappedFilePersistence p = new MappedFilePersistence(directory.getAbsolutePath(), 4096, 8192);
+		p.open(CLIENT_ID, SERVER_URI);
+		return p;
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	private static MqttPersistable message(final String header, final String payload) {
+		return new MqttPersistable() {
+			public byte[] getHeaderBytes() {
+				return header.getBytes();
+			}
+
+			public int getHeaderLength() {
+				return header.length();
+			}
+
+			public int getHeaderOffset() {
+				return 0;
+			}
+
+			public byte[] getPayloadBytes() {
+				return payload == null ? null : payload.getBytes();
+			}
+
+			public int getPayloadLength() {
+				return payload == null ? 0 : payload.length();
+			}
+
+			public int getPayloadOffset() {
+				return 0;
+			}
+		};
+	}
+
+	@Test
+	public void testPutGetRemove() throws Exception {
+		logTestStart("testPutGetRemove");
+		persistence.put("s-1", message("header1", "payload1"));
+		persistence.put("s-2", message("header2", null));
+
+		assertTrue(persistence.containsKey("s-1"));
+		MqttPersistable stored = persistence.get("s-1");
+		assertArrayEquals("header1".getBytes(), stored.getHeaderBytes());
+		assertArrayEquals("payload1".getBytes(), stored.getPayloadBytes());
+		assertEquals(0, persistence.get("s-2").getPayloadLength());
+
+		persistence.remove("s-1");
+		assertFalse(persistence.containsKey("s-1"));
+		assertNull(persistence.get("s-1"));
+		assertEquals(Collections.singletonList("s-2"), Collections.list(persistence.keys()));
+	}
+
+	@Test
+	public void testReopen() throws Exception {
+		logTestStart("testReopen");
+		persistence.put("s-1", message("header1", "payload1"));
+		persistence.put("s-2", message("header2", "payload2"));
+		persistence.put("s-1", message("header1", "updated"));
+		persistence.remove("s-2");
+		persistence.close();
+
+		persistence = open();
+		assertEquals(Collections.singletonList("s-1"), Collections.list(persistence.keys()));
+		assertArrayEquals("updated".getBytes(), persistence.get("s-1").getPayloadBytes());
+	}
+
+	@Test
+	public void testGrowAndCompact() throws Exception {
+		logTestStart("testGrowAndCompact");
+		StringBuilder payload = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			payload.append('x');
+		}
+		for (int i = 0; i < 1000; i++) {
+			persistence.put("s-" + i, message("header" + i, payload.toString()));
+			if (i >= 5) {
+				persistence.remove("s-" + (i - 5));
+			}
+		}
+		// Five messages are live, so compaction keeps the log small
+		assertTrue(persistence.getLogSize() < 8192 * 2);
+		assertEquals(5, Collections.list(persistence.keys()).size());
+		persistence.close();
+
+		persistence = open();
+		assertEquals(5, Collections.list(persistence.keys()).size());
+		assertArrayEquals("header999".getBytes(), persistence.get("s-999").getHeaderBytes());
+	}
+
+	@Test
+	public void testGrowCompactCycle() throws Exception {
+		logTestStart("testGrowCompactCycle");
+		StringBuilder payload = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			payload.append('x');
+		}
+		int oldest = 0;
+		int next = 0;
+		for (int cycle = 0; cycle < 5; cycle++) {
+			// Keep enough messages live for the log to grow, then remove them so it is compacted
+			for (int i = 0; i < 60; i++) {
+				persistence.put("s-" + next, message("header" + next, payload.toString()));
+				next++;
+			}
+			assertTrue(persistence.getLogSize() > 4096);
+			for (; oldest < next - 1; oldest++) {
+				persistence.remove("s-" + oldest);
+			}
+			persistence.put("s-" + next, message("header" + next, payload.toString()));
+			next++;
+			assertEquals(2, Collections.list(persistence.keys()).size());
+			assertArrayEquals(("header" + (next - 2)).getBytes(), persistence.get("s-" + (next - 2)).getHeaderBytes());
+			assertTrue(mappings() <= 1);
+		}
+		persistence.close();
+		assertTrue(mappings() <= 0);
+
+		persistence = open();
+		assertEquals(2, Collections.list(persistence.keys()).size());
+		assertArrayEquals(("header" + (next - 1)).getBytes(), persistence.get("s-" + (next - 1)).getHeaderBytes());
+	}
+
+	/*
+	 * Number of mappings of the log files held by this process, or -1 where the
+	 * platform does not list them
+	 */
+	private int mappings() throws Exception {
+		File maps = new File("/proc/self/maps");
+		if (!maps.exists()) {
+			return -1;
+		}
+		int count = 0;
+		for (String line : Files.readAllLines(maps.toPath())) {
+			if (line.contains(directory.getCanonicalPath())) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Test
+	public void testClear() throws Exception {
+		logTestStart("testClear");
+		persistence.put("s-1", message("header1", "payload1"));
+		persistence.clear();
+		assertFalse(persistence.keys().hasMoreElements());
+		persistence.close();
+
+		persistence = open();
+		assertFalse(persistence.keys().hasMoreElements());
+	}
+
+	@Test
+	public void testInUse() throws Exception {
+		logTestStart("testInUse");
+		try {
+			open();
+			fail("Opening the same store twice should fail");
+		} catch (MqttPersistenceException e) {
+			assertEquals(MqttPersistenceException.REASON_CODE_PERSISTENCE_IN_USE, e.getReasonCode());
+		}
+	}
+}
@@ -0,0 +1,134 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.ibm.wiotp.sdk.MessagePublisher;
+import com.ibm.wiotp.sdk.app.ApplicationClient;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfig;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigAuth;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigIdentity;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigOptions;
+import com.ibm.wiotp.sdk.codecs.JsonCodec;
+import com.ibm.wiotp.sdk.codecs.Utf8Codec;
+import com.ibm.wiotp.sdk.device.DeviceClient;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigAuth;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigIdentity;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigOptions;
+import com.ibm.wiotp.sdk.gateway.GatewayClient;
+import com.ibm.wiotp.sdk.gateway.config.GatewayConfig;
+import com.ibm.wiotp.sdk.test.util.AbstractTest;
+import com.ibm.wiotp.sdk.test.util.StubBroker;
+import com.ibm.wiotp.sdk.test.util.StubBroker.Published;
+
+public class MessagePublisherTest extends AbstractTest {
+
+	private StubBroker broker;
+	private DeviceClient client;
+
+	@After
+	public void cleanup() throws Exception {
+		if (client != null) {
+			if (client.isConnected()) {
+				client.disconnect();
+			}
+			client.close();
+		}
+		if (broker != null) {
+			broker.close();
+		}
+	}
+
+	@Test
+	public void testTopics() throws Exception {
+		logTestStart("testTopics");
+		ApplicationClient app = new ApplicationClient(new ApplicationConfig(
+				new ApplicationConfigIdentity("PublisherApp"), new ApplicationConfigAuth("a-myOrg-publisher", "token"),
+				new ApplicationConfigOptions()));
+		app.registerCodec(new JsonCodec());
+		app.registerCodec(new Utf8Codec());
+
+		MessagePublisher<JsonObject> events = app.getEventPublisher("PubType", "pubDev", "status", JsonObject.class);
+		assertEquals("iot-2/type/PubType/id/pubDev/evt/status/fmt/json", events.getTopic());
+		assertEquals(0, events.getQos());
+		assertSame(JsonCodec.class, events.getCodec().getClass());
+
+		MessagePublisher<String> commands = app.getCommandPublisher("PubType", "pubDev", "reboot", String.class);
+		assertEquals("iot-2/type/PubType/id/pubDev/cmd/reboot/fmt/utf8", commands.getTopic());
+		assertEquals(1, commands.getQos());
+
+		DeviceConfigOptions options = new DeviceConfigOptions();
+		GatewayClient gateway = new GatewayClient(new GatewayConfig(
+				new DeviceConfigIdentity("myOrg", "PubGwType", "pubGw"), new DeviceConfigAuth(), options));
+		gateway.registerCodec(new JsonCodec());
+		MessagePublisher<JsonObject> deviceEvents = gateway.getDeviceEventPublisher("PubType", "pubDev", "status",
+				JsonObject.class, 2);
+		assertEquals("iot-2/type/PubType/id/pubDev/evt/status/fmt/json", deviceEvents.getTopic());
+		assertEquals(2, deviceEvents.getQos());
+		MessagePublisher<JsonObject> ownEvents = gateway.getEventPublisher("status", JsonObject.class);
+		assertEquals("iot-2/evt/status/fmt/json", ownEvents.getTopic());
+	}
+
+	@Test
+	public void testNoCodec() throws Exception {
+		logTestStart("testNoCodec");
+		broker = new StubBroker();
+		client = new DeviceClient(
+				broker.deviceConfig(new DeviceConfigIdentity("myOrg", "PubType", "pubDev"), new DeviceConfigOptions()));
+		try {
+			client.getEventPublisher("status", JsonObject.class);
+			fail("A publisher without a codec should not be created");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testPublish() throws Exception {
+		logTestStart("testPublish");
+		broker = new StubBroker();
+		client = new DeviceClient(
+				broker.deviceConfig(new DeviceConfigIdentity("myOrg", "PubType", "pubDev"), new DeviceConfigOptions()));
+		client.registerCodec(new Utf8Codec());
+		client.connect();
+
+		MessagePublisher<String> publisher = client.getEventPublisher("note", String.class, 1);
+		assertTrue(publisher.publish("first"));
+		Published published = broker.nextPublished(5000);
+		assertNotNull(published);
+		assertEquals("iot-2/evt/note/fmt/utf8", published.topic);
+		assertEquals(1, published.qos);
+		assertEquals("first", published.getPayloadString());
+
+		assertTrue(publisher.publishAsync("second").get(5, TimeUnit.SECONDS).isComplete());
+		published = broker.nextPublished(5000);
+		assertEquals("iot-2/evt/note/fmt/utf8", published.topic);
+		assertEquals("second", published.getPayloadString());
+
+		try {
+			publisher.publish(null);
+			fail("Null data should be refused");
+		} catch (NullPointerException e) {
+			// Expected
+		}
+	}
+}
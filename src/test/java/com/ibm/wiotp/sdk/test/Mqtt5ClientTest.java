@@ -0,0 +1,255 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.MqttSecurityException;
+import org.eclipse.paho.mqttv5.client.MqttConnectionOptions;
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.ibm.wiotp.sdk.AbstractConfig;
+import com.ibm.wiotp.sdk.ConnectBackoff;
+import com.ibm.wiotp.sdk.Mqtt5AsyncClient;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfig;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigAuth;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigIdentity;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigOptions;
+import com.ibm.wiotp.sdk.codecs.JsonCodec;
+import com.ibm.wiotp.sdk.device.DeviceClient;
+import com.ibm.wiotp.sdk.device.config.DeviceConfig;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigAuth;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigIdentity;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigOptions;
+import com.ibm.wiotp.sdk.test.util.AbstractTest;
+
+public class Mqtt5ClientTest extends AbstractTest {
+
+	private static final int CONNECT = 1;
+	private static final int PUBLISH = 3;
+	private static final int SUBSCRIBE = 8;
+	private static final int DISCONNECT = 14;
+
+	/**
+	 * Accepts one MQTT 5 connection, answers CONNECT with a fixed CONNACK and
+	 * SUBSCRIBE with a SUBACK granting QoS 2, and records the PUBLISH packets
+	 * received
+	 */
+	private static class StubBroker implements Runnable {
+		final ServerSocket server;
+		final byte[] connack;
+		final BlockingQueue<byte[]> published = new LinkedBlockingQueue<byte[]>();
+
+		StubBroker(byte[] connack) throws IOException {
+			this.server = new ServerSocket(0);
+			this.connack = connack;
+			Thread thread = new Thread(this, "stub-broker");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		@Override
+		public void run() {
+			try {
+				Socket socket = server.accept();
+				DataInputStream in = new DataInputStream(socket.getInputStream());
+				OutputStream out = socket.getOutputStream();
+				while (true) {
+					int type = in.read() >> 4;
+					if (type < 0) {
+						break;
+					}
+					byte[] body = new byte[remainingLength(in)];
+					in.readFully(body);
+					if (type == CONNECT) {
+						out.write(connack);
+					} else if (type == SUBSCRIBE) {
+						out.write(new byte[] { (byte) 0x90, 4, body[0], body[1], 0, 2 });
+					} else if (type == PUBLISH) {
+						published.add(body);
+					} else if (type == DISCONNECT) {
+						break;
+					}
+					out.flush();
+				}
+				socket.close();
+			} catch (IOException e) {
+				// The client went away
+			}
+		}
+
+		private static int remainingLength(InputStream in) throws IOException {
+			int length = 0;
+			int multiplier = 1;
+			int digit;
+			do {
+				digit = in.read();
+				length += (digit & 0x7f) * multiplier;
+				multiplier *= 128;
+			} while ((digit & 0x80) != 0);
+			return length;
+		}
+
+		int getPort() {
+			return server.getLocalPort();
+		}
+	}
+
+	private static DeviceClient stubClient(final int port) throws Exception {
+		DeviceConfigOptions options = new DeviceConfigOptions();
+		options.mqtt.port = 1883;
+		options.mqtt.version = AbstractConfig.MQTT_VERSION_5;
+		DeviceConfig config = new DeviceConfig(new DeviceConfigIdentity("myOrg", "Mqtt5TestType", "Mqtt5TestDev"),
+				new DeviceConfigAuth(), options) {
+			@Override
+			public String getMqttServerURI() {
+				return "tcp://localhost:" + port;
+			}
+		};
+		return new DeviceClient(config);
+	}
+
+	@Test
+	public void testConnectionOptions() throws Exception {
+		logTestStart("testConnectionOptions");
+		ApplicationConfigOptions options = new ApplicationConfigOptions();
+		options.mqtt.version = AbstractConfig.MQTT_VERSION_5;
+		options.mqtt.sessionExpiry = 3600;
+		options.mqtt.receiveMaximum = 10;
+		options.mqtt.topicAliasMaximum = 20;
+		options.mqtt.keepAlive = 30;
+		ApplicationConfig config = new ApplicationConfig(new ApplicationConfigIdentity("Mqtt5Test"),
+				new ApplicationConfigAuth("a-abcdef-ghijklmnop", "token"), options);
+
+		MqttConnectionOptions connectionOptions = Mqtt5AsyncClient.connectionOptions(config.getMqttConnectOptions(),
+				config);
+		assertEquals("a-abcdef-ghijklmnop", connectionOptions.getUserName());
+		assertEquals("token", new String(connectionOptions.getPassword(), StandardCharsets.UTF_8));
+		assertEquals(3600L, connectionOptions.getSessionExpiryInterval().longValue());
+		assertEquals(10, connectionOptions.getReceiveMaximum().intValue());
+		assertEquals(20, connectionOptions.getTopicAliasMaximum().intValue());
+		assertEquals(30, connectionOptions.getKeepAliveInterval());
+		// The client reconnects itself, with jitter
+		assertFalse(connectionOptions.isAutomaticReconnect());
+		assertNotNull(connectionOptions.getSocketFactory());
+	}
+
+	@Test
+	public void testTranslate() {
+		logTestStart("testTranslate");
+		MqttException e = Mqtt5AsyncClient.translate(new org.eclipse.paho.mqttv5.common.MqttException(0x86));
+		assertTrue(e instanceof MqttSecurityException);
+		assertEquals(MqttException.REASON_CODE_FAILED_AUTHENTICATION, e.getReasonCode());
+		e = Mqtt5AsyncClient.translate(new org.eclipse.paho.mqttv5.common.MqttException(0x87));
+		assertEquals(MqttException.REASON_CODE_NOT_AUTHORIZED, e.getReasonCode());
+		e = Mqtt5AsyncClient.translate(
+				new org.eclipse.paho.mqttv5.common.MqttException(MqttException.REASON_CODE_SERVER_CONNECT_ERROR));
+		assertFalse(e instanceof MqttSecurityException);
+		assertEquals(MqttException.REASON_CODE_SERVER_CONNECT_ERROR, e.getReasonCode());
+	}
+
+	@Test
+	public void testUnconnected() throws Exception {
+		logTestStart("testUnconnected");
+		DeviceConfigOptions options = new DeviceConfigOptions();
+		options.mqtt.version = AbstractConfig.MQTT_VERSION_5;
+		DeviceConfig config = new DeviceConfig(new DeviceConfigIdentity("myOrg", "Mqtt5TestType", "Mqtt5TestDev"),
+				new DeviceConfigAuth(), options);
+		Mqtt5AsyncClient client = new Mqtt5AsyncClient(config);
+		IMqttMessageListener listener = new IMqttMessageListener() {
+			@Override
+			public void messageArrived(String topic, MqttMessage message) {
+			}
+		};
+		try {
+			client.subscribe("iot-2/cmd/+/fmt/+", 1, listener);
+			fail("Subscribing without a connection should fail");
+		} catch (MqttException e) {
+			assertEquals(MqttException.REASON_CODE_CLIENT_NOT_CONNECTED, e.getReasonCode());
+		}
+		try {
+			client.removeMessage(null);
+			fail("Removing a message should fail");
+		} catch (MqttException e) {
+			assertEquals(MqttException.REASON_CODE_CLIENT_EXCEPTION, e.getReasonCode());
+		}
+		assertEquals(config.getClientId(), client.getClientId());
+		assertNotNull(client.getDebug());
+		client.close();
+	}
+
+	@Test
+	public void testRefusedLogin() throws Exception {
+		logTestStart("testRefusedLogin");
+		// CONNACK with reason code 0x86, bad user name or password
+		StubBroker broker = new StubBroker(new byte[] { 0x20, 3, 0, (byte) 0x86, 0 });
+		DeviceClient client = stubClient(broker.getPort());
+		client.setConnectBackoff(new ConnectBackoff(10, 50, 2, 5));
+		try {
+			client.connectAsync().get(20, TimeUnit.SECONDS);
+			fail("A refused login should fail");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof MqttSecurityException);
+		}
+		// Not retried
+		assertEquals(1, client.getConnectMetrics().getAttemptCount());
+		client.close();
+	}
+
+	@Test
+	public void testTopicAliases() throws Exception {
+		logTestStart("testTopicAliases");
+		// CONNACK allowing 10 topic aliases
+		StubBroker broker = new StubBroker(new byte[] { 0x20, 6, 0, 0, 3, 0x22, 0, 10 });
+		DeviceClient client = stubClient(broker.getPort());
+		client.registerCodec(new JsonCodec());
+		client.connect();
+		assertTrue(client.isConnected());
+
+		JsonObject data = new JsonObject();
+		data.addProperty("temperature", 21);
+		assertTrue(client.publishEvent("status", data, 0));
+		assertTrue(client.publishEvent("status", data, 0));
+
+		byte[] first = broker.published.poll(10, TimeUnit.SECONDS);
+		byte[] second = broker.published.poll(10, TimeUnit.SECONDS);
+		assertNotNull(first);
+		assertNotNull(second);
+		String topic = "iot-2/evt/status/fmt/json";
+		assertEquals(topic.length(), ((first[0] & 0xff) << 8) | (first[1] & 0xff));
+		// The second message carries the alias instead of the topic
+		assertEquals(0, ((second[0] & 0xff) << 8) | (second[1] & 0xff));
+		assertEquals(first.length - topic.length(), second.length);
+
+		client.disconnect();
+		client.close();
+	}
+}
@@ -0,0 +1,111 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import com.ibm.wiotp.sdk.MessageInterface;
+import com.ibm.wiotp.sdk.codecs.MessageCodec;
+import com.ibm.wiotp.sdk.codecs.PayloadBuffer;
+import com.ibm.wiotp.sdk.codecs.Utf8Codec;
+import com.ibm.wiotp.sdk.exceptions.MalformedMessageException;
+import com.ibm.wiotp.sdk.test.util.AbstractTest;
+
+public class PayloadBufferTest extends AbstractTest {
+
+	@Test
+	public void testPooling() throws Exception {
+		logTestStart("testPooling");
+		PayloadBuffer first = PayloadBuffer.acquire();
+		PayloadBuffer nested = PayloadBuffer.acquire();
+		assertNotSame(first, nested);
+		nested.release();
+		first.release();
+		assertSame(first, PayloadBuffer.acquire());
+		assertSame(nested, PayloadBuffer.acquire());
+		first.release();
+		nested.release();
+	}
+
+	@Test
+	public void testGrowth() throws Exception {
+		logTestStart("testGrowth");
+		PayloadBuffer buffer = PayloadBuffer.acquire();
+		try {
+			byte[] expected = new byte[100000];
+			for (int i = 0; i < expected.length; i++) {
+				expected[i] = (byte) i;
+				buffer.write(i);
+			}
+			assertEquals(expected.length, buffer.size());
+			assertArrayEquals(expected, buffer.toByteArray());
+
+			buffer.reset();
+			buffer.write(expected, 10, 5);
+			assertArrayEquals(Arrays.copyOfRange(expected, 10, 15), buffer.toByteArray());
+		} finally {
+			buffer.release();
+		}
+	}
+
+	@Test
+	public void testDefaultEncodeIsNotCopied() throws Exception {
+		logTestStart("testDefaultEncodeIsNotCopied");
+		final byte[] encoded = { 1, 2, 3 };
+		MessageCodec<String> codec = new MessageCodec<String>() {
+			public byte[] encode(String data, DateTime timestamp) {
+				return encoded;
+			}
+
+			public MessageInterface<String> decode(MqttMessage msg) throws MalformedMessageException {
+				return null;
+			}
+
+			public Class<String> getMessageClass() {
+				return String.class;
+			}
+
+			public String getMessageFormat() {
+				return "test";
+			}
+		};
+
+		PayloadBuffer buffer = PayloadBuffer.acquire();
+		try {
+			codec.encode("data", new DateTime(), buffer);
+			assertSame(encoded, buffer.toByteArray());
+
+			// Writing more copies the adopted payload rather than changing it
+			buffer.write(4);
+			assertArrayEquals(new byte[] { 1, 2, 3, 4 }, buffer.toByteArray());
+			assertArrayEquals(new byte[] { 1, 2, 3 }, encoded);
+		} finally {
+			buffer.release();
+		}
+
+		buffer = PayloadBuffer.acquire();
+		try {
+			new Utf8Codec().encode("héllo", new DateTime(), buffer);
+			assertEquals("héllo", new String(buffer.toByteArray(), "UTF-8"));
+		} finally {
+			buffer.release();
+		}
+	}
+}
@@ -0,0 +1,147 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.ibm.wiotp.sdk.app.ApplicationClient;
+import com.ibm.wiotp.sdk.app.callbacks.EventCallback;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfig;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigAuth;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigIdentity;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigOptions;
+import com.ibm.wiotp.sdk.app.messages.Event;
+import com.ibm.wiotp.sdk.codecs.CodecRegistry;
+import com.ibm.wiotp.sdk.codecs.JsonCodec;
+import com.ibm.wiotp.sdk.codecs.PojoCodec;
+import com.ibm.wiotp.sdk.exceptions.MalformedMessageException;
+import com.ibm.wiotp.sdk.test.util.AbstractTest;
+
+public class PojoCodecTest extends AbstractTest {
+
+	public static class Reading {
+		String sensor;
+		double value;
+		int[] samples;
+	}
+
+	public static class Status {
+		String state;
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		logTestStart("testRoundTrip");
+		PojoCodec<Reading> codec = new PojoCodec<Reading>(Reading.class);
+		assertEquals("json", codec.getMessageFormat());
+
+		Reading reading = new Reading();
+		reading.sensor = "température";
+		reading.value = 21.5;
+		reading.samples = new int[] { 1, 2, 3 };
+		byte[] payload = codec.encode(reading, new DateTime());
+		assertEquals("{\"sensor\":\"température\",\"value\":21.5,\"samples\":[1,2,3]}",
+				new String(payload, StandardCharsets.UTF_8));
+
+		Reading decoded = codec.decode(new MqttMessage(payload)).getData();
+		assertEquals(reading.sensor, decoded.sensor);
+		assertEquals(reading.value, decoded.value, 0);
+		assertEquals(3, decoded.samples[2]);
+	}
+
+	@Test
+	public void testMalformed() throws Exception {
+		logTestStart("testMalformed");
+		PojoCodec<Reading> codec = new PojoCodec<Reading>(Reading.class);
+		String[] payloads = { "{\"sensor\":", "{\"value\":\"warm\"}", "{} {}" };
+		for (String payload : payloads) {
+			try {
+				codec.decode(new MqttMessage(payload.getBytes(StandardCharsets.UTF_8)));
+				fail("Decoding " + payload + " should fail");
+			} catch (MalformedMessageException e) {
+				// Expected
+			}
+		}
+	}
+
+	@Test
+	public void testRegistrySharesFormat() throws Exception {
+		logTestStart("testRegistrySharesFormat");
+		CodecRegistry registry = new CodecRegistry();
+		JsonCodec json = new JsonCodec();
+		PojoCodec<Reading> readings = new PojoCodec<Reading>(Reading.class);
+		registry.register(json);
+		registry.register(readings);
+		registry.register(new PojoCodec<Status>(Status.class));
+		assertEquals(3, registry.getCodecs("json").size());
+		assertSame(readings, registry.getCodec("json", Reading.class));
+		assertSame(json, registry.getCodec(JsonObject.class));
+
+		// Replacing the codec for a class keeps the others for the format
+		PojoCodec<Reading> replacement = new PojoCodec<Reading>(Reading.class);
+		registry.register(replacement);
+		assertEquals(3, registry.getCodecs("json").size());
+		assertSame(replacement, registry.getCodec("json", Reading.class));
+		assertEquals(3, registry.getCodecs("json-deflate").size());
+		assertNull(registry.getCodec("cbor", Reading.class));
+	}
+
+	@Test
+	public void testTypedCallbacks() throws Exception {
+		logTestStart("testTypedCallbacks");
+		ApplicationConfig config = new ApplicationConfig(new ApplicationConfigIdentity("pojoTest"),
+				new ApplicationConfigAuth("a-myOrg-pojo", "token"), new ApplicationConfigOptions());
+		ApplicationClient app = new ApplicationClient(config);
+		try {
+			app.registerCodec(new JsonCodec());
+			app.registerCodec(new PojoCodec<Reading>(Reading.class));
+			final AtomicReference<JsonObject> tree = new AtomicReference<JsonObject>();
+			final AtomicReference<Reading> typed = new AtomicReference<Reading>();
+			app.registerEventCallback(new EventCallback<JsonObject>() {
+				public void processEvent(Event<JsonObject> evt) {
+					tree.set(evt.getData());
+				}
+
+				public Class<JsonObject> getMessageClass() {
+					return JsonObject.class;
+				}
+			});
+			app.registerEventCallback(new EventCallback<Reading>() {
+				public void processEvent(Event<Reading> evt) {
+					typed.set(evt.getData());
+				}
+
+				public Class<Reading> getMessageClass() {
+					return Reading.class;
+				}
+			});
+
+			byte[] payload = "{\"sensor\":\"s1\",\"value\":4.25}".getBytes(StandardCharsets.UTF_8);
+			app.messageArrived("iot-2/type/t/id/d/evt/reading/fmt/json", new MqttMessage(payload));
+			assertEquals("s1", tree.get().get("sensor").getAsString());
+			assertEquals("s1", typed.get().sensor);
+			assertEquals(4.25, typed.get().value, 0);
+		} finally {
+			app.close();
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.ibm.wiotp.sdk.app.PooledApplicationClient;
+import com.ibm.wiotp.sdk.app.PooledApplicationClient.ConnectionStatistics;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfig;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigAuth;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigIdentity;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigOptions;
+import com.ibm.wiotp.sdk.codecs.JsonCodec;
+import com.ibm.wiotp.sdk.test.util.AbstractTest;
+
+public class PooledApplicationClientTest extends AbstractTest {
+
+	private static PooledApplicationClient createPool(int connections) throws Exception {
+		ApplicationConfigOptions options = new ApplicationConfigOptions();
+		options.mqtt.port = 1883;
+		ApplicationConfig config = new ApplicationConfig(new ApplicationConfigIdentity("PoolTest"),
+				new ApplicationConfigAuth(), options);
+		return new PooledApplicationClient(config, connections);
+	}
+
+	@Test
+	public void testDistinctClientIds() throws Exception {
+		logTestStart("testDistinctClientIds");
+		PooledApplicationClient pool = createPool(3);
+		try {
+			assertEquals(3, pool.getConnectionCount());
+			Set<String> clientIds = new HashSet<String>();
+			for (int i = 0; i < pool.getConnectionCount(); i++) {
+				clientIds.add(pool.getConnection(i).getConfig().getClientId());
+			}
+			assertEquals(3, clientIds.size());
+			assertTrue(clientIds.contains("a:quickstart:PoolTest-0"));
+			assertFalse(pool.isConnected());
+		} finally {
+			pool.close();
+		}
+	}
+
+	@Test
+	public void testShardByDevice() throws Exception {
+		logTestStart("testShardByDevice");
+		PooledApplicationClient pool = createPool(4);
+		try {
+			// The same device always maps to the same connection
+			assertSame(pool.connectionFor("sensor", "dev1"), pool.connectionFor("sensor", "dev1"));
+
+			// And many devices are spread across all connections
+			int[] counts = new int[pool.getConnectionCount()];
+			for (int i = 0; i < 1000; i++) {
+				counts[pool.connectionIndexFor("sensor", "dev" + i)]++;
+			}
+			for (int count : counts) {
+				assertTrue("Uneven spread " + count, count > 150 && count < 350);
+			}
+		} finally {
+			pool.close();
+		}
+	}
+
+	@Test
+	public void testStatistics() throws Exception {
+		logTestStart("testStatistics");
+		PooledApplicationClient pool = createPool(2);
+		try {
+			pool.registerCodec(new JsonCodec());
+			JsonObject data = new JsonObject();
+			data.addProperty("value", 1);
+			int index = pool.connectionIndexFor("sensor", "dev1");
+			for (int i = 0; i < 5; i++) {
+				assertTrue(pool.publishEvent("sensor", "dev1", "reading", data));
+			}
+
+			List<ConnectionStatistics> statistics = pool.getStatistics();
+			assertEquals(2, statistics.size());
+			assertEquals(5, statistics.get(index).getSentCount());
+			assertEquals(0, statistics.get(1 - index).getSentCount());
+			assertEquals(pool.getConnection(index).getConfig().getClientId(), statistics.get(index).getClientId());
+			assertFalse(statistics.get(index).isConnected());
+		} finally {
+			pool.close();
+		}
+	}
+}
@@ -0,0 +1,215 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.ibm.wiotp.sdk.AbstractClient;
+import com.ibm.wiotp.sdk.app.ApplicationClient;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfig;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigAuth;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigIdentity;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigOptions;
+import com.ibm.wiotp.sdk.codecs.JsonCodec;
+import com.ibm.wiotp.sdk.codecs.Utf8Codec;
+import com.ibm.wiotp.sdk.device.DeviceClient;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigAuth;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigIdentity;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigOptions;
+import com.ibm.wiotp.sdk.gateway.GatewayClient;
+import com.ibm.wiotp.sdk.gateway.config.GatewayConfig;
+import com.ibm.wiotp.sdk.test.util.AbstractTest;
+import com.ibm.wiotp.sdk.test.util.StubBroker;
+import com.ibm.wiotp.sdk.test.util.StubBroker.Published;
+
+/**
+ * The publish*Async methods of each client, against a local broker
+ */
+public class PublishAsyncTest extends AbstractTest {
+
+	private StubBroker broker;
+	private AbstractClient client;
+
+	@After
+	public void cleanup() throws Exception {
+		if (client != null) {
+			if (client.isConnected()) {
+				client.disconnect();
+			}
+			client.close();
+		}
+		if (broker != null) {
+			broker.close();
+		}
+	}
+
+	private DeviceClient deviceClient() throws Exception {
+		broker = new StubBroker();
+		DeviceClient deviceClient = new DeviceClient(broker
+				.deviceConfig(new DeviceConfigIdentity("myOrg", "AsyncType", "AsyncDev"), new DeviceConfigOptions()));
+		client = deviceClient;
+		return deviceClient;
+	}
+
+	private GatewayClient gatewayClient() throws Exception {
+		broker = new StubBroker();
+		DeviceConfigOptions options = new DeviceConfigOptions();
+		options.mqtt.port = 1883;
+		GatewayConfig config = new GatewayConfig(new DeviceConfigIdentity("myOrg", "AsyncGwType", "AsyncGw"),
+				new DeviceConfigAuth(), options) {
+			@Override
+			public String getMqttServerURI() {
+				return broker.getServerURI();
+			}
+		};
+		GatewayClient gatewayClient = new GatewayClient(config);
+		client = gatewayClient;
+		return gatewayClient;
+	}
+
+	private ApplicationClient applicationClient() throws Exception {
+		broker = new StubBroker();
+		ApplicationConfig config = new ApplicationConfig(new ApplicationConfigIdentity("AsyncApp"),
+				new ApplicationConfigAuth("a-myOrg-async", "token"), new ApplicationConfigOptions()) {
+			@Override
+			public String getMqttServerURI() {
+				return broker.getServerURI();
+			}
+
+			@Override
+			public MqttConnectOptions getMqttConnectOptions() throws NoSuchAlgorithmException, KeyManagementException {
+				MqttConnectOptions options = super.getMqttConnectOptions();
+				// The broker does not use TLS
+				options.setSocketFactory(null);
+				return options;
+			}
+		};
+		ApplicationClient applicationClient = new ApplicationClient(config);
+		client = applicationClient;
+		return applicationClient;
+	}
+
+	private static Throwable failure(CompletableFuture<IMqttDeliveryToken> future) throws Exception {
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail("The publish should have failed");
+			return null;
+		} catch (ExecutionException e) {
+			return e.getCause();
+		}
+	}
+
+	private Published delivered(CompletableFuture<IMqttDeliveryToken> future) throws Exception {
+		IMqttDeliveryToken token = future.get(5, TimeUnit.SECONDS);
+		assertNotNull(token);
+		assertTrue(token.isComplete());
+		Published published = broker.nextPublished(5000);
+		assertNotNull(published);
+		return published;
+	}
+
+	@Test
+	public void testDeviceEvent() throws Exception {
+		logTestStart("testDeviceEvent");
+		DeviceClient device = deviceClient();
+		device.registerCodec(new JsonCodec());
+		device.registerCodec(new Utf8Codec());
+		device.connect();
+
+		JsonObject data = new JsonObject();
+		data.addProperty("temp", 21);
+		Published published = delivered(device.publishEventAsync("status", data, 1));
+		assertEquals("iot-2/evt/status/fmt/json", published.topic);
+		assertEquals(1, published.qos);
+		assertTrue(published.getPayloadString().contains("\"temp\":21"));
+
+		published = delivered(device.publishEventAsync("note", "hello"));
+		assertEquals("iot-2/evt/note/fmt/utf8", published.topic);
+		assertEquals(0, published.qos);
+		assertEquals("hello", published.getPayloadString());
+
+		assertTrue(failure(device.publishEventAsync("status", 42)) instanceof IllegalArgumentException);
+
+		device.disconnect();
+		device.close();
+		client = null;
+		assertTrue(failure(device.publishEventAsync("status", data, 1)) instanceof MqttException);
+	}
+
+	@Test
+	public void testGatewayDeviceEvent() throws Exception {
+		logTestStart("testGatewayDeviceEvent");
+		GatewayClient gateway = gatewayClient();
+		gateway.registerCodec(new Utf8Codec());
+		gateway.connect();
+
+		Published published = delivered(
+				gateway.publishDeviceEventAsync("AttachedType", "attached1", "note", "hello", 1));
+		// The format is that of the codec, not always JSON
+		assertEquals("iot-2/type/AttachedType/id/attached1/evt/note/fmt/utf8", published.topic);
+		assertEquals("hello", published.getPayloadString());
+
+		assertTrue(failure(gateway.publishDeviceEventAsync("AttachedType", "attached1", "note", new JsonObject(),
+				1)) instanceof IllegalArgumentException);
+
+		gateway.disconnect();
+		gateway.close();
+		client = null;
+		assertTrue(failure(gateway.publishDeviceEventAsync("AttachedType", "attached1", "note", "hello",
+				1)) instanceof MqttException);
+	}
+
+	@Test
+	public void testApplication() throws Exception {
+		logTestStart("testApplication");
+		ApplicationClient app = applicationClient();
+		app.registerCodec(new JsonCodec());
+		app.connect();
+
+		Published published = delivered(app.publishEventAsync("AppType", "appDev", "status", new JsonObject(), 1));
+		assertEquals("iot-2/type/AppType/id/appDev/evt/status/fmt/json", published.topic);
+		published = delivered(app.publishCommandAsync("AppType", "appDev", "reboot", new JsonObject()));
+		assertEquals("iot-2/type/AppType/id/appDev/cmd/reboot/fmt/json", published.topic);
+		// Commands default to QoS 1
+		assertEquals(1, published.qos);
+
+		assertTrue(failure(
+				app.publishEventAsync("AppType", "appDev", "status", "text")) instanceof IllegalArgumentException);
+		assertTrue(failure(
+				app.publishCommandAsync("AppType", "appDev", "reboot", "text")) instanceof IllegalArgumentException);
+
+		app.disconnect();
+		app.close();
+		client = null;
+		assertTrue(failure(
+				app.publishEventAsync("AppType", "appDev", "status", new JsonObject())) instanceof MqttException);
+		assertTrue(failure(
+				app.publishCommandAsync("AppType", "appDev", "reboot", new JsonObject())) instanceof MqttException);
+		assertNull(broker.nextPublished(100));
+	}
+}
@@ -0,0 +1,179 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import com.ibm.wiotp.sdk.app.ApplicationClient;
+import com.ibm.wiotp.sdk.app.callbacks.StatusCallback;
+import com.ibm.wiotp.sdk.app.callbacks.StatusViewCallback;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfig;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigAuth;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigIdentity;
+import com.ibm.wiotp.sdk.app.config.ApplicationConfigOptions;
+import com.ibm.wiotp.sdk.app.messages.ApplicationStatus;
+import com.ibm.wiotp.sdk.app.messages.DeviceStatus;
+import com.ibm.wiotp.sdk.app.messages.StatusView;
+import com.ibm.wiotp.sdk.exceptions.MalformedMessageException;
+import com.ibm.wiotp.sdk.test.util.AbstractTest;
+
+public class StatusTest extends AbstractTest {
+
+	private static final String CONNECT = "{\"ClientAddr\":\"195.212.29.68\",\"Protocol\":\"mqtt4-tcp\","
+			+ "\"ClientID\":\"d:bcaxk:psutil:001\",\"User\":\"use-token-auth\","
+			+ "\"Time\":\"2014-07-07T06:37:56.494-04:00\",\"Action\":\"Connect\","
+			+ "\"ConnectTime\":\"2014-07-07T06:37:56.493-04:00\",\"Port\":1883}";
+
+	private static final String DISCONNECT = "{ \"ClientAddr\": \"195.212.29.68\", \"Protocol\": \"mqtt4-tcp\",\n"
+			+ " \"ClientID\": \"d:bcaxk:psutil:001\", \"User\": \"use-token-auth\",\n"
+			+ " \"Time\": \"2014-07-07T06:38:11.036-04:00\", \"Action\": \"Disconnect\",\n"
+			+ " \"ConnectTime\": \"2014-07-07T06:37:56.493-04:00\", \"Port\": 1883, \"WriteMsg\": 0,\n"
+			+ " \"ReadMsg\": 872, \"Reason\": \"The connection has \\\"completed\\\" normally.\\u00e9\",\n"
+			+ " \"Extra\": {\"nested\": [1, \"}\", {\"a\": null}]}, \"ReadBytes\": 136507, \"WriteBytes\": 3.2e1 }";
+
+	private static MqttMessage message(String payload) {
+		return new MqttMessage(payload.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testConnect() throws Exception {
+		logTestStart("testConnect");
+		DeviceStatus status = new DeviceStatus("psutil", "001", message(CONNECT));
+		assertEquals("195.212.29.68", status.getClientAddr());
+		assertEquals("mqtt4-tcp", status.getProtocol());
+		assertEquals("d:bcaxk:psutil:001", status.getClientId());
+		assertEquals("Connect", status.getAction());
+		assertEquals(1883, status.getPort());
+		assertEquals(new DateTime("2014-07-07T06:37:56.494-04:00").getMillis(), status.getTime().getMillis());
+		assertSame(status.getTime(), status.getTime());
+		// Only reported on disconnect
+		assertNull(status.getUser());
+		assertNull(status.getConnectTime());
+		assertNull(status.getReason());
+		assertEquals(0, status.getReadMsg());
+		assertEquals(CONNECT, status.getPayload());
+	}
+
+	@Test
+	public void testDisconnect() throws Exception {
+		logTestStart("testDisconnect");
+		StatusView view = new StatusView().wrapDevice("psutil", "001", DISCONNECT.getBytes(StandardCharsets.UTF_8));
+		assertTrue(view.isDisconnect());
+		assertEquals("psutil", view.getTypeId());
+		assertEquals("001", view.getDeviceId());
+		assertEquals("use-token-auth", view.getUser());
+		assertEquals("2014-07-07T06:37:56.493-04:00", view.getConnectTime());
+		assertEquals("The connection has \"completed\" normally.é", view.getReason());
+		assertEquals(0, view.getWriteMsg());
+		assertEquals(872, view.getReadMsg());
+		assertEquals(136507, view.getReadBytes());
+		assertEquals(32, view.getWriteBytes());
+
+		DeviceStatus status = new DeviceStatus(view);
+		assertEquals("psutil", status.getDeviceType());
+		assertEquals(view.getReason(), status.getReason());
+		assertEquals(view.getTime(), status.getTime());
+
+		// The view moves on, the copy does not
+		view.wrap(CONNECT.getBytes(StandardCharsets.UTF_8));
+		assertFalse(view.isDisconnect());
+		assertNull(view.getReason());
+		assertNull(view.getDeviceId());
+		assertEquals("Disconnect", status.getAction());
+		assertEquals(872, status.getReadMsg());
+	}
+
+	@Test
+	public void testMissingProperties() throws Exception {
+		logTestStart("testMissingProperties");
+		long before = System.currentTimeMillis();
+		ApplicationStatus status = new ApplicationStatus("app1",
+				message("{\"Action\":\"Disconnect\",\"ClientID\":null}"));
+		assertEquals("", status.getClientId());
+		assertEquals("", status.getProtocol());
+		assertEquals("", status.getReason());
+		assertEquals(0, status.getPort());
+		assertTrue(status.getTime().getMillis() >= before);
+		assertEquals("app1", status.getId());
+	}
+
+	@Test
+	public void testMalformed() throws Exception {
+		logTestStart("testMalformed");
+		String[] payloads = { "", "[]", "{\"Action\":\"Connect\"", "{\"Action\" \"Connect\"}",
+				"{\"Action\":\"Connect\"} x", "{\"Port\":\"http\"}" };
+		for (String payload : payloads) {
+			try {
+				new DeviceStatus("t", "d", message(payload)).getPort();
+				fail("Parsing " + payload + " should fail");
+			} catch (MalformedMessageException e) {
+				// Expected
+			}
+		}
+	}
+
+	@Test
+	public void testApplicationCallbacks() throws Exception {
+		logTestStart("testApplicationCallbacks");
+		ApplicationConfig config = new ApplicationConfig(new ApplicationConfigIdentity("statusTest"),
+				new ApplicationConfigAuth("a-myOrg-status", "token"), new ApplicationConfigOptions());
+		ApplicationClient app = new ApplicationClient(config);
+		try {
+			final List<String> received = new ArrayList<String>();
+			app.setStatusViewCallback(new StatusViewCallback() {
+				public void processApplicationStatus(StatusView status) {
+					received.add("view " + status.getAppId() + " " + status.getAction());
+				}
+
+				public void processDeviceStatus(StatusView status) {
+					received.add("view " + status.getDeviceId() + " " + status.getAction());
+				}
+			});
+			app.messageArrived("iot-2/type/psutil/id/001/mon", message(CONNECT));
+			app.messageArrived("iot-2/app/app1/mon", message(DISCONNECT));
+			// Malformed statuses are logged, not thrown, so the connection survives
+			app.messageArrived("iot-2/type/psutil/id/002/mon", message("{"));
+
+			app.setStatusCallback(new StatusCallback() {
+				public void processApplicationStatus(ApplicationStatus status) {
+					received.add("status " + status.getId() + " " + status.getAction());
+				}
+
+				public void processDeviceStatus(DeviceStatus status) {
+					received.add("status " + status.getDeviceId() + " " + status.getAction());
+				}
+			});
+			app.messageArrived("iot-2/type/psutil/id/003/mon", message(DISCONNECT));
+
+			List<String> expected = new ArrayList<String>();
+			expected.add("view 001 Connect");
+			expected.add("view app1 Disconnect");
+			expected.add("status 003 Disconnect");
+			expected.add("view 003 Disconnect");
+			assertEquals(expected, received);
+		} finally {
+			app.close();
+		}
+	}
+}
@@ -0,0 +1,197 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.ibm.wiotp.sdk.app.StripedDispatcher;
+import com.ibm.wiotp.sdk.test.util.AbstractTest;
+
+public class StripedDispatcherTest extends AbstractTest {
+
+	private StripedDispatcher dispatcher;
+
+	@After
+	public void shutdownDispatcher() throws Exception {
+		if (dispatcher != null) {
+			dispatcher.shutdown(5, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	public void testOrdering() throws Exception {
+		logTestStart("testOrdering");
+		dispatcher = new StripedDispatcher(4, 100);
+		final List<Integer> processed = Collections.synchronizedList(new ArrayList<Integer>());
+		List<Integer> expected = new ArrayList<Integer>();
+		for (int i = 0; i < 1000; i++) {
+			final int sequence = i;
+			expected.add(i);
+			dispatcher.dispatch("OrderType", "OrderDev", new Runnable() {
+				@Override
+				public void run() {
+					processed.add(sequence);
+				}
+			});
+		}
+		assertTrue(dispatcher.shutdown(5, TimeUnit.SECONDS));
+		assertEquals(expected, processed);
+	}
+
+	@Test
+	public void testParallel() throws Exception {
+		logTestStart("testParallel");
+		dispatcher = new StripedDispatcher(4, 100);
+		String other = null;
+		for (int i = 0; other == null; i++) {
+			if (dispatcher.stripeFor("ParallelType", "dev" + i) != dispatcher.stripeFor("ParallelType", "dev")) {
+				other = "dev" + i;
+			}
+		}
+		assertNotEquals(dispatcher.stripeFor("ParallelType", "dev"), dispatcher.stripeFor("ParallelType", other));
+
+		// Both tasks must be running at the same time to pass the barrier
+		final CyclicBarrier barrier = new CyclicBarrier(2);
+		final AtomicInteger passed = new AtomicInteger();
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					barrier.await(5, TimeUnit.SECONDS);
+					passed.incrementAndGet();
+				} catch (Exception e) {
+					// Counted as not passed
+				}
+			}
+		};
+		dispatcher.dispatch("ParallelType", "dev", task);
+		dispatcher.dispatch("ParallelType", other, task);
+		assertTrue(dispatcher.shutdown(10, TimeUnit.SECONDS));
+		assertEquals(2, passed.get());
+	}
+
+	@Test
+	public void testBlockWhenFull() throws Exception {
+		logTestStart("testBlockWhenFull");
+		dispatcher = new StripedDispatcher(1, 2);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch started = new CountDownLatch(1);
+		final AtomicInteger completed = new AtomicInteger();
+		final Runnable count = new Runnable() {
+			@Override
+			public void run() {
+				completed.incrementAndGet();
+			}
+		};
+		dispatcher.dispatch("FullType", "FullDev", new Runnable() {
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		dispatcher.dispatch("FullType", "FullDev", count);
+		dispatcher.dispatch("FullType", "FullDev", count);
+		assertEquals(2, dispatcher.getQueueDepth(0));
+
+		Thread submitter = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				dispatcher.dispatch("FullType", "FullDev", count);
+			}
+		});
+		submitter.start();
+		submitter.join(200);
+		assertTrue("Dispatch into a full stripe should block", submitter.isAlive());
+
+		release.countDown();
+		submitter.join(5000);
+		assertFalse(submitter.isAlive());
+		assertTrue(dispatcher.shutdown(5, TimeUnit.SECONDS));
+		assertEquals(3, completed.get());
+	}
+
+	@Test
+	public void testThrowingCallback() throws Exception {
+		logTestStart("testThrowingCallback");
+		dispatcher = new StripedDispatcher(1, 10);
+		final CountDownLatch after = new CountDownLatch(1);
+		dispatcher.dispatch("ThrowType", "ThrowDev", new Runnable() {
+			@Override
+			public void run() {
+				throw new IllegalStateException("Callback failure");
+			}
+		});
+		dispatcher.dispatch("ThrowType", "ThrowDev", new Runnable() {
+			@Override
+			public void run() {
+				after.countDown();
+			}
+		});
+		assertTrue("The stripe should survive a throwing callback", after.await(5, TimeUnit.SECONDS));
+		assertTrue(dispatcher.shutdown(5, TimeUnit.SECONDS));
+		assertEquals(2, dispatcher.getCompletedCount());
+	}
+
+	@Test
+	public void testShutdownDrains() throws Exception {
+		logTestStart("testShutdownDrains");
+		dispatcher = new StripedDispatcher(2, 100);
+		final AtomicInteger completed = new AtomicInteger();
+		for (int i = 0; i < 50; i++) {
+			dispatcher.dispatch("DrainType", "dev" + (i % 5), new Runnable() {
+				@Override
+				public void run() {
+					try {
+						Thread.sleep(2);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					completed.incrementAndGet();
+				}
+			});
+		}
+		assertTrue(dispatcher.shutdown(10, TimeUnit.SECONDS));
+		assertEquals(50, completed.get());
+
+		try {
+			dispatcher.dispatch("DrainType", "dev0", new Runnable() {
+				@Override
+				public void run() {
+				}
+			});
+			fail("Dispatch after shutdown should be rejected");
+		} catch (RejectedExecutionException e) {
+			// Expected
+		}
+	}
+}
@@ -0,0 +1,177 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.ibm.wiotp.sdk.test.util.AbstractTest;
+import com.ibm.wiotp.sdk.util.SubscriptionRegistry;
+import com.ibm.wiotp.sdk.util.SubscriptionRegistry.Change;
+
+public class SubscriptionRegistryTest extends AbstractTest {
+
+	private static final String ALL_EVENTS = "iot-2/type/+/id/+/evt/+/fmt/+";
+	private static final String PUMP_JSON = "iot-2/type/pump/id/+/evt/+/fmt/json";
+	private static final String P1_ALARMS = "iot-2/type/pump/id/p1/evt/alarm/fmt/json";
+
+	@Test
+	public void testCovers() {
+		logTestStart("testCovers");
+		assertTrue(SubscriptionRegistry.covers(ALL_EVENTS, PUMP_JSON));
+		assertTrue(SubscriptionRegistry.covers(PUMP_JSON, P1_ALARMS));
+		assertTrue(SubscriptionRegistry.covers(PUMP_JSON, PUMP_JSON));
+		assertFalse(SubscriptionRegistry.covers(PUMP_JSON, ALL_EVENTS));
+		assertTrue(SubscriptionRegistry.covers("iot-2/type/pump/#", P1_ALARMS));
+		assertTrue(SubscriptionRegistry.covers("iot-2/type/pump/#", "iot-2/type/pump"));
+		assertTrue(SubscriptionRegistry.covers("#", "iot-2/type/pump/#"));
+		assertFalse(SubscriptionRegistry.covers("iot-2/type/+/#", "iot-2/type/#"));
+		assertFalse(SubscriptionRegistry.covers("iot-2/type/+", "iot-2/type/+/id"));
+		assertFalse(SubscriptionRegistry.covers("iot-2/type/+/id", "iot-2/type"));
+	}
+
+	@Test
+	public void testMinimalSet() {
+		logTestStart("testMinimalSet");
+		SubscriptionRegistry registry = new SubscriptionRegistry();
+		assertEquals(Collections.singletonMap(P1_ALARMS, 0), registry.add(P1_ALARMS, 0).getSubscribe());
+
+		// A broader filter replaces the narrower one on the server
+		Change change = registry.add(PUMP_JSON, 0);
+		assertEquals(Collections.singletonMap(PUMP_JSON, 0), change.getSubscribe());
+		assertEquals(Arrays.asList(P1_ALARMS), change.getUnsubscribe());
+
+		// A covered filter is only registered
+		assertTrue(registry.add("iot-2/type/pump/id/p2/evt/+/fmt/json", 0).isEmpty());
+		assertEquals(Collections.singletonMap(PUMP_JSON, 0), registry.getActive());
+		assertEquals(3, registry.size());
+
+		// Removing the broad filter brings back the ones it covered
+		change = registry.remove(PUMP_JSON);
+		assertEquals(Arrays.asList(PUMP_JSON), change.getUnsubscribe());
+		assertEquals(2, change.getSubscribe().size());
+		assertTrue(change.getSubscribe().containsKey(P1_ALARMS));
+		assertEquals(2, registry.getActive().size());
+
+		// Removing a covered filter needs nothing from the server
+		registry.add(ALL_EVENTS, 0);
+		assertTrue(registry.remove(P1_ALARMS).isEmpty());
+		assertEquals(Collections.singletonMap(ALL_EVENTS, 0), registry.getActive());
+	}
+
+	@Test
+	public void testQos() {
+		logTestStart("testQos");
+		SubscriptionRegistry registry = new SubscriptionRegistry();
+		registry.add(ALL_EVENTS, 0);
+		// A broader filter at a lower QoS does not cover a narrower one
+		assertEquals(Collections.singletonMap(P1_ALARMS, 1), registry.add(P1_ALARMS, 1).getSubscribe());
+		assertEquals(2, registry.getActive().size());
+
+		// Raising the broad filter's QoS covers it again
+		Change change = registry.add(ALL_EVENTS, 1);
+		assertEquals(Collections.singletonMap(ALL_EVENTS, 1), change.getSubscribe());
+		assertEquals(Arrays.asList(P1_ALARMS), change.getUnsubscribe());
+	}
+
+	@Test
+	public void testAddAll() {
+		logTestStart("testAddAll");
+		SubscriptionRegistry registry = new SubscriptionRegistry();
+		Map<String, Integer> filters = new LinkedHashMap<String, Integer>();
+		filters.put(P1_ALARMS, 0);
+		filters.put(PUMP_JSON, 0);
+		filters.put("iot-2/type/valve/id/v1/mon", 0);
+
+		// Filters covered within the same change are never sent
+		Change change = registry.addAll(filters);
+		assertEquals(2, change.getSubscribe().size());
+		assertTrue(change.getSubscribe().containsKey(PUMP_JSON));
+		assertTrue(change.getUnsubscribe().isEmpty());
+	}
+
+	@Test
+	public void testRollBack() {
+		logTestStart("testRollBack");
+		String valve = "iot-2/type/valve/id/v1/evt/+/fmt/json";
+		SubscriptionRegistry registry = new SubscriptionRegistry();
+		registry.add(P1_ALARMS, 0);
+		Map<String, Integer> filters = new LinkedHashMap<String, Integer>();
+		filters.put(ALL_EVENTS, 0);
+		filters.put(valve, 0);
+		Change change = registry.addAll(filters);
+		assertEquals(Collections.singletonMap(ALL_EVENTS, 0), change.getSubscribe());
+		assertEquals(Arrays.asList(P1_ALARMS), change.getUnsubscribe());
+
+		// The server refused the broad filter, so the alarms stay subscribed to and
+		// the valve filter has to be subscribed to after all
+		Change remaining = registry.rollBack(change, Arrays.asList(ALL_EVENTS));
+		assertEquals(Collections.singletonMap(valve, 0), remaining.getSubscribe());
+		assertTrue(remaining.getUnsubscribe().isEmpty());
+		assertEquals(2, registry.getActive().size());
+		assertTrue(registry.getActive().containsKey(P1_ALARMS));
+		assertFalse(registry.getFilters().containsKey(ALL_EVENTS));
+		assertFalse(registry.matches("iot-2/type/fan/id/f1/evt/status/fmt/json"));
+	}
+
+	@Test
+	public void testMatches() {
+		logTestStart("testMatches");
+		SubscriptionRegistry registry = new SubscriptionRegistry();
+		registry.add(PUMP_JSON, 0);
+		registry.add("iot-2/type/valve/#", 0);
+		assertTrue(registry.matches(P1_ALARMS));
+		assertTrue(registry.matches("iot-2/type/valve/id/v1/mon"));
+		assertFalse(registry.matches("iot-2/type/pump/id/p1/evt/alarm/fmt/cbor"));
+
+		registry.remove(PUMP_JSON);
+		assertFalse(registry.matches(P1_ALARMS));
+	}
+
+	@Test
+	public void testRemoved() {
+		logTestStart("testRemoved");
+		String fan = "iot-2/type/fan/id/f1/evt/status/fmt/json";
+		SubscriptionRegistry registry = new SubscriptionRegistry();
+		registry.add(PUMP_JSON, 0);
+		registry.add("iot-2/type/valve/#", 0);
+		Change change = registry.remove(PUMP_JSON);
+		assertEquals(Arrays.asList(PUMP_JSON), change.getUnsubscribe());
+		assertTrue(registry.isRemoved(P1_ALARMS));
+		assertFalse(registry.isRemoved("iot-2/type/valve/id/v1/mon"));
+		// Subscribed to by other means, such as a durable session
+		assertFalse(registry.isRemoved(fan));
+
+		// Once the server has acknowledged the unsubscribe nothing more arrives for it
+		registry.unsubscribed(change.getUnsubscribe());
+		assertFalse(registry.isRemoved(P1_ALARMS));
+
+		// A filter a broader one replaces is still registered
+		registry.add(P1_ALARMS, 0);
+		change = registry.add(ALL_EVENTS, 0);
+		assertEquals(Arrays.asList(P1_ALARMS), change.getUnsubscribe());
+		assertFalse(registry.isRemoved(P1_ALARMS));
+
+		change = registry.removeAll(Arrays.asList(ALL_EVENTS, P1_ALARMS));
+		assertEquals(Arrays.asList(ALL_EVENTS), change.getUnsubscribe());
+		assertTrue(registry.isRemoved(fan));
+		registry.unsubscribed(change.getUnsubscribe());
+		assertFalse(registry.isRemoved(fan));
+	}
+}
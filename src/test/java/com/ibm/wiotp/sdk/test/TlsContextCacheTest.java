@@ -0,0 +1,175 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.security.KeyManagementException;
+import java.security.KeyStore;
+import java.util.Arrays;
+
+import javax.net.SocketFactory;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.ibm.wiotp.sdk.TlsContextCache;
+import com.ibm.wiotp.sdk.device.config.DeviceConfig;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigAuth;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigIdentity;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigOptions;
+import com.ibm.wiotp.sdk.test.util.AbstractTest;
+
+public class TlsContextCacheTest extends AbstractTest {
+
+	private static final char[] PASSWORD = "password".toCharArray();
+
+	/**
+	 * A TLS server with a self-signed certificate for localhost, which completes
+	 * the handshake of every connection and then closes it
+	 */
+	public static class TlsServer implements Runnable {
+		private final SSLServerSocket server;
+
+		public TlsServer() throws Exception {
+			KeyStore keyStore = KeyStore.getInstance("PKCS12");
+			try (InputStream in = TlsContextCacheTest.class.getResourceAsStream("/tls/broker.p12")) {
+				keyStore.load(in, PASSWORD);
+			}
+			KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+			keyManagers.init(keyStore, PASSWORD);
+			SSLContext context = SSLContext.getInstance("TLS");
+			context.init(keyManagers.getKeyManagers(), null, null);
+			server = (SSLServerSocket) context.getServerSocketFactory().createServerSocket(0);
+			Thread thread = new Thread(this, "tls-server");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		@Override
+		public void run() {
+			while (!server.isClosed()) {
+				try (SSLSocket socket = (SSLSocket) server.accept()) {
+					socket.startHandshake();
+					// Wait for the client to close
+					socket.getInputStream().read();
+				} catch (Exception e) {
+					// A failed handshake, or the server was closed
+				}
+			}
+		}
+
+		public int getPort() {
+			return server.getLocalPort();
+		}
+
+		public void close() throws Exception {
+			server.close();
+		}
+	}
+
+	/**
+	 * Connect the way the MQTT client does, layering TLS over a connected socket
+	 *
+	 * @param factory The TLS socket factory
+	 * @param port    The port of the server on localhost
+	 * @return The id of the TLS session
+	 * @throws Exception Failure in connecting
+	 */
+	public static byte[] handshake(SocketFactory factory, int port) throws Exception {
+		Socket plain = new Socket();
+		plain.connect(new InetSocketAddress("localhost", port), 5000);
+		try (SSLSocket socket = (SSLSocket) ((SSLSocketFactory) factory).createSocket(plain, "localhost", port,
+				true)) {
+			socket.startHandshake();
+			return socket.getSession().getId();
+		}
+	}
+
+	public static String caFile() {
+		return new File(TlsContextCacheTest.class.getResource("/tls/broker.pem").getFile()).getPath();
+	}
+
+	@After
+	public void clearCache() {
+		TlsContextCache.clear();
+	}
+
+	@Test
+	public void testShared() throws Exception {
+		logTestStart("testShared");
+		assertSame(TlsContextCache.getContext(null), TlsContextCache.getContext(null));
+		assertSame(TlsContextCache.getContext(caFile()), TlsContextCache.getContext(caFile()));
+		assertNotSame(TlsContextCache.getContext(null), TlsContextCache.getContext(caFile()));
+
+		try {
+			TlsContextCache.getContext("does/not/exist.pem");
+			fail("A missing CA file should fail");
+		} catch (KeyManagementException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testCaFile() throws Exception {
+		logTestStart("testCaFile");
+		TlsServer server = new TlsServer();
+		try {
+			DeviceConfigOptions options = new DeviceConfigOptions();
+			options.mqtt.caFile = caFile();
+			DeviceConfig config = new DeviceConfig(new DeviceConfigIdentity("myOrg", "TlsTestType", "TlsTestDev"),
+					new DeviceConfigAuth(), options);
+			handshake(config.getMqttConnectOptions().getSocketFactory(), server.getPort());
+
+			// The self-signed certificate is not trusted without the CA file
+			options.mqtt.caFile = null;
+			try {
+				handshake(config.getMqttConnectOptions().getSocketFactory(), server.getPort());
+				fail("An untrusted certificate should fail the handshake");
+			} catch (SSLException e) {
+				// Expected
+			}
+		} finally {
+			server.close();
+		}
+	}
+
+	@Test
+	public void testResumption() throws Exception {
+		logTestStart("testResumption");
+		TlsServer server = new TlsServer();
+		try {
+			byte[] first = handshake(TlsContextCache.getSocketFactory(caFile()), server.getPort());
+			// Reconnecting with the shared context resumes the session
+			assertArrayEquals(first, handshake(TlsContextCache.getSocketFactory(caFile()), server.getPort()));
+
+			// A new context, as was created for every connect, does a full handshake
+			TlsContextCache.clear();
+			assertFalse(Arrays.equals(first, handshake(TlsContextCache.getSocketFactory(caFile()), server.getPort())));
+		} finally {
+			server.close();
+		}
+	}
+}
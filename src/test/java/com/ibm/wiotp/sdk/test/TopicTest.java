@@ -0,0 +1,91 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import com.ibm.wiotp.sdk.test.util.AbstractTest;
+import com.ibm.wiotp.sdk.util.Topic;
+
+public class TopicTest extends AbstractTest {
+
+	@Test
+	public void testDeviceEvent() {
+		logTestStart("testDeviceEvent");
+		Topic topic = Topic.parse("iot-2/type/pump/id/pump01/evt/status/fmt/json");
+		assertEquals(Topic.Kind.DEVICE_EVENT, topic.getKind());
+		assertEquals("pump", topic.getTypeId());
+		assertEquals("pump01", topic.getDeviceId());
+		assertEquals("status", topic.getEventId());
+		assertNull(topic.getCommandId());
+		assertEquals("json", topic.getFormat());
+	}
+
+	@Test
+	public void testDeviceCommand() {
+		logTestStart("testDeviceCommand");
+		Topic topic = Topic.parse("iot-2/type/pump/id/pump01/cmd/run/fmt/utf8");
+		assertEquals(Topic.Kind.DEVICE_COMMAND, topic.getKind());
+		assertEquals("pump", topic.getTypeId());
+		assertEquals("pump01", topic.getDeviceId());
+		assertEquals("run", topic.getCommandId());
+		assertNull(topic.getEventId());
+		assertEquals("utf8", topic.getFormat());
+	}
+
+	@Test
+	public void testStatus() {
+		logTestStart("testStatus");
+		Topic topic = Topic.parse("iot-2/type/pump/id/pump01/mon");
+		assertEquals(Topic.Kind.DEVICE_STATUS, topic.getKind());
+		assertEquals("pump", topic.getTypeId());
+		assertEquals("pump01", topic.getDeviceId());
+		assertNull(topic.getFormat());
+
+		topic = Topic.parse("iot-2/app/myApp/mon");
+		assertEquals(Topic.Kind.APP_STATUS, topic.getKind());
+		assertEquals("myApp", topic.getAppId());
+		assertNull(topic.getTypeId());
+	}
+
+	@Test
+	public void testDeviceTopics() {
+		logTestStart("testDeviceTopics");
+		Topic topic = Topic.parse("iot-2/cmd/reboot/fmt/json");
+		assertEquals(Topic.Kind.COMMAND, topic.getKind());
+		assertEquals("reboot", topic.getCommandId());
+		assertEquals("json", topic.getFormat());
+		assertNull(topic.getDeviceId());
+
+		topic = Topic.parse("iot-2/evt/oshi/fmt/json-sigar");
+		assertEquals(Topic.Kind.EVENT, topic.getKind());
+		assertEquals("oshi", topic.getEventId());
+		assertEquals("json-sigar", topic.getFormat());
+	}
+
+	@Test
+	public void testUnknown() {
+		logTestStart("testUnknown");
+		String[] topics = { "", "iot-2", "iot-2/", "iot-3/cmd/a/fmt/json", "iot-2/type//id/d/mon",
+				"iot-2/type/t/id/d/mon/extra", "iot-2/type/t/id/d/evt/e/fmt/", "iot-2/type/t/id/d/evt/e/fmt/a/b",
+				"iot-2/type/t/id/d/evt/e/json", "iot-2/app/a", "iot-2/type/t/id/d/notify" };
+		for (String t : topics) {
+			Topic topic = Topic.parse(t);
+			assertEquals(t, Topic.Kind.UNKNOWN, topic.getKind());
+			assertNull(topic.getTypeId());
+			assertNull(topic.getFormat());
+		}
+		assertEquals(Topic.Kind.UNKNOWN, Topic.parse(null).getKind());
+	}
+}
@@ -0,0 +1,80 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.ibm.wiotp.sdk.test.util.AbstractTest;
+import com.ibm.wiotp.sdk.util.TopicTrie;
+
+public class TopicTrieTest extends AbstractTest {
+
+	@Test
+	public void testMatch() {
+		logTestStart("testMatch");
+		TopicTrie<String> trie = new TopicTrie<String>();
+		trie.add("iot-2/type/pump/id/+/evt/alarm/fmt/json", "pumpAlarms");
+		trie.add("iot-2/type/+/id/+/evt/+/fmt/+", "allEvents");
+		trie.add("iot-2/type/valve/#", "valves");
+		trie.add("iot-2/type/pump/id/p1/evt/alarm/fmt/json", "p1Alarms");
+
+		assertEquals(new HashSet<String>(Arrays.asList("pumpAlarms", "allEvents", "p1Alarms")),
+				new HashSet<String>(trie.match("iot-2/type/pump/id/p1/evt/alarm/fmt/json")));
+		assertEquals(Arrays.asList("allEvents"), trie.match("iot-2/type/pump/id/p2/evt/temp/fmt/json"));
+		assertEquals(new HashSet<String>(Arrays.asList("valves", "allEvents")),
+				new HashSet<String>(trie.match("iot-2/type/valve/id/v1/evt/open/fmt/json")));
+		assertEquals(Arrays.asList("valves"), trie.match("iot-2/type/valve"));
+		assertTrue(trie.match("iot-2/type/pump/id/p1/mon").isEmpty());
+		assertTrue(trie.match("iot-2/type/pump/id/p1/evt/alarm/fmt/json/extra").isEmpty());
+	}
+
+	@Test
+	public void testRemove() {
+		logTestStart("testRemove");
+		TopicTrie<String> trie = new TopicTrie<String>();
+		trie.add("a/+/c", "one");
+		trie.add("a/+/c", "two");
+		trie.add("#", "all");
+		assertEquals(3, trie.size());
+
+		assertTrue(trie.remove("a/+/c", "one"));
+		assertFalse(trie.remove("a/+/c", "one"));
+		assertFalse(trie.remove("a/b/c", "two"));
+
+		List<String> matches = trie.match("a/b/c");
+		assertEquals(new HashSet<String>(Arrays.asList("two", "all")), new HashSet<String>(matches));
+
+		assertTrue(trie.remove("a/+/c", "two"));
+		assertTrue(trie.remove("#", "all"));
+		assertTrue(trie.isEmpty());
+		assertTrue(trie.match("a/b/c").isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidMultiLevelWildcard() {
+		logTestStart("testInvalidMultiLevelWildcard");
+		new TopicTrie<String>().add("a/#/c", "invalid");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSingleLevelWildcard() {
+		logTestStart("testInvalidSingleLevelWildcard");
+		new TopicTrie<String>().add("a/b+/c", "invalid");
+	}
+}
@@ -0,0 +1,112 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test.benchmark;
+
+import java.util.Random;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.joda.time.DateTime;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.ibm.wiotp.sdk.codecs.CborCodec;
+import com.ibm.wiotp.sdk.codecs.JsonCodec;
+import com.ibm.wiotp.sdk.codecs.MessageCodec;
+
+/**
+ * Compares payload size and encode/decode throughput of CborCodec and JsonCodec
+ * for numeric telemetry. <br>
+ *
+ * Run with: java -cp ... com.ibm.wiotp.sdk.test.benchmark.CborBenchmark
+ * [iterations]
+ */
+public class CborBenchmark {
+
+	private static final int[] READINGS = { 4, 32, 256 };
+
+	// Keeps results reachable so the JIT can not remove the work
+	private static Object sink;
+
+	public static void main(String[] args) throws Exception {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		JsonCodec json = new JsonCodec();
+		CborCodec<JsonObject> cbor = new CborCodec<JsonObject>(JsonObject.class);
+
+		for (boolean decimal : new boolean[] { true, false }) {
+			for (int readings : READINGS) {
+				JsonObject data = telemetry(readings, decimal);
+				byte[] jsonBytes = json.encode(data, new DateTime());
+				byte[] cborBytes = cbor.encode(data, new DateTime());
+				System.out.println(String.format("%d %s readings: json %d bytes, cbor %d bytes (%.2fx smaller)",
+						readings, decimal ? "decimal" : "integer", jsonBytes.length, cborBytes.length,
+						(double) jsonBytes.length / cborBytes.length));
+
+				// Warm up each codec before measuring
+				for (int round = 0; round < 3; round++) {
+					boolean report = round == 2;
+					run("json", json, data, iterations, report);
+					run("cbor", cbor, data, iterations, report);
+				}
+			}
+		}
+	}
+
+	private static void run(String name, MessageCodec<JsonObject> codec, JsonObject data, int iterations,
+			boolean report) {
+		long start = System.nanoTime();
+		byte[] encoded = null;
+		for (int i = 0; i < iterations; i++) {
+			encoded = codec.encode(data, null);
+		}
+		long encodeTime = System.nanoTime() - start;
+
+		MqttMessage msg = new MqttMessage(encoded);
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			sink = codec.decode(msg).getData();
+		}
+		long decodeTime = System.nanoTime() - start;
+
+		if (report) {
+			System.out.println(String.format("  %-6s encode %8.2f us/msg  decode %8.2f us/msg", name,
+					encodeTime / 1e3 / iterations, decodeTime / 1e3 / iterations));
+		}
+	}
+
+	/*
+	 * High rate numeric telemetry: a timestamp, a few status fields and arrays of
+	 * sampled readings, either scaled to two decimal places or raw integer counts
+	 */
+	private static JsonObject telemetry(int readings, boolean decimal) {
+		Random random = new Random(42);
+		JsonObject data = new JsonObject();
+		data.addProperty("ts", 1559390400000L);
+		data.addProperty("seq", 123456);
+		data.addProperty("battery", 87);
+		data.addProperty("ok", true);
+		JsonArray samples = new JsonArray();
+		for (int i = 0; i < readings; i++) {
+			long sample = Math.round(random.nextGaussian() * 1000);
+			if (decimal) {
+				samples.add(sample / 100.0);
+			} else {
+				samples.add(sample);
+			}
+		}
+		data.add("samples", samples);
+		JsonArray counters = new JsonArray();
+		for (int i = 0; i < readings; i++) {
+			counters.add(random.nextInt(5000));
+		}
+		data.add("counters", counters);
+		return data;
+	}
+}
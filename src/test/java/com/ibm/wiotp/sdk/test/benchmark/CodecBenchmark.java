@@ -0,0 +1,141 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.ibm.wiotp.sdk.codecs.JsonCodec;
+import com.ibm.wiotp.sdk.codecs.JsonMessage;
+
+/**
+ * Measures time and bytes allocated per decoded message for JSON telemetry
+ * payloads of various sizes, comparing the String based parse that JsonCodec
+ * used to do with the byte level decode, the lazy decode and reading a single
+ * field through the streaming reader. <br>
+ *
+ * Allocation is measured with the HotSpot ThreadMXBean extension, so needs a
+ * HotSpot based JVM. <br>
+ *
+ * Run with: java -cp ... com.ibm.wiotp.sdk.test.benchmark.CodecBenchmark
+ */
+public class CodecBenchmark {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final JsonParser JSON_PARSER = new JsonParser();
+	private static final int[] PAYLOAD_SIZES = { 200, 2000, 20000 };
+
+	private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+
+	// Keeps results reachable so the JIT can not remove the work
+	private static Object sink;
+
+	interface Decoder {
+		Object decode(MqttMessage msg) throws Exception;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+
+		final JsonCodec eager = new JsonCodec();
+		final JsonCodec lazy = new JsonCodec(true);
+
+		Decoder string = new Decoder() {
+			public Object decode(MqttMessage msg) throws Exception {
+				// What JsonCodec.decode did before parsing from bytes
+				return JSON_PARSER.parse(new String(msg.getPayload(), "UTF8")).getAsJsonObject();
+			}
+		};
+		Decoder bytes = new Decoder() {
+			public Object decode(MqttMessage msg) throws Exception {
+				return eager.decode(msg).getData();
+			}
+		};
+		Decoder lazyTree = new Decoder() {
+			public Object decode(MqttMessage msg) throws Exception {
+				return lazy.decode(msg).getData();
+			}
+		};
+		Decoder streamField = new Decoder() {
+			public Object decode(MqttMessage msg) throws Exception {
+				JsonMessage decoded = lazy.decode(msg);
+				JsonReader reader = decoded.getReader();
+				reader.beginObject();
+				while (reader.hasNext()) {
+					if (reader.nextName().equals("temperature")) {
+						return reader.nextDouble();
+					}
+					reader.skipValue();
+				}
+				return null;
+			}
+		};
+
+		for (int size : PAYLOAD_SIZES) {
+			MqttMessage msg = new MqttMessage(payload(size));
+			System.out.println("Payload of " + msg.getPayload().length + " bytes");
+			// Warm up each decoder before measuring
+			for (int round = 0; round < 2; round++) {
+				boolean report = round == 1;
+				run("String + JsonParser", string, msg, iterations, report);
+				run("byte[] decode", bytes, msg, iterations, report);
+				run("lazy decode + getData", lazyTree, msg, iterations, report);
+				run("streaming one field", streamField, msg, iterations, report);
+			}
+		}
+	}
+
+	private static void run(String name, Decoder decoder, MqttMessage msg, int iterations, boolean report)
+			throws Exception {
+		long threadId = Thread.currentThread().getId();
+		long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			sink = decoder.decode(msg);
+		}
+		long elapsed = System.nanoTime() - start;
+		long allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+		if (report) {
+			System.out.println(String.format("  %-24s %10d bytes/msg %10.2f us/msg", name, allocated / iterations,
+					elapsed / 1e3 / iterations));
+		}
+	}
+
+	/*
+	 * A typical telemetry document, padded with readings to roughly the requested
+	 * size
+	 */
+	private static byte[] payload(int size) {
+		JsonObject data = new JsonObject();
+		data.addProperty("deviceId", "sensor-0042");
+		data.addProperty("ts", "2019-06-01T12:00:00.000Z");
+		data.addProperty("temperature", 21.5);
+		JsonArray readings = new JsonArray();
+		data.add("readings", readings);
+		int i = 0;
+		while (data.toString().length() < size) {
+			JsonObject reading = new JsonObject();
+			reading.addProperty("n", "r" + i);
+			reading.addProperty("v", i * 0.25);
+			readings.add(reading);
+			i++;
+		}
+		return data.toString().getBytes(UTF8);
+	}
+}
@@ -0,0 +1,166 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+import com.ibm.wiotp.sdk.codecs.JsonCodec;
+import com.ibm.wiotp.sdk.codecs.MessageCodec;
+import com.ibm.wiotp.sdk.codecs.PayloadBuffer;
+import com.ibm.wiotp.sdk.codecs.PojoCodec;
+
+/**
+ * Measures time and bytes allocated per encoded message for JSON telemetry
+ * payloads of various sizes, comparing the String based encode that JsonCodec
+ * used to do, and the OutputStreamWriter based encode PojoCodec used to do, with
+ * encoding into a pooled PayloadBuffer as the clients now do. The pooled
+ * figures include the payload array handed to the MQTT client, which is the
+ * only allocation proportional to the payload size. <br>
+ *
+ * Allocation is measured with the HotSpot ThreadMXBean extension, so needs a
+ * HotSpot based JVM. <br>
+ *
+ * Run with: java -cp ... com.ibm.wiotp.sdk.test.benchmark.EncodeBenchmark
+ */
+public class EncodeBenchmark {
+
+	private static final int[] PAYLOAD_SIZES = { 200, 2000, 20000 };
+
+	private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+
+	// Keeps results reachable so the JIT can not remove the work
+	private static Object sink;
+
+	public static class Reading {
+		String n;
+		double v;
+	}
+
+	public static class Telemetry {
+		String deviceId;
+		String ts;
+		double temperature;
+		Reading[] readings;
+	}
+
+	interface Encoder {
+		byte[] encode() throws Exception;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+
+		final JsonCodec jsonCodec = new JsonCodec();
+		final PojoCodec<Telemetry> pojoCodec = new PojoCodec<Telemetry>(Telemetry.class);
+		final Gson gson = new Gson();
+
+		for (int size : PAYLOAD_SIZES) {
+			final JsonObject json = telemetry(size);
+			final Telemetry pojo = gson.fromJson(json, Telemetry.class);
+
+			Encoder string = new Encoder() {
+				public byte[] encode() {
+					// What JsonCodec.encode did before encoding to a stream
+					return json.toString().getBytes(Charset.forName("UTF-8"));
+				}
+			};
+			Encoder pooledJson = new Encoder() {
+				public byte[] encode() throws Exception {
+					return pooled(jsonCodec, json);
+				}
+			};
+			Encoder streamWriter = new Encoder() {
+				public byte[] encode() throws Exception {
+					// What PojoCodec.encode did before encoding to a pooled buffer
+					ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+					JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, Charset.forName("UTF-8")));
+					gson.getAdapter(Telemetry.class).write(writer, pojo);
+					writer.close();
+					return out.toByteArray();
+				}
+			};
+			Encoder pooledPojo = new Encoder() {
+				public byte[] encode() throws Exception {
+					return pooled(pojoCodec, pojo);
+				}
+			};
+
+			System.out.println("Payload of " + string.encode().length + " bytes");
+			// Warm up each encoder before measuring
+			for (int round = 0; round < 2; round++) {
+				boolean report = round == 1;
+				run("JsonObject toString", string, iterations, report);
+				run("JsonCodec pooled", pooledJson, iterations, report);
+				run("POJO OutputStreamWriter", streamWriter, iterations, report);
+				run("PojoCodec pooled", pooledPojo, iterations, report);
+			}
+		}
+	}
+
+	/*
+	 * The same steps AbstractClient takes to encode a payload for publishing
+	 */
+	private static <T> byte[] pooled(MessageCodec<T> codec, T data) throws Exception {
+		PayloadBuffer buffer = PayloadBuffer.acquire();
+		try {
+			codec.encode(data, null, buffer);
+			return buffer.toByteArray();
+		} finally {
+			buffer.release();
+		}
+	}
+
+	private static void run(String name, Encoder encoder, int iterations, boolean report) throws Exception {
+		long threadId = Thread.currentThread().getId();
+		long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			sink = encoder.encode();
+		}
+		long elapsed = System.nanoTime() - start;
+		long allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+		if (report) {
+			System.out.println(String.format("  %-24s %10d bytes/msg %10.2f us/msg", name, allocated / iterations,
+					elapsed / 1e3 / iterations));
+		}
+	}
+
+	/*
+	 * A typical telemetry document, padded with readings to roughly the requested
+	 * size
+	 */
+	private static JsonObject telemetry(int size) {
+		JsonObject data = new JsonObject();
+		data.addProperty("deviceId", "sensor-0042");
+		data.addProperty("ts", "2019-06-01T12:00:00.000Z");
+		data.addProperty("temperature", 21.5);
+		JsonArray readings = new JsonArray();
+		data.add("readings", readings);
+		int i = 0;
+		while (data.toString().length() < size) {
+			JsonObject reading = new JsonObject();
+			reading.addProperty("n", "r" + i);
+			reading.addProperty("v", i * 0.25);
+			readings.add(reading);
+			i++;
+		}
+		return data;
+	}
+}
@@ -0,0 +1,118 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test.benchmark;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.paho.client.mqttv3.persist.MqttDefaultFilePersistence;
+
+import com.ibm.wiotp.sdk.persistence.MappedFilePersistence;
+
+/**
+ * Measures how many messages per second each persistence store can persist and
+ * then remove, which is what the MQTT client does for every QoS 1 publish. <br>
+ *
+ * Run with: java -cp ... com.ibm.wiotp.sdk.test.benchmark.PersistenceBenchmark
+ * [messages] [payloadBytes]
+ */
+public class PersistenceBenchmark {
+
+	private static final String CLIENT_ID = "d:myOrg:BenchType:BenchDev";
+	private static final String SERVER_URI = "ssl://myOrg.messaging.internetofthings.ibmcloud.com:8883";
+
+	public static void main(String[] args) throws Exception {
+		int messages = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+		int payloadBytes = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+		File directory = Files.createTempDirectory("wiotp-persistence-benchmark").toFile();
+
+		try {
+			for (int round = 0; round < 2; round++) {
+				// The first round warms up the JIT
+				String label = round == 0 ? "warmup " : "";
+				run(label + "memory", new MemoryPersistence(), messages, payloadBytes);
+				run(label + "mapped", new MappedFilePersistence(new File(directory, "mapped").getAbsolutePath()),
+						messages, payloadBytes);
+				// Paho's file persistence creates one file per message, so is given fewer
+				run(label + "file", new MqttDefaultFilePersistence(new File(directory, "file").getAbsolutePath()),
+						Math.min(messages, 5000), payloadBytes);
+			}
+		} finally {
+			delete(directory);
+		}
+	}
+
+	private static void run(String name, MqttClientPersistence persistence, int messages, int payloadBytes)
+			throws Exception {
+		persistence.open(CLIENT_ID, SERVER_URI);
+		persistence.clear();
+		MqttPersistable message = new BenchmarkMessage(new byte[4], new byte[payloadBytes]);
+
+		long start = System.nanoTime();
+		for (int i = 0; i < messages; i++) {
+			String key = "s-" + (i % 65535);
+			persistence.put(key, message);
+			persistence.remove(key);
+		}
+		long elapsed = System.nanoTime() - start;
+		persistence.close();
+
+		System.out.println(String.format("%-16s %8d messages %10.0f msg/s %8.2f us/msg", name, messages,
+				messages / (elapsed / 1e9), elapsed / 1e3 / messages));
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	private static class BenchmarkMessage implements MqttPersistable {
+		private final byte[] header;
+		private final byte[] payload;
+
+		BenchmarkMessage(byte[] header, byte[] payload) {
+			this.header = header;
+			this.payload = payload;
+		}
+
+		public byte[] getHeaderBytes() {
+			return header;
+		}
+
+		public int getHeaderLength() {
+			return header.length;
+		}
+
+		public int getHeaderOffset() {
+			return 0;
+		}
+
+		public byte[] getPayloadBytes() {
+			return payload;
+		}
+
+		public int getPayloadLength() {
+			return payload.length;
+		}
+
+		public int getPayloadOffset() {
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.ibm.wiotp.sdk.app.messages.DeviceStatus;
+import com.ibm.wiotp.sdk.app.messages.StatusView;
+
+/**
+ * Measures time and bytes allocated per device status message, comparing the
+ * JsonObject based parse that Status used to do with the single pass parse into
+ * a DeviceStatus, and with a reused StatusView from which only the client id
+ * and action are read, as a fleet monitor tracking connections would. <br>
+ *
+ * Allocation is measured with the HotSpot ThreadMXBean extension, so needs a
+ * HotSpot based JVM. <br>
+ *
+ * Run with: java -cp ... com.ibm.wiotp.sdk.test.benchmark.StatusBenchmark
+ */
+public class StatusBenchmark {
+
+	private static final JsonParser JSON_PARSER = new JsonParser();
+	private static final DateTimeFormatter DT_PARSER = ISODateTimeFormat.dateTimeParser();
+
+	private static final String DISCONNECT = "{\"ClientAddr\":\"195.212.29.68\",\"Protocol\":\"mqtt4-tcp\","
+			+ "\"ClientID\":\"d:bcaxk:psutil:001\",\"User\":\"use-token-auth\","
+			+ "\"Time\":\"2014-07-07T06:38:11.036-04:00\",\"Action\":\"Disconnect\","
+			+ "\"ConnectTime\":\"2014-07-07T06:37:56.493-04:00\",\"Port\":1883,\"WriteMsg\":0,\"ReadMsg\":872,"
+			+ "\"Reason\":\"The connection has completed normally.\",\"ReadBytes\":136507,\"WriteBytes\":32}";
+
+	private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+
+	// Keeps results reachable so the JIT can not remove the work
+	private static Object sink;
+
+	interface Parser {
+		Object parse(MqttMessage msg) throws Exception;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		final MqttMessage msg = new MqttMessage(DISCONNECT.getBytes(StandardCharsets.UTF_8));
+		final StatusView view = new StatusView();
+
+		Parser tree = new Parser() {
+			public Object parse(MqttMessage msg) throws Exception {
+				// The essentials of what the Status constructor used to do
+				String payload = new String(msg.getPayload(), "UTF8");
+				JsonObject json = JSON_PARSER.parse(payload).getAsJsonObject();
+				Object[] fields = new Object[13];
+				int i = 0;
+				for (String name : new String[] { "ClientAddr", "Protocol", "ClientID", "Action", "User",
+						"ConnectTime", "Reason" }) {
+					fields[i++] = json.has(name) ? json.get(name).getAsString() : new String();
+				}
+				for (String name : new String[] { "Port", "WriteMsg", "ReadMsg", "ReadBytes", "WriteBytes" }) {
+					fields[i++] = json.has(name) ? json.get(name).getAsInt() : 0;
+				}
+				fields[i] = DT_PARSER.parseDateTime(json.get("Time").getAsString());
+				return fields;
+			}
+		};
+		Parser status = new Parser() {
+			public Object parse(MqttMessage msg) throws Exception {
+				return new DeviceStatus("psutil", "001", msg);
+			}
+		};
+		Parser statusWithTime = new Parser() {
+			public Object parse(MqttMessage msg) throws Exception {
+				return new DeviceStatus("psutil", "001", msg).getTime();
+			}
+		};
+		Parser flyweight = new Parser() {
+			public Object parse(MqttMessage msg) throws Exception {
+				view.wrapDevice("psutil", "001", msg.getPayload());
+				return view.isDisconnect() ? view.getClientId() : null;
+			}
+		};
+
+		System.out.println("Disconnect status of " + msg.getPayload().length + " bytes");
+		// Warm up each parser before measuring
+		for (int round = 0; round < 2; round++) {
+			boolean report = round == 1;
+			run("JsonObject + has/get", tree, msg, iterations, report);
+			run("DeviceStatus", status, msg, iterations, report);
+			run("DeviceStatus + getTime", statusWithTime, msg, iterations, report);
+			run("StatusView, one field", flyweight, msg, iterations, report);
+		}
+	}
+
+	private static void run(String name, Parser parser, MqttMessage msg, int iterations, boolean report)
+			throws Exception {
+		long threadId = Thread.currentThread().getId();
+		long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			sink = parser.parse(msg);
+		}
+		long elapsed = System.nanoTime() - start;
+		long allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+		if (report) {
+			System.out.println(String.format("  %-24s %10d bytes/msg %10.2f us/msg", name, allocated / iterations,
+					elapsed / 1e3 / iterations));
+		}
+	}
+}
@@ -0,0 +1,87 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test.benchmark;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+import com.ibm.wiotp.sdk.TlsContextCache;
+import com.ibm.wiotp.sdk.test.TlsContextCacheTest;
+import com.ibm.wiotp.sdk.test.TlsContextCacheTest.TlsServer;
+
+/**
+ * Measures the cost of reconnecting over TLS to a local server, with a new TLS
+ * context for every connection, as the configurations used to create, and with
+ * the shared context of {@link TlsContextCache}, which resumes the session.
+ * Both ends of the handshake run in this process, so the time includes the
+ * server's work. <br>
+ *
+ * Run with: java -cp ... com.ibm.wiotp.sdk.test.benchmark.TlsReconnectBenchmark
+ * [connections]
+ */
+public class TlsReconnectBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int connections = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		String caFile = TlsContextCacheTest.caFile();
+		TrustManagerFactory trustManagers = trustManagers(caFile);
+		TlsServer server = new TlsServer();
+
+		try {
+			for (int round = 0; round < 2; round++) {
+				// The first round warms up the JIT
+				String label = round == 0 ? "warmup " : "";
+				TlsContextCache.clear();
+
+				long start = System.nanoTime();
+				for (int i = 0; i < connections; i++) {
+					SSLContext context = SSLContext.getInstance(TlsContextCache.PROTOCOL);
+					context.init(null, trustManagers.getTrustManagers(), null);
+					TlsContextCacheTest.handshake(context.getSocketFactory(), server.getPort());
+				}
+				report(label + "new context", connections, System.nanoTime() - start);
+
+				start = System.nanoTime();
+				for (int i = 0; i < connections; i++) {
+					TlsContextCacheTest.handshake(TlsContextCache.getSocketFactory(caFile), server.getPort());
+				}
+				report(label + "shared context", connections, System.nanoTime() - start);
+			}
+		} finally {
+			server.close();
+		}
+	}
+
+	private static TrustManagerFactory trustManagers(String caFile) throws Exception {
+		KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+		trustStore.load(null, null);
+		try (InputStream in = new FileInputStream(caFile)) {
+			int i = 0;
+			for (Certificate certificate : CertificateFactory.getInstance("X.509").generateCertificates(in)) {
+				trustStore.setCertificateEntry("ca-" + i++, certificate);
+			}
+		}
+		TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+		trustManagers.init(trustStore);
+		return trustManagers;
+	}
+
+	private static void report(String name, int connections, long elapsed) {
+		System.out.println(String.format("%-22s %6d connections %8.0f conn/s %8.3f ms/conn", name, connections,
+				connections / (elapsed / 1e9), elapsed / 1e6 / connections));
+	}
+}
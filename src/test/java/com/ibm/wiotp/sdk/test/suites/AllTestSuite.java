@@ -4,10 +4,46 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
+import com.ibm.wiotp.sdk.test.ApplicationConsumerGroupTest;
 import com.ibm.wiotp.sdk.test.ApplicationTest;
+import com.ibm.wiotp.sdk.test.BulkSubscribeTest;
+import com.ibm.wiotp.sdk.test.CborCodecTest;
+import com.ibm.wiotp.sdk.test.CodecRegistryTest;
+import com.ibm.wiotp.sdk.test.ConnectAsyncTest;
+import com.ibm.wiotp.sdk.test.DeflateCodecTest;
+import com.ibm.wiotp.sdk.test.DeltaCodecTest;
+import com.ibm.wiotp.sdk.test.DrainTest;
+import com.ibm.wiotp.sdk.test.FlowControllerTest;
+import com.ibm.wiotp.sdk.test.HealthMonitorTest;
+import com.ibm.wiotp.sdk.test.JsonCodecTest;
+import com.ibm.wiotp.sdk.test.LazyMessageTest;
+import com.ibm.wiotp.sdk.test.MappedFilePersistenceTest;
+import com.ibm.wiotp.sdk.test.MessagePublisherTest;
+import com.ibm.wiotp.sdk.test.Mqtt5ClientTest;
+import com.ibm.wiotp.sdk.test.PayloadBufferTest;
+import com.ibm.wiotp.sdk.test.PojoCodecTest;
+import com.ibm.wiotp.sdk.test.PooledApplicationClientTest;
+import com.ibm.wiotp.sdk.test.PublishAsyncTest;
+import com.ibm.wiotp.sdk.test.StatusTest;
+import com.ibm.wiotp.sdk.test.StripedDispatcherTest;
+import com.ibm.wiotp.sdk.test.SubscriptionRegistryTest;
+import com.ibm.wiotp.sdk.test.TlsContextCacheTest;
+import com.ibm.wiotp.sdk.test.TopicTest;
+import com.ibm.wiotp.sdk.test.TopicTrieTest;
 
 @RunWith(Suite.class)
-@SuiteClasses({ ApplicationTest.class })
+@SuiteClasses({ ApplicationTest.class, TopicTest.class, TopicTrieTest.class, FlowControllerTest.class,
+		MappedFilePersistenceTest.class, JsonCodecTest.class,
+		LazyMessageTest.class, CborCodecTest.class,
+		DeflateCodecTest.class, PojoCodecTest.class,
+		CodecRegistryTest.class, PayloadBufferTest.class,
+		DeltaCodecTest.class, StatusTest.class,
+		PooledApplicationClientTest.class, ApplicationConsumerGroupTest.class,
+		ConnectAsyncTest.class, BulkSubscribeTest.class,
+		SubscriptionRegistryTest.class, Mqtt5ClientTest.class,
+		TlsContextCacheTest.class, HealthMonitorTest.class,
+		DrainTest.class, StripedDispatcherTest.class, MessagePublisherTest.class,
+		PublishAsyncTest.class })
 public class AllTestSuite {
 
 }
@@ -0,0 +1,252 @@
+/**
+ *****************************************************************************
+ Copyright (c) 2019 IBM Corporation and other Contributors.
+ All rights reserved. This program and the accompanying materials
+ are made available under the terms of the Eclipse Public License v1.0
+ which accompanies this distribution, and is available at
+ http://www.eclipse.org/legal/epl-v10.html
+ *****************************************************************************
+ *
+ */
+package com.ibm.wiotp.sdk.test.util;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.ibm.wiotp.sdk.device.config.DeviceConfig;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigAuth;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigIdentity;
+import com.ibm.wiotp.sdk.device.config.DeviceConfigOptions;
+
+/**
+ * A minimal MQTT 3.1.1 server on localhost for tests. It accepts connections
+ * one at a time, grants every subscription, records every PUBLISH and
+ * acknowledges QoS 1 messages, optionally only once released. CONNACKs can be
+ * delayed, and the current connection dropped, to test connecting and
+ * reconnecting.
+ */
+public class StubBroker implements Runnable {
+	private static final int CONNECT = 1;
+	private static final int PUBLISH = 3;
+	private static final int SUBSCRIBE = 8;
+	private static final int PINGREQ = 12;
+	private static final int DISCONNECT = 14;
+
+	/**
+	 * A message the broker received
+	 */
+	public static class Published {
+		public final String topic;
+		public final int qos;
+		public final byte[] payload;
+
+		Published(String topic, int qos, byte[] payload) {
+			this.topic = topic;
+			this.qos = qos;
+			this.payload = payload;
+		}
+
+		public String getPayloadString() {
+			return new String(payload, StandardCharsets.UTF_8);
+		}
+	}
+
+	private final ServerSocket server;
+	private final CountDownLatch release;
+	private final BlockingQueue<Published> published = new LinkedBlockingQueue<Published>();
+	private final BlockingQueue<String> subscribed = new LinkedBlockingQueue<String>();
+	private final AtomicInteger connects = new AtomicInteger();
+	private volatile long connackDelay = 0;
+	private volatile Socket current;
+
+	/**
+	 * A broker that acknowledges messages as they arrive
+	 *
+	 * @throws IOException If the server socket can not be opened
+	 */
+	public StubBroker() throws IOException {
+		this(false);
+	}
+
+	/**
+	 * @param holdAcks Whether to hold back acknowledgements until
+	 *                 {@link #release()}
+	 * @throws IOException If the server socket can not be opened
+	 */
+	public StubBroker(boolean holdAcks) throws IOException {
+		this.server = new ServerSocket(0);
+		this.release = new CountDownLatch(holdAcks ? 1 : 0);
+		Thread thread = new Thread(this, "stub-broker");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public void run() {
+		while (!server.isClosed()) {
+			try (Socket socket = server.accept()) {
+				current = socket;
+				serve(socket);
+			} catch (IOException | InterruptedException e) {
+				// The client went away, or the broker was closed
+			}
+		}
+	}
+
+	private void serve(Socket socket) throws IOException, InterruptedException {
+		DataInputStream in = new DataInputStream(socket.getInputStream());
+		OutputStream out = socket.getOutputStream();
+		while (true) {
+			int header = in.read();
+			if (header < 0) {
+				return;
+			}
+			byte[] body = new byte[remainingLength(in)];
+			in.readFully(body);
+			int type = header >> 4;
+			if (type == CONNECT) {
+				connects.incrementAndGet();
+				Thread.sleep(connackDelay);
+				out.write(new byte[] { 0x20, 2, 0, 0 });
+			} else if (type == SUBSCRIBE) {
+				out.write(suback(body));
+			} else if (type == PUBLISH) {
+				int qos = (header >> 1) & 3;
+				int topicLength = ((body[0] & 0xff) << 8) | (body[1] & 0xff);
+				String topic = new String(body, 2, topicLength, StandardCharsets.UTF_8);
+				// QoS 1 and 2 messages have an id after the topic
+				int payloadStart = 2 + topicLength + (qos > 0 ? 2 : 0);
+				published.add(new Published(topic, qos, Arrays.copyOfRange(body, payloadStart, body.length)));
+				if (qos == 1) {
+					release.await();
+					out.write(new byte[] { 0x40, 2, body[2 + topicLength], body[3 + topicLength] });
+				}
+			} else if (type == PINGREQ) {
+				out.write(new byte[] { (byte) 0xd0, 0 });
+			} else if (type == DISCONNECT) {
+				return;
+			}
+			out.flush();
+		}
+	}
+
+	// Grants QoS 1 to every topic filter
+	private byte[] suback(byte[] body) {
+		int filters = 0;
+		int i = 2;
+		while (i < body.length) {
+			int length = ((body[i] & 0xff) << 8) | (body[i + 1] & 0xff);
+			subscribed.add(new String(body, i + 2, length, StandardCharsets.UTF_8));
+			i += 3 + length;
+			filters++;
+		}
+		byte[] suback = new byte[4 + filters];
+		suback[0] = (byte) 0x90;
+		suback[1] = (byte) (2 + filters);
+		suback[2] = body[0];
+		suback[3] = body[1];
+		Arrays.fill(suback, 4, suback.length, (byte) 1);
+		return suback;
+	}
+
+	private static int remainingLength(InputStream in) throws IOException {
+		int length = 0;
+		int multiplier = 1;
+		int digit;
+		do {
+			digit = in.read();
+			length += (digit & 0x7f) * multiplier;
+			multiplier *= 128;
+		} while ((digit & 0x80) != 0);
+		return length;
+	}
+
+	/**
+	 * Send the acknowledgements held back so far, and every later one at once
+	 */
+	public void release() {
+		release.countDown();
+	}
+
+	/**
+	 * @param timeout Milliseconds to wait
+	 * @return The next message received, or null if none arrived in time
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	public Published nextPublished(long timeout) throws InterruptedException {
+		return published.poll(timeout, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @param timeout Milliseconds to wait
+	 * @return The next topic filter subscribed to, or null if none arrived in time
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	public String nextSubscribed(long timeout) throws InterruptedException {
+		return subscribed.poll(timeout, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @param delay Milliseconds to wait before acknowledging each CONNECT
+	 */
+	public void setConnackDelay(long delay) {
+		this.connackDelay = delay;
+	}
+
+	/**
+	 * @return Number of CONNECT packets received
+	 */
+	public int getConnectCount() {
+		return connects.get();
+	}
+
+	/**
+	 * Close the current connection, as a network failure would
+	 *
+	 * @throws IOException If the socket can not be closed
+	 */
+	public void dropConnection() throws IOException {
+		Socket socket = current;
+		if (socket != null) {
+			socket.close();
+		}
+	}
+
+	public int getPort() {
+		return server.getLocalPort();
+	}
+
+	public String getServerURI() {
+		return "tcp://localhost:" + getPort();
+	}
+
+	public void close() throws IOException {
+		server.close();
+	}
+
+	/**
+	 * @param identity Identity of the device
+	 * @param options  Options for the device, whose server is replaced
+	 * @return A device configuration that connects to this broker
+	 */
+	public DeviceConfig deviceConfig(DeviceConfigIdentity identity, DeviceConfigOptions options) {
+		options.mqtt.port = 1883;
+		return new DeviceConfig(identity, new DeviceConfigAuth(), options) {
+			@Override
+			public String getMqttServerURI() {
+				return getServerURI();
+			}
+		};
+	}
+}